@@ -0,0 +1,25 @@
+package com.hars.queuectl.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs JMH with its usual command line, but writes the results to jmh-result.json
+ * unless another result format is requested, so runs can be compared later
+ * (for example with https://jmh.morethan.io or a JSON diff).
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        if (!arguments.contains("-rf")) {
+            arguments.add("-rf");
+            arguments.add("json");
+        }
+        org.openjdk.jmh.Main.main(arguments.toArray(new String[0]));
+    }
+}
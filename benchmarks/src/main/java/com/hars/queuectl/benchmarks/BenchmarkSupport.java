@@ -0,0 +1,89 @@
+package com.hars.queuectl.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import com.hars.queuectl.model.Job;
+import com.hars.queuectl.service.JobRepository;
+import com.hars.queuectl.storage.JobCodec;
+import com.hars.queuectl.storage.JobStore;
+import com.hars.queuectl.storage.LogJobStore;
+import com.hars.queuectl.storage.MappedJobStore;
+
+/**
+ * Fixtures shared by the benchmarks: scratch stores and jobs
+ */
+final class BenchmarkSupport {
+
+    private static PrintStream originalOut;
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * @param engine log or mapped
+     * @return An initialized repository over a new store in the given directory
+     */
+    static JobRepository openRepository(String engine, Path dir) {
+        return openRepository(engine, dir, 1);
+    }
+
+    /**
+     * @param shards Number of shards, each in its own subdirectory when more than one
+     * @return An initialized repository over new stores, placing jobs by id
+     */
+    static JobRepository openRepository(String engine, Path dir, int shards) {
+        List<JobStore> stores = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            Path shardDir = shards == 1 ? dir : dir.resolve("shard-" + i);
+            stores.add("mapped".equals(engine)
+                    ? new MappedJobStore(shardDir)
+                    : new LogJobStore(shardDir, JobCodec.forName(JobCodec.BINARY)));
+        }
+        JobRepository repository = new JobRepository(stores, false);
+        repository.initialize();
+        return repository;
+    }
+
+    static Job pendingJob(String id, String command) {
+        Instant now = Instant.now();
+        return new Job(id, command, Job.JobState.PENDING, 0, 3, 300, now, now);
+    }
+
+    static void deleteRecursively(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * Drops the per-job progress lines the worker prints, which would otherwise be
+     * measured along with the code under test
+     */
+    static synchronized void silenceStdout() {
+        if (originalOut == null) {
+            originalOut = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+    }
+
+    static synchronized void restoreStdout() {
+        if (originalOut != null) {
+            System.setOut(originalOut);
+            originalOut = null;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.hars.queuectl.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hars.queuectl.model.Job;
+import com.hars.queuectl.worker.ExecutionResult;
+import com.hars.queuectl.worker.JobExecutor;
+import com.hars.queuectl.worker.JobLogs;
+
+/**
+ * Fixed cost of running a job: starting the shell, pumping its output to the log
+ * file and waiting for it to exit. The commands do (almost) nothing themselves.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JobExecutorBenchmark {
+
+    private Path logDir;
+    private JobExecutor executor;
+    private Job noop;
+    private Job echo;
+
+    @Setup
+    public void setUp() throws IOException {
+        logDir = Files.createTempDirectory("queuectl-bench-logs-");
+        executor = new JobExecutor(new JobLogs(logDir, JobLogs.DEFAULT_MAX_BYTES, 0));
+        noop = BenchmarkSupport.pendingJob("noop", "true");
+        echo = BenchmarkSupport.pendingJob("echo", "echo hello");
+        BenchmarkSupport.silenceStdout();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkSupport.restoreStdout();
+        BenchmarkSupport.deleteRecursively(logDir);
+    }
+
+    @Benchmark
+    public ExecutionResult executeNoop() {
+        return executor.execute(noop);
+    }
+
+    @Benchmark
+    public ExecutionResult executeEcho() {
+        return executor.execute(echo);
+    }
+}
@@ -0,0 +1,131 @@
+package com.hars.queuectl.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hars.queuectl.model.Job;
+import com.hars.queuectl.service.JobRepository;
+
+/**
+ * The repository operations every job goes through, against a store that already
+ * holds {@code jobs} PENDING jobs. addJob and updateJob include the fsync that makes
+ * them durable, so their scores depend on the disk the temp directory is on.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class JobRepositoryBenchmark {
+
+    // Claims measured per iteration of the claim benchmark; no larger than the smallest store
+    private static final int CLAIM_BATCH = 1000;
+    private static final int FILL_BATCH = 10_000;
+
+    @Param({"1000", "100000", "1000000"})
+    private int jobs;
+
+    @Param({"log", "mapped"})
+    private String engine;
+
+    private Path dir;
+    private JobRepository repository;
+    private Job template;
+    private long added;
+    private int updated;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("queuectl-bench-");
+        repository = BenchmarkSupport.openRepository(engine, dir);
+        template = BenchmarkSupport.pendingJob("template", "true");
+
+        List<Job> batch = new ArrayList<>(FILL_BATCH);
+        for (int i = 0; i < jobs; i++) {
+            Job job = new Job(template);
+            job.setId(idOf(i));
+            batch.add(job);
+            if (batch.size() == FILL_BATCH || i == jobs - 1) {
+                repository.addJobs(batch);
+                batch.clear();
+            }
+        }
+        // Used below to put claimed jobs back quickly between iterations
+        repository.startGroupCommit(2, 256);
+    }
+
+    /**
+     * Returns jobs claimed in the previous iteration to PENDING, so every iteration
+     * claims from a store of the same size
+     */
+    @Setup(Level.Iteration)
+    public void requeueClaimed() {
+        List<CompletableFuture<Boolean>> updates = new ArrayList<>();
+        for (Job job : repository.getJobsByState(Job.JobState.PROCESSING)) {
+            job.setState(Job.JobState.PENDING);
+            job.setLeaseOwner(null);
+            job.setLeaseExpiresAt(null);
+            updates.add(repository.updateJobAsync(job));
+        }
+        CompletableFuture.allOf(updates.toArray(new CompletableFuture[0])).join();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        repository.close();
+        BenchmarkSupport.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public void addJob() {
+        Job job = new Job(template);
+        job.setId("added-" + added++);
+        repository.addJob(job);
+    }
+
+    @Benchmark
+    public boolean updateJob() {
+        Job job = new Job(template);
+        job.setId(idOf(updated++ % jobs));
+        job.setUpdatedAt(Instant.now());
+        return repository.updateJob(job);
+    }
+
+    /**
+     * Time to claim {@link #CLAIM_BATCH} jobs one after another
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5, batchSize = CLAIM_BATCH)
+    @Measurement(iterations = 20, batchSize = CLAIM_BATCH)
+    public Optional<Job> findAndLockNextPendingJob() {
+        return repository.findAndLockNextPendingJob("bench", TimeUnit.MINUTES.toMillis(10));
+    }
+
+    private static String idOf(int index) {
+        return "job-" + index;
+    }
+}
@@ -0,0 +1,90 @@
+package com.hars.queuectl.benchmarks;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.hars.queuectl.model.Job;
+import com.hars.queuectl.storage.BinaryJobCodec;
+
+/**
+ * Encoding a job the way the CLI, the RPC endpoint and the JSON store do (Jackson),
+ * next to the binary record format of the log store
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JobSerializationBenchmark {
+
+    // A freshly enqueued job, or a finished one carrying a full output tail
+    @Param({"pending", "finished"})
+    private String shape;
+
+    private ObjectMapper mapper;
+    private BinaryJobCodec codec;
+    private Job job;
+    private byte[] json;
+    private byte[] binary;
+
+    @Setup
+    public void setUp() throws IOException {
+        mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        mapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        codec = new BinaryJobCodec();
+
+        job = BenchmarkSupport.pendingJob("3f6c2a1e-9b1d-4c55-8a7e-2d1f0c9e4b21", "curl -fsS https://example.com/hook");
+        job.setQueue("webhooks");
+        job.setPriority(5);
+        if ("finished".equals(shape)) {
+            Instant now = Instant.now();
+            job.setState(Job.JobState.COMPLETED);
+            job.setAttempts(1);
+            job.setLastExitCode(0);
+            job.setStartedAt(now.minusMillis(250));
+            job.setFinishedAt(now);
+            job.setRuntimeMillis(250);
+            job.setOutputTail("x".repeat(4000));
+        }
+        json = mapper.writeValueAsBytes(job);
+        binary = codec.encode(job);
+    }
+
+    @Benchmark
+    public byte[] jacksonWrite() throws IOException {
+        return mapper.writeValueAsBytes(job);
+    }
+
+    @Benchmark
+    public Job jacksonRead() throws IOException {
+        return mapper.readValue(json, Job.class);
+    }
+
+    @Benchmark
+    public byte[] binaryEncode() throws IOException {
+        return codec.encode(job);
+    }
+
+    @Benchmark
+    public Job binaryDecode() throws IOException {
+        return codec.decode(binary, 0, binary.length);
+    }
+}
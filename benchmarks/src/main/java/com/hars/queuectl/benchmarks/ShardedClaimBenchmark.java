@@ -0,0 +1,81 @@
+package com.hars.queuectl.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hars.queuectl.model.Job;
+import com.hars.queuectl.service.JobRepository;
+
+/**
+ * Claims per second from several threads at once, against one store or the same jobs
+ * split over several shards. Each operation claims a job and puts it back to PENDING
+ * with a durable update, the two writes every job's claim costs a worker, so the
+ * store size stays constant.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class ShardedClaimBenchmark {
+
+    private static final int JOBS = 10_000;
+
+    @Param({"1", "2", "4"})
+    private int shards;
+
+    @Param({"log"})
+    private String engine;
+
+    private Path dir;
+    private JobRepository repository;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("queuectl-bench-");
+        repository = BenchmarkSupport.openRepository(engine, dir, shards);
+        List<Job> batch = new ArrayList<>(JOBS);
+        for (int i = 0; i < JOBS; i++) {
+            batch.add(BenchmarkSupport.pendingJob("job-" + i, "true"));
+        }
+        repository.addJobs(batch);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        repository.close();
+        BenchmarkSupport.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public boolean claimAndRequeue() {
+        Optional<Job> claimed = repository.findAndLockNextPendingJob("bench", TimeUnit.MINUTES.toMillis(10));
+        if (!claimed.isPresent()) {
+            return false;
+        }
+        Job job = claimed.get();
+        job.setState(Job.JobState.PENDING);
+        return repository.updateJob(job);
+    }
+}
@@ -0,0 +1,89 @@
+package com.hars.queuectl.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hars.queuectl.model.Job;
+import com.hars.queuectl.service.JobRepository;
+import com.hars.queuectl.service.WorkerService;
+
+/**
+ * End-to-end jobs per second of a running worker pool: each invocation enqueues a
+ * batch of no-op jobs and waits until the workers have completed all of them, so the
+ * score covers claiming, running, recording and group-committing each job.
+ *
+ * The worker reads config.json and writes logs/ in the working directory, so run the
+ * benchmarks from a scratch directory.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WorkerThroughputBenchmark {
+
+    private static final int BATCH = 200;
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Param({"1", "4", "16"})
+    private int workers;
+
+    @Param({"log"})
+    private String engine;
+
+    private Path dir;
+    private JobRepository repository;
+    private WorkerService workerService;
+    private long enqueued;
+
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkSupport.silenceStdout();
+        dir = Files.createTempDirectory("queuectl-bench-");
+        repository = BenchmarkSupport.openRepository(engine, dir);
+        workerService = new WorkerService(repository);
+        workerService.start(workers);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        workerService.stop();
+        repository.close();
+        BenchmarkSupport.deleteRecursively(dir);
+        BenchmarkSupport.restoreStdout();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void runBatch() {
+        List<Job> batch = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            batch.add(BenchmarkSupport.pendingJob("job-" + enqueued++, "true"));
+        }
+        repository.addJobs(batch);
+
+        while (repository.countByState().getOrDefault(Job.JobState.COMPLETED, 0) < enqueued) {
+            LockSupport.parkNanos(POLL_NANOS);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.hars.queuectl.commands;
+
+import picocli.CommandLine.Command;
+
+@Command(
+    name = "archive",
+    description = "Jobs moved out of the job store by the retention policy",
+    subcommands = {
+        ArchiveQueryCommand.class
+    }
+)
+public class ArchiveCommand implements Runnable {
+    
+    @Override
+    public void run() {
+        // Show help by default
+        picocli.CommandLine.usage(this, System.out);
+    }
+}
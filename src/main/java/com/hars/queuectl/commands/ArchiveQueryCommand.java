@@ -0,0 +1,86 @@
+package com.hars.queuectl.commands;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.LocalDate;
+
+import com.hars.queuectl.model.Job;
+import com.hars.queuectl.storage.JobArchive;
+
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+@Command(
+    name = "query",
+    description = "Search archived jobs, oldest first"
+)
+public class ArchiveQueryCommand implements Runnable {
+
+    @Option(names = "--id", description = "Only the job with this id")
+    private String id;
+
+    @Option(names = {"--state", "-s"}, description = "Filter by state (COMPLETED or DEAD)")
+    private String state;
+
+    @Option(names = {"--queue", "-q"}, description = "Only jobs from the named queue")
+    private String queue;
+
+    @Option(names = "--since", description = "Only jobs finished since a time (ISO-8601, e.g. 2024-01-01T00:00:00Z) or within a duration (e.g. 30m, 2h, 7d)")
+    private String since;
+
+    @Option(names = "--until", description = "Only jobs finished before a time (ISO-8601) or a duration ago")
+    private String until;
+
+    @Option(names = {"--limit", "-n"}, description = "Show at most this many jobs")
+    private Integer limit;
+
+    @Option(names = "--format", description = "Output format: json (an indented array) or ndjson (one job per line) (default: json)")
+    private String format = "json";
+
+    @Override
+    public void run() {
+        Job.JobState jobState;
+        Instant from;
+        Instant to;
+        boolean ndjson;
+        try {
+            ndjson = JobPrinter.parseFormat(format);
+            if (limit != null && limit < 1) {
+                throw new IllegalArgumentException("--limit must be at least 1");
+            }
+            jobState = ListCommand.parseState(state);
+            Instant now = Instant.now();
+            from = ListCommand.parseTime("--since", since, now);
+            to = ListCommand.parseTime("--until", until, now);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        // Archive files are per day of the last update, so a time range only opens those days
+        JobArchive archive = new JobArchive();
+        LocalDate firstDay = from != null ? JobArchive.dayOf(from) : null;
+        LocalDate lastDay = to != null ? JobArchive.dayOf(to) : null;
+        try (JobPrinter printer = new JobPrinter(ndjson)) {
+            archive.scan(firstDay, lastDay, job -> {
+                Instant finished = job.getUpdatedAt();
+                if ((id == null || id.equals(job.getId()))
+                        && (jobState == null || job.getState() == jobState)
+                        && (queue == null || queue.equals(job.getQueueName()))
+                        && (from == null || (finished != null && !finished.isBefore(from)))
+                        && (to == null || (finished != null && finished.isBefore(to)))) {
+                    printer.print(job);
+                }
+                return limit == null || printer.getCount() < limit;
+            });
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Failed to write jobs: " + e.getMessage());
+            System.exit(1);
+        } catch (RuntimeException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -6,7 +6,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.hars.queuectl.model.Job;
-import com.hars.queuectl.service.JobRepository;
+import com.hars.queuectl.service.JobQueue;
 
 import picocli.CommandLine.Command;
 
@@ -18,10 +18,9 @@ public class DLQListCommand implements Runnable {
     
     @Override
     public void run() {
-        JobRepository jobRepository = new JobRepository();
-        jobRepository.initialize();
+        JobQueue jobQueue = JobQueues.open();
         
-        List<Job> deadJobs = jobRepository.getDeadLetterQueue();
+        List<Job> deadJobs = jobQueue.getDeadLetterQueue();
         
         System.out.println("Dead Letter Queue (" + deadJobs.size() + " jobs):");
         System.out.println("==========================================");
@@ -4,7 +4,7 @@ import java.time.Instant;
 import java.util.Optional;
 
 import com.hars.queuectl.model.Job;
-import com.hars.queuectl.service.JobRepository;
+import com.hars.queuectl.service.JobQueue;
 
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Parameters;
@@ -20,10 +20,9 @@ public class DLQRetryCommand implements Runnable {
     
     @Override
     public void run() {
-        JobRepository jobRepository = new JobRepository();
-        jobRepository.initialize();
+        JobQueue jobQueue = JobQueues.open();
         
-        Optional<Job> optionalJob = jobRepository.findJobById(jobId);
+        Optional<Job> optionalJob = jobQueue.findJobById(jobId);
         
         if (optionalJob.isEmpty()) {
             System.err.println("Job not found: " + jobId);
@@ -44,7 +43,11 @@ public class DLQRetryCommand implements Runnable {
         job.setState(Job.JobState.PENDING);
         job.setUpdatedAt(Instant.now());
         
-        jobRepository.updateJob(job);
+        if (!jobQueue.updateJob(job)) {
+            System.err.println("Job " + jobId + " changed while it was being retried, try again");
+            System.exit(1);
+            return;
+        }
         
         System.out.println("Job " + jobId + " has been reset and moved back to PENDING state");
     }
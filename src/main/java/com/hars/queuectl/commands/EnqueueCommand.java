@@ -1,71 +1,189 @@
 package com.hars.queuectl.commands;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.hars.queuectl.model.Job;
-import com.hars.queuectl.service.JobRepository;
+import com.hars.queuectl.service.ConfigSnapshot;
+import com.hars.queuectl.service.ConfigurationService;
 
+import picocli.CommandLine.ArgGroup;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
 
 @Command(
     name = "enqueue",
-    description = "Add a new job to the queue"
+    description = "Add a new job to the queue, or a batch of jobs from newline-delimited JSON"
 )
 public class EnqueueCommand implements Runnable {
     
-    @Parameters(index = "0", description = "Job JSON string")
-    private String jobJson;
+    @ArgGroup(exclusive = true, multiplicity = "1")
+    private Source source;
+    
+    static class Source {
+        @Parameters(index = "0", description = "Job JSON string")
+        private String jobJson;
+        
+        @Option(names = "--file", description = "Enqueue every job in a file with one JSON job per line")
+        private File file;
+        
+        @Option(names = "--stdin", description = "Enqueue every job read from standard input, one JSON job per line")
+        private boolean stdin;
+    }
     
-    private final JobRepository jobRepository;
     private final ObjectMapper objectMapper;
     
     public EnqueueCommand() {
-        this.jobRepository = new JobRepository();
         this.objectMapper = new ObjectMapper();
         this.objectMapper.registerModule(new JavaTimeModule());
-        this.jobRepository.initialize();
     }
     
     @Override
     public void run() {
+        ConfigSnapshot defaults = new ConfigurationService().snapshot();
+        if (source.jobJson == null) {
+            enqueueBatch(defaults);
+            return;
+        }
         try {
             // Parse the JSON string into a Job object
-            Job job = objectMapper.readValue(jobJson, Job.class);
-            
-            // Set default values
-            if (job.getId() == null || job.getId().isEmpty()) {
-                job.setId(UUID.randomUUID().toString());
-            }
-            job.setState(Job.JobState.PENDING);
-            job.setAttempts(0);
-            
-            // Set default max_retries if not provided
-            if (job.getMaxRetries() == 0) {
-                job.setMaxRetries(3);
-            }
-            
-            // Set default timeout if not provided (5 minutes)
-            if (job.getTimeoutSeconds() == 0) {
-                job.setTimeoutSeconds(300);
-            }
+            Job job = objectMapper.readValue(source.jobJson, Job.class);
+            prepare(job, Instant.now(), defaults);
             
-            Instant now = Instant.now();
-            job.setCreatedAt(now);
-            job.setUpdatedAt(now);
+            // Add job to the queue
+            JobQueues.open().addJob(job);
             
-            // Add job to repository
-            jobRepository.addJob(job);
-            
-            System.out.println("Job enqueued successfully: " + job.getId());
-            
-        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Job enqueued successfully: " + job.getId()
+                    + (job.getRunAt() != null ? " (runs at " + job.getRunAt() + ")" : ""));
+        
+        } catch (IOException | IllegalArgumentException | IllegalStateException e) {
             System.err.println("Failed to enqueue job: " + e.getMessage());
             System.exit(1);
         }
     }
+    
+    /**
+     * Parses the whole input before writing anything, so a bad line or a repeated id
+     * leaves the queue untouched
+     */
+    private void enqueueBatch(ConfigSnapshot defaults) {
+        String name = source.stdin ? "standard input" : source.file.getPath();
+        List<Job> jobs;
+        try {
+            jobs = readBatch(source.stdin ? System.in : new FileInputStream(source.file), Instant.now(), defaults);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Failed to enqueue jobs from " + name + ": " + e.getMessage());
+            System.err.println("No jobs were enqueued");
+            System.exit(1);
+            return;
+        } catch (IOException e) {
+            System.err.println("Failed to read " + name + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        
+        if (jobs.isEmpty()) {
+            System.out.println("No jobs found in " + name);
+            return;
+        }
+        
+        try {
+            // Rejected as a whole if any id is already stored
+            JobQueues.open().addJobs(jobs);
+        } catch (IllegalStateException e) {
+            System.err.println("Failed to enqueue jobs: " + e.getMessage());
+            System.err.println("No jobs were enqueued");
+            System.exit(1);
+        } catch (RuntimeException e) {
+            System.err.println("Failed to enqueue jobs: " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.println(jobs.size() + " job(s) enqueued successfully");
+    }
+    
+    /**
+     * Parses and prepares every job of newline-delimited JSON input, then closes it
+     * @throws IllegalArgumentException naming the line of the first invalid job or repeated id
+     */
+    List<Job> readBatch(InputStream in, Instant now, ConfigSnapshot defaults) throws IOException {
+        List<Job> jobs = new ArrayList<>();
+        Map<String, Long> lineById = new HashMap<>();
+        try (MappingIterator<Job> iterator = objectMapper.readerFor(Job.class).readValues(in)) {
+            while (iterator.hasNextValue()) {
+                long line = iterator.getCurrentLocation().getLineNr();
+                try {
+                    Job job = iterator.nextValue();
+                    prepare(job, now, defaults);
+                    Long first = lineById.putIfAbsent(job.getId(), line);
+                    if (first != null) {
+                        throw new IllegalArgumentException("duplicate id " + job.getId() + " (first on line " + first + ")");
+                    }
+                    jobs.add(job);
+                } catch (JsonProcessingException e) {
+                    throw new IllegalArgumentException("line " + line + ": " + e.getOriginalMessage(), e);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("line " + line + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        return jobs;
+    }
+    
+    /**
+     * Validates a parsed job and fills in the defaults for a new job. Fields only a
+     * worker sets (lease, retry time and the outcome of a previous run) are cleared.
+     * @param defaults Configuration providing max-retries and default-timeout-seconds
+     */
+    static void prepare(Job job, Instant now, ConfigSnapshot defaults) {
+        if (job.getCommand() == null || job.getCommand().trim().isEmpty()) {
+            throw new IllegalArgumentException("command is required");
+        }
+        
+        // Set default values
+        if (job.getId() == null || job.getId().isEmpty()) {
+            job.setId(UUID.randomUUID().toString());
+        }
+        job.setState(Job.JobState.PENDING);
+        job.setAttempts(0);
+        job.setLeaseOwner(null);
+        job.setLeaseExpiresAt(null);
+        job.setNextRunAt(null);
+        job.setLastExitCode(null);
+        job.setStartedAt(null);
+        job.setFinishedAt(null);
+        job.setRuntimeMillis(0);
+        job.setOutputTail(null);
+        
+        // Jobs without a queue name go to the default queue
+        if (job.getQueue() != null) {
+            String queue = job.getQueue().trim();
+            job.setQueue(queue.isEmpty() || queue.equals(Job.DEFAULT_QUEUE) ? null : queue);
+        }
+        
+        // Set default max_retries if not provided
+        if (job.getMaxRetries() == 0) {
+            job.setMaxRetries(defaults.getMaxRetries());
+        }
+        
+        // Set default timeout if not provided
+        if (job.getTimeoutSeconds() == 0) {
+            job.setTimeoutSeconds(defaults.getDefaultTimeoutSeconds());
+        }
+        
+        job.setCreatedAt(now);
+        job.setUpdatedAt(now);
+    }
 }
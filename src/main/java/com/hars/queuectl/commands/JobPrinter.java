@@ -0,0 +1,104 @@
+package com.hars.queuectl.commands;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.hars.queuectl.model.Job;
+
+/**
+ * Writes jobs to stdout as they arrive, as an indented JSON array or one job per line,
+ * so a listing only ever holds the job being written. Nothing is written before the
+ * first job or {@link #close()}, so a listing that fails up front prints only its error.
+ */
+final class JobPrinter implements Closeable {
+
+    private final JsonGenerator generator;
+    private final ObjectWriter writer;
+    private final boolean ndjson;
+    private boolean started;
+    private int count;
+
+    /**
+     * @param ndjson One job per line instead of an array; see {@link #parseFormat(String)}
+     */
+    JobPrinter(boolean ndjson) throws IOException {
+        this.ndjson = ndjson;
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        mapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        // stdout is flushed by the generator's buffer rather than after every job
+        this.writer = mapper.writerFor(Job.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.generator = mapper.getFactory().createGenerator(System.out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setPrettyPrinter(ndjson ? new MinimalPrettyPrinter("\n") : new DefaultPrettyPrinter());
+    }
+
+    /**
+     * @return Whether a --format value asks for NDJSON (ndjson) rather than an array (json)
+     */
+    static boolean parseFormat(String format) {
+        switch (format.toLowerCase(Locale.ROOT)) {
+            case "json":
+                return false;
+            case "ndjson":
+                return true;
+            default:
+                throw new IllegalArgumentException("Unknown format: " + format + " (expected json or ndjson)");
+        }
+    }
+
+    /**
+     * @throws UncheckedIOException if stdout cannot be written
+     */
+    void print(Job job) {
+        try {
+            start();
+            writer.writeValue(generator, job);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        count++;
+    }
+
+    /**
+     * @return Jobs printed so far
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * Ends the array and flushes stdout, leaving it open
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            start();
+            if (!ndjson) {
+                generator.writeEndArray();
+            }
+            if (!ndjson || count > 0) {
+                generator.writeRaw('\n');
+            }
+        } finally {
+            generator.close();
+            System.out.flush();
+        }
+    }
+
+    private void start() throws IOException {
+        if (!started && !ndjson) {
+            generator.writeStartArray();
+        }
+        started = true;
+    }
+}
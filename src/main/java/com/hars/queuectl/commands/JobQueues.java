@@ -0,0 +1,61 @@
+package com.hars.queuectl.commands;
+
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import com.hars.queuectl.model.Job;
+import com.hars.queuectl.model.JobCounts;
+import com.hars.queuectl.rpc.DaemonClient;
+import com.hars.queuectl.service.JobQuery;
+import com.hars.queuectl.service.JobQueue;
+import com.hars.queuectl.service.JobRepository;
+
+/**
+ * Chooses how a CLI command reaches the queue: through the running worker daemon
+ * when there is one, otherwise by reading the job store directly.
+ */
+final class JobQueues {
+
+    private JobQueues() {
+    }
+
+    static JobQueue open() {
+        return DaemonClient.connect(JobQueues::openLocal)
+                .map(client -> (JobQueue) client)
+                .orElseGet(JobQueues::openLocal);
+    }
+
+    /**
+     * Job counts from the running worker daemon, else from the counters stored next to
+     * the job store, and only if those are out of date by loading the store
+     */
+    static JobCounts counts() {
+        Optional<DaemonClient> daemon = DaemonClient.connect(JobQueues::openLocal);
+        if (daemon.isPresent()) {
+            return daemon.get().counts();
+        }
+        JobCounts stored = JobRepository.readStoredCounts();
+        return stored != null ? stored : openLocal().counts();
+    }
+
+    /**
+     * Streams a job listing from the running worker daemon, else from the job store
+     * without loading it
+     *
+     * @throws IllegalArgumentException if the cursor names a job that does not exist
+     */
+    static void forEachJob(JobQuery query, Consumer<Job> action) {
+        Optional<DaemonClient> daemon = DaemonClient.connect(JobQueues::openLocal);
+        if (daemon.isPresent()) {
+            daemon.get().forEachJob(query, action);
+        } else {
+            JobRepository.forEachStoredJob(query, action);
+        }
+    }
+
+    private static JobQueue openLocal() {
+        JobRepository jobRepository = new JobRepository();
+        jobRepository.initialize();
+        return jobRepository;
+    }
+}
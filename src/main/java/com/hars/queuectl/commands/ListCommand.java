@@ -1,56 +1,143 @@
 package com.hars.queuectl.commands;
 
-import java.util.List;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.hars.queuectl.model.Job;
-import com.hars.queuectl.service.JobRepository;
+import com.hars.queuectl.service.JobQuery;
 
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 
 @Command(
     name = "list",
-    description = "List jobs"
+    description = "List jobs, oldest first"
 )
 public class ListCommand implements Runnable {
-    
+
     @Option(names = {"--state", "-s"}, description = "Filter by state (PENDING, PROCESSING, COMPLETED, FAILED, DEAD)")
     private String state;
-    
+
+    @Option(names = {"--queue", "-q"}, description = "Only show jobs in the named queue")
+    private String queue;
+
+    @Option(names = "--since", description = "Only show jobs created since a time (ISO-8601, e.g. 2024-01-01T00:00:00Z) or within a duration (e.g. 30m, 2h, 7d)")
+    private String since;
+
+    @Option(names = {"--limit", "-n"}, description = "Show at most this many jobs; the cursor for the next page is printed to stderr")
+    private Integer limit;
+
+    @Option(names = "--after", description = "Start after the job with this id (the cursor printed by a previous --limit)")
+    private String after;
+
+    @Option(names = "--format", description = "Output format: json (an indented array) or ndjson (one job per line) (default: json)")
+    private String format = "json";
+
+    private String lastId;
+    private boolean more;
+
     @Override
     public void run() {
-        JobRepository jobRepository = new JobRepository();
-        jobRepository.initialize();
-        
-        List<Job> jobs;
-        
-        if (state != null && !state.isEmpty()) {
+        JobQuery query;
+        boolean ndjson;
+        try {
+            ndjson = JobPrinter.parseFormat(format);
+            if (limit != null && limit < 1) {
+                throw new IllegalArgumentException("--limit must be at least 1");
+            }
+            // One job past the limit tells whether there is a next page
+            query = new JobQuery(parseState(state), queue, parseSince(since, Instant.now()), after,
+                    limit == null ? 0 : limit + 1);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        // Jobs are written as they arrive, so only one page is ever in memory
+        try (JobPrinter printer = new JobPrinter(ndjson)) {
             try {
-                Job.JobState jobState = Job.JobState.valueOf(state.toUpperCase());
-                jobs = jobRepository.getJobsByState(jobState);
+                JobQueues.forEachJob(query, job -> {
+                    if (limit != null && printer.getCount() == limit) {
+                        more = true;
+                        return;
+                    }
+                    printer.print(job);
+                    lastId = job.getId();
+                });
             } catch (IllegalArgumentException e) {
-                System.err.println("Invalid state: " + state);
-                System.err.println("Valid states: PENDING, PROCESSING, COMPLETED, FAILED, DEAD");
-                return;
+                // Such as an unknown cursor, which is found before any job is written
+                System.err.println(e.getMessage());
+                System.exit(1);
             }
-        } else {
-            jobs = jobRepository.getAllJobs();
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Failed to write jobs: " + e.getMessage());
+            System.exit(1);
+        }
+
+        if (more) {
+            System.err.println("More jobs: continue with --after " + lastId);
+        }
+    }
+
+    static Job.JobState parseState(String state) {
+        if (state == null || state.isEmpty()) {
+            return null;
+        }
+        try {
+            return Job.JobState.valueOf(state.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid state: " + state
+                    + System.lineSeparator() + "Valid states: PENDING, PROCESSING, COMPLETED, FAILED, DEAD");
+        }
+    }
+
+    static Instant parseSince(String since, Instant now) {
+        return parseTime("--since", since, now);
+    }
+
+    /**
+     * @param option Name of the option the value came from, for the error message
+     * @return The instant given, or the given duration (s, m, h or d) before now; null if not set
+     */
+    static Instant parseTime(String option, String since, Instant now) {
+        if (since == null) {
+            return null;
         }
-        
-        // Print jobs as formatted JSON
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.registerModule(new JavaTimeModule());
-            mapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
-            mapper.enable(SerializationFeature.INDENT_OUTPUT);
-            
-            String json = mapper.writeValueAsString(jobs);
-            System.out.println(json);
-        } catch (Exception e) {
-            System.err.println("Failed to serialize jobs: " + e.getMessage());
+            return Instant.parse(since);
+        } catch (DateTimeParseException e) {
+            // Not an instant; try a duration
+        }
+        String amount = since.substring(0, Math.max(0, since.length() - 1));
+        Duration unit;
+        switch (since.isEmpty() ? ' ' : Character.toLowerCase(since.charAt(since.length() - 1))) {
+            case 's':
+                unit = Duration.ofSeconds(1);
+                break;
+            case 'm':
+                unit = Duration.ofMinutes(1);
+                break;
+            case 'h':
+                unit = Duration.ofHours(1);
+                break;
+            case 'd':
+                unit = Duration.ofDays(1);
+                break;
+            default:
+                unit = null;
+        }
+        try {
+            if (unit != null) {
+                return now.minus(unit.multipliedBy(Long.parseLong(amount)));
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
         }
+        throw new IllegalArgumentException("Invalid " + option + ": " + since + " (expected an ISO-8601 instant or a duration such as 30m, 2h or 7d)");
     }
 }
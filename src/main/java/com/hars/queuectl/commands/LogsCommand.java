@@ -0,0 +1,160 @@
+package com.hars.queuectl.commands;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+import com.hars.queuectl.model.Job;
+import com.hars.queuectl.service.JobQueue;
+import com.hars.queuectl.worker.JobLogs;
+
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+@Command(
+    name = "logs",
+    description = "Show a job's output"
+)
+public class LogsCommand implements Runnable {
+
+    private static final long FOLLOW_POLL_MS = 200;
+    private static final long STATE_CHECK_MS = 1000;
+
+    @Parameters(index = "0", description = "Job ID")
+    private String jobId;
+
+    @Option(names = {"--follow", "-f"}, description = "Keep printing output as it is written until the job completes or dies")
+    private boolean follow;
+
+    // Identity of the file being followed, to notice when the worker rotates it
+    private Object followedKey;
+
+    @Override
+    public void run() {
+        JobLogs jobLogs = new JobLogs();
+        List<Path> files = jobLogs.filesOf(jobId);
+
+        JobQueue jobQueue = null;
+        if (files.isEmpty() || follow) {
+            jobQueue = JobQueues.open();
+            if (jobQueue.findJobById(jobId).isEmpty()) {
+                System.err.println("Job not found: " + jobId);
+                System.exit(1);
+            }
+        }
+
+        WritableByteChannel out = Channels.newChannel(System.out);
+        try {
+            // Rotated files first, then the current one, which --follow keeps reading
+            for (int i = 0; i < files.size() - 1; i++) {
+                try (FileChannel file = FileChannel.open(files.get(i))) {
+                    copy(file, out);
+                }
+            }
+            if (!follow) {
+                if (files.isEmpty()) {
+                    System.err.println("No output recorded for job " + jobId);
+                } else {
+                    try (FileChannel file = FileChannel.open(files.get(files.size() - 1))) {
+                        copy(file, out);
+                    }
+                }
+                System.out.flush();
+                return;
+            }
+            follow(jobLogs.fileOf(jobId), jobQueue, out);
+        } catch (IOException e) {
+            System.err.println("Failed to read logs of job " + jobId + ": " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Prints the log as it grows, switching to the new file when the worker rotates it,
+     * until the job has completed or died and everything it wrote has been printed
+     */
+    private void follow(Path path, JobQueue jobQueue, WritableByteChannel out) throws IOException, InterruptedException {
+        FileChannel file = null;
+        long lastStateCheck = 0;
+        try {
+            while (true) {
+                if (file == null) {
+                    file = openIfExists(path);
+                }
+                if (file != null) {
+                    copy(file, out);
+                    System.out.flush();
+                    if (rotated(file, path)) {
+                        // The worker no longer writes to the old file; print the rest of it
+                        copy(file, out);
+                        file.close();
+                        file = null;
+                        continue;
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastStateCheck >= STATE_CHECK_MS) {
+                    lastStateCheck = now;
+                    Optional<Job> job = jobQueue.findJobById(jobId);
+                    if (job.isEmpty() || job.get().getState() == Job.JobState.COMPLETED
+                            || job.get().getState() == Job.JobState.DEAD) {
+                        if (file != null) {
+                            copy(file, out);
+                        }
+                        System.out.flush();
+                        return;
+                    }
+                }
+                Thread.sleep(FOLLOW_POLL_MS);
+            }
+        } finally {
+            if (file != null) {
+                file.close();
+            }
+        }
+    }
+
+    private static void copy(FileChannel file, WritableByteChannel out) throws IOException {
+        long position = file.position();
+        long size = file.size();
+        while (position < size) {
+            position += file.transferTo(position, size - position, out);
+        }
+        file.position(position);
+    }
+
+    private FileChannel openIfExists(Path path) throws IOException {
+        try {
+            FileChannel file = FileChannel.open(path);
+            followedKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+            return file;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the path now names a different file than the open one
+     */
+    private boolean rotated(FileChannel file, Path path) throws IOException {
+        try {
+            Object current = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+            // Without file keys, a file smaller than what we have read must be a new one
+            return current == null ? Files.size(path) < file.position() : !Objects.equals(current, followedKey);
+        } catch (NoSuchFileException e) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.hars.queuectl.commands;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import com.hars.queuectl.rpc.DaemonClient;
+
+import picocli.CommandLine.Command;
+
+@Command(
+    name = "metrics",
+    description = "Show the worker's metrics in the Prometheus text format"
+)
+public class MetricsCommand implements Runnable {
+
+    @Override
+    public void run() {
+        // Metrics are kept in memory by the worker process that serves the CLI
+        Optional<DaemonClient> client = DaemonClient.connect(() -> null);
+        if (client.isEmpty()) {
+            System.err.println("No worker is running; metrics are collected by 'queuectl worker start'");
+            System.exit(1);
+        }
+
+        try {
+            System.out.print(client.get().metrics());
+        } catch (IOException e) {
+            System.err.println("Failed to read metrics from the worker: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
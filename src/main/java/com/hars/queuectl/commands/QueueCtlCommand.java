@@ -13,8 +13,13 @@ import picocli.CommandLine.Command;
         WorkerCommand.class,
         StatusCommand.class,
         ListCommand.class,
+        LogsCommand.class,
+        MetricsCommand.class,
         DLQCommand.class,
-        ConfigCommand.class
+        ConfigCommand.class,
+        StoreCommand.class,
+        ArchiveCommand.class,
+        ScheduleCommand.class
     }
 )
 public class QueueCtlCommand implements Runnable {
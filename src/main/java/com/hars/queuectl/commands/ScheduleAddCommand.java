@@ -0,0 +1,77 @@
+package com.hars.queuectl.commands;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.UUID;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.hars.queuectl.model.Job;
+import com.hars.queuectl.model.Schedule;
+import com.hars.queuectl.schedule.CronExpression;
+import com.hars.queuectl.service.ConfigurationService;
+import com.hars.queuectl.storage.ScheduleStore;
+
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+@Command(
+    name = "add",
+    description = "Enqueue a copy of a job every time a cron expression fires"
+)
+public class ScheduleAddCommand implements Runnable {
+    
+    @Parameters(index = "0", description = "Cron expression: minute hour day-of-month month day-of-week, or @hourly, @daily, ...")
+    private String cron;
+    
+    @Parameters(index = "1", description = "Job JSON string, as for enqueue")
+    private String jobJson;
+    
+    @Option(names = "--id", description = "Schedule ID (auto-generated if not provided)")
+    private String id;
+    
+    @Override
+    public void run() {
+        try (ScheduleStore store = new ScheduleStore()) {
+            CronExpression expression = CronExpression.parse(cron);
+            
+            ObjectMapper objectMapper = new ObjectMapper();
+            objectMapper.registerModule(new JavaTimeModule());
+            Job template = objectMapper.readValue(jobJson, Job.class);
+            Instant now = Instant.now();
+            EnqueueCommand.prepare(template, now, new ConfigurationService().snapshot());
+            // Each firing gets its own id and timestamps
+            template.setId(null);
+            template.setCreatedAt(null);
+            template.setUpdatedAt(null);
+            template.setRunAt(null);
+            
+            Schedule schedule = new Schedule(id != null ? id : UUID.randomUUID().toString().substring(0, 8),
+                    expression.getExpression(), template, now);
+            
+            store.getLock().lock();
+            try {
+                List<Schedule> schedules = store.load();
+                for (Schedule existing : schedules) {
+                    if (existing.getId().equals(schedule.getId())) {
+                        throw new IllegalArgumentException("Schedule already exists: " + schedule.getId());
+                    }
+                }
+                schedules.add(schedule);
+                store.save(schedules);
+            } finally {
+                store.getLock().unlock();
+            }
+            
+            Instant next = expression.next(now, ZoneId.systemDefault());
+            System.out.println("Schedule added: " + schedule.getId()
+                    + (next != null ? " (next run at " + next + ")" : " (never fires)"));
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Failed to add schedule: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.hars.queuectl.commands;
+
+import picocli.CommandLine.Command;
+
+@Command(
+    name = "schedule",
+    description = "Manage recurring jobs",
+    subcommands = {
+        ScheduleAddCommand.class,
+        ScheduleListCommand.class,
+        ScheduleRemoveCommand.class
+    }
+)
+public class ScheduleCommand implements Runnable {
+    
+    @Override
+    public void run() {
+        // Show help by default
+        picocli.CommandLine.usage(this, System.out);
+    }
+}
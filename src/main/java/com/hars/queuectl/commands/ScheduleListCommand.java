@@ -0,0 +1,45 @@
+package com.hars.queuectl.commands;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+
+import com.hars.queuectl.model.Schedule;
+import com.hars.queuectl.schedule.CronExpression;
+import com.hars.queuectl.storage.ScheduleStore;
+
+import picocli.CommandLine.Command;
+
+@Command(
+    name = "list",
+    description = "List recurring jobs"
+)
+public class ScheduleListCommand implements Runnable {
+    
+    @Override
+    public void run() {
+        List<Schedule> schedules;
+        try (ScheduleStore store = new ScheduleStore()) {
+            schedules = store.load();
+        } catch (RuntimeException e) {
+            System.err.println("Failed to read schedules: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        
+        System.out.println("Schedules (" + schedules.size() + "):");
+        System.out.println("==========================================");
+        
+        if (schedules.isEmpty()) {
+            System.out.println("No schedules");
+            return;
+        }
+        for (Schedule schedule : schedules) {
+            Instant last = schedule.getLastFiredAt() != null ? schedule.getLastFiredAt() : schedule.getCreatedAt();
+            Instant next = CronExpression.parse(schedule.getCron()).next(last, ZoneId.systemDefault());
+            System.out.println(schedule.getId() + "  '" + schedule.getCron() + "'  " + schedule.getJob().getCommand());
+            System.out.println("    next run: " + (next != null ? next : "never")
+                    + ", last fired: " + (schedule.getLastFiredAt() != null ? schedule.getLastFiredAt() : "never"));
+        }
+    }
+}
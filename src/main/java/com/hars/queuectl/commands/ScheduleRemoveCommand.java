@@ -0,0 +1,47 @@
+package com.hars.queuectl.commands;
+
+import java.util.List;
+
+import com.hars.queuectl.model.Schedule;
+import com.hars.queuectl.storage.ScheduleStore;
+
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Parameters;
+
+@Command(
+    name = "remove",
+    description = "Remove a recurring job; jobs it already enqueued are kept"
+)
+public class ScheduleRemoveCommand implements Runnable {
+    
+    @Parameters(index = "0", description = "Schedule ID to remove")
+    private String scheduleId;
+    
+    @Override
+    public void run() {
+        boolean removed;
+        try (ScheduleStore store = new ScheduleStore()) {
+            store.getLock().lock();
+            try {
+                List<Schedule> schedules = store.load();
+                removed = schedules.removeIf(schedule -> schedule.getId().equals(scheduleId));
+                if (removed) {
+                    store.save(schedules);
+                }
+            } finally {
+                store.getLock().unlock();
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Failed to remove schedule: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        
+        if (!removed) {
+            System.err.println("Schedule not found: " + scheduleId);
+            System.exit(1);
+            return;
+        }
+        System.out.println("Schedule removed: " + scheduleId);
+    }
+}
@@ -1,11 +1,9 @@
 package com.hars.queuectl.commands;
 
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import com.hars.queuectl.model.Job;
-import com.hars.queuectl.service.JobRepository;
+import com.hars.queuectl.model.JobCounts;
 
 import picocli.CommandLine.Command;
 
@@ -17,28 +15,31 @@ public class StatusCommand implements Runnable {
     
     @Override
     public void run() {
-        JobRepository jobRepository = new JobRepository();
-        jobRepository.initialize();
-        
-        List<Job> allJobs = jobRepository.getAllJobs();
-        
-        // Count jobs by state
-        Map<Job.JobState, Integer> stateCounts = new HashMap<>();
-        for (Job.JobState state : Job.JobState.values()) {
-            stateCounts.put(state, 0);
-        }
-        
-        for (Job job : allJobs) {
-            stateCounts.put(job.getState(), stateCounts.get(job.getState()) + 1);
-        }
+        // Maintained counters: no job is loaded or counted here
+        JobCounts counts = JobQueues.counts();
         
         // Print status
         System.out.println("Queue Status:");
         System.out.println("=============");
-        System.out.println("Total Jobs: " + allJobs.size());
+        System.out.println("Total Jobs: " + counts.getTotal());
         System.out.println();
         for (Job.JobState state : Job.JobState.values()) {
-            System.out.println(state + ": " + stateCounts.get(state));
+            System.out.println(state + ": " + counts.get(state));
+        }
+        
+        // Pending depth per named queue, including jobs that wait for their run_at
+        Map<String, Integer> queueDepths = counts.byQueue(Job.JobState.PENDING);
+        if (!queueDepths.isEmpty()) {
+            System.out.println();
+            System.out.println("Pending by queue:");
+            for (Map.Entry<String, Integer> entry : queueDepths.entrySet()) {
+                System.out.println("  " + entry.getKey() + ": " + entry.getValue());
+            }
+        }
+        // Only known where the jobs are resident, not from the stored counters
+        Integer scheduled = counts.getScheduled();
+        if (scheduled != null && scheduled > 0) {
+            System.out.println("Scheduled for later: " + scheduled);
         }
     }
 }
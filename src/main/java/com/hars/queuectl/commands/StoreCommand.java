@@ -0,0 +1,19 @@
+package com.hars.queuectl.commands;
+
+import picocli.CommandLine.Command;
+
+@Command(
+    name = "store",
+    description = "Job store maintenance",
+    subcommands = {
+        StoreConvertCommand.class
+    }
+)
+public class StoreCommand implements Runnable {
+    
+    @Override
+    public void run() {
+        // Show help by default
+        picocli.CommandLine.usage(this, System.out);
+    }
+}
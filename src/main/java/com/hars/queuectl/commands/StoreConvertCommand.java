@@ -0,0 +1,239 @@
+package com.hars.queuectl.commands;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.hars.queuectl.model.Job;
+import com.hars.queuectl.service.ConfigurationService;
+import com.hars.queuectl.service.JobRepository;
+import com.hars.queuectl.storage.JobCodec;
+import com.hars.queuectl.storage.JobStore;
+import com.hars.queuectl.storage.LogJobStore;
+
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+@Command(
+    name = "convert",
+    description = "Convert the job store in place to another engine, record format or number of shards"
+)
+public class StoreConvertCommand implements Runnable {
+
+    @Option(names = "--to", description = "Target storage engine: log, json or mapped (default: the current engine)")
+    private String engine;
+
+    @Option(names = "--codec", description = "Record format for the log engine: binary or json (default: binary)")
+    private String codec;
+
+    @Option(names = "--shards", description = "Number of shards to split the store into (default: the current number)")
+    private Integer shards;
+
+    @Option(names = "--shard-by", description = "Place jobs in shards by the hash of their id or of their queue: id or queue")
+    private String shardBy;
+
+    @Override
+    public void run() {
+        if (engine == null && shards == null && shardBy == null) {
+            System.err.println("Nothing to convert: give --to, --shards or --shard-by");
+            System.exit(1);
+        }
+        if (!WorkerPids.readLive().isEmpty()) {
+            System.err.println("Stop the workers with 'queuectl worker stop' before converting the store");
+            System.exit(1);
+        }
+
+        ConfigurationService configService = new ConfigurationService();
+        configService.initialize();
+        String sourceEngine = normalize((String) configService.get("storage-engine"));
+        Object sourceCodec = configService.get("store-codec");
+        // The files on disk decide how the store is split, whatever the settings say
+        int sourceShards = Math.max(1, JobRepository.storedShards(sourceEngine));
+        String sourceShardBy = normalizeShardBy(configService.snapshot().getShardBy());
+
+        try {
+            String targetEngine = engine != null ? normalize(engine) : sourceEngine;
+            boolean toLog = JobRepository.ENGINE_LOG.equals(targetEngine);
+            if (!toLog && codec != null) {
+                throw new IllegalArgumentException("--codec only applies to the log engine");
+            }
+            JobCodec targetCodec = JobCodec.forName(codec != null || engine != null || sourceCodec == null
+                    ? codec : sourceCodec.toString());
+            int targetShards = shards != null ? shards : sourceShards;
+            if (targetShards < 1) {
+                throw new IllegalArgumentException("--shards must be at least 1");
+            }
+            String targetShardBy = shardBy != null ? normalizeShardBy(shardBy) : sourceShardBy;
+            boolean relayout = targetShards != sourceShards
+                    || (targetShards > 1 && !targetShardBy.equals(sourceShardBy));
+
+            int count;
+            if (sourceEngine.equals(targetEngine) && !relayout) {
+                if (!toLog) {
+                    if (shardBy == null) {
+                        System.out.println("The job store already uses the " + targetEngine + " engine");
+                        return;
+                    }
+                    count = -1;
+                } else {
+                    // Same files: the log rewrites itself in the new format
+                    count = 0;
+                    for (Path path : paths(targetEngine, targetShards)) {
+                        count += writeLog(path, null, targetCodec);
+                    }
+                }
+            } else {
+                List<Job> jobs = new ArrayList<>();
+                for (JobStore source : JobRepository.createStores(sourceEngine,
+                        sourceCodec == null ? null : sourceCodec.toString(), sourceShards)) {
+                    try (JobStore opened = source) {
+                        opened.getLock().lock();
+                        jobs.addAll(opened.load());
+                    }
+                }
+                boolean sameFiles = sourceEngine.equals(targetEngine);
+                if (sameFiles) {
+                    // The new layout reuses the old names, so the old files go first
+                    moveAside(paths(sourceEngine, sourceShards));
+                }
+                moveAside(paths(targetEngine, targetShards));
+                count = write(targetEngine, targetCodec, targetShards, JobRepository.SHARD_BY_QUEUE.equals(targetShardBy), jobs);
+                if (!sameFiles) {
+                    // Keep the previous files around, as the automatic import does; this also
+                    // stops the log engine from importing a stale jobs.json later
+                    moveAside(paths(sourceEngine, sourceShards));
+                }
+            }
+
+            configService.set("storage-engine", targetEngine);
+            configService.set("store-shards", targetShards);
+            if (shardBy != null) {
+                configService.set("shard-by", targetShardBy);
+            }
+            String layout = describe(targetEngine, targetShards)
+                    + (targetShards > 1 ? " (placed by " + targetShardBy + ")" : "");
+            if (count < 0) {
+                System.out.println("Jobs in " + layout + " will be placed by " + targetShardBy);
+            } else if (toLog) {
+                configService.set("store-codec", targetCodec.getName());
+                System.out.println("Converted " + count + " jobs to " + layout + ", " + targetCodec.getName() + " records");
+            } else {
+                System.out.println("Converted " + count + " jobs to " + layout);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Failed to convert job store: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Writes the jobs into new stores, each job into the shard the repository will look for it in
+     * @return Number of jobs written
+     */
+    private int write(String targetEngine, JobCodec targetCodec, int targetShards, boolean byQueue, List<Job> jobs) {
+        List<List<Job>> byShard = new ArrayList<>();
+        for (int i = 0; i < targetShards; i++) {
+            byShard.add(new ArrayList<>());
+        }
+        for (Job job : jobs) {
+            byShard.get(JobRepository.shardOf(job, targetShards, byQueue)).add(job);
+        }
+
+        List<Path> paths = paths(targetEngine, targetShards);
+        for (int i = 0; i < targetShards; i++) {
+            if (JobRepository.ENGINE_LOG.equals(targetEngine)) {
+                writeLog(paths.get(i), byShard.get(i), targetCodec);
+            } else {
+                write(JobRepository.createStore(targetEngine, null, paths.get(i)), byShard.get(i));
+            }
+        }
+        return jobs.size();
+    }
+
+    /**
+     * Rewrites a log as a single snapshot in the target format
+     * @param jobs Jobs to store, or null to keep the log's current contents
+     * @return Number of jobs written
+     */
+    private int writeLog(Path path, List<Job> jobs, JobCodec targetCodec) {
+        try (LogJobStore target = new LogJobStore(path, targetCodec)) {
+            target.getLock().lock();
+            List<Job> current = target.load();
+            List<Job> contents = jobs != null ? jobs : current;
+            target.compact(contents);
+            return contents.size();
+        }
+    }
+
+    private void write(JobStore target, List<Job> jobs) {
+        try (JobStore opened = target) {
+            opened.getLock().lock();
+            opened.load();
+            opened.append(jobs);
+            opened.sync();
+        }
+    }
+
+    private static String normalize(String name) {
+        if (name == null || name.isEmpty()) {
+            return JobRepository.ENGINE_LOG;
+        }
+        for (String known : new String[] {JobRepository.ENGINE_LOG, JobRepository.ENGINE_JSON, JobRepository.ENGINE_MAPPED}) {
+            if (known.equalsIgnoreCase(name)) {
+                return known;
+            }
+        }
+        throw new IllegalArgumentException("Unknown storage engine: " + name);
+    }
+
+    private static String normalizeShardBy(String name) {
+        for (String known : new String[] {JobRepository.SHARD_BY_ID, JobRepository.SHARD_BY_QUEUE}) {
+            if (known.equalsIgnoreCase(name)) {
+                return known;
+            }
+        }
+        throw new IllegalArgumentException("Unknown shard key: " + name + " (expected id or queue)");
+    }
+
+    /**
+     * @return The files or directories of every shard, in shard order
+     */
+    private static List<Path> paths(String engine, int shardCount) {
+        List<Path> paths = new ArrayList<>();
+        if (shardCount == 1) {
+            paths.add(JobRepository.dataPath(engine));
+        } else {
+            for (int i = 0; i < shardCount; i++) {
+                paths.add(JobRepository.shardPath(engine, i));
+            }
+        }
+        return paths;
+    }
+
+    private static String describe(String engine, int shardCount) {
+        if (shardCount == 1) {
+            return JobRepository.dataPath(engine).toString();
+        }
+        return shardCount + " shards " + JobRepository.shardPath(engine, 0) + " ... "
+                + JobRepository.shardPath(engine, shardCount - 1);
+    }
+
+    /**
+     * Renames existing store files to *.migrated so they are kept but no longer used
+     */
+    private static void moveAside(List<Path> paths) throws IOException {
+        for (Path path : paths) {
+            if (!Files.exists(path)) {
+                continue;
+            }
+            Path backup = Paths.get(path + ".migrated");
+            if (Files.exists(backup)) {
+                backup = Paths.get(path + ".migrated-" + System.currentTimeMillis());
+            }
+            Files.move(path, backup);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.hars.queuectl.commands;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * The worker.pid file, holding one line per running worker process. Updates lock
+ * the file itself so workers starting or stopping at the same time don't lose entries.
+ * The file is left in place, empty, when the last worker stops: deleting it would race
+ * with a worker that already opened it to add itself, whose entry would then go to a
+ * file no longer on disk.
+ */
+final class WorkerPids {
+
+    static final String PID_FILE = "worker.pid";
+
+    private WorkerPids() {
+    }
+
+    /**
+     * @return PIDs of worker processes that are still alive
+     */
+    static List<Long> readLive() {
+        return readLive(Paths.get(PID_FILE));
+    }
+
+    static List<Long> readLive(Path path) {
+        if (!Files.exists(path)) {
+            return new ArrayList<>();
+        }
+        try {
+            return parse(new String(Files.readAllBytes(path), StandardCharsets.UTF_8)).stream()
+                    .filter(WorkerPids::isAlive)
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read PID file", e);
+        }
+    }
+
+    static void add(long pid) throws IOException {
+        add(Paths.get(PID_FILE), pid);
+    }
+
+    static void add(Path path, long pid) throws IOException {
+        update(path, pids -> {
+            pids.add(pid);
+            return pids;
+        });
+    }
+
+    static void remove(long pid) throws IOException {
+        remove(Paths.get(PID_FILE), pid);
+    }
+
+    static void remove(Path path, long pid) throws IOException {
+        update(path, pids -> {
+            pids.remove(Long.valueOf(pid));
+            return pids;
+        });
+    }
+
+    /**
+     * Rewrites the file with the given change, dropping entries for dead processes.
+     * Synchronized because a file lock only keeps other processes out; a second lock
+     * from this process would fail rather than wait.
+     */
+    private static synchronized void update(Path path, UnaryOperator<List<Long>> change) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.lock();
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // Read the whole file
+                }
+                List<Long> pids = parse(new String(buffer.array(), StandardCharsets.UTF_8)).stream()
+                        .filter(WorkerPids::isAlive)
+                        .collect(Collectors.toList());
+                pids = change.apply(pids);
+
+                String content = pids.stream().map(String::valueOf).collect(Collectors.joining("\n"));
+                channel.truncate(0);
+                channel.write(ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8)), 0);
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    private static boolean isAlive(long pid) {
+        return ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false);
+    }
+
+    private static List<Long> parse(String content) {
+        List<Long> pids = new ArrayList<>();
+        for (String line : content.split("\\s+")) {
+            if (!line.isEmpty()) {
+                try {
+                    pids.add(Long.parseLong(line));
+                } catch (NumberFormatException e) {
+                    // Skip garbage
+                }
+            }
+        }
+        return pids;
+    }
+}
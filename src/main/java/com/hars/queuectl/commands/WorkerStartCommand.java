@@ -1,11 +1,13 @@
 package com.hars.queuectl.commands;
 
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.util.List;
 
+import com.hars.queuectl.rpc.DaemonEndpoint;
+import com.hars.queuectl.rpc.DaemonServer;
 import com.hars.queuectl.service.JobRepository;
 import com.hars.queuectl.service.WorkerService;
+import com.hars.queuectl.worker.VirtualThreads;
 
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
@@ -16,25 +18,57 @@ import picocli.CommandLine.Option;
 )
 public class WorkerStartCommand implements Runnable {
     
-    private static final String PID_FILE = "worker.pid";
-    
-    @Option(names = {"--count", "-c"}, description = "Number of worker threads", defaultValue = "1")
+    @Option(names = {"--count", "-c"}, description = "Number of worker threads, or of concurrent jobs with --virtual", defaultValue = "1")
     private int count;
     
+    @Option(names = "--virtual", description = "Run jobs on virtual threads (Java 21+), suited to many concurrent I/O-bound jobs")
+    private boolean virtual;
+    
+    @Option(names = "--min", description = "Smallest pool size when autoscaling (default: --count)")
+    private Integer minWorkers;
+    
+    @Option(names = "--max", description = "Let the pool grow with the backlog up to this size and shrink back when idle")
+    private Integer maxWorkers;
+    
+    @Option(names = "--join", description = "Start an additional worker process alongside the ones already running")
+    private boolean join;
+    
     @Override
     public void run() {
+        if (virtual && !VirtualThreads.isSupported()) {
+            System.err.println("--virtual requires Java 21 or later (running " + System.getProperty("java.version") + ")");
+            System.exit(1);
+        }
+        if (count < 1) {
+            System.err.println("--count must be at least 1");
+            System.exit(1);
+        }
+        int min = minWorkers != null ? minWorkers : count;
+        if (minWorkers != null && maxWorkers == null) {
+            System.err.println("--min requires --max");
+            System.exit(1);
+        }
+        if (maxWorkers != null && (min < 1 || maxWorkers < min)) {
+            System.err.println("Autoscaling needs 1 <= --min <= --max (got " + min + " and " + maxWorkers + ")");
+            System.exit(1);
+        }
+        
         // Check if workers are already running
-        File pidFile = new File(PID_FILE);
-        if (pidFile.exists()) {
-            System.err.println("Workers are already running. Use 'queuectl worker stop' to stop them first.");
+        List<Long> running = WorkerPids.readLive();
+        if (!running.isEmpty() && !join) {
+            System.err.println("Workers are already running. Use 'queuectl worker stop' to stop them first,");
+            System.err.println("or 'queuectl worker start --join' to add another worker process.");
             System.exit(1);
         }
         
-        // Write current process PID to file
+        // Record current process PID
         long pid = ProcessHandle.current().pid();
-        try (FileWriter writer = new FileWriter(PID_FILE)) {
-            writer.write(String.valueOf(pid));
+        try {
+            WorkerPids.add(pid);
             System.out.println("Worker process started with PID: " + pid);
+            if (!running.isEmpty()) {
+                System.out.println("Joining " + running.size() + " running worker process(es)");
+            }
         } catch (IOException e) {
             System.err.println("Failed to write PID file: " + e.getMessage());
             System.exit(1);
@@ -44,16 +78,33 @@ public class WorkerStartCommand implements Runnable {
         jobRepository.initialize();
         
         WorkerService workerService = new WorkerService(jobRepository);
+        DaemonServer daemonServer = new DaemonServer(jobRepository);
         
         // Add shutdown hook for graceful shutdown
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            daemonServer.stop();
             workerService.stop();
-            // Clean up PID file
-            pidFile.delete();
+            jobRepository.close();
+            // Clean up PID entry
+            removePid(pid);
         }));
         
         // Start workers
-        workerService.start(count);
+        if (maxWorkers != null) {
+            workerService.setAutoscaling(min, maxWorkers);
+        }
+        workerService.start(maxWorkers != null ? min : count, virtual);
+        
+        // Serve CLI commands from this process's in-memory index; with several
+        // worker processes, the first one to start answers
+        if (DaemonEndpoint.read().isEmpty()) {
+            try {
+                int port = daemonServer.start();
+                System.out.println("Accepting CLI requests on 127.0.0.1:" + port);
+            } catch (IOException e) {
+                System.err.println("Failed to start RPC endpoint, CLI commands will read the store directly: " + e.getMessage());
+            }
+        }
         
         // Keep the main thread alive
         try {
@@ -64,7 +115,18 @@ public class WorkerStartCommand implements Runnable {
             Thread.currentThread().interrupt();
         }
         
-        // Clean up PID file on normal exit
-        pidFile.delete();
+        // A stop signal only ends the loops; wait for jobs still running before exiting
+        workerService.stop();
+        
+        // Clean up PID entry on normal exit
+        removePid(pid);
+    }
+    
+    private void removePid(long pid) {
+        try {
+            WorkerPids.remove(pid);
+        } catch (IOException e) {
+            System.err.println("Failed to update PID file: " + e.getMessage());
+        }
     }
 }
@@ -3,8 +3,9 @@ package com.hars.queuectl.commands;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
 import picocli.CommandLine.Command;
 
@@ -14,12 +15,11 @@ import picocli.CommandLine.Command;
 )
 public class WorkerStopCommand implements Runnable {
     
-    private static final String PID_FILE = "worker.pid";
     private static final String STOP_SIGNAL_FILE = "worker.stop";
     
     @Override
     public void run() {
-        File pidFile = new File(PID_FILE);
+        File pidFile = new File(WorkerPids.PID_FILE);
         
         if (!pidFile.exists()) {
             System.out.println("No workers are currently running (PID file not found)");
@@ -27,33 +27,35 @@ public class WorkerStopCommand implements Runnable {
         }
         
         try {
-            // Read the PID from file
-            String pidStr = new String(Files.readAllBytes(Paths.get(PID_FILE))).trim();
-            long pid = Long.parseLong(pidStr);
+            // Read the PIDs of all worker processes
+            List<ProcessHandle> processHandles = WorkerPids.readLive().stream()
+                    .map(ProcessHandle::of)
+                    .filter(Optional::isPresent)
+                    .map(Optional::get)
+                    .collect(Collectors.toList());
             
-            System.out.println("Requesting graceful shutdown of worker process (PID: " + pid + ")...");
-            
-            // Check if process is still alive
-            ProcessHandle processHandle = ProcessHandle.of(pid).orElse(null);
-            
-            if (processHandle == null || !processHandle.isAlive()) {
-                System.out.println("Worker process is not running (stale PID file)");
-                pidFile.delete();
+            if (processHandles.isEmpty()) {
+                // The file stays; the next worker to start rewrites it
+                System.out.println("No workers are currently running");
                 return;
             }
             
+            for (ProcessHandle processHandle : processHandles) {
+                System.out.println("Requesting graceful shutdown of worker process (PID: " + processHandle.pid() + ")...");
+            }
+            
             // Create stop signal file for graceful shutdown
             File stopSignalFile = new File(STOP_SIGNAL_FILE);
             try (FileWriter writer = new FileWriter(stopSignalFile)) {
                 writer.write("stop");
             }
             
-            System.out.println("Stop signal sent. Waiting for worker to finish current job...");
+            System.out.println("Stop signal sent. Waiting for workers to finish current jobs...");
             
-            // Wait for the process to stop gracefully (up to 60 seconds)
+            // Wait for the processes to stop gracefully (up to 60 seconds)
             int maxWait = 60;
             int waited = 0;
-            while (processHandle.isAlive() && waited < maxWait) {
+            while (anyAlive(processHandles) && waited < maxWait) {
                 Thread.sleep(1000);
                 waited++;
                 if (waited % 5 == 0) {
@@ -61,31 +63,35 @@ public class WorkerStopCommand implements Runnable {
                 }
             }
             
-            if (!processHandle.isAlive()) {
+            if (!anyAlive(processHandles)) {
                 System.out.println("Workers stopped gracefully");
-                pidFile.delete();
                 stopSignalFile.delete();
             } else {
-                System.out.println("Worker did not stop within " + maxWait + " seconds. Forcing shutdown...");
-                processHandle.destroyForcibly();
+                System.out.println("Workers did not stop within " + maxWait + " seconds. Forcing shutdown...");
+                for (ProcessHandle processHandle : processHandles) {
+                    processHandle.destroyForcibly();
+                }
                 
                 // Wait a bit more
                 Thread.sleep(2000);
                 
-                if (!processHandle.isAlive()) {
+                if (!anyAlive(processHandles)) {
                     System.out.println("Workers force stopped");
-                    pidFile.delete();
                     stopSignalFile.delete();
                 } else {
-                    System.err.println("Failed to stop workers. You may need to kill the process manually.");
+                    System.err.println("Failed to stop workers. You may need to kill the processes manually.");
                 }
             }
             
         } catch (InterruptedException e) {
             System.err.println("Interrupted while waiting for workers to stop");
             Thread.currentThread().interrupt();
-        } catch (IOException | NumberFormatException e) {
+        } catch (IOException | RuntimeException e) {
             System.err.println("Error stopping workers: " + e.getMessage());
         }
     }
+    
+    private boolean anyAlive(List<ProcessHandle> processHandles) {
+        return processHandles.stream().anyMatch(ProcessHandle::isAlive);
+    }
 }
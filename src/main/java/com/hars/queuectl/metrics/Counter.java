@@ -0,0 +1,42 @@
+package com.hars.queuectl.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic count. Backed by a {@link LongAdder}, so threads incrementing it at the
+ * same time update separate cells instead of contending on one value.
+ */
+public class Counter implements Metric {
+
+    private final String name;
+    private final String help;
+    private final LongAdder value = new LongAdder();
+
+    public Counter(String name, String help) {
+        this.name = name;
+        this.help = help;
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void writeTo(StringBuilder out) {
+        Metrics.header(out, name, help, "counter");
+        out.append(name).append(' ').append(get()).append('\n');
+    }
+}
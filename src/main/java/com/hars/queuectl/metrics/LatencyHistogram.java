@@ -0,0 +1,117 @@
+package com.hars.queuectl.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency distribution in the style of HdrHistogram: durations in nanoseconds are
+ * counted in log-linear buckets, each power of two split into {@link #SUB_BUCKETS}
+ * equal parts, so any value from a nanosecond to centuries lands in one of a few
+ * hundred fixed buckets and quantiles are accurate to within 12.5%. Recording is an
+ * index computation and an atomic increment; nothing is allocated.
+ *
+ * Exported as a Prometheus summary in seconds, with quantiles over the life of the process.
+ */
+public class LatencyHistogram implements Metric {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BITS) * SUB_BUCKETS;
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final String name;
+    private final String help;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param name Metric name, by convention ending in {@code _seconds}
+     */
+    public LatencyHistogram(String name, String help) {
+        this.name = name;
+        this.help = help;
+    }
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Records the time elapsed since a {@link System#nanoTime()} reading
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @param quantile Between 0 and 1
+     * @return The value below which that share of recordings falls, in nanoseconds
+     *         (the upper bound of its bucket), or 0 if nothing was recorded
+     */
+    public long getQuantile(double quantile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void writeTo(StringBuilder out) {
+        Metrics.header(out, name, help, "summary");
+        for (double quantile : QUANTILES) {
+            out.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                    .append(getQuantile(quantile) / NANOS_PER_SECOND).append('\n');
+        }
+        out.append(name).append("_sum ").append(sum.sum() / NANOS_PER_SECOND).append('\n');
+        out.append(name).append("_count ").append(getCount()).append('\n');
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,14 @@
+package com.hars.queuectl.metrics;
+
+/**
+ * A named measurement that can describe itself in the Prometheus text format
+ */
+public interface Metric {
+
+    String getName();
+
+    /**
+     * Appends the HELP and TYPE lines and the samples
+     */
+    void writeTo(StringBuilder out);
+}
@@ -0,0 +1,80 @@
+package com.hars.queuectl.metrics;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Process-wide metrics of a worker process, served by the daemon at {@code /metrics}
+ * in the Prometheus text format. Instruments are static so hot paths reach them
+ * without any lookup.
+ */
+public final class Metrics {
+
+    private static final List<Metric> REGISTRY = new CopyOnWriteArrayList<>();
+    private static final long START_MILLIS = System.currentTimeMillis();
+
+    public static final Counter JOBS_ENQUEUED = register(new Counter(
+            "queuectl_jobs_enqueued_total", "Jobs added to the queue through this process"));
+    public static final Counter JOBS_COMPLETED = register(new Counter(
+            "queuectl_jobs_completed_total", "Jobs that finished with exit code 0"));
+    public static final Counter JOB_RETRIES = register(new Counter(
+            "queuectl_job_retries_total", "Failed attempts that were scheduled for a retry"));
+    public static final Counter JOBS_DEAD = register(new Counter(
+            "queuectl_jobs_dead_total", "Jobs moved to the dead letter queue"));
+    public static final Counter JOB_TIMEOUTS = register(new Counter(
+            "queuectl_job_timeouts_total", "Attempts stopped for exceeding their timeout"));
+
+    public static final LatencyHistogram QUEUE_WAIT = register(new LatencyHistogram(
+            "queuectl_queue_wait_seconds", "Time from a job becoming eligible to a worker claiming it"));
+    public static final LatencyHistogram JOB_DURATION = register(new LatencyHistogram(
+            "queuectl_job_duration_seconds", "Time a job's command ran, per attempt"));
+    public static final LatencyHistogram STORE_READ = register(new LatencyHistogram(
+            "queuectl_store_read_seconds", "Time to read changes or the whole job store"));
+    public static final LatencyHistogram STORE_WRITE = register(new LatencyHistogram(
+            "queuectl_store_write_seconds", "Time to append job records to the store"));
+    public static final LatencyHistogram STORE_SYNC = register(new LatencyHistogram(
+            "queuectl_store_sync_seconds", "Time to flush the store to disk"));
+    public static final LatencyHistogram LOCK_WAIT = register(new LatencyHistogram(
+            "queuectl_lock_wait_seconds", "Time spent waiting for the repository and store locks"));
+
+    private Metrics() {
+    }
+
+    public static <T extends Metric> T register(T metric) {
+        REGISTRY.add(metric);
+        return metric;
+    }
+
+    /**
+     * Appends every registered metric in the Prometheus text format
+     */
+    public static void writeTo(StringBuilder out) {
+        header(out, "queuectl_process_start_time_seconds", "Start time of the process in seconds since the epoch", "gauge");
+        out.append("queuectl_process_start_time_seconds ").append(START_MILLIS / 1000.0).append('\n');
+        for (Metric metric : REGISTRY) {
+            metric.writeTo(out);
+        }
+    }
+
+    /**
+     * Appends a gauge with one sample per label value, e.g. a count per job state
+     */
+    public static void writeGauge(StringBuilder out, String name, String help, String label,
+                                  Map<String, ? extends Number> values) {
+        header(out, name, help, "gauge");
+        for (Map.Entry<String, ? extends Number> entry : values.entrySet()) {
+            out.append(name).append('{').append(label).append("=\"").append(escape(entry.getKey()))
+                    .append("\"} ").append(entry.getValue()).append('\n');
+        }
+    }
+
+    static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -2,9 +2,13 @@ package com.hars.queuectl.model;
 
 import java.time.Instant;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 public class Job {
+    public static final String DEFAULT_QUEUE = "default";
+
     public enum JobState {
         PENDING,
         PROCESSING,
@@ -37,6 +41,57 @@ public class Job {
     @JsonProperty("updated_at")
     private Instant updatedAt;
 
+    // Worker holding the job while it is PROCESSING, and when that claim lapses
+    @JsonProperty("lease_owner")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String leaseOwner;
+
+    @JsonProperty("lease_expires_at")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Instant leaseExpiresAt;
+
+    // When a FAILED job becomes eligible for its next attempt
+    @JsonProperty("next_run_at")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Instant nextRunAt;
+
+    // Higher priorities run first within a queue
+    @JsonProperty("priority")
+    private int priority;
+
+    // Named queue the job is scheduled in; null means the default queue
+    @JsonProperty("queue")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String queue;
+
+    // Earliest time a PENDING job may be claimed; null means as soon as possible
+    @JsonProperty("run_at")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Instant runAt;
+
+    // Outcome of the most recent attempt; absent until the job has run
+    @JsonProperty("last_exit_code")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer lastExitCode;
+
+    @JsonProperty("started_at")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Instant startedAt;
+
+    @JsonProperty("finished_at")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Instant finishedAt;
+
+    // Time spent running, summed over all attempts
+    @JsonProperty("runtime_ms")
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    private long runtimeMillis;
+
+    // Last few KB of the most recent attempt's output
+    @JsonProperty("output_tail")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String outputTail;
+
     // Default constructor for Jackson
     public Job() {
     }
@@ -53,6 +108,23 @@ public class Job {
         this.updatedAt = updatedAt;
     }
 
+    // Copy constructor, used so callers never share instances held by the repository
+    public Job(Job other) {
+        this(other.id, other.command, other.state, other.attempts, other.maxRetries,
+                other.timeoutSeconds, other.createdAt, other.updatedAt);
+        this.leaseOwner = other.leaseOwner;
+        this.leaseExpiresAt = other.leaseExpiresAt;
+        this.nextRunAt = other.nextRunAt;
+        this.priority = other.priority;
+        this.queue = other.queue;
+        this.runAt = other.runAt;
+        this.lastExitCode = other.lastExitCode;
+        this.startedAt = other.startedAt;
+        this.finishedAt = other.finishedAt;
+        this.runtimeMillis = other.runtimeMillis;
+        this.outputTail = other.outputTail;
+    }
+
     // Getters and Setters
     public String getId() {
         return id;
@@ -118,6 +190,116 @@ public class Job {
         this.updatedAt = updatedAt;
     }
 
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+
+    public void setLeaseOwner(String leaseOwner) {
+        this.leaseOwner = leaseOwner;
+    }
+
+    public Instant getLeaseExpiresAt() {
+        return leaseExpiresAt;
+    }
+
+    public void setLeaseExpiresAt(Instant leaseExpiresAt) {
+        this.leaseExpiresAt = leaseExpiresAt;
+    }
+
+    public Instant getNextRunAt() {
+        return nextRunAt;
+    }
+
+    public void setNextRunAt(Instant nextRunAt) {
+        this.nextRunAt = nextRunAt;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    public String getQueue() {
+        return queue;
+    }
+
+    public void setQueue(String queue) {
+        this.queue = queue;
+    }
+
+    public Instant getRunAt() {
+        return runAt;
+    }
+
+    public void setRunAt(Instant runAt) {
+        this.runAt = runAt;
+    }
+
+    public Integer getLastExitCode() {
+        return lastExitCode;
+    }
+
+    public void setLastExitCode(Integer lastExitCode) {
+        this.lastExitCode = lastExitCode;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(Instant startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(Instant finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public long getRuntimeMillis() {
+        return runtimeMillis;
+    }
+
+    public void setRuntimeMillis(long runtimeMillis) {
+        this.runtimeMillis = runtimeMillis;
+    }
+
+    public String getOutputTail() {
+        return outputTail;
+    }
+
+    public void setOutputTail(String outputTail) {
+        this.outputTail = outputTail;
+    }
+
+    /**
+     * @return The queue the job is scheduled in, with the default filled in
+     */
+    @JsonIgnore
+    public String getQueueName() {
+        return queue != null ? queue : DEFAULT_QUEUE;
+    }
+
+    /**
+     * @return A store record that removes the job with the given id: the id and no state
+     */
+    public static Job tombstone(String id) {
+        Job job = new Job();
+        job.setId(id);
+        return job;
+    }
+
+    @JsonIgnore
+    public boolean isTombstone() {
+        return state == null;
+    }
+
     @Override
     public String toString() {
         return "Job{" +
@@ -129,6 +311,16 @@ public class Job {
                 ", timeoutSeconds=" + timeoutSeconds +
                 ", createdAt=" + createdAt +
                 ", updatedAt=" + updatedAt +
+                ", leaseOwner='" + leaseOwner + '\'' +
+                ", leaseExpiresAt=" + leaseExpiresAt +
+                ", nextRunAt=" + nextRunAt +
+                ", priority=" + priority +
+                ", queue='" + queue + '\'' +
+                ", runAt=" + runAt +
+                ", lastExitCode=" + lastExitCode +
+                ", startedAt=" + startedAt +
+                ", finishedAt=" + finishedAt +
+                ", runtimeMillis=" + runtimeMillis +
                 '}';
     }
 }
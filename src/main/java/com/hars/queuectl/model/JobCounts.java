@@ -0,0 +1,150 @@
+package com.hars.queuectl.model;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Number of jobs in each state, overall and per named queue. Kept up to date with
+ * every state change rather than counted, so reading it costs nothing however many
+ * jobs there are.
+ */
+public class JobCounts {
+
+    @JsonProperty("states")
+    private EnumMap<Job.JobState, Integer> states = new EnumMap<>(Job.JobState.class);
+
+    // Only queues that hold at least one job, and only their non-zero states
+    @JsonProperty("queues")
+    private TreeMap<String, EnumMap<Job.JobState, Integer>> queues = new TreeMap<>();
+
+    // PENDING jobs whose run_at has not arrived yet; only known where the jobs are resident
+    @JsonProperty("scheduled")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer scheduled;
+
+    public JobCounts() {
+    }
+
+    public JobCounts(JobCounts other) {
+        addAll(other);
+        this.scheduled = other.scheduled;
+    }
+
+    /**
+     * Counts a job in its current state and queue
+     */
+    public void add(Job job) {
+        adjust(job.getState(), job.getQueueName(), 1);
+    }
+
+    /**
+     * Stops counting a job in the state and queue it had
+     */
+    public void remove(Job job) {
+        adjust(job.getState(), job.getQueueName(), -1);
+    }
+
+    /**
+     * Adds another set of counts to this one, e.g. one per shard
+     */
+    public void addAll(JobCounts other) {
+        other.states.forEach((state, count) -> merge(states, state, count));
+        for (Map.Entry<String, EnumMap<Job.JobState, Integer>> queue : other.queues.entrySet()) {
+            EnumMap<Job.JobState, Integer> target = queues.computeIfAbsent(queue.getKey(),
+                    name -> new EnumMap<>(Job.JobState.class));
+            queue.getValue().forEach((state, count) -> merge(target, state, count));
+        }
+        if (other.scheduled != null) {
+            scheduled = (scheduled != null ? scheduled : 0) + other.scheduled;
+        }
+    }
+
+    /**
+     * @return Number of jobs in the given state
+     */
+    public int get(Job.JobState state) {
+        return states.getOrDefault(state, 0);
+    }
+
+    @JsonIgnore
+    public int getTotal() {
+        int total = 0;
+        for (int count : states.values()) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @return Number of jobs in the given state per named queue, leaving out queues with none
+     */
+    public Map<String, Integer> byQueue(Job.JobState state) {
+        Map<String, Integer> counts = new TreeMap<>();
+        for (Map.Entry<String, EnumMap<Job.JobState, Integer>> queue : queues.entrySet()) {
+            Integer count = queue.getValue().get(state);
+            if (count != null) {
+                counts.put(queue.getKey(), count);
+            }
+        }
+        return counts;
+    }
+
+    public Map<Job.JobState, Integer> getStates() {
+        return states;
+    }
+
+    public Map<String, EnumMap<Job.JobState, Integer>> getQueues() {
+        return queues;
+    }
+
+    /**
+     * @return PENDING jobs waiting for their run_at, or null if these counts were read
+     *         back from the store, where that is not known
+     */
+    public Integer getScheduled() {
+        return scheduled;
+    }
+
+    public void setScheduled(Integer scheduled) {
+        this.scheduled = scheduled;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof JobCounts)) {
+            return false;
+        }
+        JobCounts that = (JobCounts) other;
+        return states.equals(that.states) && queues.equals(that.queues) && Objects.equals(scheduled, that.scheduled);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(states, queues, scheduled);
+    }
+
+    private void adjust(Job.JobState state, String queue, int delta) {
+        merge(states, state, delta);
+        EnumMap<Job.JobState, Integer> byState = queues.computeIfAbsent(queue, name -> new EnumMap<>(Job.JobState.class));
+        merge(byState, state, delta);
+        if (byState.isEmpty()) {
+            queues.remove(queue);
+        }
+    }
+
+    /**
+     * Adds to a count, dropping it once it reaches zero
+     */
+    private static void merge(Map<Job.JobState, Integer> counts, Job.JobState state, int delta) {
+        Integer count = counts.merge(state, delta, Integer::sum);
+        if (count == 0) {
+            counts.remove(state);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.hars.queuectl.model;
+
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A recurring job definition: every time the cron expression fires, a copy of the
+ * job template is enqueued.
+ */
+public class Schedule {
+
+    @JsonProperty("id")
+    private String id;
+
+    @JsonProperty("cron")
+    private String cron;
+
+    // Template for the jobs this schedule creates; id, state and timestamps are filled in per firing
+    @JsonProperty("job")
+    private Job job;
+
+    @JsonProperty("created_at")
+    private Instant createdAt;
+
+    // Latest fire time that has been handled, whether or not it enqueued a job
+    @JsonProperty("last_fired_at")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Instant lastFiredAt;
+
+    // Default constructor for Jackson
+    public Schedule() {
+    }
+
+    public Schedule(String id, String cron, Job job, Instant createdAt) {
+        this.id = id;
+        this.cron = cron;
+        this.job = job;
+        this.createdAt = createdAt;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getCron() {
+        return cron;
+    }
+
+    public void setCron(String cron) {
+        this.cron = cron;
+    }
+
+    public Job getJob() {
+        return job;
+    }
+
+    public void setJob(Job job) {
+        this.job = job;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public Instant getLastFiredAt() {
+        return lastFiredAt;
+    }
+
+    public void setLastFiredAt(Instant lastFiredAt) {
+        this.lastFiredAt = lastFiredAt;
+    }
+
+    @Override
+    public String toString() {
+        return "Schedule{" +
+                "id='" + id + '\'' +
+                ", cron='" + cron + '\'' +
+                ", job=" + job +
+                ", createdAt=" + createdAt +
+                ", lastFiredAt=" + lastFiredAt +
+                '}';
+    }
+}
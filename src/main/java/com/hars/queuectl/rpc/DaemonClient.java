@@ -0,0 +1,350 @@
+package com.hars.queuectl.rpc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.hars.queuectl.model.Job;
+import com.hars.queuectl.model.JobCounts;
+import com.hars.queuectl.service.JobQuery;
+import com.hars.queuectl.service.JobQueue;
+
+/**
+ * {@link JobQueue} backed by a running worker daemon. If the daemon turns out to be
+ * unreachable, the client switches to the fallback (direct store access) for good.
+ */
+public class DaemonClient implements JobQueue {
+
+    private static final int CONNECT_TIMEOUT_MS = 1000;
+    private static final int READ_TIMEOUT_MS = 30_000;
+
+    private final DaemonEndpoint endpoint;
+    private final Supplier<JobQueue> fallbackSupplier;
+    private final ObjectMapper objectMapper;
+    private JobQueue fallback;
+
+    private DaemonClient(DaemonEndpoint endpoint, Supplier<JobQueue> fallbackSupplier) {
+        this.endpoint = endpoint;
+        this.fallbackSupplier = fallbackSupplier;
+        this.objectMapper = new ObjectMapper();
+        this.objectMapper.registerModule(new JavaTimeModule());
+        this.objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+
+    /**
+     * @param fallback Used when no daemon is published or it stops answering
+     * @return A client for the running daemon, if one is published
+     */
+    public static Optional<DaemonClient> connect(Supplier<JobQueue> fallback) {
+        return DaemonEndpoint.read().map(endpoint -> new DaemonClient(endpoint, fallback));
+    }
+
+    @Override
+    public void addJob(Job job) {
+        if (fallback == null) {
+            try {
+                request("POST", "/jobs", job, null);
+                return;
+            } catch (ConnectException e) {
+                switchToFallback(e);
+            } catch (IOException e) {
+                throw new RuntimeException("Worker daemon request failed", e);
+            }
+        }
+        fallback.addJob(job);
+    }
+
+    @Override
+    public void addJobs(List<Job> jobs) {
+        if (fallback == null) {
+            try {
+                request("POST", "/jobs", jobs, null);
+                return;
+            } catch (ConnectException e) {
+                switchToFallback(e);
+            } catch (IOException e) {
+                throw new RuntimeException("Worker daemon request failed", e);
+            }
+        }
+        fallback.addJobs(jobs);
+    }
+
+    @Override
+    public boolean updateJob(Job job) {
+        if (fallback == null) {
+            try {
+                // 404: no such job; 409: the update was not applied
+                return request("PUT", jobPath(job.getId()), job, null, 404, 409) != null;
+            } catch (ConnectException e) {
+                switchToFallback(e);
+            } catch (IOException e) {
+                throw new RuntimeException("Worker daemon request failed", e);
+            }
+        }
+        return fallback.updateJob(job);
+    }
+
+    @Override
+    public Optional<Job> findJobById(String jobId) {
+        if (fallback == null) {
+            try {
+                return Optional.ofNullable(request("GET", jobPath(jobId), null,
+                        new TypeReference<Job>() {}, 404));
+            } catch (ConnectException e) {
+                switchToFallback(e);
+            } catch (IOException e) {
+                throw new RuntimeException("Worker daemon request failed", e);
+            }
+        }
+        return fallback.findJobById(jobId);
+    }
+
+    @Override
+    public List<Job> getAllJobs() {
+        if (fallback == null) {
+            try {
+                return request("GET", "/jobs", null, new TypeReference<List<Job>>() {});
+            } catch (ConnectException e) {
+                switchToFallback(e);
+            } catch (IOException e) {
+                throw new RuntimeException("Worker daemon request failed", e);
+            }
+        }
+        return fallback.getAllJobs();
+    }
+
+    @Override
+    public List<Job> getJobsByState(Job.JobState state) {
+        if (fallback == null) {
+            try {
+                return request("GET", "/jobs?state=" + state.name(), null,
+                        new TypeReference<List<Job>>() {});
+            } catch (ConnectException e) {
+                switchToFallback(e);
+            } catch (IOException e) {
+                throw new RuntimeException("Worker daemon request failed", e);
+            }
+        }
+        return fallback.getJobsByState(state);
+    }
+
+    @Override
+    public void forEachJob(JobQuery query, Consumer<Job> action) {
+        if (fallback == null) {
+            try {
+                streamJobs(query, action);
+                return;
+            } catch (ConnectException e) {
+                switchToFallback(e);
+            } catch (IOException e) {
+                throw new RuntimeException("Worker daemon request failed", e);
+            }
+        }
+        fallback.forEachJob(query, action);
+    }
+
+    @Override
+    public JobCounts counts() {
+        if (fallback == null) {
+            try {
+                return request("GET", "/counts", null, new TypeReference<JobCounts>() {});
+            } catch (ConnectException e) {
+                switchToFallback(e);
+            } catch (IOException e) {
+                throw new RuntimeException("Worker daemon request failed", e);
+            }
+        }
+        return fallback.counts();
+    }
+
+    @Override
+    public Map<Job.JobState, Integer> countByState() {
+        if (fallback == null) {
+            try {
+                return new EnumMap<>(request("GET", "/status", null,
+                        new TypeReference<Map<Job.JobState, Integer>>() {}));
+            } catch (ConnectException e) {
+                switchToFallback(e);
+            } catch (IOException e) {
+                throw new RuntimeException("Worker daemon request failed", e);
+            }
+        }
+        return fallback.countByState();
+    }
+
+    @Override
+    public Map<String, Integer> pendingByQueue() {
+        if (fallback == null) {
+            try {
+                return new TreeMap<>(request("GET", "/queues", null,
+                        new TypeReference<Map<String, Integer>>() {}));
+            } catch (ConnectException e) {
+                switchToFallback(e);
+            } catch (IOException e) {
+                throw new RuntimeException("Worker daemon request failed", e);
+            }
+        }
+        return fallback.pendingByQueue();
+    }
+
+    /**
+     * @return The daemon's metrics in the Prometheus text format. Metrics live in the
+     *         worker process, so there is no fallback
+     */
+    public String metrics() throws IOException {
+        URL url = new URL("http", "127.0.0.1", endpoint.getPort(), "/metrics");
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+            connection.setRequestProperty(DaemonServer.AUTHORIZATION, DaemonServer.BEARER + endpoint.getToken());
+            int status = connection.getResponseCode();
+            if (status != 200) {
+                throw new IOException("HTTP " + status + " from worker daemon");
+            }
+            try (InputStream in = connection.getInputStream()) {
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Reads the daemon's job listing one job at a time as it arrives
+     */
+    private void streamJobs(JobQuery query, Consumer<Job> action) throws IOException {
+        StringBuilder path = new StringBuilder("/jobs?limit=").append(query.getLimit());
+        appendParameter(path, "state", query.getState() == null ? null : query.getState().name());
+        appendParameter(path, "queue", query.getQueue());
+        appendParameter(path, "since", query.getSince() == null ? null : query.getSince().toString());
+        appendParameter(path, "after", query.getAfter());
+
+        URL url = new URL("http", "127.0.0.1", endpoint.getPort(), path.toString());
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+            connection.setRequestProperty(DaemonServer.AUTHORIZATION, DaemonServer.BEARER + endpoint.getToken());
+            int status = connection.getResponseCode();
+            if (status == 400) {
+                throw new IllegalArgumentException(readError(connection));
+            }
+            if (status != 200) {
+                throw new IOException("HTTP " + status + " from worker daemon");
+            }
+            try (InputStream in = connection.getInputStream();
+                 JsonParser parser = objectMapper.getFactory().createParser(in)) {
+                if (parser.nextToken() != JsonToken.START_ARRAY) {
+                    throw new IOException("Expected a JSON array of jobs from worker daemon");
+                }
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    action.accept(objectMapper.readValue(parser, Job.class));
+                }
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static void appendParameter(StringBuilder path, String name, String value) {
+        if (value != null) {
+            path.append('&').append(name).append('=').append(URLEncoder.encode(value, StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * @return Path of a single job, with the id escaped so that characters such as
+     *         {@code #}, {@code ?} or {@code /} stay part of it
+     */
+    private static String jobPath(String jobId) {
+        return "/jobs/" + URLEncoder.encode(jobId, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    private void switchToFallback(ConnectException e) {
+        System.err.println("Worker daemon not reachable (" + e.getMessage() + "), using the job store directly");
+        fallback = fallbackSupplier.get();
+    }
+
+    /**
+     * Sends one request to the daemon
+     * @param absentStatuses Statuses besides 200 that the endpoint answers with, meaning
+     *                       there is no result; any other status is an error
+     * @return The decoded response body; null for one of the absent statuses, or a
+     *         non-null marker when no body type was requested
+     */
+    private <T> T request(String method, String path, Object body, TypeReference<T> responseType,
+                          int... absentStatuses) throws IOException {
+        URL url = new URL("http", "127.0.0.1", endpoint.getPort(), path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setRequestMethod(method);
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+            connection.setRequestProperty(DaemonServer.AUTHORIZATION, DaemonServer.BEARER + endpoint.getToken());
+            if (body != null) {
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", "application/json");
+                try (OutputStream out = connection.getOutputStream()) {
+                    objectMapper.writeValue(out, body);
+                }
+            }
+
+            int status = connection.getResponseCode();
+            if (status == 401 || status >= 500) {
+                throw new IOException("HTTP " + status + " from worker daemon");
+            }
+            if (status == 400) {
+                throw new IllegalArgumentException("Worker daemon rejected the request: " + readError(connection));
+            }
+            if (status == 409 && "POST".equals(method)) {
+                // A new job whose id is already stored
+                throw new IllegalStateException(readError(connection));
+            }
+            if (status != 200) {
+                for (int absent : absentStatuses) {
+                    if (status == absent) {
+                        return null;
+                    }
+                }
+                throw new IOException("HTTP " + status + " from worker daemon for " + method + " " + path);
+            }
+            if (responseType == null) {
+                @SuppressWarnings("unchecked")
+                T accepted = (T) Boolean.TRUE;
+                return accepted;
+            }
+            try (InputStream in = connection.getInputStream()) {
+                return objectMapper.readValue(in, responseType);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private String readError(HttpURLConnection connection) {
+        try (InputStream in = connection.getErrorStream()) {
+            return in == null ? "" : objectMapper.readValue(in, String.class);
+        } catch (IOException e) {
+            return "";
+        }
+    }
+}
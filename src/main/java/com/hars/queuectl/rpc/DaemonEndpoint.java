@@ -0,0 +1,101 @@
+package com.hars.queuectl.rpc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Optional;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Where a running worker daemon accepts CLI requests. Published in worker.endpoint,
+ * readable only by the owner, together with a token clients must present.
+ */
+public class DaemonEndpoint {
+
+    public static final String ENDPOINT_FILE = "worker.endpoint";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @JsonProperty("pid")
+    private long pid;
+
+    @JsonProperty("port")
+    private int port;
+
+    @JsonProperty("token")
+    private String token;
+
+    // Default constructor for Jackson
+    public DaemonEndpoint() {
+    }
+
+    public DaemonEndpoint(long pid, int port, String token) {
+        this.pid = pid;
+        this.port = port;
+        this.token = token;
+    }
+
+    public long getPid() {
+        return pid;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * @return The published endpoint, if its daemon process is still alive
+     */
+    public static Optional<DaemonEndpoint> read() {
+        File file = new File(ENDPOINT_FILE);
+        if (!file.exists()) {
+            return Optional.empty();
+        }
+        try {
+            DaemonEndpoint endpoint = MAPPER.readValue(file, DaemonEndpoint.class);
+            boolean alive = ProcessHandle.of(endpoint.pid).map(ProcessHandle::isAlive).orElse(false);
+            return alive ? Optional.of(endpoint) : Optional.empty();
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Publishes this endpoint, replacing any stale one
+     */
+    public void write() throws IOException {
+        Path target = Paths.get(ENDPOINT_FILE);
+        Path temp = Paths.get(ENDPOINT_FILE + ".tmp");
+        Files.deleteIfExists(temp);
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(temp, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }
+        MAPPER.writeValue(temp.toFile(), this);
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Removes the published endpoint if it still belongs to the given process
+     */
+    public static void deleteIfOwnedBy(long pid) {
+        File file = new File(ENDPOINT_FILE);
+        try {
+            if (file.exists() && MAPPER.readValue(file, DaemonEndpoint.class).pid == pid) {
+                Files.deleteIfExists(file.toPath());
+            }
+        } catch (IOException e) {
+            // Ignore - a stale endpoint is detected by its dead PID
+        }
+    }
+}
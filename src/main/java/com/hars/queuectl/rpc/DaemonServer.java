@@ -0,0 +1,354 @@
+package com.hars.queuectl.rpc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.hars.queuectl.metrics.Metrics;
+import com.hars.queuectl.model.Job;
+import com.hars.queuectl.service.JobQuery;
+import com.hars.queuectl.service.JobRepository;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Loopback HTTP endpoint inside the worker process, so CLI commands can use the
+ * resident in-memory store instead of replaying it from disk on every invocation.
+ *
+ * <pre>
+ *   GET  /status        job count per state
+ *   GET  /counts        job counts per state and per queue
+ *   GET  /queues        pending job count per named queue
+ *   GET  /jobs          jobs in listing order, streamed; optional state, queue,
+ *                       since (ISO instant), after (job id) and limit parameters
+ *   POST /jobs          enqueue a job, or an array of jobs in one write (409 if
+ *                       an id is already stored)
+ *   GET  /jobs/{id}     one job
+ *   PUT  /jobs/{id}     update a job (404 if there is none, 409 if the update was
+ *                       rejected)
+ *   GET  /metrics       counters and latencies in the Prometheus text format
+ * </pre>
+ * Jobs in a body need an id, a state and a command; a body without them, or that is
+ * not a job, is answered with 400. Every request must carry the token published in
+ * worker.endpoint.
+ */
+public class DaemonServer {
+
+    static final String AUTHORIZATION = "Authorization";
+    static final String BEARER = "Bearer ";
+
+    private final JobRepository jobRepository;
+    private final ObjectMapper objectMapper;
+    private HttpServer server;
+    private ExecutorService executor;
+    private String token;
+
+    public DaemonServer(JobRepository jobRepository) {
+        this.jobRepository = jobRepository;
+        this.objectMapper = new ObjectMapper();
+        this.objectMapper.registerModule(new JavaTimeModule());
+        this.objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+
+    /**
+     * Binds to an ephemeral loopback port and publishes the endpoint
+     * @return The port the server listens on
+     */
+    public int start() throws IOException {
+        byte[] secret = new byte[24];
+        new SecureRandom().nextBytes(secret);
+        token = Base64.getUrlEncoder().withoutPadding().encodeToString(secret);
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        executor = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "rpc");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/status", exchange -> handle(exchange, this::status));
+        server.createContext("/counts", exchange -> handle(exchange, this::counts));
+        server.createContext("/queues", exchange -> handle(exchange, this::queues));
+        server.createContext("/jobs", exchange -> handle(exchange, this::jobs));
+        server.createContext("/metrics", exchange -> handle(exchange, this::metrics));
+        server.start();
+
+        int port = server.getAddress().getPort();
+        new DaemonEndpoint(ProcessHandle.current().pid(), port, token).write();
+        return port;
+    }
+
+    public void stop() {
+        if (server != null) {
+            DaemonEndpoint.deleteIfOwnedBy(ProcessHandle.current().pid());
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    private void status(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            send(exchange, 405, null);
+            return;
+        }
+        send(exchange, 200, jobRepository.countByState());
+    }
+
+    private void counts(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            send(exchange, 405, null);
+            return;
+        }
+        send(exchange, 200, jobRepository.counts());
+    }
+
+    private void queues(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            send(exchange, 405, null);
+            return;
+        }
+        send(exchange, 200, jobRepository.pendingByQueue());
+    }
+
+    private void metrics(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            send(exchange, 405, null);
+            return;
+        }
+        StringBuilder out = new StringBuilder(4096);
+        Metrics.writeTo(out);
+        Map<String, Integer> states = new LinkedHashMap<>();
+        jobRepository.countByState().forEach((state, count) -> states.put(state.name(), count));
+        Metrics.writeGauge(out, "queuectl_jobs", "Jobs in the store by state", "state", states);
+        Metrics.writeGauge(out, "queuectl_pending_jobs", "PENDING jobs by queue", "queue", jobRepository.pendingByQueue());
+
+        byte[] bytes = out.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(bytes);
+        }
+    }
+
+    private void jobs(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        String jobId = path.length() > "/jobs/".length() ? path.substring("/jobs/".length()) : null;
+
+        if (jobId == null) {
+            if ("GET".equals(method)) {
+                streamJobs(exchange, query(exchange));
+            } else if ("POST".equals(method)) {
+                JsonNode body = readBody(exchange, JsonNode.class);
+                if (body.isArray()) {
+                    List<Job> jobs = objectMapper.convertValue(body, new TypeReference<List<Job>>() {});
+                    for (Job job : jobs) {
+                        validate(job);
+                    }
+                    jobRepository.addJobs(jobs);
+                    send(exchange, 200, jobs.size());
+                } else {
+                    Job job = objectMapper.convertValue(body, Job.class);
+                    validate(job);
+                    jobRepository.addJob(job);
+                    send(exchange, 200, job.getId());
+                }
+            } else {
+                send(exchange, 405, null);
+            }
+            return;
+        }
+
+        if ("GET".equals(method)) {
+            Optional<Job> job = jobRepository.findJobById(jobId);
+            if (job.isPresent()) {
+                send(exchange, 200, job.get());
+            } else {
+                send(exchange, 404, null);
+            }
+        } else if ("PUT".equals(method)) {
+            Job job = readBody(exchange, Job.class);
+            if (job.getId() == null) {
+                job.setId(jobId);
+            } else if (!job.getId().equals(jobId)) {
+                throw new IllegalArgumentException("Job id " + job.getId() + " does not match the path");
+            }
+            validate(job);
+            if (!jobRepository.findJobById(jobId).isPresent()) {
+                send(exchange, 404, null);
+                return;
+            }
+            send(exchange, jobRepository.updateJob(job) ? 200 : 409, null);
+        } else {
+            send(exchange, 405, null);
+        }
+    }
+
+    private JobQuery query(HttpExchange exchange) {
+        String state = queryParameter(exchange, "state");
+        String since = queryParameter(exchange, "since");
+        String after = queryParameter(exchange, "after");
+        String limit = queryParameter(exchange, "limit");
+        Instant sinceTime;
+        try {
+            sinceTime = since == null ? null : Instant.parse(since);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid since: " + since);
+        }
+        if (after != null && !jobRepository.findJobById(after).isPresent()) {
+            throw new IllegalArgumentException("Unknown job: " + after);
+        }
+        return new JobQuery(state == null ? null : Job.JobState.valueOf(state),
+                queryParameter(exchange, "queue"), sinceTime, after,
+                limit == null ? 0 : Integer.parseInt(limit));
+    }
+
+    /**
+     * Writes the jobs as a JSON array while they are read from the shards, with a
+     * chunked response, so a listing never sits in memory as a whole
+     */
+    private void streamJobs(HttpExchange exchange, JobQuery query) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, 0);
+        // Flushing is left to the generator's buffer instead of once per job
+        ObjectWriter writer = objectMapper.writerFor(Job.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (OutputStream body = exchange.getResponseBody();
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(body)) {
+            generator.writeStartArray();
+            jobRepository.forEachJob(query, job -> {
+                try {
+                    writer.writeValue(generator, job);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            generator.writeEndArray();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) {
+        try {
+            String authorization = exchange.getRequestHeaders().getFirst(AUTHORIZATION);
+            if (authorization == null || !MessageDigest.isEqual(
+                    authorization.getBytes(StandardCharsets.UTF_8),
+                    (BEARER + token).getBytes(StandardCharsets.UTF_8))) {
+                send(exchange, 401, null);
+                return;
+            }
+            handler.handle(exchange);
+        } catch (IllegalArgumentException e) {
+            sendQuietly(exchange, 400, e.getMessage());
+        } catch (IllegalStateException e) {
+            // Conflicts with the stored jobs, such as an id that already exists
+            sendQuietly(exchange, 409, e.getMessage());
+        } catch (Exception e) {
+            System.err.println("RPC request " + exchange.getRequestURI() + " failed: " + e.getMessage());
+            sendQuietly(exchange, 500, e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the body is not valid JSON of the given type
+     */
+    private <T> T readBody(HttpExchange exchange, Class<T> type) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            T value = objectMapper.readValue(body, type);
+            if (value == null) {
+                throw new IllegalArgumentException("Request body is empty");
+            }
+            return value;
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid request body: " + e.getOriginalMessage());
+        }
+    }
+
+    /**
+     * Checks the fields every stored job has, as enqueue does for the CLI. A job without
+     * a state would otherwise be taken for a tombstone.
+     *
+     * @throws IllegalArgumentException naming the first missing field
+     */
+    private static void validate(Job job) {
+        if (job == null) {
+            throw new IllegalArgumentException("job is required");
+        }
+        if (job.getId() == null || job.getId().isEmpty()) {
+            throw new IllegalArgumentException("id is required");
+        }
+        if (job.getState() == null) {
+            throw new IllegalArgumentException("state is required");
+        }
+        if (job.getCommand() == null || job.getCommand().trim().isEmpty()) {
+            throw new IllegalArgumentException("command is required");
+        }
+    }
+
+    private void send(HttpExchange exchange, int status, Object body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private void sendQuietly(HttpExchange exchange, int status, String message) {
+        try {
+            send(exchange, status, message);
+        } catch (IOException | IllegalStateException e) {
+            // Response already started or client gone
+        }
+    }
+
+    private static String queryParameter(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                return URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+}
@@ -0,0 +1,227 @@
+package com.hars.queuectl.schedule;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.zone.ZoneOffsetTransition;
+import java.util.Locale;
+
+/**
+ * A standard five-field cron expression ({@code minute hour day-of-month month day-of-week})
+ * compiled into one bit set per field, so finding the next fire time is a handful of
+ * bit operations per field instead of a minute-by-minute search.
+ *
+ * Fields accept {@code *}, numbers, ranges ({@code 1-5}), steps ({@code *&#47;15},
+ * {@code 0-30/10}), lists ({@code 1,15}), and month and day names ({@code JAN}, {@code MON}).
+ * Day of week runs 0-7 with both 0 and 7 meaning Sunday. As in Vixie cron, when both
+ * day fields are restricted a day matching either one fires. The macros {@code @yearly},
+ * {@code @monthly}, {@code @weekly}, {@code @daily} and {@code @hourly} are also accepted.
+ */
+public final class CronExpression {
+
+    // Feb 29 on a given weekday can be up to 28 years apart, so stop looking after that
+    private static final int MAX_YEARS_AHEAD = 28;
+
+    private static final String[] MONTH_NAMES = {
+        "JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC"
+    };
+    private static final String[] DAY_NAMES = {"SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT"};
+
+    private final String expression;
+    private final long minutes;
+    private final long hours;
+    private final long daysOfMonth;
+    private final long months;
+    private final long daysOfWeek;
+    private final boolean anyDayOfMonth;
+    private final boolean anyDayOfWeek;
+
+    private CronExpression(String expression, String[] fields) {
+        this.expression = expression;
+        this.minutes = parseField(fields[0], 0, 59, null, "minute");
+        this.hours = parseField(fields[1], 0, 23, null, "hour");
+        this.daysOfMonth = parseField(fields[2], 1, 31, null, "day of month");
+        this.months = parseField(fields[3], 1, 12, MONTH_NAMES, "month");
+        long weekdays = parseField(fields[4], 0, 7, DAY_NAMES, "day of week");
+        // 7 is another name for Sunday
+        this.daysOfWeek = (weekdays | (weekdays >>> 7)) & 0x7F;
+        this.anyDayOfMonth = fields[2].startsWith("*");
+        this.anyDayOfWeek = fields[4].startsWith("*");
+    }
+
+    /**
+     * @throws IllegalArgumentException if the expression is not valid
+     */
+    public static CronExpression parse(String expression) {
+        if (expression == null) {
+            throw new IllegalArgumentException("Cron expression is required");
+        }
+        String trimmed = expression.trim();
+        String[] fields = expand(trimmed).split("\\s+");
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("Invalid cron expression '" + expression
+                    + "': expected 5 fields (minute hour day-of-month month day-of-week)");
+        }
+        try {
+            return new CronExpression(trimmed, fields);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cron expression '" + expression + "': " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return The first fire time strictly after the given instant, or null if the
+     *         expression can never fire (for example 30 February)
+     */
+    public Instant next(Instant after, ZoneId zone) {
+        LocalDateTime time = LocalDateTime.ofInstant(after, zone).truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        int lastYear = time.getYear() + MAX_YEARS_AHEAD;
+
+        while (time.getYear() <= lastYear) {
+            if (!isSet(months, time.getMonthValue())) {
+                time = time.toLocalDate().withDayOfMonth(1).plusMonths(1).atStartOfDay();
+                continue;
+            }
+            LocalDate date = time.toLocalDate();
+            if (!matchesDay(date)) {
+                time = date.plusDays(1).atStartOfDay();
+                continue;
+            }
+            int hour = nextSetBit(hours, time.getHour());
+            if (hour < 0) {
+                time = date.plusDays(1).atStartOfDay();
+                continue;
+            }
+            if (hour != time.getHour()) {
+                time = date.atTime(hour, 0);
+            }
+            int minute = nextSetBit(minutes, time.getMinute());
+            if (minute < 0) {
+                time = date.atTime(hour, 0).plusHours(1);
+                continue;
+            }
+            time = time.withMinute(minute);
+
+            // Local times skipped by a DST change resolve to the first instant after the gap
+            ZoneOffsetTransition gap = zone.getRules().getTransition(time);
+            Instant candidate = gap != null && gap.isGap()
+                    ? gap.getInstant()
+                    : ZonedDateTime.of(time, zone).toInstant();
+            if (candidate.isAfter(after)) {
+                return candidate;
+            }
+            time = time.plusMinutes(1);
+        }
+        return null;
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    private boolean matchesDay(LocalDate date) {
+        boolean dayOfMonth = isSet(daysOfMonth, date.getDayOfMonth());
+        boolean dayOfWeek = isSet(daysOfWeek, date.getDayOfWeek().getValue() % 7);
+        if (anyDayOfMonth || anyDayOfWeek) {
+            return dayOfMonth && dayOfWeek;
+        }
+        return dayOfMonth || dayOfWeek;
+    }
+
+    private static String expand(String expression) {
+        switch (expression.toLowerCase(Locale.ROOT)) {
+            case "@yearly":
+            case "@annually":
+                return "0 0 1 1 *";
+            case "@monthly":
+                return "0 0 1 * *";
+            case "@weekly":
+                return "0 0 * * 0";
+            case "@daily":
+            case "@midnight":
+                return "0 0 * * *";
+            case "@hourly":
+                return "0 * * * *";
+            default:
+                return expression;
+        }
+    }
+
+    private static long parseField(String field, int min, int max, String[] names, String label) {
+        long bits = 0;
+        for (String part : field.split(",", -1)) {
+            int step = 1;
+            String range = part;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = parseNumber(part.substring(slash + 1), null, 0, label);
+                if (step < 1) {
+                    throw new IllegalArgumentException("step must be at least 1 in " + label + " field '" + field + "'");
+                }
+                range = part.substring(0, slash);
+            }
+
+            int from;
+            int to;
+            if (range.equals("*")) {
+                from = min;
+                to = max;
+            } else {
+                int dash = range.indexOf('-');
+                if (dash > 0) {
+                    from = parseNumber(range.substring(0, dash), names, min, label);
+                    to = parseNumber(range.substring(dash + 1), names, min, label);
+                } else {
+                    from = parseNumber(range, names, min, label);
+                    // "5/15" means every 15 starting at 5
+                    to = slash >= 0 ? max : from;
+                }
+            }
+            if (from < min || to > max || from > to) {
+                throw new IllegalArgumentException(label + " value out of range " + min + "-" + max + ": '" + part + "'");
+            }
+            for (int value = from; value <= to; value += step) {
+                bits |= 1L << value;
+            }
+        }
+        return bits;
+    }
+
+    private static int parseNumber(String text, String[] names, int firstNameValue, String label) {
+        if (names != null) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equalsIgnoreCase(text)) {
+                    return firstNameValue + i;
+                }
+            }
+        }
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("not a valid " + label + ": '" + text + "'");
+        }
+    }
+
+    private static boolean isSet(long bits, int value) {
+        return (bits & (1L << value)) != 0;
+    }
+
+    /**
+     * @return The smallest value at or above {@code from} present in the set, or -1
+     */
+    private static int nextSetBit(long bits, int from) {
+        if (from >= Long.SIZE) {
+            return -1;
+        }
+        long remaining = bits & (-1L << from);
+        return remaining == 0 ? -1 : Long.numberOfTrailingZeros(remaining);
+    }
+}
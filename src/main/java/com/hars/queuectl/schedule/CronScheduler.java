@@ -0,0 +1,303 @@
+package com.hars.queuectl.schedule;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import com.hars.queuectl.model.Job;
+import com.hars.queuectl.model.Schedule;
+import com.hars.queuectl.service.JobQueue;
+import com.hars.queuectl.storage.ScheduleStore;
+
+/**
+ * Single thread in the worker process that turns schedules into jobs. Every schedule's
+ * next fire time sits in a min-heap and the thread sleeps until the earliest one, so
+ * idle schedules cost nothing between firings; cron expressions are compiled once per
+ * distinct expression.
+ *
+ * Firing happens under the schedule store's lock: the thread re-reads schedules.json,
+ * enqueues the jobs and records last_fired_at before releasing it, so several worker
+ * processes never fire the same time twice. A crash between enqueueing and saving
+ * last_fired_at fires those times again on restart; their jobs are then already stored
+ * under the same ids and are skipped. Fire times more than
+ * {@link #MISFIRE_GRACE_MS} in the past when they are handled count as missed and are
+ * dealt with according to the {@link MisfirePolicy}, and each schedule that missed
+ * any is reported with one line to standard output.
+ */
+public class CronScheduler {
+
+    static final long MISFIRE_GRACE_MS = 60_000;
+
+    // Upper bound on jobs enqueued for one schedule when catching up after downtime
+    private static final int MAX_CATCH_UP = 1000;
+
+    // Re-check schedules.json at least this often in case a file event was missed
+    private static final long RECHECK_MS = 60_000;
+
+    private final JobQueue jobQueue;
+    private final ScheduleStore store;
+    private volatile MisfirePolicy policy;
+    private final ZoneId zone;
+    private final Consumer<String> misfireReporter;
+
+    private final Object monitor = new Object();
+    private final PriorityQueue<Timer> timers;
+    private final Map<String, CronExpression> compiled;
+    private long loadedStamp = -1;
+    private boolean reloadRequested;
+    private volatile boolean running;
+    private Thread thread;
+
+    public CronScheduler(JobQueue jobQueue, ScheduleStore store, MisfirePolicy policy) {
+        this(jobQueue, store, policy, ZoneId.systemDefault(), System.out::println);
+    }
+
+    /**
+     * @param misfireReporter Receives one line per schedule that missed fire times
+     */
+    CronScheduler(JobQueue jobQueue, ScheduleStore store, MisfirePolicy policy, ZoneId zone,
+            Consumer<String> misfireReporter) {
+        this.jobQueue = jobQueue;
+        this.store = store;
+        this.policy = policy;
+        this.zone = zone;
+        this.misfireReporter = misfireReporter;
+        this.timers = new PriorityQueue<>();
+        this.compiled = new HashMap<>();
+    }
+
+    public void start() {
+        running = true;
+        thread = new Thread(this::run, "cron-scheduler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Changes how fire times missed from now on are handled
+     */
+    public void setPolicy(MisfirePolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Re-reads schedules.json on the scheduler thread, e.g. after a file event
+     */
+    public void reload() {
+        synchronized (monitor) {
+            reloadRequested = true;
+            monitor.notifyAll();
+        }
+    }
+
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        synchronized (monitor) {
+            monitor.notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                if (needsReload()) {
+                    rebuild();
+                }
+                Timer next = timers.peek();
+                long now = System.currentTimeMillis();
+                if (next != null && next.at.toEpochMilli() <= now) {
+                    fireDue(Instant.ofEpochMilli(now));
+                    continue;
+                }
+                long waitMillis = next == null ? RECHECK_MS : Math.min(RECHECK_MS, next.at.toEpochMilli() - now);
+                await(waitMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                System.err.println("Cron scheduler error: " + e.getMessage());
+                // Timers popped by a failed firing are restored from the file on the next pass
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                reload();
+            }
+        }
+    }
+
+    private void await(long millis) throws InterruptedException {
+        synchronized (monitor) {
+            if (running && !reloadRequested) {
+                monitor.wait(Math.max(millis, 1));
+            }
+        }
+    }
+
+    private boolean needsReload() {
+        synchronized (monitor) {
+            if (reloadRequested) {
+                return true;
+            }
+        }
+        return store.lastModified() != loadedStamp;
+    }
+
+    /**
+     * Recomputes every schedule's next fire time from schedules.json
+     */
+    void rebuild() {
+        synchronized (monitor) {
+            reloadRequested = false;
+        }
+        // Read the stamp first so a write during the load triggers another rebuild
+        loadedStamp = store.lastModified();
+        timers.clear();
+        for (Schedule schedule : store.load()) {
+            schedule(schedule);
+        }
+    }
+
+    private void schedule(Schedule schedule) {
+        Instant next = cronOf(schedule).next(lastHandled(schedule), zone);
+        if (next != null) {
+            timers.add(new Timer(next, schedule.getId()));
+        }
+    }
+
+    /**
+     * Enqueues the jobs of every schedule whose next fire time has come
+     */
+    void fireDue(Instant now) {
+        Set<String> due = new HashSet<>();
+        while (!timers.isEmpty() && !timers.peek().at.isAfter(now)) {
+            due.add(timers.poll().scheduleId);
+        }
+
+        List<Schedule> fired = new ArrayList<>();
+        boolean stale;
+        store.getLock().lock();
+        try {
+            stale = store.lastModified() != loadedStamp;
+            List<Schedule> schedules = store.load();
+            List<Job> jobs = new ArrayList<>();
+            for (Schedule schedule : schedules) {
+                if (due.contains(schedule.getId()) && collect(schedule, now, jobs)) {
+                    fired.add(schedule);
+                }
+            }
+            // Left over from a firing whose last_fired_at was never saved
+            jobs.removeIf(job -> jobQueue.findJobById(job.getId()).isPresent());
+            if (!jobs.isEmpty()) {
+                jobQueue.addJobs(jobs);
+            }
+            if (!fired.isEmpty()) {
+                store.save(schedules);
+            }
+        } finally {
+            store.getLock().unlock();
+        }
+
+        if (stale) {
+            // Someone else changed the schedules since we last read them
+            rebuild();
+        } else {
+            loadedStamp = store.lastModified();
+            for (Schedule schedule : fired) {
+                schedule(schedule);
+            }
+        }
+    }
+
+    /**
+     * Adds the jobs for one schedule's fire times up to now and advances last_fired_at
+     * @return false if the schedule had nothing to fire (another process got there first)
+     */
+    boolean collect(Schedule schedule, Instant now, List<Job> jobs) {
+        MisfirePolicy policy = this.policy;
+        CronExpression cron = cronOf(schedule);
+        Instant fireTime = cron.next(lastHandled(schedule), zone);
+        if (fireTime == null || fireTime.isAfter(now)) {
+            return false;
+        }
+
+        Instant missedBefore = now.minusMillis(MISFIRE_GRACE_MS);
+        Instant latest = null;
+        int missed = 0;
+        int added = 0;
+        for (; fireTime != null && !fireTime.isAfter(now); fireTime = cron.next(fireTime, zone)) {
+            latest = fireTime;
+            boolean late = fireTime.isBefore(missedBefore);
+            if (late) {
+                missed++;
+            }
+            if ((!late || policy == MisfirePolicy.CATCH_UP) && added < MAX_CATCH_UP) {
+                jobs.add(materialize(schedule, fireTime, now));
+                added++;
+            }
+        }
+        if (policy == MisfirePolicy.COALESCE && missed > 0 && added == 0) {
+            jobs.add(materialize(schedule, latest, now));
+            added++;
+        }
+        if (missed > 0) {
+            misfireReporter.accept("Schedule " + schedule.getId() + " missed " + missed + " run(s); "
+                    + policy.getName() + " enqueued " + added + " job(s)");
+        }
+
+        schedule.setLastFiredAt(latest);
+        return true;
+    }
+
+    private static Job materialize(Schedule schedule, Instant fireTime, Instant now) {
+        Job job = new Job(schedule.getJob());
+        // Fire time in the id keeps the jobs of one schedule apart and easy to trace back
+        job.setId(schedule.getId() + "-" + fireTime.getEpochSecond());
+        job.setState(Job.JobState.PENDING);
+        job.setAttempts(0);
+        job.setRunAt(null);
+        job.setCreatedAt(now);
+        job.setUpdatedAt(now);
+        return job;
+    }
+
+    private static Instant lastHandled(Schedule schedule) {
+        return schedule.getLastFiredAt() != null ? schedule.getLastFiredAt() : schedule.getCreatedAt();
+    }
+
+    private CronExpression cronOf(Schedule schedule) {
+        return compiled.computeIfAbsent(schedule.getCron(), CronExpression::parse);
+    }
+
+    private static final class Timer implements Comparable<Timer> {
+        private final Instant at;
+        private final String scheduleId;
+
+        Timer(Instant at, String scheduleId) {
+            this.at = at;
+            this.scheduleId = scheduleId;
+        }
+
+        @Override
+        public int compareTo(Timer other) {
+            return at.compareTo(other.at);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.hars.queuectl.schedule;
+
+import java.util.Locale;
+
+/**
+ * What to do with fire times that passed while no scheduler was running
+ */
+public enum MisfirePolicy {
+    /** Drop missed fire times; only fire at the next regular time */
+    SKIP,
+    /** Enqueue one job for every missed fire time */
+    CATCH_UP,
+    /** Enqueue a single job standing in for all missed fire times */
+    COALESCE;
+
+    public static final MisfirePolicy DEFAULT = COALESCE;
+
+    /**
+     * @param name skip, catch-up or coalesce; null selects {@link #DEFAULT}
+     */
+    public static MisfirePolicy fromName(String name) {
+        if (name == null || name.isEmpty()) {
+            return DEFAULT;
+        }
+        for (MisfirePolicy policy : values()) {
+            if (policy.getName().equalsIgnoreCase(name) || policy.name().equalsIgnoreCase(name)) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException("Unknown misfire policy: " + name + " (expected skip, catch-up or coalesce)");
+    }
+
+    public String getName() {
+        return name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+}
@@ -0,0 +1,100 @@
+package com.hars.queuectl.service;
+
+/**
+ * Decides how many workers a process should run, between a minimum and a maximum,
+ * from periodic samples of the queue and the host.
+ *
+ * Growing is quick: whenever jobs are ready and the next one has waited longer than
+ * the target, the pool grows by up to its current size (never past the backlog), as
+ * long as the host's load average per CPU is below the limit. Shrinking is slow: the
+ * pool must have been over-provisioned (nothing ready, at most half the workers busy)
+ * for a whole cooldown, and it then gives back half of its idle workers. An overloaded
+ * host sheds one worker per cooldown. The gap between the two conditions, and the
+ * cooldown after every change, keep the pool from flapping.
+ */
+class Autoscaler {
+
+    private final int minWorkers;
+    private final int maxWorkers;
+    private volatile long targetWaitMillis;
+    private volatile double maxLoadPerCpu;
+    private volatile long cooldownMillis;
+
+    private long lastChangeAt;
+    // When the pool was first seen over-provisioned, or -1 while it is not
+    private long surplusSince = -1;
+
+    /**
+     * @param targetWaitMillis Grow when the next ready job has waited longer than this
+     * @param maxLoadPerCpu Do not grow, and slowly shrink, above this load average per CPU
+     *                      (0 disables the check)
+     * @param cooldownMillis How long a surplus must last before shrinking, and the minimum
+     *                       time between a change and the next shrink
+     */
+    Autoscaler(int minWorkers, int maxWorkers, long targetWaitMillis, double maxLoadPerCpu, long cooldownMillis) {
+        this.minWorkers = Math.max(1, minWorkers);
+        this.maxWorkers = Math.max(this.minWorkers, maxWorkers);
+        setThresholds(targetWaitMillis, maxLoadPerCpu, cooldownMillis);
+    }
+
+    /**
+     * Replaces the thresholds used by later decisions; see the constructor
+     */
+    void setThresholds(long targetWaitMillis, double maxLoadPerCpu, long cooldownMillis) {
+        this.targetWaitMillis = targetWaitMillis;
+        this.maxLoadPerCpu = maxLoadPerCpu;
+        this.cooldownMillis = cooldownMillis;
+    }
+
+    /**
+     * @param current Current pool size
+     * @param busy Workers currently running a job
+     * @param ready PENDING jobs that could be claimed right now
+     * @param headWaitMillis How long the next job to be claimed has been waiting
+     * @param loadPerCpu Host load average divided by the CPU count, negative if unknown
+     * @param now Clock in milliseconds
+     * @return The pool size to use from now on
+     */
+    int decide(int current, int busy, int ready, long headWaitMillis, double loadPerCpu, long now) {
+        boolean overloaded = maxLoadPerCpu > 0 && loadPerCpu > maxLoadPerCpu;
+        boolean coolingDown = now - lastChangeAt < cooldownMillis;
+
+        if (ready > 0 && headWaitMillis >= targetWaitMillis && !overloaded && current < maxWorkers) {
+            int step = Math.max(1, Math.min(ready, current));
+            return changeTo(Math.min(maxWorkers, current + step), now);
+        }
+
+        if (overloaded && current > minWorkers) {
+            surplusSince = -1;
+            return coolingDown ? current : changeTo(current - 1, now);
+        }
+
+        boolean surplus = ready == 0 && busy * 2 <= current && current > minWorkers;
+        if (!surplus) {
+            surplusSince = -1;
+            return current;
+        }
+        if (surplusSince < 0) {
+            surplusSince = now;
+        }
+        if (coolingDown || now - surplusSince < cooldownMillis) {
+            return current;
+        }
+        int idle = current - busy;
+        return changeTo(Math.max(minWorkers, current - Math.max(1, idle / 2)), now);
+    }
+
+    int getMinWorkers() {
+        return minWorkers;
+    }
+
+    int getMaxWorkers() {
+        return maxWorkers;
+    }
+
+    private int changeTo(int target, long now) {
+        lastChangeAt = now;
+        surplusSince = -1;
+        return target;
+    }
+}
@@ -0,0 +1,273 @@
+package com.hars.queuectl.service;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import com.hars.queuectl.model.Job;
+import com.hars.queuectl.schedule.MisfirePolicy;
+import com.hars.queuectl.worker.JobLogs;
+
+/**
+ * Immutable view of config.json at one point in time. Every setting is parsed and
+ * defaulted once when the snapshot is built, so readers on hot paths only dereference
+ * fields; a changed file produces a new snapshot instead of mutating this one.
+ */
+public final class ConfigSnapshot {
+
+    public static final int DEFAULT_MAX_RETRIES = 3;
+    public static final long DEFAULT_POLL_INTERVAL_MS = 500;
+    public static final long DEFAULT_BASE_BACKOFF_MS = 1000;
+    public static final long DEFAULT_TIMEOUT_SECONDS = 300;
+    public static final long DEFAULT_COMMIT_INTERVAL_MS = 2;
+    public static final int DEFAULT_COMMIT_BATCH_SIZE = 256;
+    public static final long DEFAULT_AUTOSCALE_INTERVAL_MS = 1000;
+    public static final long DEFAULT_AUTOSCALE_TARGET_WAIT_MS = 500;
+    public static final double DEFAULT_AUTOSCALE_MAX_LOAD = 2.0;
+    public static final long DEFAULT_AUTOSCALE_COOLDOWN_MS = 10_000;
+    public static final long DEFAULT_RETENTION_INTERVAL_MS = 60_000;
+
+    private static final String QUEUE_WEIGHT_PREFIX = "queue-weight.";
+
+    private final Map<String, Object> values;
+    private final String storageEngine;
+    private final String storeCodec;
+    private final int storeShards;
+    private final String shardBy;
+    private final int maxRetries;
+    private final long pollIntervalMillis;
+    private final long baseBackoffMillis;
+    private final long defaultTimeoutSeconds;
+    private final long leaseMillis;
+    private final long commitIntervalMillis;
+    private final int commitBatchSize;
+    private final Map<String, Integer> queueWeights;
+    private final MisfirePolicy misfirePolicy;
+    private final long autoscaleIntervalMillis;
+    private final long autoscaleTargetWaitMillis;
+    private final double autoscaleMaxLoad;
+    private final long autoscaleCooldownMillis;
+    private final long jobLogMaxBytes;
+    private final int jobLogBackups;
+    private final RetentionPolicy retentionPolicy;
+    private final long retentionIntervalMillis;
+
+    public ConfigSnapshot(Map<String, Object> values) {
+        this.values = Collections.unmodifiableMap(new LinkedHashMap<>(values));
+
+        this.storageEngine = stringSetting("storage-engine");
+        this.storeCodec = stringSetting("store-codec");
+        this.storeShards = (int) Math.max(1, longSetting("store-shards", 1));
+        String shardBy = stringSetting("shard-by");
+        this.shardBy = shardBy != null ? shardBy : JobRepository.SHARD_BY_ID;
+        this.maxRetries = (int) longSetting("max-retries", DEFAULT_MAX_RETRIES);
+        this.pollIntervalMillis = Math.max(1, longSetting("poll-interval-ms", DEFAULT_POLL_INTERVAL_MS));
+        this.baseBackoffMillis = Math.max(0, longSetting("base-backoff-ms", DEFAULT_BASE_BACKOFF_MS));
+        this.defaultTimeoutSeconds = longSetting("default-timeout-seconds", DEFAULT_TIMEOUT_SECONDS);
+        this.leaseMillis = values.containsKey("lease-seconds")
+                ? Math.max(1, longSetting("lease-seconds", 0)) * 1000
+                : JobRepository.DEFAULT_LEASE_MS;
+        this.commitIntervalMillis = longSetting("commit-interval-ms", DEFAULT_COMMIT_INTERVAL_MS);
+        this.commitBatchSize = (int) longSetting("commit-batch-size", DEFAULT_COMMIT_BATCH_SIZE);
+
+        // queue-weight.<name> = share of the workers for that queue
+        Map<String, Integer> weights = new HashMap<>();
+        for (String key : values.keySet()) {
+            if (key.startsWith(QUEUE_WEIGHT_PREFIX)) {
+                weights.put(key.substring(QUEUE_WEIGHT_PREFIX.length()), (int) longSetting(key, 1));
+            }
+        }
+        this.queueWeights = Collections.unmodifiableMap(weights);
+
+        Object misfire = values.get("schedule-misfire-policy");
+        MisfirePolicy policy;
+        try {
+            policy = MisfirePolicy.fromName(misfire == null ? null : misfire.toString());
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage() + "; using " + MisfirePolicy.DEFAULT.getName());
+            policy = MisfirePolicy.DEFAULT;
+        }
+        this.misfirePolicy = policy;
+
+        this.autoscaleIntervalMillis = Math.max(1, longSetting("autoscale-interval-ms", DEFAULT_AUTOSCALE_INTERVAL_MS));
+        this.autoscaleTargetWaitMillis = longSetting("autoscale-target-wait-ms", DEFAULT_AUTOSCALE_TARGET_WAIT_MS);
+        this.autoscaleMaxLoad = doubleSetting("autoscale-max-load", DEFAULT_AUTOSCALE_MAX_LOAD);
+        this.autoscaleCooldownMillis = longSetting("autoscale-cooldown-ms", DEFAULT_AUTOSCALE_COOLDOWN_MS);
+        this.jobLogMaxBytes = longSetting("job-log-max-bytes", JobLogs.DEFAULT_MAX_BYTES);
+        this.jobLogBackups = (int) longSetting("job-log-backups", JobLogs.DEFAULT_BACKUPS);
+
+        // retain-<state>-seconds / retain-<state>-count, for COMPLETED and DEAD
+        Map<Job.JobState, Duration> maxAge = new EnumMap<>(Job.JobState.class);
+        Map<Job.JobState, Integer> maxCount = new EnumMap<>(Job.JobState.class);
+        for (Job.JobState state : RetentionPolicy.EVICTABLE_STATES) {
+            String prefix = "retain-" + state.name().toLowerCase(Locale.ROOT) + "-";
+            long seconds = longSetting(prefix + "seconds", -1);
+            if (seconds >= 0) {
+                maxAge.put(state, Duration.ofSeconds(seconds));
+            }
+            long count = longSetting(prefix + "count", -1);
+            if (count >= 0) {
+                maxCount.put(state, (int) Math.min(count, Integer.MAX_VALUE));
+            }
+        }
+        this.retentionPolicy = new RetentionPolicy(maxAge, maxCount);
+        this.retentionIntervalMillis = Math.max(1, longSetting("retention-interval-ms", DEFAULT_RETENTION_INTERVAL_MS));
+    }
+
+    /**
+     * @return The raw value of a key as stored in config.json, or null
+     */
+    public Object get(String key) {
+        return values.get(key);
+    }
+
+    public Map<String, Object> getAll() {
+        return values;
+    }
+
+    /**
+     * @return The storage-engine setting, or null for the default engine
+     */
+    public String getStorageEngine() {
+        return storageEngine;
+    }
+
+    /**
+     * @return The store-codec setting, or null for the default codec
+     */
+    public String getStoreCodec() {
+        return storeCodec;
+    }
+
+    public int getStoreShards() {
+        return storeShards;
+    }
+
+    /**
+     * @return What jobs are placed in shards by: "id" or "queue"
+     */
+    public String getShardBy() {
+        return shardBy;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public long getPollIntervalMillis() {
+        return pollIntervalMillis;
+    }
+
+    public long getBaseBackoffMillis() {
+        return baseBackoffMillis;
+    }
+
+    public long getDefaultTimeoutSeconds() {
+        return defaultTimeoutSeconds;
+    }
+
+    public long getLeaseMillis() {
+        return leaseMillis;
+    }
+
+    public long getCommitIntervalMillis() {
+        return commitIntervalMillis;
+    }
+
+    public int getCommitBatchSize() {
+        return commitBatchSize;
+    }
+
+    public Map<String, Integer> getQueueWeights() {
+        return queueWeights;
+    }
+
+    public MisfirePolicy getMisfirePolicy() {
+        return misfirePolicy;
+    }
+
+    public long getAutoscaleIntervalMillis() {
+        return autoscaleIntervalMillis;
+    }
+
+    public long getAutoscaleTargetWaitMillis() {
+        return autoscaleTargetWaitMillis;
+    }
+
+    public double getAutoscaleMaxLoad() {
+        return autoscaleMaxLoad;
+    }
+
+    public long getAutoscaleCooldownMillis() {
+        return autoscaleCooldownMillis;
+    }
+
+    public long getJobLogMaxBytes() {
+        return jobLogMaxBytes;
+    }
+
+    public int getJobLogBackups() {
+        return jobLogBackups;
+    }
+
+    /**
+     * @return Which finished jobs the worker daemon moves to the archive; keeps every
+     *         job unless a retain-* key is set
+     */
+    public RetentionPolicy getRetentionPolicy() {
+        return retentionPolicy;
+    }
+
+    public long getRetentionIntervalMillis() {
+        return retentionIntervalMillis;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof ConfigSnapshot && values.equals(((ConfigSnapshot) other).values);
+    }
+
+    @Override
+    public int hashCode() {
+        return values.hashCode();
+    }
+
+    private String stringSetting(String key) {
+        Object value = values.get(key);
+        return value != null ? value.toString() : null;
+    }
+
+    private long longSetting(String key, long defaultValue) {
+        Object value = values.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value != null) {
+            try {
+                return Long.parseLong(value.toString().trim());
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring invalid number in configuration: " + key + " = " + value);
+            }
+        }
+        return defaultValue;
+    }
+
+    private double doubleSetting(String key, double defaultValue) {
+        Object value = values.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value != null) {
+            try {
+                return Double.parseDouble(value.toString().trim());
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring invalid number in configuration: " + key + " = " + value);
+            }
+        }
+        return defaultValue;
+    }
+}
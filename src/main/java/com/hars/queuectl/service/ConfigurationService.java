@@ -1,19 +1,39 @@
 package com.hars.queuectl.service;
 
-import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 
+/**
+ * Reads and writes config.json. The parsed file is cached as an immutable
+ * {@link ConfigSnapshot}; {@link #refresh()} swaps in a new snapshot when the file has
+ * changed, so a long-running worker sees {@code config set} without rereading the file
+ * on every lookup.
+ */
 public class ConfigurationService {
     
-    private static final String CONFIG_FILE = "config.json";
+    public static final String CONFIG_FILE = "config.json";
+    private final Path file;
     private final ObjectMapper objectMapper;
+    private final AtomicReference<ConfigSnapshot> snapshot = new AtomicReference<>();
+    // Identity, modification time and size of the file the current snapshot was read from
+    private volatile String loadedStamp;
     
     public ConfigurationService() {
+        this(Paths.get(CONFIG_FILE));
+    }
+    
+    ConfigurationService(Path file) {
+        this.file = file;
         this.objectMapper = new ObjectMapper();
         this.objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
     }
@@ -22,14 +42,19 @@ public class ConfigurationService {
      * Initialize the configuration file
      */
     public void initialize() {
-        File file = new File(CONFIG_FILE);
-        if (!file.exists()) {
+        if (!Files.exists(file)) {
             // Create default configuration
             Map<String, Object> defaultConfig = new HashMap<>();
-            defaultConfig.put("max-retries", 3);
-            defaultConfig.put("poll-interval-ms", 500);
-            defaultConfig.put("base-backoff-ms", 1000);
-            defaultConfig.put("default-timeout-seconds", 300); // 5 minutes default
+            defaultConfig.put("max-retries", ConfigSnapshot.DEFAULT_MAX_RETRIES);
+            defaultConfig.put("poll-interval-ms", ConfigSnapshot.DEFAULT_POLL_INTERVAL_MS);
+            defaultConfig.put("base-backoff-ms", ConfigSnapshot.DEFAULT_BASE_BACKOFF_MS);
+            defaultConfig.put("default-timeout-seconds", ConfigSnapshot.DEFAULT_TIMEOUT_SECONDS); // 5 minutes default
+            defaultConfig.put("storage-engine", "log");
+            defaultConfig.put("store-codec", "binary");
+            defaultConfig.put("lease-seconds", JobRepository.DEFAULT_LEASE_MS / 1000);
+            defaultConfig.put("commit-interval-ms", ConfigSnapshot.DEFAULT_COMMIT_INTERVAL_MS);
+            defaultConfig.put("commit-batch-size", ConfigSnapshot.DEFAULT_COMMIT_BATCH_SIZE);
+            defaultConfig.put("schedule-misfire-policy", "coalesce");
             saveConfig(defaultConfig);
         }
     }
@@ -38,8 +63,7 @@ public class ConfigurationService {
      * Get a configuration value
      */
     public Object get(String key) {
-        Map<String, Object> config = loadConfig();
-        return config.get(key);
+        return snapshot().get(key);
     }
     
     /**
@@ -49,13 +73,58 @@ public class ConfigurationService {
         Map<String, Object> config = loadConfig();
         config.put(key, value);
         saveConfig(config);
+        refresh();
     }
     
     /**
      * Get all configuration
      */
     public Map<String, Object> getAll() {
-        return loadConfig();
+        return snapshot().getAll();
+    }
+    
+    /**
+     * @return The configuration as last read, reading the file on first use
+     */
+    public ConfigSnapshot snapshot() {
+        ConfigSnapshot current = snapshot.get();
+        return current != null ? current : refresh();
+    }
+    
+    /**
+     * Rereads the file if it changed since the current snapshot was read. A file that
+     * cannot be parsed leaves the current snapshot in place.
+     * @return The snapshot in effect afterwards
+     */
+    public synchronized ConfigSnapshot refresh() {
+        String stamp = stampOf(file);
+        ConfigSnapshot current = snapshot.get();
+        if (current != null && stamp.equals(loadedStamp)) {
+            return current;
+        }
+        try {
+            current = new ConfigSnapshot(loadConfig());
+        } catch (RuntimeException e) {
+            if (current == null) {
+                throw e;
+            }
+            System.err.println("Keeping previous configuration: " + e.getMessage());
+            return current;
+        }
+        loadedStamp = stamp;
+        snapshot.set(current);
+        return current;
+    }
+    
+    private static String stampOf(Path file) {
+        try {
+            // Every save renames a new file into place, so the file key changes even
+            // when two saves land within the timestamp resolution
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return attributes.fileKey() + "/" + attributes.lastModifiedTime().toMillis() + "/" + attributes.size();
+        } catch (IOException e) {
+            return "missing";
+        }
     }
     
     /**
@@ -64,22 +133,24 @@ public class ConfigurationService {
     @SuppressWarnings("unchecked")
     private Map<String, Object> loadConfig() {
         try {
-            File file = new File(CONFIG_FILE);
-            if (!file.exists()) {
+            if (!Files.exists(file)) {
                 return new HashMap<>();
             }
-            return objectMapper.readValue(file, Map.class);
+            return objectMapper.readValue(file.toFile(), Map.class);
         } catch (IOException e) {
             throw new RuntimeException("Failed to load configuration", e);
         }
     }
     
     /**
-     * Save configuration to file
+     * Save configuration to file. The new file replaces the old one in a single rename,
+     * so a worker reloading it never sees a partly written file.
      */
     private void saveConfig(Map<String, Object> config) {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
         try {
-            objectMapper.writeValue(new File(CONFIG_FILE), config);
+            objectMapper.writeValue(temp.toFile(), config);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
         } catch (IOException e) {
             throw new RuntimeException("Failed to save configuration", e);
         }
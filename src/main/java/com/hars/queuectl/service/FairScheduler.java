@@ -0,0 +1,187 @@
+package com.hars.queuectl.service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.hars.queuectl.model.Job;
+
+/**
+ * Decides which PENDING job runs next. Each named queue keeps a heap ordered by
+ * priority (highest first) and then by arrival; queues share workers in proportion
+ * to their weights using stride scheduling: every claim advances the queue's pass by
+ * {@code STRIDE / weight}, and the non-empty queue with the lowest pass goes next.
+ * Selecting a job is O(log q + log n) for q queues and n pending jobs.
+ *
+ * Jobs that leave PENDING are dropped lazily when they reach the top of their heap.
+ * Not thread-safe; {@link JobIndex} is only used under the repository's lock.
+ */
+class FairScheduler {
+
+    static final int DEFAULT_WEIGHT = 1;
+
+    private static final long STRIDE = 1L << 20;
+
+    private final Map<String, QueueState> queues;
+    private final TreeSet<QueueState> active;
+    private final Map<String, Entry> entries;
+    private Map<String, Integer> weights;
+    private long sequence;
+    private long virtualTime;
+
+    FairScheduler() {
+        this.queues = new HashMap<>();
+        this.active = new TreeSet<>();
+        this.entries = new HashMap<>();
+        this.weights = Collections.emptyMap();
+    }
+
+    /**
+     * @param weights Share of each named queue; queues not listed get {@link #DEFAULT_WEIGHT}
+     */
+    void setWeights(Map<String, Integer> weights) {
+        this.weights = new HashMap<>(weights);
+        for (QueueState queue : queues.values()) {
+            queue.stride = STRIDE / weightOf(queue.name);
+        }
+    }
+
+    /**
+     * Adds a job that just became PENDING, or whose priority or queue changed
+     */
+    void add(Job job) {
+        remove(job.getId());
+        QueueState queue = queues.computeIfAbsent(job.getQueueName(), QueueState::new);
+        Entry entry = new Entry(job, sequence++);
+        entries.put(job.getId(), entry);
+        queue.heap.add(entry);
+        queue.live++;
+        if (queue.live == 1) {
+            // A queue that was idle does not get to catch up on the time it missed
+            queue.pass = Math.max(queue.pass, virtualTime);
+            active.add(queue);
+        }
+    }
+
+    /**
+     * Forgets a job that left PENDING (its heap entry is discarded later)
+     */
+    void remove(String jobId) {
+        Entry entry = entries.remove(jobId);
+        if (entry == null) {
+            return;
+        }
+        QueueState queue = queues.get(entry.job.getQueueName());
+        queue.live--;
+        if (queue.live == 0) {
+            active.remove(queue);
+            queue.heap.clear();
+        }
+    }
+
+    boolean contains(String jobId) {
+        return entries.containsKey(jobId);
+    }
+
+    /**
+     * @return Id of the job that should run next, without claiming it
+     */
+    String peek() {
+        if (active.isEmpty()) {
+            return null;
+        }
+        return top(active.first()).job.getId();
+    }
+
+    /**
+     * Charges the next job's queue for one claim and returns the job's id. The caller
+     * moves the job out of PENDING, which removes it from the scheduler.
+     */
+    String next() {
+        if (active.isEmpty()) {
+            return null;
+        }
+        QueueState queue = active.pollFirst();
+        String jobId = top(queue).job.getId();
+        virtualTime = queue.pass;
+        queue.pass += queue.stride;
+        active.add(queue);
+        return jobId;
+    }
+
+    /**
+     * @return Number of PENDING jobs in each queue that has any, by queue name
+     */
+    Map<String, Integer> depthByQueue() {
+        Map<String, Integer> depth = new TreeMap<>();
+        for (QueueState queue : queues.values()) {
+            if (queue.live > 0) {
+                depth.put(queue.name, queue.live);
+            }
+        }
+        return depth;
+    }
+
+    void clear() {
+        queues.clear();
+        active.clear();
+        entries.clear();
+        virtualTime = 0;
+    }
+
+    private int weightOf(String queue) {
+        Integer weight = weights.get(queue);
+        return weight != null && weight > 0 ? weight : DEFAULT_WEIGHT;
+    }
+
+    /**
+     * @return The live entry at the top of a non-empty queue's heap
+     */
+    private Entry top(QueueState queue) {
+        while (true) {
+            Entry entry = queue.heap.peek();
+            if (entries.get(entry.job.getId()) == entry) {
+                return entry;
+            }
+            queue.heap.poll();
+        }
+    }
+
+    private final class QueueState implements Comparable<QueueState> {
+        private final String name;
+        private final PriorityQueue<Entry> heap = new PriorityQueue<>();
+        private long stride;
+        private long pass;
+        private int live;
+
+        QueueState(String name) {
+            this.name = name;
+            this.stride = STRIDE / weightOf(name);
+        }
+
+        @Override
+        public int compareTo(QueueState other) {
+            int byPass = Long.compare(pass, other.pass);
+            return byPass != 0 ? byPass : name.compareTo(other.name);
+        }
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        private final Job job;
+        private final long sequence;
+
+        Entry(Job job, long sequence) {
+            this.job = job;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int byPriority = Integer.compare(other.job.getPriority(), job.getPriority());
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.hars.queuectl.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Delivers file creations and modifications in watched directories to listeners on
+ * a single background thread, so other threads can block instead of polling the disk.
+ * Events that arrive together are coalesced into one call per file.
+ */
+public class FileWatcher implements Closeable {
+
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories;
+    private final Map<Path, List<Consumer<Path>>> listeners;
+    private Thread thread;
+
+    public FileWatcher() throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.directories = new ConcurrentHashMap<>();
+        this.listeners = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Registers a listener for changes to files in a directory
+     * @param directory Directory to watch (not recursive)
+     * @param listener Called with the changed file, or with the directory itself if events were lost
+     */
+    public void watch(Path directory, Consumer<Path> listener) throws IOException {
+        Path dir = directory.toAbsolutePath().normalize();
+        if (!listeners.containsKey(dir)) {
+            WatchKey key = dir.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            directories.put(key, dir);
+        }
+        listeners.computeIfAbsent(dir, d -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    public void start() {
+        thread = new Thread(this::run, "file-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            // Ignore - the watcher thread exits either way
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Path dir = directories.get(key);
+
+                Set<Path> changed = new LinkedHashSet<>();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        changed.add(dir);
+                    } else {
+                        changed.add(dir.resolve((Path) event.context()));
+                    }
+                }
+                key.reset();
+
+                if (dir == null) {
+                    continue;
+                }
+                for (Path path : changed) {
+                    for (Consumer<Path> listener : new ArrayList<>(listeners.get(dir))) {
+                        try {
+                            listener.accept(path);
+                        } catch (RuntimeException e) {
+                            System.err.println("File watch listener failed for " + path + ": " + e.getMessage());
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Shutting down
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.hars.queuectl.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import com.hars.queuectl.model.Job;
+
+/**
+ * Collects job updates from many threads and hands them to a single writer thread,
+ * which commits everything that arrived within a short interval as one durable write.
+ * Each caller gets a future that completes once its update is on disk. Submitting and
+ * closing share a lock, so nothing can be queued behind the shutdown marker and every
+ * accepted update is committed or failed.
+ */
+class GroupCommitter {
+
+    private static final Pending SHUTDOWN = new Pending(null);
+
+    private final Function<List<Job>, boolean[]> commit;
+    private volatile long intervalMillis;
+    private volatile int maxBatch;
+    private final BlockingQueue<Pending> queue;
+    private final Thread thread;
+    private boolean closed;
+
+    /**
+     * @param commit Applies a batch in one write and reports which updates were accepted
+     * @param intervalMillis How long to wait for more updates after the first one arrives
+     * @param maxBatch Commit immediately once this many updates are waiting
+     */
+    GroupCommitter(Function<List<Job>, boolean[]> commit, long intervalMillis, int maxBatch) {
+        this.commit = commit;
+        setLimits(intervalMillis, maxBatch);
+        this.queue = new LinkedBlockingQueue<>();
+        this.thread = new Thread(this::run, "group-commit");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Changes how batches are formed, starting with the next batch
+     */
+    void setLimits(long intervalMillis, int maxBatch) {
+        this.intervalMillis = Math.max(intervalMillis, 0);
+        this.maxBatch = Math.max(maxBatch, 1);
+    }
+
+    /**
+     * Queues an update for the next batch
+     * @return Completes with true once the update is durable, or false if it was rejected
+     */
+    CompletableFuture<Boolean> submit(Job job) {
+        Pending pending = new Pending(job);
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Group commit is shut down");
+            }
+            queue.add(pending);
+        }
+        return pending.result;
+    }
+
+    /**
+     * Commits everything already queued, then stops the writer thread
+     */
+    void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.add(SHUTDOWN);
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>();
+        boolean shutdown = false;
+        try {
+            while (!shutdown) {
+                Pending first = queue.take();
+                if (first == SHUTDOWN) {
+                    break;
+                }
+                batch.add(first);
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+                while (batch.size() < maxBatch) {
+                    long remaining = deadline - System.nanoTime();
+                    Pending next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    if (next == SHUTDOWN) {
+                        shutdown = true;
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                commitBatch(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Anything left behind will never be written
+        for (Pending pending : batch) {
+            pending.result.completeExceptionally(new IllegalStateException("Group commit is shut down"));
+        }
+        Pending leftover;
+        while ((leftover = queue.poll()) != null) {
+            if (leftover != SHUTDOWN) {
+                leftover.result.completeExceptionally(new IllegalStateException("Group commit is shut down"));
+            }
+        }
+    }
+
+    private void commitBatch(List<Pending> batch) {
+        List<Job> jobs = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            jobs.add(pending.job);
+        }
+        try {
+            boolean[] applied = commit.apply(jobs);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(applied[i]);
+            }
+        } catch (RuntimeException e) {
+            for (Pending pending : batch) {
+                pending.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static final class Pending {
+        final Job job;
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        Pending(Job job) {
+            this.job = job;
+        }
+    }
+}
@@ -0,0 +1,449 @@
+package com.hars.queuectl.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import com.hars.queuectl.model.Job;
+import com.hars.queuectl.model.JobCounts;
+
+/**
+ * Resident index over the current state of every job: a hash map from id to job
+ * plus one FIFO queue per {@link Job.JobState}. Lookups by id are O(1) and listing a
+ * state is O(k) in the number of jobs in that state. The order in which PENDING jobs
+ * are claimed comes from a {@link FairScheduler} over priorities and named queues.
+ * PENDING jobs whose run_at is still in the future wait in a min-heap by run_at and
+ * only join the scheduler once {@link #releaseDue(Instant)} finds them due.
+ *
+ * Jobs per state and per queue are counted as jobs are put, for {@link #counts()}.
+ *
+ * Listings page through a sorted map of every job by {@link Position}, so a page
+ * starts with a seek instead of a scan from the first job. Jobs in the states the
+ * retention compactor evicts are also sorted by last update, so it finds the oldest
+ * without a scan.
+ *
+ * Leases of PROCESSING jobs and retry times of FAILED jobs are additionally kept in
+ * min-heaps ordered by deadline, so finding expired leases and due retries only
+ * looks at the entries that are actually due.
+ *
+ * Not thread-safe; {@link JobRepository} guards it with its lock.
+ */
+class JobIndex {
+
+    private final Map<String, Job> byId;
+    private final Map<Job.JobState, LinkedHashMap<String, Job>> byState;
+
+    // Renewals push a new entry; superseded entries are skipped when they come due
+    private final PriorityQueue<Deadline> leases;
+    private final PriorityQueue<Deadline> retries;
+
+    private final PriorityQueue<Deadline> delayed;
+
+    private final FairScheduler scheduler;
+
+    // Every job id in listing order
+    private final TreeMap<Position, String> listing;
+
+    // Ids of evictable jobs by (updated_at, id), per state
+    private final Map<Job.JobState, TreeMap<Position, String>> byUpdate;
+
+    private JobCounts counts;
+
+    JobIndex() {
+        this.byId = new LinkedHashMap<>();
+        this.byState = new EnumMap<>(Job.JobState.class);
+        for (Job.JobState state : Job.JobState.values()) {
+            byState.put(state, new LinkedHashMap<>());
+        }
+        this.leases = new PriorityQueue<>();
+        this.retries = new PriorityQueue<>();
+        this.delayed = new PriorityQueue<>();
+        this.scheduler = new FairScheduler();
+        this.listing = new TreeMap<>();
+        this.byUpdate = new EnumMap<>(Job.JobState.class);
+        for (Job.JobState state : RetentionPolicy.EVICTABLE_STATES) {
+            byUpdate.put(state, new TreeMap<>());
+        }
+        this.counts = new JobCounts();
+    }
+
+    /**
+     * Inserts or replaces a job. A job entering a new state joins the back of that state's queue.
+     */
+    void put(Job job) {
+        Job previous = byId.put(job.getId(), job);
+        if (previous != null && previous.getState() != job.getState()) {
+            byState.get(previous.getState()).remove(job.getId());
+        }
+        byState.get(job.getState()).put(job.getId(), job);
+        if (previous == null) {
+            counts.add(job);
+            listing.put(Position.of(job), job.getId());
+        } else {
+            if (previous.getState() != job.getState() || !previous.getQueueName().equals(job.getQueueName())) {
+                counts.remove(previous);
+                counts.add(job);
+            }
+            if (!Objects.equals(previous.getCreatedAt(), job.getCreatedAt())) {
+                listing.remove(Position.of(previous));
+                listing.put(Position.of(job), job.getId());
+            }
+            removeUpdated(previous);
+        }
+        TreeMap<Position, String> updated = byUpdate.get(job.getState());
+        if (updated != null) {
+            updated.put(Position.updated(job), job.getId());
+        }
+
+        if (job.getState() == Job.JobState.PENDING) {
+            if (job.getRunAt() != null && job.getRunAt().isAfter(Instant.now())) {
+                scheduler.remove(job.getId());
+                delayed.add(new Deadline(job.getRunAt(), job.getId()));
+            } else if (!scheduler.contains(job.getId())
+                    || previous.getPriority() != job.getPriority()
+                    || !previous.getQueueName().equals(job.getQueueName())) {
+                scheduler.add(job);
+            }
+        } else if (previous != null && previous.getState() == Job.JobState.PENDING) {
+            scheduler.remove(job.getId());
+        }
+
+        if (job.getState() == Job.JobState.PROCESSING) {
+            leases.add(new Deadline(leaseExpiry(job), job.getId()));
+        } else if (job.getState() == Job.JobState.FAILED) {
+            retries.add(new Deadline(retryAt(job), job.getId()));
+        }
+    }
+
+    /**
+     * Drops a job from the index. Its lease, retry or run_at deadline, if any, is
+     * skipped when it comes due.
+     * @return The removed job, or null if there was none with that id
+     */
+    Job remove(String id) {
+        Job job = byId.remove(id);
+        if (job == null) {
+            return null;
+        }
+        byState.get(job.getState()).remove(id);
+        scheduler.remove(id);
+        listing.remove(Position.of(job));
+        removeUpdated(job);
+        counts.remove(job);
+        return job;
+    }
+
+    private void removeUpdated(Job job) {
+        TreeMap<Position, String> updated = byUpdate.get(job.getState());
+        if (updated != null) {
+            updated.remove(Position.updated(job));
+        }
+    }
+
+    /**
+     * Applies a record read from the store: a tombstone removes the job, anything else is put
+     */
+    void apply(Job job) {
+        if (job.isTombstone()) {
+            remove(job.getId());
+        } else {
+            put(job);
+        }
+    }
+
+    Job get(String id) {
+        return byId.get(id);
+    }
+
+    boolean contains(String id) {
+        return byId.containsKey(id);
+    }
+
+    /**
+     * @return The job that has been waiting longest in the given state, or null
+     */
+    Job first(Job.JobState state) {
+        Iterator<Job> iterator = byState.get(state).values().iterator();
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    /**
+     * @return The PENDING job the scheduler would hand out next, or null
+     */
+    Job peekPending() {
+        String id = scheduler.peek();
+        return id != null ? byId.get(id) : null;
+    }
+
+    /**
+     * Picks the next PENDING job and charges its queue's share; the caller must move
+     * the returned job out of PENDING
+     */
+    Job nextPending() {
+        String id = scheduler.next();
+        return id != null ? byId.get(id) : null;
+    }
+
+    /**
+     * @return Number of PENDING jobs per named queue
+     */
+    Map<String, Integer> pendingByQueue() {
+        return scheduler.depthByQueue();
+    }
+
+    void setQueueWeights(Map<String, Integer> weights) {
+        scheduler.setWeights(weights);
+    }
+
+    /**
+     * @param state One of {@link RetentionPolicy#EVICTABLE_STATES}
+     * @param before Only jobs last updated before this time, or null for any
+     * @return Up to limit of the least recently updated jobs in the given state, oldest
+     *         first (not copies)
+     */
+    List<Job> oldestInState(Job.JobState state, Instant before, int limit) {
+        TreeMap<Position, String> updated = byUpdate.get(state);
+        if (updated == null) {
+            throw new IllegalArgumentException("Jobs in state " + state + " are not ordered by update time");
+        }
+        Map<Position, String> candidates = before == null ? updated : updated.headMap(Position.before(before), false);
+        List<Job> oldest = new ArrayList<>(Math.min(limit, 1024));
+        for (String id : candidates.values()) {
+            if (oldest.size() == limit) {
+                break;
+            }
+            Job job = byId.get(id);
+            // Every entry has its job; skipping one is cheaper than failing retention
+            if (job != null) {
+                oldest.add(job);
+            }
+        }
+        return oldest;
+    }
+
+    /**
+     * @return Jobs in the given state, oldest first (read-only view)
+     */
+    Collection<Job> inState(Job.JobState state) {
+        return Collections.unmodifiableCollection(byState.get(state).values());
+    }
+
+    /**
+     * @return All jobs in insertion order (read-only view)
+     */
+    Collection<Job> all() {
+        return Collections.unmodifiableCollection(byId.values());
+    }
+
+    /**
+     * @param after Position to start after, or null to start with the first job
+     * @return Up to limit jobs accepted by the filter, in listing order (not copies)
+     */
+    List<Job> page(Position after, Predicate<Job> filter, int limit) {
+        Map<Position, String> tail = after == null ? listing : listing.tailMap(after, false);
+        List<Job> page = new ArrayList<>(Math.min(limit, 1024));
+        for (String id : tail.values()) {
+            Job job = byId.get(id);
+            if (filter.test(job)) {
+                page.add(job);
+                if (page.size() == limit) {
+                    break;
+                }
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Removes and returns the PROCESSING jobs whose lease expired at or before the given time
+     */
+    List<Job> expiredLeases(Instant now) {
+        return popDue(leases, now, Job.JobState.PROCESSING, JobIndex::leaseExpiry);
+    }
+
+    /**
+     * Removes and returns the FAILED jobs whose backoff has elapsed at the given time
+     */
+    List<Job> dueRetries(Instant now) {
+        return popDue(retries, now, Job.JobState.FAILED, JobIndex::retryAt);
+    }
+
+    /**
+     * Hands PENDING jobs whose run_at has arrived to the scheduler
+     * @return Number of jobs that became ready
+     */
+    int releaseDue(Instant now) {
+        List<Job> due = popDue(delayed, now, Job.JobState.PENDING, Job::getRunAt);
+        for (Job job : due) {
+            if (!scheduler.contains(job.getId())) {
+                scheduler.add(job);
+            }
+        }
+        return due.size();
+    }
+
+    /**
+     * @return Earliest lease expiry of a PROCESSING job (possibly a superseded entry), or null
+     */
+    Instant nextLeaseExpiry() {
+        Deadline next = leases.peek();
+        return next != null ? next.at : null;
+    }
+
+    /**
+     * @return Earliest retry time of a FAILED job (possibly a superseded entry), or null
+     */
+    Instant nextRetryAt() {
+        Deadline next = retries.peek();
+        return next != null ? next.at : null;
+    }
+
+    /**
+     * @return Earliest run_at of a delayed PENDING job (possibly a superseded entry), or null
+     */
+    Instant nextRunAt() {
+        Deadline next = delayed.peek();
+        return next != null ? next.at : null;
+    }
+
+    int size() {
+        return byId.size();
+    }
+
+    /**
+     * @return Jobs per state and queue (live view, not a copy)
+     */
+    JobCounts counts() {
+        return counts;
+    }
+
+    void clear() {
+        byId.clear();
+        for (LinkedHashMap<String, Job> queue : byState.values()) {
+            queue.clear();
+        }
+        for (TreeMap<Position, String> updated : byUpdate.values()) {
+            updated.clear();
+        }
+        leases.clear();
+        retries.clear();
+        delayed.clear();
+        scheduler.clear();
+        listing.clear();
+        counts = new JobCounts();
+    }
+
+    /**
+     * Pops deadlines up to the given time, skipping entries the job has since moved past
+     */
+    private List<Job> popDue(PriorityQueue<Deadline> deadlines, Instant now, Job.JobState state,
+                             Function<Job, Instant> deadlineOf) {
+        Map<String, Job> due = new LinkedHashMap<>();
+        while (!deadlines.isEmpty() && !deadlines.peek().at.isAfter(now)) {
+            Deadline deadline = deadlines.poll();
+            Job job = byId.get(deadline.id);
+            if (job != null && job.getState() == state && deadline.at.equals(deadlineOf.apply(job))) {
+                due.put(job.getId(), job);
+            }
+        }
+        return new ArrayList<>(due.values());
+    }
+
+    /**
+     * Jobs claimed before leases existed count as expired from their last update
+     */
+    private static Instant leaseExpiry(Job job) {
+        if (job.getLeaseExpiresAt() != null) {
+            return job.getLeaseExpiresAt();
+        }
+        return job.getUpdatedAt() != null ? job.getUpdatedAt() : Instant.EPOCH;
+    }
+
+    /**
+     * FAILED jobs written before retry times were persisted are due immediately
+     */
+    private static Instant retryAt(Job job) {
+        if (job.getNextRunAt() != null) {
+            return job.getNextRunAt();
+        }
+        return job.getUpdatedAt() != null ? job.getUpdatedAt() : Instant.EPOCH;
+    }
+
+    private static final class Deadline implements Comparable<Deadline> {
+        private final Instant at;
+        private final String id;
+
+        Deadline(Instant at, String id) {
+            this.at = at;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Deadline other) {
+            return at.compareTo(other.at);
+        }
+    }
+
+    /**
+     * Place of a job in listings: by creation time, then by id. Neither changes over a
+     * job's life, so a position stays valid as a cursor while jobs come and go.
+     */
+    static final class Position implements Comparable<Position> {
+        private static final Comparator<Position> ORDER = Comparator
+                .comparing((Position position) -> position.createdAt, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(position -> position.id);
+
+        private final Instant createdAt;
+        private final String id;
+
+        private Position(Instant createdAt, String id) {
+            this.createdAt = createdAt;
+            this.id = id;
+        }
+
+        static Position of(Job job) {
+            return new Position(job.getCreatedAt(), job.getId());
+        }
+
+        /**
+         * @return The job's place by last update instead of creation, for retention
+         */
+        static Position updated(Job job) {
+            return new Position(job.getUpdatedAt(), job.getId());
+        }
+
+        /**
+         * @return A position before every job created at or after the given time
+         */
+        static Position before(Instant createdAt) {
+            return new Position(createdAt, "");
+        }
+
+        @Override
+        public int compareTo(Position other) {
+            return ORDER.compare(this, other);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Position && compareTo((Position) other) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(createdAt, id);
+        }
+    }
+}
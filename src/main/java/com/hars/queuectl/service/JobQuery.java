@@ -0,0 +1,65 @@
+package com.hars.queuectl.service;
+
+import java.time.Instant;
+
+import com.hars.queuectl.model.Job;
+
+/**
+ * Which jobs a listing returns and where it starts. Listings run in creation order,
+ * ties broken by id, so the id of the last job on one page is the cursor for the next.
+ */
+public final class JobQuery {
+
+    private final Job.JobState state;
+    private final String queue;
+    private final Instant since;
+    private final String after;
+    private final int limit;
+
+    /**
+     * @param state Only jobs in this state, or null for every state
+     * @param queue Only jobs in this named queue, or null for every queue
+     * @param since Only jobs created at or after this time, or null
+     * @param after Id of the job to start after, or null to start with the oldest job
+     * @param limit Most jobs to return, or 0 for no limit
+     */
+    public JobQuery(Job.JobState state, String queue, Instant since, String after, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative: " + limit);
+        }
+        this.state = state;
+        this.queue = queue;
+        this.since = since;
+        this.after = after;
+        this.limit = limit;
+    }
+
+    public Job.JobState getState() {
+        return state;
+    }
+
+    public String getQueue() {
+        return queue;
+    }
+
+    public Instant getSince() {
+        return since;
+    }
+
+    public String getAfter() {
+        return after;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return Whether a job passes the filters; the cursor and limit are not checked here
+     */
+    public boolean matches(Job job) {
+        return (state == null || job.getState() == state)
+                && (queue == null || queue.equals(job.getQueueName()))
+                && (since == null || (job.getCreatedAt() != null && !job.getCreatedAt().isBefore(since)));
+    }
+}
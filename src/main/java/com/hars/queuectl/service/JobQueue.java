@@ -0,0 +1,76 @@
+package com.hars.queuectl.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import com.hars.queuectl.model.Job;
+import com.hars.queuectl.model.JobCounts;
+
+/**
+ * The operations CLI commands need from the queue. Implemented by {@link JobRepository}
+ * for direct access to the store, and by the RPC client when a worker daemon is running.
+ */
+public interface JobQueue {
+
+    /**
+     * Adds a new job to the queue
+     */
+    void addJob(Job job);
+
+    /**
+     * Adds several new jobs with a single write to the store
+     */
+    void addJobs(List<Job> jobs);
+
+    /**
+     * Updates an existing job
+     * @return true if the update was applied
+     */
+    boolean updateJob(Job job);
+
+    /**
+     * Finds a job by ID
+     */
+    Optional<Job> findJobById(String jobId);
+
+    /**
+     * Retrieves all jobs
+     */
+    List<Job> getAllJobs();
+
+    /**
+     * Filters jobs by state
+     */
+    List<Job> getJobsByState(Job.JobState state);
+
+    /**
+     * Passes the jobs a query selects to the action one at a time, oldest first,
+     * without holding the whole listing in memory
+     * @throws IllegalArgumentException if the query's cursor names an unknown job
+     */
+    void forEachJob(JobQuery query, Consumer<Job> action);
+
+    /**
+     * @return Number of jobs per state and per queue
+     */
+    JobCounts counts();
+
+    /**
+     * @return Number of jobs in each state
+     */
+    Map<Job.JobState, Integer> countByState();
+
+    /**
+     * @return Number of PENDING jobs in each named queue
+     */
+    Map<String, Integer> pendingByQueue();
+
+    /**
+     * Gets all jobs with state DEAD (Dead Letter Queue)
+     */
+    default List<Job> getDeadLetterQueue() {
+        return getJobsByState(Job.JobState.DEAD);
+    }
+}
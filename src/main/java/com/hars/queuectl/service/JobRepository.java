@@ -1,175 +1,664 @@
 package com.hars.queuectl.service;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.hars.queuectl.metrics.Metrics;
 import com.hars.queuectl.model.Job;
+import com.hars.queuectl.model.JobCounts;
+import com.hars.queuectl.storage.JobCodec;
+import com.hars.queuectl.storage.JobStore;
+import com.hars.queuectl.storage.JsonFileJobStore;
+import com.hars.queuectl.storage.LogJobStore;
+import com.hars.queuectl.storage.MappedJobStore;
 
-import java.io.File;
-import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.stream.Collectors;
-
-public class JobRepository {
-    private static final String JOBS_FILE = "jobs.json";
-    private final ObjectMapper objectMapper;
-    private final ReadWriteLock lock;
-    private final Lock readLock;
-    private final Lock writeLock;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Thread-safe access to jobs, split over one or more shards. Each shard has its own
+ * store, file lock, in-memory index and group commit, and a job lives in the shard
+ * picked by the hash of its id (or of its queue name, see {@link #SHARD_BY_QUEUE}), so
+ * writers on different shards never wait for each other. Within a shard, threads of
+ * one process are serialized by a read-write lock and writers in different processes
+ * by the store's file lock, which is held only while catching up with the log tail
+ * and appending the new records.
+ *
+ * Workers claim from the shards round-robin, skipping shards another thread of this
+ * process is busy with, and listings merge the shards. Idle workers block in
+ * {@link #awaitWork(long)} and are woken when jobs become PENDING in any shard, either
+ * in this process or, via {@link #onStoreChanged(Path)}, in another one.
+ */
+public class JobRepository implements JobQueue {
+    public static final String ENGINE_LOG = "log";
+    public static final String ENGINE_JSON = "json";
+    public static final String ENGINE_MAPPED = "mapped";
+    public static final long DEFAULT_LEASE_MS = 30_000;
+
+    // Values of the shard-by setting
+    public static final String SHARD_BY_ID = "id";
+    public static final String SHARD_BY_QUEUE = "queue";
+
+    // Jobs copied out of a shard per read lock hold while listing
+    private static final int LIST_PAGE_SIZE = 256;
+
+    private static final Comparator<Job> BY_UPDATED_AT =
+            Comparator.comparing(Job::getUpdatedAt, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final JobShard[] shards;
+    private final boolean shardByQueue;
+    private final WorkSignal workSignal;
+
+    // Shard the next claim starts at
+    private final AtomicInteger nextShard = new AtomicInteger();
 
     public JobRepository() {
-        this.objectMapper = new ObjectMapper();
-        this.objectMapper.registerModule(new JavaTimeModule());
-        this.objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
-        this.objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
-        
-        this.lock = new ReentrantReadWriteLock();
-        this.readLock = lock.readLock();
-        this.writeLock = lock.writeLock();
+        this(new ConfigurationService().snapshot());
+    }
+
+    private JobRepository(ConfigSnapshot config) {
+        this(createStores(config.getStorageEngine(), config.getStoreCodec(), config.getStoreShards()),
+                SHARD_BY_QUEUE.equalsIgnoreCase(config.getShardBy()));
+    }
+
+    public JobRepository(JobStore store) {
+        this(Collections.singletonList(store), false);
+    }
+
+    /**
+     * @param stores One store per shard, in shard order
+     * @param shardByQueue Place jobs by the hash of their queue name instead of their id
+     */
+    public JobRepository(List<JobStore> stores, boolean shardByQueue) {
+        if (stores.isEmpty()) {
+            throw new IllegalArgumentException("At least one store is required");
+        }
+        this.workSignal = new WorkSignal();
+        this.shardByQueue = shardByQueue;
+        this.shards = new JobShard[stores.size()];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new JobShard(stores.get(i), workSignal);
+        }
+    }
+
+    /**
+     * Creates the storage engine with the given name
+     * @param engine "log" (default), "json" or "mapped"
+     */
+    public static JobStore createStore(String engine) {
+        return createStore(engine, null);
+    }
+
+    /**
+     * Creates the storage engine with the given name
+     * @param engine "log" (default), "json" or "mapped"
+     * @param codec Record format for the log engine: "binary" (default) or "json"
+     */
+    public static JobStore createStore(String engine, String codec) {
+        return createStore(engine, codec, dataPath(engine));
+    }
+
+    /**
+     * Creates one store per shard, at {@link #shardPath(String, int)} when there are
+     * several. Refuses to open a layout that does not match the existing files, since
+     * jobs would then be looked up in the wrong shard.
+     *
+     * @param shards Number of shards
+     */
+    public static List<JobStore> createStores(String engine, String codec, int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("store-shards must be at least 1");
+        }
+        int stored = storedShards(engine);
+        if (stored != 0 && stored != shards) {
+            throw new IllegalStateException("The job store has " + stored + " shard(s) but store-shards is "
+                    + shards + "; run 'queuectl store convert --shards " + shards + "' to repartition it");
+        }
+        if (shards == 1) {
+            return Collections.singletonList(createStore(engine, codec));
+        }
+        List<JobStore> stores = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            stores.add(createStore(engine, codec, shardPath(engine, i)));
+        }
+        return stores;
     }
 
     /**
-     * Ensures the jobs.json file exists
+     * Creates a store of the given engine at an explicit location
+     * @param path Directory, or file for the json engine
+     */
+    public static JobStore createStore(String engine, String codec, Path path) {
+        if (engine == null || engine.isEmpty() || ENGINE_LOG.equalsIgnoreCase(engine)) {
+            return new LogJobStore(path, JobCodec.forName(codec));
+        }
+        if (ENGINE_JSON.equalsIgnoreCase(engine)) {
+            return new JsonFileJobStore(path.toFile());
+        }
+        if (ENGINE_MAPPED.equalsIgnoreCase(engine)) {
+            return new MappedJobStore(path);
+        }
+        throw new IllegalArgumentException("Unknown storage engine: " + engine);
+    }
+
+    /**
+     * @return Where an unsharded store of the given engine keeps its files
+     */
+    public static Path dataPath(String engine) {
+        if (ENGINE_JSON.equalsIgnoreCase(engine)) {
+            return Paths.get(JsonFileJobStore.JOBS_FILE);
+        }
+        if (ENGINE_MAPPED.equalsIgnoreCase(engine)) {
+            return Paths.get(MappedJobStore.MAP_DIR);
+        }
+        return Paths.get(LogJobStore.LOG_DIR);
+    }
+
+    /**
+     * @return Where shard {@code shard} of a sharded store keeps its files, e.g. jobs.wal.0
+     *         or jobs.0.json
+     */
+    public static Path shardPath(String engine, int shard) {
+        if (ENGINE_JSON.equalsIgnoreCase(engine)) {
+            String file = JsonFileJobStore.JOBS_FILE;
+            int dot = file.lastIndexOf('.');
+            return Paths.get(file.substring(0, dot) + "." + shard + file.substring(dot));
+        }
+        return Paths.get(dataPath(engine) + "." + shard);
+    }
+
+    /**
+     * @return Number of shards the files on disk are split into, or 0 if there is no store yet
+     */
+    public static int storedShards(String engine) {
+        int shards = 0;
+        while (Files.exists(shardPath(engine, shards))) {
+            shards++;
+        }
+        if (shards > 0) {
+            return shards;
+        }
+        boolean unsharded = Files.exists(dataPath(engine))
+                // The log engine imports a legacy jobs.json into an unsharded log
+                || (!ENGINE_JSON.equalsIgnoreCase(engine) && !ENGINE_MAPPED.equalsIgnoreCase(engine)
+                        && Files.exists(Paths.get(JsonFileJobStore.JOBS_FILE)));
+        return unsharded ? 1 : 0;
+    }
+
+    /**
+     * Picks the shard a job lives in. String.hashCode is fixed by the language
+     * specification, so every process and every release places a job the same way.
+     *
+     * @param byQueue Hash the queue name instead of the id
+     */
+    public static int shardOf(Job job, int shards, boolean byQueue) {
+        String key = byQueue ? job.getQueueName() : job.getId();
+        return Math.floorMod(key.hashCode(), shards);
+    }
+
+    /**
+     * Loads the current state from the store, creating it if necessary
      */
     public void initialize() {
-        writeLock.lock();
-        try {
-            File file = new File(JOBS_FILE);
-            if (!file.exists()) {
-                // Create empty jobs list
-                objectMapper.writeValue(file, new ArrayList<Job>());
-            }
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to initialize jobs file", e);
-        } finally {
-            writeLock.unlock();
+        for (JobShard shard : shards) {
+            shard.initialize();
         }
     }
 
+    /**
+     * @return Number of shards the jobs are split into
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
     /**
      * Finds the next job in PENDING state
      */
     public Optional<Job> findNextPendingJob() {
-        readLock.lock();
-        try {
-            List<Job> jobs = readJobsFromFile();
-            return jobs.stream()
-                    .filter(job -> job.getState() == Job.JobState.PENDING)
-                    .findFirst();
-        } finally {
-            readLock.unlock();
+        for (int i = 0; i < shards.length; i++) {
+            Job next = shards[(nextShard.get() + i) % shards.length].peekPending();
+            if (next != null) {
+                return Optional.of(next);
+            }
         }
+        return Optional.empty();
+    }
+
+    /**
+     * Claims the next pending job with a default lease owned by this process
+     */
+    public Optional<Job> findAndLockNextPendingJob() {
+        return findAndLockNextPendingJob(String.valueOf(ProcessHandle.current().pid()), DEFAULT_LEASE_MS);
     }
 
     /**
      * Atomically finds and locks the next pending job by changing its state to PROCESSING.
-     * This prevents multiple workers from picking up the same job.
-     * 
+     * This prevents multiple workers from picking up the same job. The claim is a lease:
+     * unless the owner renews it, the job goes back to PENDING once it expires.
+     * FAILED jobs whose retry time has come rejoin the pending queue first, and jobs
+     * scheduled with run_at become eligible once that time has passed.
+     *
+     * Each call starts at the next shard in turn. Shards another thread of this process
+     * is busy with are skipped on the first pass, so concurrent claims spread over the
+     * shards; priorities and queue weights apply within each shard.
+     *
+     * @param leaseOwner Identifies the worker claiming the job
+     * @param leaseMillis How long the claim stays valid without renewal
      * @return Optional containing the job if found and locked, empty otherwise
      */
-    public Optional<Job> findAndLockNextPendingJob() {
-        writeLock.lock();
-        try {
-            List<Job> jobs = readJobsFromFile();
-            
-            // Find the first pending job
-            Optional<Job> pendingJob = jobs.stream()
-                    .filter(job -> job.getState() == Job.JobState.PENDING)
-                    .findFirst();
-            
-            if (pendingJob.isPresent()) {
-                Job job = pendingJob.get();
-                
-                // Atomically change state to PROCESSING
-                job.setState(Job.JobState.PROCESSING);
-                job.setUpdatedAt(java.time.Instant.now());
-                
-                // Update in the list
-                for (int i = 0; i < jobs.size(); i++) {
-                    if (jobs.get(i).getId().equals(job.getId())) {
-                        jobs.set(i, job);
-                        break;
+    public Optional<Job> findAndLockNextPendingJob(String leaseOwner, long leaseMillis) {
+        if (shards.length == 1) {
+            return shards[0].claim(leaseOwner, leaseMillis, true);
+        }
+        int start = Math.floorMod(nextShard.getAndIncrement(), shards.length);
+        boolean[] busy = null;
+        for (int i = 0; i < shards.length; i++) {
+            int shard = (start + i) % shards.length;
+            Optional<Job> claimed = shards[shard].claim(leaseOwner, leaseMillis, false);
+            if (claimed == null) {
+                if (busy == null) {
+                    busy = new boolean[shards.length];
+                }
+                busy[shard] = true;
+            } else if (claimed.isPresent()) {
+                return claimed;
+            }
+        }
+        if (busy != null) {
+            for (int i = 0; i < shards.length; i++) {
+                int shard = (start + i) % shards.length;
+                if (busy[shard]) {
+                    Optional<Job> claimed = shards[shard].claim(leaseOwner, leaseMillis, true);
+                    if (claimed.isPresent()) {
+                        return claimed;
                     }
                 }
-                
-                // Write back to file
-                writeJobsToFile(jobs);
-                
-                return Optional.of(job);
             }
-            
-            return Optional.empty();
-        } finally {
-            writeLock.unlock();
         }
+        return Optional.empty();
     }
 
     /**
      * Adds a new job to the store
+     *
+     * @throws IllegalStateException if a job with the same id exists
      */
     public void addJob(Job job) {
-        writeLock.lock();
-        try {
-            List<Job> jobs = readJobsFromFile();
-            jobs.add(job);
-            writeJobsToFile(jobs);
-        } finally {
-            writeLock.unlock();
+        if (shardByQueue && shards.length > 1) {
+            // The same id may be stored under another queue, in another shard
+            checkNewIds(Collections.singletonList(job));
         }
+        shardFor(job).add(Collections.singletonList(job));
+        Metrics.JOBS_ENQUEUED.increment();
     }
 
     /**
-     * Updates an existing job in the store
+     * Adds several new jobs to the store with one append per shard
+     *
+     * @throws IllegalStateException if an id exists or is repeated; nothing is added then
+     *         unless another process adds one of the ids at the same time
      */
-    public void updateJob(Job updatedJob) {
-        writeLock.lock();
-        try {
-            List<Job> jobs = readJobsFromFile();
-            for (int i = 0; i < jobs.size(); i++) {
-                if (jobs.get(i).getId().equals(updatedJob.getId())) {
-                    jobs.set(i, updatedJob);
-                    break;
+    public void addJobs(List<Job> jobs) {
+        if (jobs.isEmpty()) {
+            return;
+        }
+        if (shards.length == 1) {
+            shards[0].add(jobs);
+        } else {
+            // Each shard checks its own part again under its write lock
+            checkNewIds(jobs);
+            List<List<Job>> byShard = new ArrayList<>(shards.length);
+            for (int i = 0; i < shards.length; i++) {
+                byShard.add(new ArrayList<>());
+            }
+            for (Job job : jobs) {
+                byShard.get(shardOf(job, shards.length, shardByQueue)).add(job);
+            }
+            for (int i = 0; i < shards.length; i++) {
+                if (!byShard.get(i).isEmpty()) {
+                    shards[i].add(byShard.get(i));
                 }
             }
-            writeJobsToFile(jobs);
-        } finally {
-            writeLock.unlock();
         }
+        Metrics.JOBS_ENQUEUED.add(jobs.size());
+    }
+
+    /**
+     * Updates an existing job in the store. An update from a worker whose lease was
+     * taken over by another worker is rejected, so a late finisher cannot overwrite
+     * the new owner's progress. Leaving PROCESSING releases the lease.
+     *
+     * @return true if the update was applied
+     */
+    public boolean updateJob(Job updatedJob) {
+        return shardFor(updatedJob).commitUpdates(Collections.singletonList(updatedJob))[0];
+    }
+
+    /**
+     * Queues an update for the next group commit of the job's shard, or applies it
+     * right away if group commit has not been started
+     *
+     * @return Completes with the result of {@link #updateJob(Job)} once the update is durable
+     */
+    public CompletableFuture<Boolean> updateJobAsync(Job updatedJob) {
+        return shardFor(updatedJob).updateAsync(updatedJob);
+    }
+
+    /**
+     * Starts batching {@link #updateJobAsync(Job)} calls into one write and one fsync
+     * per shard, or changes the batch limits if batching has already started
+     *
+     * @param intervalMillis How long a batch stays open after its first update
+     * @param maxBatch Number of updates that closes a batch early
+     */
+    public void startGroupCommit(long intervalMillis, int maxBatch) {
+        for (JobShard shard : shards) {
+            shard.startGroupCommit(intervalMillis, maxBatch);
+        }
+    }
+
+    /**
+     * Sets each named queue's share of the workers when several queues have jobs waiting
+     *
+     * @param weights Queue name to weight; queues not listed get weight 1
+     */
+    public void setQueueWeights(Map<String, Integer> weights) {
+        for (JobShard shard : shards) {
+            shard.setQueueWeights(weights);
+        }
+    }
+
+    /**
+     * Extends leases that are still held by their owners, in a single write per shard
+     *
+     * @param leases Job id to the lease owner that believes it is running the job
+     * @param leaseMillis New lease duration from now
+     * @return Ids of the jobs whose lease the owner no longer holds
+     */
+    public Set<String> renewLeases(Map<String, String> leases, long leaseMillis) {
+        Set<String> lost = new HashSet<>();
+        if (leases.isEmpty()) {
+            return lost;
+        }
+        Set<String> found = new HashSet<>();
+        if (shards.length == 1 || shardByQueue) {
+            // Leases carry no queue name, so with queue placement every shard looks for its own jobs
+            for (JobShard shard : shards) {
+                shard.renewLeases(leases, leaseMillis, lost, found);
+            }
+        } else {
+            Map<Integer, Map<String, String>> byShard = new HashMap<>();
+            for (Map.Entry<String, String> lease : leases.entrySet()) {
+                byShard.computeIfAbsent(shardOfId(lease.getKey()), shard -> new HashMap<>())
+                        .put(lease.getKey(), lease.getValue());
+            }
+            for (Map.Entry<Integer, Map<String, String>> entry : byShard.entrySet()) {
+                shards[entry.getKey()].renewLeases(entry.getValue(), leaseMillis, lost, found);
+            }
+        }
+        for (String jobId : leases.keySet()) {
+            if (!found.contains(jobId)) {
+                lost.add(jobId);
+            }
+        }
+        return lost;
+    }
+
+    /**
+     * Puts PROCESSING jobs whose lease has expired back to PENDING. Only the leases that
+     * are due are examined, in expiry order.
+     *
+     * @return The jobs that were requeued
+     */
+    public List<Job> requeueExpiredLeases() {
+        if (shards.length == 1) {
+            return shards[0].requeueExpiredLeases();
+        }
+        List<Job> requeued = new ArrayList<>();
+        for (JobShard shard : shards) {
+            requeued.addAll(shard.requeueExpiredLeases());
+        }
+        return requeued;
+    }
+
+    /**
+     * Picks the finished jobs a retention policy evicts: those older than the state's
+     * maximum age, then as many of the oldest as the state is over its maximum count.
+     * Each shard keeps these states sorted by last update and only reads from the front,
+     * so a pass costs the number of jobs evicted, not the size of the store.
+     *
+     * @param maxJobs Most jobs to return; the rest are picked by the next call
+     * @return Copies of the jobs to evict, least recently updated first
+     */
+    public List<Job> retentionCandidates(RetentionPolicy policy, Instant now, int maxJobs) {
+        Map<String, Job> candidates = new LinkedHashMap<>();
+        for (Job.JobState state : RetentionPolicy.EVICTABLE_STATES) {
+            Duration maxAge = policy.getMaxAge(state);
+            if (maxAge != null) {
+                for (JobShard shard : shards) {
+                    for (Job job : shard.oldestInState(state, now.minus(maxAge), maxJobs)) {
+                        candidates.put(job.getId(), job);
+                    }
+                }
+            }
+            Integer maxCount = policy.getMaxCount(state);
+            if (maxCount != null) {
+                int total = 0;
+                for (JobShard shard : shards) {
+                    total += shard.count(state);
+                }
+                int excess = Math.min(total - maxCount, maxJobs);
+                if (excess > 0) {
+                    // The oldest overall are among the oldest of each shard
+                    List<Job> oldest = new ArrayList<>();
+                    for (JobShard shard : shards) {
+                        oldest.addAll(shard.oldestInState(state, null, excess));
+                    }
+                    oldest.sort(BY_UPDATED_AT);
+                    for (Job job : oldest.subList(0, Math.min(excess, oldest.size()))) {
+                        candidates.putIfAbsent(job.getId(), job);
+                    }
+                }
+            }
+        }
+        List<Job> evicted = new ArrayList<>(candidates.values());
+        evicted.sort(BY_UPDATED_AT);
+        return evicted.size() > maxJobs ? new ArrayList<>(evicted.subList(0, maxJobs)) : evicted;
+    }
+
+    /**
+     * Removes jobs from their shards, one append and sync per shard. A job is skipped if
+     * it changed since it was read, e.g. a DEAD job that was retried in the meantime.
+     *
+     * @param expected Jobs as last read, e.g. from {@link #retentionCandidates}
+     * @return The jobs that were removed
+     */
+    public List<Job> removeJobs(List<Job> expected) {
+        return removeJobs(expected, removed -> { });
+    }
+
+    /**
+     * Like {@link #removeJobs(List)}, handing each shard's jobs to beforeRemoval once they
+     * are known to be removable and before their removal is written, e.g. to archive
+     * exactly the jobs that leave the store
+     */
+    public List<Job> removeJobs(List<Job> expected, Consumer<List<Job>> beforeRemoval) {
+        if (shards.length == 1) {
+            return shards[0].remove(expected, beforeRemoval);
+        }
+        Map<JobShard, List<Job>> byShard = new LinkedHashMap<>();
+        for (Job job : expected) {
+            byShard.computeIfAbsent(shardFor(job), shard -> new ArrayList<>()).add(job);
+        }
+        List<Job> removed = new ArrayList<>(expected.size());
+        for (Map.Entry<JobShard, List<Job>> entry : byShard.entrySet()) {
+            removed.addAll(entry.getKey().remove(entry.getValue(), beforeRemoval));
+        }
+        return removed;
     }
 
     /**
      * Retrieves all jobs
      */
     public List<Job> getAllJobs() {
-        readLock.lock();
-        try {
-            return new ArrayList<>(readJobsFromFile());
-        } finally {
-            readLock.unlock();
-        }
+        return merge(null);
     }
 
     /**
      * Filters jobs by state
      */
     public List<Job> getJobsByState(Job.JobState state) {
-        readLock.lock();
+        return merge(state);
+    }
+
+    /**
+     * Streams the jobs a query selects in listing order. Each shard is read a page at a
+     * time under its read lock and the pages are merged, so memory stays bounded by the
+     * page size whatever the size of the store, and workers are only held up per page.
+     *
+     * @throws IllegalArgumentException if the cursor names a job that does not exist
+     */
+    public void forEachJob(JobQuery query, Consumer<Job> action) {
+        JobIndex.Position start = null;
+        if (query.getAfter() != null) {
+            Job cursor = findJobById(query.getAfter())
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown job: " + query.getAfter()));
+            start = JobIndex.Position.of(cursor);
+        }
+        if (query.getSince() != null) {
+            JobIndex.Position since = JobIndex.Position.before(query.getSince());
+            if (start == null || since.compareTo(start) > 0) {
+                start = since;
+            }
+        }
+
+        int remaining = query.getLimit() > 0 ? query.getLimit() : Integer.MAX_VALUE;
+        PriorityQueue<ShardCursor> heads = new PriorityQueue<>();
+        for (JobShard shard : shards) {
+            ShardCursor cursor = new ShardCursor(shard, start);
+            if (cursor.advance(query, Math.min(LIST_PAGE_SIZE, remaining))) {
+                heads.add(cursor);
+            }
+        }
+        while (remaining > 0 && !heads.isEmpty()) {
+            ShardCursor cursor = heads.poll();
+            action.accept(cursor.take());
+            remaining--;
+            if (remaining > 0 && cursor.advance(query, Math.min(LIST_PAGE_SIZE, remaining))) {
+                heads.add(cursor);
+            }
+        }
+    }
+
+    /**
+     * @return Jobs per state and per queue, kept up to date by every state change
+     */
+    public JobCounts counts() {
+        JobCounts counts = new JobCounts();
+        for (JobShard shard : shards) {
+            shard.counts(counts);
+        }
+        return counts;
+    }
+
+    /**
+     * Reads the counters the configured store keeps next to its data, without loading
+     * any job; this is what lets {@code queuectl status} answer instantly without a
+     * worker daemon.
+     *
+     * @return The stored counts, or null if there is no store yet or any shard's
+     *         counters are behind its data
+     */
+    public static JobCounts readStoredCounts() {
+        ConfigSnapshot config = new ConfigurationService().snapshot();
+        if (storedShards(config.getStorageEngine()) != config.getStoreShards()) {
+            return null;
+        }
+        JobCounts counts = new JobCounts();
+        for (JobStore store : createStores(config.getStorageEngine(), config.getStoreCodec(), config.getStoreShards())) {
+            try (JobStore opened = store) {
+                opened.getLock().lockShared();
+                JobCounts stored = opened.readCounts();
+                if (stored == null) {
+                    return null;
+                }
+                counts.addAll(stored);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Streams a listing straight from the configured stores without loading them, for
+     * when there is no worker daemon; memory stays bounded whatever the store size, see
+     * {@link StoreListing}
+     *
+     * @throws IllegalArgumentException if the cursor names a job that does not exist
+     */
+    public static void forEachStoredJob(JobQuery query, Consumer<Job> action) {
+        ConfigSnapshot config = new ConfigurationService().snapshot();
+        List<JobStore> stores = createStores(config.getStorageEngine(), config.getStoreCodec(), config.getStoreShards());
         try {
-            List<Job> jobs = readJobsFromFile();
-            return jobs.stream()
-                    .filter(job -> job.getState() == state)
-                    .collect(Collectors.toList());
+            new StoreListing(stores, query).forEachJob(action);
         } finally {
-            readLock.unlock();
+            for (JobStore store : stores) {
+                store.close();
+            }
         }
     }
 
+    /**
+     * Counts jobs per state from the index, without copying any job
+     */
+    public Map<Job.JobState, Integer> countByState() {
+        Map<Job.JobState, Integer> counts = new EnumMap<>(Job.JobState.class);
+        for (JobShard shard : shards) {
+            shard.countByState(counts);
+        }
+        return counts;
+    }
+
+    /**
+     * Counts PENDING jobs per named queue from the scheduler
+     */
+    public Map<String, Integer> pendingByQueue() {
+        Map<String, Integer> counts = new HashMap<>();
+        for (JobShard shard : shards) {
+            shard.pendingByQueue(counts);
+        }
+        return counts;
+    }
+
+    /**
+     * @return How long the longest-waiting job that a shard would hand out next has
+     *         been eligible to run, in milliseconds, or 0 if no job is ready
+     */
+    public long nextPendingWaitMillis() {
+        long wait = 0;
+        for (JobShard shard : shards) {
+            wait = Math.max(wait, shard.nextPendingWaitMillis());
+        }
+        return wait;
+    }
+
     /**
      * Gets all jobs with state DEAD (Dead Letter Queue)
      */
@@ -181,40 +670,158 @@ public class JobRepository {
      * Finds a job by ID
      */
     public Optional<Job> findJobById(String jobId) {
-        readLock.lock();
-        try {
-            List<Job> jobs = readJobsFromFile();
-            return jobs.stream()
-                    .filter(job -> job.getId().equals(jobId))
-                    .findFirst();
-        } finally {
-            readLock.unlock();
+        if (!shardByQueue) {
+            return Optional.ofNullable(shards[shardOfId(jobId)].get(jobId));
+        }
+        for (JobShard shard : shards) {
+            Job job = shard.get(jobId);
+            if (job != null) {
+                return Optional.of(job);
+            }
         }
+        return Optional.empty();
     }
 
     /**
-     * Reads jobs from the file (internal helper method)
+     * Blocks until a job may be ready to claim: a job became PENDING, the earliest retry
+     * or run_at is due, {@link #wakeWorkers()} was called, or the timeout elapsed. Does not touch
+     * the store, so waiting costs no disk reads.
+     *
+     * @param maxWaitMillis Upper bound on the wait
      */
-    private List<Job> readJobsFromFile() {
-        try {
-            File file = new File(JOBS_FILE);
-            if (!file.exists() || file.length() == 0) {
-                return new ArrayList<>();
+    public void awaitWork(long maxWaitMillis) throws InterruptedException {
+        long epoch = workSignal.epoch();
+        long waitMillis = maxWaitMillis;
+        for (JobShard shard : shards) {
+            waitMillis = Math.min(waitMillis, shard.millisUntilWork());
+            if (waitMillis <= 0) {
+                return;
             }
-            return objectMapper.readValue(file, new TypeReference<List<Job>>() {});
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to read jobs from file", e);
         }
+        workSignal.await(epoch, waitMillis);
     }
 
     /**
-     * Writes jobs to the file (internal helper method)
+     * Wakes every thread blocked in {@link #awaitWork(long)}
      */
-    private void writeJobsToFile(List<Job> jobs) {
-        try {
-            objectMapper.writeValue(new File(JOBS_FILE), jobs);
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to write jobs to file", e);
+    public void wakeWorkers() {
+        workSignal.signalAll();
+    }
+
+    /**
+     * Picks up records another process appended to the shards stored in a directory;
+     * called by the file watcher
+     */
+    public void onStoreChanged(Path directory) {
+        Path changed = directory.toAbsolutePath().normalize();
+        for (JobShard shard : shards) {
+            if (shard.getDirectory().toAbsolutePath().normalize().equals(changed)) {
+                shard.onStoreChanged();
+            }
+        }
+    }
+
+    /**
+     * @return Directories to watch for writes by other processes
+     */
+    public Set<Path> getStoreDirectories() {
+        Set<Path> directories = new LinkedHashSet<>();
+        for (JobShard shard : shards) {
+            directories.add(shard.getDirectory());
+        }
+        return directories;
+    }
+
+    /**
+     * Releases the files and locks held open by the store
+     */
+    public void close() {
+        for (JobShard shard : shards) {
+            shard.close();
+        }
+    }
+
+    /**
+     * Lists one state, or all jobs if null. With several shards the lists are merged
+     * by creation time, so output does not depend on the shard count.
+     */
+    private List<Job> merge(Job.JobState state) {
+        if (shards.length == 1) {
+            return shards[0].jobs(state);
+        }
+        List<Job> jobs = new ArrayList<>();
+        for (JobShard shard : shards) {
+            jobs.addAll(shard.jobs(state));
+        }
+        jobs.sort(Comparator.comparing(Job::getCreatedAt, Comparator.nullsLast(Comparator.naturalOrder())));
+        return jobs;
+    }
+
+    /**
+     * Checks a batch against every shard before any of them is written, so a duplicate
+     * in one shard does not leave the batch half added
+     */
+    private void checkNewIds(List<Job> jobs) {
+        Set<String> ids = new HashSet<>();
+        for (Job job : jobs) {
+            if (!ids.add(job.getId())) {
+                throw new IllegalStateException("Job already exists: " + job.getId());
+            }
+        }
+        for (JobShard shard : shards) {
+            String existing = shard.findExisting(ids);
+            if (existing != null) {
+                throw new IllegalStateException("Job already exists: " + existing);
+            }
+        }
+    }
+
+    private JobShard shardFor(Job job) {
+        return shards.length == 1 ? shards[0] : shards[shardOf(job, shards.length, shardByQueue)];
+    }
+
+    private int shardOfId(String jobId) {
+        return Math.floorMod(jobId.hashCode(), shards.length);
+    }
+
+    /**
+     * A shard's place in a merged listing: the rest of its current page, and the
+     * position to fetch the next page after once that runs out
+     */
+    private static final class ShardCursor implements Comparable<ShardCursor> {
+        private final JobShard shard;
+        private final ArrayDeque<Job> page;
+        private JobIndex.Position position;
+        private boolean exhausted;
+
+        ShardCursor(JobShard shard, JobIndex.Position start) {
+            this.shard = shard;
+            this.page = new ArrayDeque<>();
+            this.position = start;
+        }
+
+        /**
+         * Fetches the next page if the current one is used up
+         * @return false once the shard has no more matching jobs
+         */
+        boolean advance(JobQuery query, int pageSize) {
+            if (page.isEmpty() && !exhausted) {
+                List<Job> next = shard.page(position, query, pageSize);
+                exhausted = next.size() < pageSize;
+                page.addAll(next);
+            }
+            return !page.isEmpty();
+        }
+
+        Job take() {
+            Job job = page.poll();
+            position = JobIndex.Position.of(job);
+            return job;
+        }
+
+        @Override
+        public int compareTo(ShardCursor other) {
+            return JobIndex.Position.of(page.peek()).compareTo(JobIndex.Position.of(other.page.peek()));
         }
     }
 }
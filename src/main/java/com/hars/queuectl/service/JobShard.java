@@ -0,0 +1,717 @@
+package com.hars.queuectl.service;
+
+import com.hars.queuectl.metrics.Metrics;
+import com.hars.queuectl.model.Job;
+import com.hars.queuectl.model.JobCounts;
+import com.hars.queuectl.storage.JobStore;
+import com.hars.queuectl.storage.StoreLock;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * One partition of the jobs behind a {@link JobRepository}: a store with its own
+ * cross-process file lock, the in-process read-write lock guarding it, the resident
+ * index over its jobs and, once started, its own group commit. Shards share nothing
+ * but the {@link WorkSignal}, so threads working on different shards never wait for
+ * each other.
+ */
+class JobShard {
+
+    private final JobStore store;
+    private final StoreLock storeLock;
+    private final ReadWriteLock lock;
+    private final Lock readLock;
+    private final Lock writeLock;
+    private final WorkSignal workSignal;
+
+    // Current state of every job in this shard, kept in sync with the store
+    private final JobIndex index;
+
+    // Batches updates from worker threads once started
+    private volatile GroupCommitter groupCommitter;
+
+    JobShard(JobStore store, WorkSignal workSignal) {
+        this.store = store;
+        this.storeLock = store.getLock();
+        this.index = new JobIndex();
+        this.workSignal = workSignal;
+
+        this.lock = new ReentrantReadWriteLock();
+        this.readLock = lock.readLock();
+        this.writeLock = lock.writeLock();
+    }
+
+    /**
+     * Loads the current state from the store, creating it if necessary
+     */
+    void initialize() {
+        lockForWrite();
+        try {
+            reload();
+            // Stores written before counters existed, or left behind by a crash, get them now
+            if (!index.counts().equals(store.readCounts())) {
+                store.writeCounts(index.counts());
+            }
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    Job peekPending() {
+        lockForRead();
+        try {
+            Job next = index.peekPending();
+            return next != null ? new Job(next) : null;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Claims the shard's next pending job; see {@link JobRepository#findAndLockNextPendingJob(String, long)}
+     *
+     * @param wait false to return null right away when another thread of this process holds the shard
+     * @return The claimed job, empty if none is ready, or null if the shard was busy
+     */
+    Optional<Job> claim(String leaseOwner, long leaseMillis, boolean wait) {
+        if (wait) {
+            lockForWrite();
+        } else if (!tryLockForWrite()) {
+            return null;
+        }
+        try {
+            refresh();
+            Instant now = Instant.now();
+            List<Job> changed = promoteDueRetries(now);
+            index.releaseDue(now);
+
+            // Take the highest-priority job of the queue whose turn it is
+            Job pendingJob = index.nextPending();
+
+            if (pendingJob != null) {
+                Metrics.QUEUE_WAIT.record(eligibleSince(pendingJob, now).until(now, ChronoUnit.NANOS));
+                Job job = new Job(pendingJob);
+
+                // Atomically change state to PROCESSING
+                job.setState(Job.JobState.PROCESSING);
+                job.setUpdatedAt(now);
+                job.setLeaseOwner(leaseOwner);
+                job.setLeaseExpiresAt(now.plusMillis(leaseMillis));
+
+                // Record the transition together with any promoted retries
+                index.put(job);
+                changed.add(job);
+                persist(changed);
+
+                return Optional.of(new Job(job));
+            }
+
+            persist(changed);
+            return Optional.empty();
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    /**
+     * Adds new jobs with one append and one sync. Ids are checked under the write lock,
+     * after catching up with other processes, so a job is never silently replaced.
+     *
+     * @throws IllegalStateException if an id is already stored or repeated in the batch;
+     *         nothing is added then
+     */
+    void add(List<Job> jobs) {
+        lockForWrite();
+        try {
+            refresh();
+            Set<String> ids = new HashSet<>();
+            for (Job job : jobs) {
+                if (index.contains(job.getId()) || !ids.add(job.getId())) {
+                    throw new IllegalStateException("Job already exists: " + job.getId());
+                }
+            }
+            List<Job> stored = new ArrayList<>(jobs.size());
+            for (Job job : jobs) {
+                Job copy = new Job(job);
+                index.put(copy);
+                stored.add(copy);
+            }
+            persist(stored);
+            sync();
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    /**
+     * Queues an update for the shard's next group commit, or applies it right away
+     * if group commit has not been started
+     */
+    CompletableFuture<Boolean> updateAsync(Job updatedJob) {
+        GroupCommitter committer = groupCommitter;
+        if (committer == null) {
+            return CompletableFuture.completedFuture(commitUpdates(Collections.singletonList(updatedJob))[0]);
+        }
+        return committer.submit(new Job(updatedJob));
+    }
+
+    synchronized void startGroupCommit(long intervalMillis, int maxBatch) {
+        if (groupCommitter == null) {
+            groupCommitter = new GroupCommitter(this::commitUpdates, intervalMillis, maxBatch);
+        } else {
+            groupCommitter.setLimits(intervalMillis, maxBatch);
+        }
+    }
+
+    void setQueueWeights(Map<String, Integer> weights) {
+        writeLock.lock();
+        try {
+            index.setQueueWeights(weights);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Extends the leases on jobs in this shard that are still held by their owners, in
+     * a single write. Ids of jobs in other shards are ignored.
+     *
+     * @param lost Receives the ids of jobs in this shard whose lease the owner no longer holds
+     * @param found Receives the ids of all jobs found in this shard
+     */
+    void renewLeases(Map<String, String> leases, long leaseMillis, Set<String> lost, Set<String> found) {
+        lockForWrite();
+        try {
+            refresh();
+            Instant expiresAt = Instant.now().plusMillis(leaseMillis);
+            List<Job> renewed = new ArrayList<>();
+            for (Map.Entry<String, String> lease : leases.entrySet()) {
+                Job current = index.get(lease.getKey());
+                if (current == null) {
+                    continue;
+                }
+                found.add(lease.getKey());
+                if (current.getState() != Job.JobState.PROCESSING
+                        || !Objects.equals(current.getLeaseOwner(), lease.getValue())) {
+                    lost.add(lease.getKey());
+                    continue;
+                }
+                Job job = new Job(current);
+                job.setLeaseExpiresAt(expiresAt);
+                index.put(job);
+                renewed.add(job);
+            }
+            persist(renewed);
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    /**
+     * Puts PROCESSING jobs whose lease has expired back to PENDING
+     *
+     * @return The jobs that were requeued
+     */
+    List<Job> requeueExpiredLeases() {
+        // Cheap in-memory check first, so an idle process does not touch the store
+        writeLock.lock();
+        try {
+            Instant next = index.nextLeaseExpiry();
+            if (next == null || next.isAfter(Instant.now())) {
+                return Collections.emptyList();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+
+        lockForWrite();
+        try {
+            refresh();
+            Instant now = Instant.now();
+            List<Job> requeued = new ArrayList<>();
+            for (Job expired : index.expiredLeases(now)) {
+                Job job = new Job(expired);
+                job.setState(Job.JobState.PENDING);
+                job.setUpdatedAt(now);
+                job.setLeaseOwner(null);
+                job.setLeaseExpiresAt(null);
+                index.put(job);
+                requeued.add(job);
+            }
+            persist(requeued);
+            return requeued;
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    /**
+     * @return Copies of the jobs in this shard, in the given state or all of them if null
+     */
+    List<Job> jobs(Job.JobState state) {
+        lockForRead();
+        try {
+            Collection<Job> jobs = state == null ? index.all() : index.inState(state);
+            return jobs.stream()
+                    .map(Job::new)
+                    .collect(Collectors.toList());
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Copies one page of a listing, holding the read lock only for that page
+     * @param after Position to continue after, or null to start with the oldest job
+     * @return Copies of up to limit jobs the query matches, in listing order
+     */
+    List<Job> page(JobIndex.Position after, JobQuery query, int limit) {
+        lockForRead();
+        try {
+            List<Job> page = index.page(after, query::matches, limit);
+            List<Job> copies = new ArrayList<>(page.size());
+            for (Job job : page) {
+                copies.add(new Job(job));
+            }
+            return copies;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * @param before Only jobs last updated before this time, or null for any
+     * @return Copies of up to limit of the least recently updated jobs in the state, oldest first
+     */
+    List<Job> oldestInState(Job.JobState state, Instant before, int limit) {
+        lockForRead();
+        try {
+            List<Job> oldest = index.oldestInState(state, before, limit);
+            List<Job> copies = new ArrayList<>(oldest.size());
+            for (Job job : oldest) {
+                copies.add(new Job(job));
+            }
+            return copies;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    int count(Job.JobState state) {
+        lockForRead();
+        try {
+            return index.inState(state).size();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Removes the given jobs with one append and one sync, skipping any that changed since
+     * they were read (another state or update time), e.g. a DEAD job that was retried
+     *
+     * @param beforeRemoval Gets the jobs about to be removed, under the lock and before
+     *                      their removal is written; if it throws, nothing is removed
+     * @return The jobs that were removed
+     */
+    List<Job> remove(List<Job> expected, Consumer<List<Job>> beforeRemoval) {
+        lockForWrite();
+        try {
+            refresh();
+            List<Job> removed = new ArrayList<>(expected.size());
+            for (Job job : expected) {
+                Job current = index.get(job.getId());
+                if (current == null || current.getState() != job.getState()
+                        || !Objects.equals(current.getUpdatedAt(), job.getUpdatedAt())) {
+                    continue;
+                }
+                removed.add(job);
+            }
+            if (removed.isEmpty()) {
+                return removed;
+            }
+            beforeRemoval.accept(removed);
+
+            List<Job> tombstones = new ArrayList<>(removed.size());
+            for (Job job : removed) {
+                index.remove(job.getId());
+                tombstones.add(Job.tombstone(job.getId()));
+            }
+            persist(tombstones);
+            sync();
+            return removed;
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    /**
+     * Adds this shard's jobs per state and queue to the given counts, including how many
+     * PENDING jobs are still waiting for their run_at
+     */
+    void counts(JobCounts into) {
+        lockForRead();
+        try {
+            int ready = 0;
+            for (int depth : index.pendingByQueue().values()) {
+                ready += depth;
+            }
+            JobCounts counts = new JobCounts(index.counts());
+            counts.setScheduled(counts.get(Job.JobState.PENDING) - ready);
+            into.addAll(counts);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Adds this shard's number of jobs in each state to the given counts
+     */
+    void countByState(Map<Job.JobState, Integer> counts) {
+        lockForRead();
+        try {
+            for (Job.JobState state : Job.JobState.values()) {
+                counts.merge(state, index.inState(state).size(), Integer::sum);
+            }
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Adds this shard's PENDING jobs per named queue to the given counts
+     */
+    void pendingByQueue(Map<String, Integer> counts) {
+        lockForRead();
+        try {
+            for (Map.Entry<String, Integer> entry : index.pendingByQueue().entrySet()) {
+                counts.merge(entry.getKey(), entry.getValue(), Integer::sum);
+            }
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * @return How long the job this shard would hand out next has been eligible to run,
+     *         in milliseconds, or 0 if no job is ready
+     */
+    long nextPendingWaitMillis() {
+        lockForRead();
+        try {
+            Job next = index.peekPending();
+            if (next == null) {
+                return 0;
+            }
+            Instant now = Instant.now();
+            return Math.max(0, eligibleSince(next, now).until(now, ChronoUnit.MILLIS));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * @return The first of the given ids that is stored in this shard, or null
+     */
+    String findExisting(Collection<String> jobIds) {
+        lockForRead();
+        try {
+            for (String jobId : jobIds) {
+                if (index.contains(jobId)) {
+                    return jobId;
+                }
+            }
+            return null;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    Job get(String jobId) {
+        lockForRead();
+        try {
+            Job job = index.get(jobId);
+            return job != null ? new Job(job) : null;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Checks the in-memory state only, without touching the store
+     *
+     * @return 0 if a job is ready to claim, otherwise milliseconds until the earliest
+     *         retry or run_at comes due, or Long.MAX_VALUE if none is scheduled
+     */
+    long millisUntilWork() {
+        writeLock.lock();
+        try {
+            Instant now = Instant.now();
+            index.releaseDue(now);
+            if (index.peekPending() != null) {
+                return 0;
+            }
+            long waitMillis = Long.MAX_VALUE;
+            Instant nextRetry = index.nextRetryAt();
+            if (nextRetry != null) {
+                waitMillis = Math.min(waitMillis, Math.max(0, now.until(nextRetry, ChronoUnit.MILLIS)));
+            }
+            Instant nextRun = index.nextRunAt();
+            if (nextRun != null) {
+                waitMillis = Math.min(waitMillis, Math.max(0, now.until(nextRun, ChronoUnit.MILLIS)));
+            }
+            return waitMillis;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Picks up records another process appended to the store
+     */
+    void onStoreChanged() {
+        writeLock.lock();
+        try {
+            refresh();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    Path getDirectory() {
+        return store.getDirectory();
+    }
+
+    void close() {
+        GroupCommitter committer = groupCommitter;
+        if (committer != null) {
+            committer.close();
+        }
+        writeLock.lock();
+        try {
+            store.close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Applies updates in order under one lock acquisition, then appends and syncs the
+     * accepted ones together
+     *
+     * @return Whether each update was applied
+     */
+    boolean[] commitUpdates(List<Job> updates) {
+        boolean[] applied = new boolean[updates.size()];
+        lockForWrite();
+        try {
+            refresh();
+            List<Job> changed = new ArrayList<>(updates.size());
+            for (int i = 0; i < updates.size(); i++) {
+                Job updatedJob = updates.get(i);
+                Job current = index.get(updatedJob.getId());
+                if (current == null) {
+                    continue;
+                }
+                if (current.getState() == Job.JobState.PROCESSING && current.getLeaseOwner() != null
+                        && !Objects.equals(current.getLeaseOwner(), updatedJob.getLeaseOwner())) {
+                    continue;
+                }
+                Job stored = new Job(updatedJob);
+                if (stored.getState() != Job.JobState.PROCESSING) {
+                    stored.setLeaseOwner(null);
+                    stored.setLeaseExpiresAt(null);
+                }
+                index.put(stored);
+                changed.add(stored);
+                applied[i] = true;
+            }
+            persist(changed);
+            sync();
+            return applied;
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    /**
+     * Takes the in-process write lock and then the cross-process store lock
+     */
+    private void lockForWrite() {
+        long start = System.nanoTime();
+        writeLock.lock();
+        try {
+            storeLock.lock();
+        } catch (RuntimeException e) {
+            writeLock.unlock();
+            throw e;
+        }
+        Metrics.LOCK_WAIT.recordSince(start);
+    }
+
+    /**
+     * Like {@link #lockForWrite()}, but gives up if another thread holds the write lock
+     */
+    private boolean tryLockForWrite() {
+        long start = System.nanoTime();
+        if (!writeLock.tryLock()) {
+            return false;
+        }
+        try {
+            storeLock.lock();
+        } catch (RuntimeException e) {
+            writeLock.unlock();
+            throw e;
+        }
+        Metrics.LOCK_WAIT.recordSince(start);
+        return true;
+    }
+
+    private void unlockWrite() {
+        storeLock.unlock();
+        writeLock.unlock();
+    }
+
+    /**
+     * Catches up with changes written by other processes, then downgrades to the
+     * read lock. The caller must release the read lock.
+     */
+    private void lockForRead() {
+        long start = System.nanoTime();
+        writeLock.lock();
+        Metrics.LOCK_WAIT.recordSince(start);
+        try {
+            refresh();
+            readLock.lock();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Applies records written since the last refresh (caller holds the write lock)
+     */
+    private void refresh() {
+        long start = System.nanoTime();
+        List<Job> changes = store.poll();
+        Metrics.STORE_READ.recordSince(start);
+        if (changes == null) {
+            reload();
+            return;
+        }
+        for (Job job : changes) {
+            index.apply(job);
+        }
+        signalWork(changes);
+    }
+
+    /**
+     * Rebuilds the in-memory state from the store (caller holds the write lock).
+     * Readers take the store lock shared so a concurrent compaction cannot remove
+     * files halfway through the replay.
+     */
+    private void reload() {
+        boolean sharedLock = !storeLock.isHeld();
+        if (sharedLock) {
+            storeLock.lockShared();
+        }
+        try {
+            long start = System.nanoTime();
+            List<Job> jobs = store.load();
+            Metrics.STORE_READ.recordSince(start);
+            index.clear();
+            for (Job job : jobs) {
+                index.put(job);
+            }
+            workSignal.signalAll();
+        } finally {
+            if (sharedLock) {
+                storeLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Writes state-change records and compacts the store when it asks for it
+     */
+    private void persist(List<Job> changed) {
+        if (changed.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        store.append(changed);
+        Metrics.STORE_WRITE.recordSince(start);
+        if (store.needsCompaction()) {
+            store.compact(new ArrayList<>(index.all()));
+        }
+        // The index is caught up with the store, so its counts are the store's
+        store.writeCounts(index.counts());
+        signalWork(changed);
+    }
+
+    private void sync() {
+        long start = System.nanoTime();
+        store.sync();
+        Metrics.STORE_SYNC.recordSince(start);
+    }
+
+    /**
+     * @return When the job last became eligible to be claimed: when it entered PENDING,
+     *         or its run_at if that is later
+     */
+    private static Instant eligibleSince(Job job, Instant now) {
+        Instant since = job.getUpdatedAt() != null ? job.getUpdatedAt() : now;
+        if (job.getRunAt() != null && job.getRunAt().isAfter(since)) {
+            since = job.getRunAt();
+        }
+        return since;
+    }
+
+    /**
+     * Wakes one idle worker per job that became PENDING, and all of them if a retry or
+     * run_at time changed so they can recompute how long to wait
+     */
+    private void signalWork(List<Job> changed) {
+        for (Job job : changed) {
+            if (job.getState() == Job.JobState.PENDING && job.getRunAt() == null) {
+                workSignal.signal();
+            } else if (job.getState() == Job.JobState.PENDING || job.getState() == Job.JobState.FAILED) {
+                workSignal.signalAll();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Moves FAILED jobs whose backoff has elapsed back to PENDING (caller holds the write lock)
+     */
+    private List<Job> promoteDueRetries(Instant now) {
+        List<Job> promoted = new ArrayList<>();
+        for (Job due : index.dueRetries(now)) {
+            Job job = new Job(due);
+            job.setState(Job.JobState.PENDING);
+            job.setNextRunAt(null);
+            job.setUpdatedAt(now);
+            index.put(job);
+            promoted.add(job);
+        }
+        return promoted;
+    }
+}
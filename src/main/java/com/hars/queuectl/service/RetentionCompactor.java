@@ -0,0 +1,61 @@
+package com.hars.queuectl.service;
+
+import java.time.Instant;
+import java.util.List;
+
+import com.hars.queuectl.model.Job;
+import com.hars.queuectl.storage.JobArchive;
+
+/**
+ * Moves finished jobs the {@link RetentionPolicy} no longer keeps from the job store to
+ * the {@link JobArchive}, so the store, and with it startup time, memory and listing
+ * cost, stays bounded by the working set instead of growing with every job ever run.
+ *
+ * Only jobs that are still unchanged when they are removed are archived: a job that
+ * changed since it was picked, e.g. a DEAD job retried from the DLQ, stays in the store
+ * and out of the archive. They are archived and synced before their removal is written,
+ * so a crash in between archives them again on the next pass rather than losing them.
+ * Each pass holds the archive lock, which keeps worker daemons from archiving the same
+ * jobs twice.
+ */
+class RetentionCompactor {
+
+    // Jobs evicted per archive write and per store append
+    static final int BATCH_SIZE = 10_000;
+
+    private final JobRepository jobRepository;
+    private final JobArchive archive;
+
+    RetentionCompactor(JobRepository jobRepository, JobArchive archive) {
+        this.jobRepository = jobRepository;
+        this.archive = archive;
+    }
+
+    /**
+     * Evicts everything the policy says to, a batch at a time
+     *
+     * @return Number of jobs moved to the archive
+     */
+    int run(RetentionPolicy policy) {
+        if (!policy.isEnabled()) {
+            return 0;
+        }
+        int evicted = 0;
+        archive.getLock().lock();
+        try {
+            while (true) {
+                List<Job> candidates = jobRepository.retentionCandidates(policy, Instant.now(), BATCH_SIZE);
+                if (candidates.isEmpty()) {
+                    break;
+                }
+                evicted += jobRepository.removeJobs(candidates, archive::append).size();
+                if (candidates.size() < BATCH_SIZE) {
+                    break;
+                }
+            }
+        } finally {
+            archive.getLock().unlock();
+        }
+        return evicted;
+    }
+}
@@ -0,0 +1,98 @@
+package com.hars.queuectl.service;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.hars.queuectl.model.Job;
+
+/**
+ * How long finished jobs stay in the job store before the retention compactor moves
+ * them to the archive: at most a given age since they entered their state, at most a
+ * given number per state, or both. Only COMPLETED and DEAD jobs are ever evicted; jobs
+ * that can still run belong to the working set however old they are.
+ */
+public final class RetentionPolicy {
+
+    public static final Set<Job.JobState> EVICTABLE_STATES =
+            Collections.unmodifiableSet(EnumSet.of(Job.JobState.COMPLETED, Job.JobState.DEAD));
+
+    public static final RetentionPolicy NONE = new RetentionPolicy(
+            new EnumMap<>(Job.JobState.class), new EnumMap<>(Job.JobState.class));
+
+    private final Map<Job.JobState, Duration> maxAge;
+    private final Map<Job.JobState, Integer> maxCount;
+
+    /**
+     * @param maxAge Oldest a job may get in each state, by time since its last update
+     * @param maxCount Most jobs to keep in each state, oldest evicted first
+     * @throws IllegalArgumentException for a state that is not evictable or a negative limit
+     */
+    public RetentionPolicy(Map<Job.JobState, Duration> maxAge, Map<Job.JobState, Integer> maxCount) {
+        for (Map.Entry<Job.JobState, Duration> entry : maxAge.entrySet()) {
+            checkState(entry.getKey());
+            if (entry.getValue().isNegative()) {
+                throw new IllegalArgumentException("Retention age must not be negative: " + entry.getValue());
+            }
+        }
+        for (Map.Entry<Job.JobState, Integer> entry : maxCount.entrySet()) {
+            checkState(entry.getKey());
+            if (entry.getValue() < 0) {
+                throw new IllegalArgumentException("Retention count must not be negative: " + entry.getValue());
+            }
+        }
+        this.maxAge = Collections.unmodifiableMap(maxAge.isEmpty()
+                ? new EnumMap<>(Job.JobState.class) : new EnumMap<>(maxAge));
+        this.maxCount = Collections.unmodifiableMap(maxCount.isEmpty()
+                ? new EnumMap<>(Job.JobState.class) : new EnumMap<>(maxCount));
+    }
+
+    /**
+     * @return Whether any state has a limit, i.e. whether the compactor has anything to do
+     */
+    public boolean isEnabled() {
+        return !maxAge.isEmpty() || !maxCount.isEmpty();
+    }
+
+    /**
+     * @return The oldest a job may get in the given state, or null to keep it however old
+     */
+    public Duration getMaxAge(Job.JobState state) {
+        return maxAge.get(state);
+    }
+
+    /**
+     * @return The most jobs to keep in the given state, or null for no limit
+     */
+    public Integer getMaxCount(Job.JobState state) {
+        return maxCount.get(state);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof RetentionPolicy)) {
+            return false;
+        }
+        RetentionPolicy that = (RetentionPolicy) other;
+        return maxAge.equals(that.maxAge) && maxCount.equals(that.maxCount);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * maxAge.hashCode() + maxCount.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "RetentionPolicy{maxAge=" + maxAge + ", maxCount=" + maxCount + "}";
+    }
+
+    private static void checkState(Job.JobState state) {
+        if (!EVICTABLE_STATES.contains(state)) {
+            throw new IllegalArgumentException("Only COMPLETED and DEAD jobs can be evicted, not " + state);
+        }
+    }
+}
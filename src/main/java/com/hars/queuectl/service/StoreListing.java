@@ -0,0 +1,173 @@
+package com.hars.queuectl.service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import com.hars.queuectl.model.Job;
+import com.hars.queuectl.storage.JobStore;
+
+/**
+ * Lists jobs straight from the stores, for a CLI with no worker daemon to ask, without
+ * loading every job the way {@link JobRepository#initialize()} does.
+ *
+ * Each pass streams the stores with {@link JobStore#scan(Consumer)} and keeps only a
+ * window of the first matching jobs in listing order, sized by the maximum heap.
+ * When the window overflows, its last job becomes the horizon and later jobs are left
+ * for the next pass, which starts after the last job printed. A small limit therefore
+ * costs one pass in constant memory; a full listing of a large store takes several.
+ * Each pass holds the stores' locks shared, so writers are only held up per pass.
+ */
+final class StoreListing {
+
+    // Memory allowed per job held in the window, generously above a typical job
+    private static final long BYTES_PER_JOB = 8 * 1024;
+    private static final int MIN_WINDOW = 256;
+    private static final int MAX_WINDOW = 256 * 1024;
+
+    private final List<JobStore> stores;
+    private final JobQuery query;
+    private final int maxWindow;
+
+    StoreListing(List<JobStore> stores, JobQuery query) {
+        this(stores, query, maxWindow());
+    }
+
+    /**
+     * @param maxWindow Most jobs a pass keeps
+     */
+    StoreListing(List<JobStore> stores, JobQuery query, int maxWindow) {
+        this.stores = stores;
+        this.query = query;
+        this.maxWindow = maxWindow;
+    }
+
+    /**
+     * Streams the jobs the query selects in listing order
+     *
+     * @throws IllegalArgumentException if the cursor names a job that does not exist
+     */
+    void forEachJob(Consumer<Job> action) {
+        JobIndex.Position start = null;
+        if (query.getAfter() != null) {
+            Job cursor = find(query.getAfter());
+            if (cursor == null) {
+                throw new IllegalArgumentException("Unknown job: " + query.getAfter());
+            }
+            start = JobIndex.Position.of(cursor);
+        }
+        if (query.getSince() != null) {
+            JobIndex.Position since = JobIndex.Position.before(query.getSince());
+            if (start == null || since.compareTo(start) > 0) {
+                start = since;
+            }
+        }
+
+        int remaining = query.getLimit() > 0 ? query.getLimit() : Integer.MAX_VALUE;
+        boolean inclusive = false;
+        while (remaining > 0) {
+            Window window = new Window(start, inclusive, Math.min(remaining, maxWindow));
+            scanAll(window::accept);
+            for (Job job : window.jobs.values()) {
+                if (remaining == 0) {
+                    return;
+                }
+                action.accept(job);
+                remaining--;
+            }
+            if (window.horizon == null) {
+                return;
+            }
+            if (window.jobs.isEmpty()) {
+                // Everything before the horizon went away while scanning; resume at it
+                start = window.horizon;
+                inclusive = true;
+            } else {
+                start = window.jobs.lastKey();
+                inclusive = false;
+            }
+        }
+    }
+
+    /**
+     * @return Most jobs a pass keeps within what the heap allows
+     */
+    private static int maxWindow() {
+        long byMemory = Runtime.getRuntime().maxMemory() / BYTES_PER_JOB;
+        return (int) Math.max(MIN_WINDOW, Math.min(MAX_WINDOW, byMemory));
+    }
+
+    /**
+     * @return The current state of a job, or null if it is not stored
+     */
+    private Job find(String id) {
+        Job[] found = new Job[1];
+        scanAll(job -> {
+            if (job.getId().equals(id)) {
+                found[0] = job.isTombstone() ? null : job;
+            }
+        });
+        return found[0];
+    }
+
+    private void scanAll(Consumer<Job> consumer) {
+        for (JobStore store : stores) {
+            store.getLock().lockShared();
+            try {
+                store.scan(consumer);
+            } finally {
+                store.getLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * The first matching jobs after a start position, as of the records seen so far
+     */
+    private final class Window {
+        private final JobIndex.Position start;
+        private final boolean inclusive;
+        private final int capacity;
+        private final TreeMap<JobIndex.Position, Job> jobs = new TreeMap<>();
+        private final Map<String, JobIndex.Position> positions = new HashMap<>();
+
+        // Jobs at or after this position are left for a later pass
+        private JobIndex.Position horizon;
+
+        Window(JobIndex.Position start, boolean inclusive, int capacity) {
+            this.start = start;
+            this.inclusive = inclusive;
+            this.capacity = capacity;
+        }
+
+        void accept(Job job) {
+            // A later record replaces whatever an earlier one put in the window
+            JobIndex.Position previous = positions.remove(job.getId());
+            if (previous != null) {
+                jobs.remove(previous);
+            }
+            if (job.isTombstone() || !query.matches(job)) {
+                return;
+            }
+            JobIndex.Position position = JobIndex.Position.of(job);
+            if (start != null) {
+                int order = position.compareTo(start);
+                if (order < 0 || (order == 0 && !inclusive)) {
+                    return;
+                }
+            }
+            if (horizon != null && position.compareTo(horizon) >= 0) {
+                return;
+            }
+            jobs.put(position, job);
+            positions.put(job.getId(), position);
+            if (jobs.size() > capacity) {
+                Map.Entry<JobIndex.Position, Job> last = jobs.pollLastEntry();
+                positions.remove(last.getValue().getId());
+                horizon = last.getKey();
+            }
+        }
+    }
+}
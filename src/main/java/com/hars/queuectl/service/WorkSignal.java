@@ -0,0 +1,40 @@
+package com.hars.queuectl.service;
+
+/**
+ * Wakes idle workers when any shard of a {@link JobRepository} gets work. A waiter
+ * reads the epoch before checking the shards and only sleeps if nothing was signalled
+ * since, so a job that arrives between the check and the wait is never missed.
+ */
+final class WorkSignal {
+
+    private long epoch;
+
+    synchronized long epoch() {
+        return epoch;
+    }
+
+    /**
+     * Waits unless a signal arrived after {@code seenEpoch} was read
+     */
+    synchronized void await(long seenEpoch, long millis) throws InterruptedException {
+        if (epoch == seenEpoch && millis > 0) {
+            wait(millis);
+        }
+    }
+
+    /**
+     * Wakes one waiter, e.g. for a single job that became PENDING
+     */
+    synchronized void signal() {
+        epoch++;
+        notify();
+    }
+
+    /**
+     * Wakes every waiter so each can recompute how long to wait
+     */
+    synchronized void signalAll() {
+        epoch++;
+        notifyAll();
+    }
+}
@@ -1,30 +1,92 @@
 package com.hars.queuectl.service;
 
 import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
+import com.hars.queuectl.metrics.Metrics;
 import com.hars.queuectl.model.Job;
+import com.hars.queuectl.schedule.CronScheduler;
+import com.hars.queuectl.storage.JobArchive;
+import com.hars.queuectl.storage.ScheduleStore;
+import com.hars.queuectl.worker.ExecutionResult;
 import com.hars.queuectl.worker.JobExecutor;
+import com.hars.queuectl.worker.JobLogs;
+import com.hars.queuectl.worker.VirtualThreads;
 
 public class WorkerService {
     
     private final JobRepository jobRepository;
-    private final JobExecutor jobExecutor;
+    private final ConfigurationService config;
+    private JobExecutor jobExecutor;
+    private final JobLogs jobLogs;
     private ExecutorService executorService;
+    private ScheduledExecutorService leaseKeeper;
+    private ScheduledFuture<?> leaseTask;
+    private FileWatcher fileWatcher;
+    private CronScheduler cronScheduler;
     private volatile boolean running = false;
+    private boolean stopped;
+    
+    // Pool size: worker loops in thread mode, admission permits in virtual mode
+    private volatile int targetWorkers;
+    private boolean virtualMode;
+    private final Set<Integer> liveWorkers = ConcurrentHashMap.newKeySet();
+    private ResizableSemaphore admission;
+    private final BlockingDeque<Integer> freeWorkerIds = new LinkedBlockingDeque<>();
+    private Autoscaler autoscaler;
+    private ScheduledExecutorService autoscalerTimer;
+    private ScheduledFuture<?> autoscaleTask;
+    private RetentionCompactor retentionCompactor;
+    private ScheduledExecutorService retentionTimer;
+    private ScheduledFuture<?> retentionTask;
+    
+    // Jobs this process is executing, mapped to the lease owner of each
+    private final Map<String, String> activeLeases = new ConcurrentHashMap<>();
     
-    // Configuration
-    private static final long POLL_INTERVAL_MS = 500;
-    private static final long BASE_BACKOFF_MS = 1000; // 1 second base delay
     private static final String STOP_SIGNAL_FILE = "worker.stop";
+    private static final String MAX_CARRIERS_PROPERTY = "jdk.virtualThreadScheduler.maxPoolSize";
     
+    /**
+     * Settings come from a cached snapshot of config.json that is swapped when the file
+     * changes, so {@code config set} retunes running workers without a restart
+     */
     public WorkerService(JobRepository jobRepository) {
         this.jobRepository = jobRepository;
-        this.jobExecutor = new JobExecutor();
+        this.config = new ConfigurationService();
+        
+        ConfigSnapshot settings = config.snapshot();
+        this.jobLogs = new JobLogs(Paths.get(JobLogs.LOG_DIR), settings.getJobLogMaxBytes(), settings.getJobLogBackups());
+        this.jobExecutor = new JobExecutor(jobLogs);
+    }
+    
+    /**
+     * Lets the pool grow and shrink with demand between the given sizes; call before {@link #start}
+     */
+    public void setAutoscaling(int minWorkers, int maxWorkers) {
+        ConfigSnapshot settings = config.snapshot();
+        this.autoscaler = new Autoscaler(minWorkers, maxWorkers, settings.getAutoscaleTargetWaitMillis(),
+                settings.getAutoscaleMaxLoad(), settings.getAutoscaleCooldownMillis());
     }
     
     /**
@@ -32,34 +94,141 @@ public class WorkerService {
      * @param workerCount Number of worker threads to start
      */
     public void start(int workerCount) {
+        start(workerCount, false);
+    }
+    
+    /**
+     * Start workers
+     * @param workerCount Number of jobs run at the same time
+     * @param virtualThreads Run each job and its output pump on a virtual thread, with
+     *                       admission limited by a semaphore instead of a thread pool
+     */
+    public void start(int workerCount, boolean virtualThreads) {
         if (running) {
             System.out.println("Workers are already running");
             return;
         }
         
-        System.out.println("Starting " + workerCount + " worker(s)...");
+        if (autoscaler != null) {
+            workerCount = Math.max(autoscaler.getMinWorkers(), Math.min(autoscaler.getMaxWorkers(), workerCount));
+        }
+        int maxWorkers = autoscaler != null ? autoscaler.getMaxWorkers() : workerCount;
+        
+        System.out.println("Starting " + workerCount + (virtualThreads ? " virtual" : "") + " worker(s)..."
+                + (autoscaler != null ? " (autoscaling " + autoscaler.getMinWorkers() + "-" + maxWorkers + ")" : ""));
         running = true;
-        executorService = Executors.newFixedThreadPool(workerCount);
+        virtualMode = virtualThreads;
+        targetWorkers = workerCount;
+        ConfigSnapshot settings = config.snapshot();
+        
+        // Recurring jobs from schedules.json
+        cronScheduler = new CronScheduler(jobRepository, new ScheduleStore(), settings.getMisfirePolicy());
+        
+        // Idle workers block until an enqueue or retry wakes them; writes by other
+        // processes (CLI enqueue, other workers), schedule and configuration changes
+        // and the stop signal arrive via file events
+        try {
+            fileWatcher = new FileWatcher();
+            for (Path directory : jobRepository.getStoreDirectories()) {
+                fileWatcher.watch(directory, path -> jobRepository.onStoreChanged(directory));
+            }
+            fileWatcher.watch(Paths.get(""), path -> {
+                String name = path.getFileName() != null ? path.getFileName().toString() : "";
+                if (name.equals(STOP_SIGNAL_FILE)) {
+                    jobRepository.wakeWorkers();
+                } else if (name.equals(ScheduleStore.SCHEDULES_FILE)) {
+                    cronScheduler.reload();
+                } else if (name.equals(ConfigurationService.CONFIG_FILE)) {
+                    reloadConfig();
+                }
+            });
+            fileWatcher.start();
+        } catch (IOException e) {
+            System.err.println("File watching unavailable, polling every " + settings.getPollIntervalMillis()
+                    + "ms: " + e.getMessage());
+            fileWatcher = null;
+        }
+        jobRepository.setQueueWeights(settings.getQueueWeights());
+        jobRepository.startGroupCommit(settings.getCommitIntervalMillis(), settings.getCommitBatchSize());
+        cronScheduler.start();
+        
+        if (virtualThreads) {
+            // Output pumps block in pipe reads, which the JDK offsets with extra carrier
+            // threads; allow one per admitted job so quiet jobs cannot starve the rest
+            if (System.getProperty(MAX_CARRIERS_PROPERTY) == null) {
+                System.setProperty(MAX_CARRIERS_PROPERTY, String.valueOf(
+                        Math.max(256, maxWorkers + Runtime.getRuntime().availableProcessors())));
+            }
+            jobExecutor = new JobExecutor(VirtualThreads.factory("job-output-"), jobLogs);
+            executorService = VirtualThreads.newThreadPerTaskExecutor("worker-");
+            admission = new ResizableSemaphore(workerCount);
+            for (int i = 1; i <= maxWorkers; i++) {
+                freeWorkerIds.add(i);
+            }
+            executorService.submit(this::dispatchLoop);
+        } else {
+            // A fixed pool unless the autoscaler adds and retires worker threads
+            executorService = autoscaler != null ? Executors.newCachedThreadPool() : Executors.newFixedThreadPool(workerCount);
+            
+            // Submit worker tasks
+            for (int i = 0; i < workerCount; i++) {
+                final int workerId = i + 1;
+                liveWorkers.add(workerId);
+                executorService.submit(() -> workerLoop(workerId));
+            }
+        }
+        
+        // Renew our leases and recover jobs whose owner died, a few times per lease period
+        leaseKeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lease-keeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduleLeaseKeeper(settings.getLeaseMillis());
         
-        // Submit worker tasks
-        for (int i = 0; i < workerCount; i++) {
-            final int workerId = i + 1;
-            executorService.submit(() -> workerLoop(workerId));
+        if (autoscaler != null) {
+            autoscalerTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "autoscaler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduleAutoscaler(settings.getAutoscaleIntervalMillis());
         }
         
+        // Move finished jobs past their retention to the archive, off the workers' threads
+        retentionCompactor = new RetentionCompactor(jobRepository, new JobArchive());
+        retentionTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "retention");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduleRetention(settings.getRetentionIntervalMillis());
+        
         System.out.println("Workers started successfully");
     }
     
     /**
-     * Stop all worker threads gracefully
+     * Stop all worker threads gracefully, waiting for running jobs to finish. Also needed
+     * after a stop signal has already ended the workers' loops. A second call waits for
+     * the first to finish, so the caller can close the repository afterwards.
      */
-    public void stop() {
-        if (!running) {
+    public synchronized void stop() {
+        if (executorService == null || stopped) {
             return;
         }
+        stopped = true;
         
         System.out.println("\nShutting down workers...");
         running = false;
+        if (autoscalerTimer != null) {
+            autoscalerTimer.shutdownNow();
+        }
+        if (retentionTimer != null) {
+            // Let a pass in progress finish its batch rather than interrupt its writes
+            retentionTimer.shutdown();
+        }
+        cronScheduler.stop();
+        jobRepository.wakeWorkers();
         
         if (executorService != null) {
             executorService.shutdown();
@@ -73,6 +242,20 @@ public class WorkerService {
             }
         }
         
+        if (retentionTimer != null) {
+            try {
+                retentionTimer.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (leaseKeeper != null) {
+            leaseKeeper.shutdownNow();
+        }
+        if (fileWatcher != null) {
+            fileWatcher.close();
+        }
+        
         System.out.println("Workers stopped");
     }
     
@@ -82,98 +265,27 @@ public class WorkerService {
      */
     private void workerLoop(int workerId) {
         System.out.println("Worker " + workerId + " started");
+        String leaseOwner = leaseOwner(workerId);
         
         while (running) {
             try {
                 // Check for stop signal before picking up new job
-                File stopSignal = new File(STOP_SIGNAL_FILE);
-                if (stopSignal.exists()) {
-                    System.out.println("Worker " + workerId + " received stop signal. Finishing current tasks...");
-                    running = false;
+                if (stopRequested(workerId) || retired(workerId)) {
                     break;
                 }
                 
                 // Atomically find and lock the next pending job
-                Optional<Job> optionalJob = jobRepository.findAndLockNextPendingJob();
+                Optional<Job> optionalJob = jobRepository.findAndLockNextPendingJob(leaseOwner,
+                        config.snapshot().getLeaseMillis());
                 
                 if (optionalJob.isPresent()) {
-                    Job job = optionalJob.get();
-                    
-                    System.out.println("Worker " + workerId + " picked up job: " + job.getId());
-                    
-                    // Execute the job
-                    int exitCode = jobExecutor.execute(job);
-                    
-                    // Handle the result
-                    if (exitCode == 0) {
-                        // Success
-                        job.setState(Job.JobState.COMPLETED);
-                        job.setUpdatedAt(Instant.now());
-                        jobRepository.updateJob(job);
-                        System.out.println("Worker " + workerId + " completed job: " + job.getId());
-                    } else if (exitCode == JobExecutor.EXIT_CODE_TIMEOUT) {
-                        // Timeout - treat as failure but with specific message
-                        job.setAttempts(job.getAttempts() + 1);
-                        job.setUpdatedAt(Instant.now());
-                        
-                        if (job.getAttempts() < job.getMaxRetries()) {
-                            // Retry with exponential backoff
-                            job.setState(Job.JobState.FAILED);
-                            jobRepository.updateJob(job);
-                            
-                            long backoffDelay = calculateBackoff(job.getAttempts());
-                            System.out.println("Worker " + workerId + " - Job " + job.getId() + 
-                                    " timed out (attempt " + job.getAttempts() + "/" + job.getMaxRetries() + 
-                                    "), retrying in " + backoffDelay + "ms");
-                            
-                            Thread.sleep(backoffDelay);
-                            
-                            // Set back to PENDING for retry
-                            job.setState(Job.JobState.PENDING);
-                            job.setUpdatedAt(Instant.now());
-                            jobRepository.updateJob(job);
-                        } else {
-                            // Max retries reached, move to dead letter queue
-                            job.setState(Job.JobState.DEAD);
-                            jobRepository.updateJob(job);
-                            System.out.println("Worker " + workerId + " - Job " + job.getId() + 
-                                    " moved to dead letter queue after timeout (" + job.getAttempts() + " attempts)");
-                        }
-                    } else {
-                        // Other failure
-                        job.setAttempts(job.getAttempts() + 1);
-                        job.setUpdatedAt(Instant.now());
-                        
-                        if (job.getAttempts() < job.getMaxRetries()) {
-                            // Retry with exponential backoff
-                            job.setState(Job.JobState.FAILED);
-                            jobRepository.updateJob(job);
-                            
-                            long backoffDelay = calculateBackoff(job.getAttempts());
-                            System.out.println("Worker " + workerId + " - Job " + job.getId() + 
-                                    " failed (attempt " + job.getAttempts() + "/" + job.getMaxRetries() + 
-                                    "), retrying in " + backoffDelay + "ms");
-                            
-                            Thread.sleep(backoffDelay);
-                            
-                            // Set back to PENDING for retry
-                            job.setState(Job.JobState.PENDING);
-                            job.setUpdatedAt(Instant.now());
-                            jobRepository.updateJob(job);
-                        } else {
-                            // Max retries reached, move to dead letter queue
-                            job.setState(Job.JobState.DEAD);
-                            jobRepository.updateJob(job);
-                            System.out.println("Worker " + workerId + " - Job " + job.getId() + 
-                                    " moved to dead letter queue after " + job.getAttempts() + " attempts");
-                        }
-                    }
+                    runJob(workerId, leaseOwner, optionalJob.get());
                 } else {
-                    // No jobs available, sleep for a bit
-                    Thread.sleep(POLL_INTERVAL_MS);
+                    // No jobs available, wait until one is enqueued or a retry comes due
+                    jobRepository.awaitWork(idleWaitMillis());
                 }
                 
-                } catch (InterruptedException e) {
+            } catch (InterruptedException e) {
                 System.out.println("Worker " + workerId + " interrupted");
                 Thread.currentThread().interrupt();
                 break;
@@ -182,14 +294,363 @@ public class WorkerService {
             }
         }
         
+        liveWorkers.remove(workerId);
         System.out.println("Worker " + workerId + " stopped");
-    }    /**
+    }
+    
+    /**
+     * Virtual-thread mode: claims jobs while fewer than the limit are running and starts
+     * a virtual thread for each. Worker ids are reused so lease owners stay stable.
+     */
+    private void dispatchLoop() {
+        System.out.println("Dispatcher started, admitting up to " + targetWorkers + " concurrent job(s)");
+        
+        while (running) {
+            try {
+                if (stopRequested(0)) {
+                    break;
+                }
+                
+                admission.acquire();
+                if (!running) {
+                    admission.release();
+                    break;
+                }
+                int workerId = freeWorkerIds.take();
+                String leaseOwner = leaseOwner(workerId);
+                
+                Optional<Job> optionalJob;
+                try {
+                    optionalJob = jobRepository.findAndLockNextPendingJob(leaseOwner,
+                            config.snapshot().getLeaseMillis());
+                } catch (RuntimeException e) {
+                    freeWorkerIds.push(workerId);
+                    admission.release();
+                    throw e;
+                }
+                
+                if (optionalJob.isPresent()) {
+                    Job job = optionalJob.get();
+                    executorService.submit(() -> {
+                        try {
+                            runJob(workerId, leaseOwner, job);
+                        } catch (Exception e) {
+                            System.err.println("Worker " + workerId + " encountered error: " + e.getMessage());
+                        } finally {
+                            freeWorkerIds.push(workerId);
+                            admission.release();
+                        }
+                    });
+                } else {
+                    freeWorkerIds.push(workerId);
+                    admission.release();
+                    jobRepository.awaitWork(idleWaitMillis());
+                }
+                
+            } catch (InterruptedException e) {
+                System.out.println("Dispatcher interrupted");
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                System.err.println("Dispatcher encountered error: " + e.getMessage());
+            }
+        }
+        
+        System.out.println("Dispatcher stopped");
+    }
+    
+    /**
+     * In thread mode, a worker whose id is above the pool size leaves the pool. Checked
+     * under the same monitor as {@link #resize(int)} so a growing pool never counts on a
+     * worker that is about to leave.
+     */
+    private synchronized boolean retired(int workerId) {
+        if (workerId <= targetWorkers) {
+            return false;
+        }
+        liveWorkers.remove(workerId);
+        return true;
+    }
+    
+    /**
+     * Changes the number of workers (thread mode) or of admitted jobs (virtual mode).
+     * Workers running a job finish it before leaving.
+     */
+    private synchronized void resize(int target) {
+        int previous = targetWorkers;
+        targetWorkers = target;
+        if (virtualMode) {
+            if (target > previous) {
+                admission.release(target - previous);
+            } else {
+                admission.reduce(previous - target);
+            }
+        } else if (target > previous) {
+            for (int workerId = 1; workerId <= target; workerId++) {
+                if (liveWorkers.add(workerId)) {
+                    final int id = workerId;
+                    executorService.submit(() -> workerLoop(id));
+                }
+            }
+        } else {
+            // Idle workers above the new size leave as soon as they wake
+            jobRepository.wakeWorkers();
+        }
+    }
+    
+    /**
+     * Samples the queue and the host and resizes the pool if the autoscaler asks for it
+     */
+    private void autoscale() {
+        try {
+            int current = targetWorkers;
+            int ready = 0;
+            for (int depth : jobRepository.pendingByQueue().values()) {
+                ready += depth;
+            }
+            long headWait = jobRepository.nextPendingWaitMillis();
+            OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+            double load = os.getSystemLoadAverage();
+            double loadPerCpu = load < 0 ? -1 : load / os.getAvailableProcessors();
+            
+            int target = autoscaler.decide(current, activeLeases.size(), ready, headWait, loadPerCpu,
+                    System.currentTimeMillis());
+            if (target != current && running) {
+                System.out.println("Autoscaler: " + current + " -> " + target + " workers (" + ready
+                        + " ready, next job waited " + headWait + "ms, load "
+                        + String.format("%.2f", loadPerCpu) + " per CPU)");
+                resize(target);
+            }
+        } catch (Exception e) {
+            System.err.println("Autoscaling failed: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Rereads config.json after it changed and hands the new settings to the components
+     * that hold on to them. Settings looked up per use (lease, poll interval, backoff)
+     * take effect without further work.
+     */
+    private void reloadConfig() {
+        ConfigSnapshot previous = config.snapshot();
+        ConfigSnapshot current = config.refresh();
+        if (current == previous || !running) {
+            return;
+        }
+        
+        jobLogs.setLimits(current.getJobLogMaxBytes(), current.getJobLogBackups());
+        jobRepository.setQueueWeights(current.getQueueWeights());
+        jobRepository.startGroupCommit(current.getCommitIntervalMillis(), current.getCommitBatchSize());
+        cronScheduler.setPolicy(current.getMisfirePolicy());
+        if (current.getLeaseMillis() != previous.getLeaseMillis()) {
+            scheduleLeaseKeeper(current.getLeaseMillis());
+        }
+        if (autoscaler != null) {
+            autoscaler.setThresholds(current.getAutoscaleTargetWaitMillis(), current.getAutoscaleMaxLoad(),
+                    current.getAutoscaleCooldownMillis());
+            if (current.getAutoscaleIntervalMillis() != previous.getAutoscaleIntervalMillis()) {
+                scheduleAutoscaler(current.getAutoscaleIntervalMillis());
+            }
+        }
+        if (current.getRetentionIntervalMillis() != previous.getRetentionIntervalMillis()) {
+            scheduleRetention(current.getRetentionIntervalMillis());
+        }
+        
+        StringBuilder changes = new StringBuilder();
+        Set<String> keys = new TreeSet<>(previous.getAll().keySet());
+        keys.addAll(current.getAll().keySet());
+        for (String key : keys) {
+            Object before = previous.get(key);
+            Object after = current.get(key);
+            if (!Objects.equals(before, after)) {
+                changes.append(changes.length() == 0 ? "" : ", ").append(key).append(" = ").append(after);
+            }
+        }
+        System.out.println("Configuration reloaded: " + (changes.length() == 0 ? "no changes" : changes));
+    }
+    
+    /**
+     * Renews leases a few times per lease period, replacing any earlier schedule
+     */
+    private void scheduleLeaseKeeper(long leaseMillis) {
+        if (leaseTask != null) {
+            leaseTask.cancel(false);
+        }
+        long period = Math.max(leaseMillis / 3, 100);
+        leaseTask = leaseKeeper.scheduleWithFixedDelay(this::maintainLeases, period, period, TimeUnit.MILLISECONDS);
+    }
+    
+    private void scheduleAutoscaler(long intervalMillis) {
+        if (autoscaleTask != null) {
+            autoscaleTask.cancel(false);
+        }
+        autoscaleTask = autoscalerTimer.scheduleWithFixedDelay(this::autoscale, intervalMillis,
+                intervalMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    private void scheduleRetention(long intervalMillis) {
+        if (retentionTask != null) {
+            retentionTask.cancel(false);
+        }
+        retentionTask = retentionTimer.scheduleWithFixedDelay(this::enforceRetention, intervalMillis,
+                intervalMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Archives the jobs the current retention policy evicts; the policy is read on every
+     * pass, so changing it takes effect at the next one
+     */
+    private void enforceRetention() {
+        try {
+            int evicted = retentionCompactor.run(config.snapshot().getRetentionPolicy());
+            if (evicted > 0) {
+                System.out.println("Archived " + evicted + " finished job(s) past their retention");
+            }
+        } catch (Exception e) {
+            System.err.println("Retention compaction failed: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * @return How long an idle worker waits before looking for work again
+     */
+    private long idleWaitMillis() {
+        return fileWatcher != null ? Long.MAX_VALUE : config.snapshot().getPollIntervalMillis();
+    }
+    
+    private static String leaseOwner(int workerId) {
+        return ProcessHandle.current().pid() + "/worker-" + workerId;
+    }
+    
+    /**
+     * @return true if the stop signal file exists, after telling every worker to stop
+     */
+    private boolean stopRequested(int workerId) {
+        File stopSignal = new File(STOP_SIGNAL_FILE);
+        if (stopSignal.exists()) {
+            System.out.println((workerId > 0 ? "Worker " + workerId : "Dispatcher")
+                    + " received stop signal. Finishing current tasks...");
+            running = false;
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Executes a claimed job and records its result
+     */
+    private void runJob(int workerId, String leaseOwner, Job job) {
+        System.out.println("Worker " + workerId + " picked up job: " + job.getId());
+        
+        // Execute the job while the lease keeper renews our claim
+        activeLeases.put(job.getId(), leaseOwner);
+        ExecutionResult result;
+        try {
+            result = jobExecutor.execute(job);
+        } finally {
+            activeLeases.remove(job.getId());
+        }
+        int exitCode = result.getExitCode();
+        job.setLastExitCode(exitCode);
+        job.setStartedAt(result.getStartedAt());
+        job.setFinishedAt(result.getFinishedAt());
+        job.setRuntimeMillis(job.getRuntimeMillis() + result.getRuntimeMillis());
+        job.setOutputTail(result.getOutputTail());
+        Metrics.JOB_DURATION.record(Duration.between(result.getStartedAt(), result.getFinishedAt()).toNanos());
+        
+        // Handle the result; the update is committed together with other
+        // workers' updates, so move on without waiting for it
+        if (exitCode == 0) {
+            // Success
+            job.setState(Job.JobState.COMPLETED);
+            job.setUpdatedAt(Instant.now());
+            Metrics.JOBS_COMPLETED.increment();
+            record(workerId, job, "Worker " + workerId + " completed job: " + job.getId());
+        } else {
+            // Timeout or other failure
+            String failure = exitCode == JobExecutor.EXIT_CODE_TIMEOUT ? "timed out" : "failed";
+            if (exitCode == JobExecutor.EXIT_CODE_TIMEOUT) {
+                Metrics.JOB_TIMEOUTS.increment();
+            }
+            job.setAttempts(job.getAttempts() + 1);
+            job.setUpdatedAt(Instant.now());
+            
+            if (job.getAttempts() < job.getMaxRetries()) {
+                // Retry with exponential backoff; the repository makes the job
+                // eligible again once next_run_at passes, so this worker stays free
+                long backoffDelay = calculateBackoff(config.snapshot().getBaseBackoffMillis(), job.getAttempts());
+                job.setState(Job.JobState.FAILED);
+                job.setNextRunAt(job.getUpdatedAt().plusMillis(backoffDelay));
+                Metrics.JOB_RETRIES.increment();
+                record(workerId, job, "Worker " + workerId + " - Job " + job.getId() + 
+                        " " + failure + " (attempt " + job.getAttempts() + "/" + job.getMaxRetries() + 
+                        "), retrying in " + backoffDelay + "ms");
+            } else {
+                // Max retries reached, move to dead letter queue
+                job.setState(Job.JobState.DEAD);
+                Metrics.JOBS_DEAD.increment();
+                record(workerId, job, "Worker " + workerId + " - Job " + job.getId() + 
+                        " moved to dead letter queue after " + 
+                        (exitCode == JobExecutor.EXIT_CODE_TIMEOUT ? "timeout (" + job.getAttempts() + " attempts)"
+                                : job.getAttempts() + " attempts"));
+            }
+        }
+    }
+    
+    /**
+     * Renews the leases of running jobs, then puts jobs with expired leases back to PENDING
+     */
+    private void maintainLeases() {
+        try {
+            // Without file events, configuration changes are picked up here
+            if (fileWatcher == null) {
+                reloadConfig();
+            }
+            
+            Set<String> lost = jobRepository.renewLeases(new HashMap<>(activeLeases),
+                    config.snapshot().getLeaseMillis());
+            for (String jobId : lost) {
+                activeLeases.remove(jobId);
+                System.err.println("Lease on job " + jobId + " expired before it could be renewed");
+            }
+            
+            for (Job job : jobRepository.requeueExpiredLeases()) {
+                System.out.println("Job " + job.getId() + " lease expired, moved back to PENDING");
+            }
+        } catch (Exception e) {
+            System.err.println("Lease maintenance failed: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Submits a job's new state for the next group commit and logs the outcome once it is durable
+     */
+    private void record(int workerId, Job job, String message) {
+        jobRepository.updateJobAsync(job).whenComplete((applied, error) -> {
+            if (error != null) {
+                System.err.println("Worker " + workerId + " - Failed to record result of job " + job.getId()
+                        + ": " + error.getMessage());
+            } else if (applied) {
+                System.out.println(message);
+            } else {
+                reportLostLease(workerId, job);
+            }
+        });
+    }
+    
+    private void reportLostLease(int workerId, Job job) {
+        System.err.println("Worker " + workerId + " - Job " + job.getId()
+                + " was reclaimed by another worker, discarding this result");
+    }
+    
+    /**
      * Calculate exponential backoff delay
+     * @param baseMillis Delay before the first retry
      * @param attempts Number of attempts
      * @return Delay in milliseconds
      */
-    private long calculateBackoff(int attempts) {
-        return (long) (BASE_BACKOFF_MS * Math.pow(2, attempts - 1));
+    static long calculateBackoff(long baseMillis, int attempts) {
+        return (long) (baseMillis * Math.pow(2, attempts - 1));
     }
     
     /**
@@ -199,4 +660,19 @@ public class WorkerService {
     public boolean isRunning() {
         return running;
     }
+    
+    /**
+     * Semaphore whose permit count can be lowered while permits are handed out
+     */
+    private static final class ResizableSemaphore extends Semaphore {
+        private static final long serialVersionUID = 1L;
+        
+        ResizableSemaphore(int permits) {
+            super(permits);
+        }
+        
+        void reduce(int permits) {
+            reducePermits(permits);
+        }
+    }
 }
@@ -0,0 +1,176 @@
+package com.hars.queuectl.storage;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import com.hars.queuectl.model.Job;
+
+/**
+ * Hand-written fixed-layout record, about half the size of the JSON form and
+ * parsed without any text scanning:
+ * <pre>
+ *   byte  state             JobState ordinal, -1 if absent
+ *   int   attempts
+ *   int   max_retries
+ *   long  timeout_seconds
+ *   long  created_at        epoch nanos, Long.MIN_VALUE if absent
+ *   long  updated_at
+ *   long  lease_expires_at
+ *   long  next_run_at
+ *   str   id                int UTF-8 length (-1 if absent), then the bytes
+ *   str   command
+ *   str   lease_owner
+ *   int   priority
+ *   str   queue
+ *   long  run_at
+ *   int   last_exit_code    Integer.MIN_VALUE if absent
+ *   long  started_at
+ *   long  finished_at
+ *   long  runtime_ms
+ *   str   output_tail
+ * </pre>
+ * Fields added later go after the last one; records that end early decode with
+ * those fields left at their defaults.
+ */
+public class BinaryJobCodec implements JobCodec {
+
+    private static final long NO_INSTANT = Long.MIN_VALUE;
+    private static final int NO_EXIT_CODE = Integer.MIN_VALUE;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final int FIXED_BYTES = 1 + 4 + 4 + 8 + 4 * 8 + 4 + 8 + 4 + 3 * 8;
+
+    private static final Job.JobState[] STATES = Job.JobState.values();
+
+    @Override
+    public int getFormat() {
+        return FORMAT_BINARY;
+    }
+
+    @Override
+    public String getName() {
+        return BINARY;
+    }
+
+    @Override
+    public byte[] encode(Job job) throws IOException {
+        byte[] id = utf8(job.getId());
+        byte[] command = utf8(job.getCommand());
+        byte[] leaseOwner = utf8(job.getLeaseOwner());
+        byte[] queue = utf8(job.getQueue());
+        byte[] outputTail = utf8(job.getOutputTail());
+
+        ByteBuffer buffer = ByteBuffer.allocate(FIXED_BYTES
+                + sizeOf(id) + sizeOf(command) + sizeOf(leaseOwner) + sizeOf(queue) + sizeOf(outputTail));
+        buffer.put(job.getState() == null ? -1 : (byte) job.getState().ordinal());
+        buffer.putInt(job.getAttempts());
+        buffer.putInt(job.getMaxRetries());
+        buffer.putLong(job.getTimeoutSeconds());
+        buffer.putLong(toEpochNanos(job.getCreatedAt()));
+        buffer.putLong(toEpochNanos(job.getUpdatedAt()));
+        buffer.putLong(toEpochNanos(job.getLeaseExpiresAt()));
+        buffer.putLong(toEpochNanos(job.getNextRunAt()));
+        putString(buffer, id);
+        putString(buffer, command);
+        putString(buffer, leaseOwner);
+        buffer.putInt(job.getPriority());
+        putString(buffer, queue);
+        buffer.putLong(toEpochNanos(job.getRunAt()));
+        buffer.putInt(job.getLastExitCode() == null ? NO_EXIT_CODE : job.getLastExitCode());
+        buffer.putLong(toEpochNanos(job.getStartedAt()));
+        buffer.putLong(toEpochNanos(job.getFinishedAt()));
+        buffer.putLong(job.getRuntimeMillis());
+        putString(buffer, outputTail);
+        return buffer.array();
+    }
+
+    @Override
+    public Job decode(byte[] data, int offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+        try {
+            Job job = new Job();
+            int state = buffer.get();
+            if (state >= STATES.length) {
+                throw new IOException("Unknown job state ordinal: " + state);
+            }
+            job.setState(state < 0 ? null : STATES[state]);
+            job.setAttempts(buffer.getInt());
+            job.setMaxRetries(buffer.getInt());
+            job.setTimeoutSeconds(buffer.getLong());
+            job.setCreatedAt(fromEpochNanos(buffer.getLong()));
+            job.setUpdatedAt(fromEpochNanos(buffer.getLong()));
+            job.setLeaseExpiresAt(fromEpochNanos(buffer.getLong()));
+            job.setNextRunAt(fromEpochNanos(buffer.getLong()));
+            job.setId(getString(buffer));
+            job.setCommand(getString(buffer));
+            job.setLeaseOwner(getString(buffer));
+            if (buffer.hasRemaining()) {
+                job.setPriority(buffer.getInt());
+                job.setQueue(getString(buffer));
+            }
+            if (buffer.hasRemaining()) {
+                job.setRunAt(fromEpochNanos(buffer.getLong()));
+            }
+            if (buffer.hasRemaining()) {
+                int exitCode = buffer.getInt();
+                job.setLastExitCode(exitCode == NO_EXIT_CODE ? null : exitCode);
+                job.setStartedAt(fromEpochNanos(buffer.getLong()));
+                job.setFinishedAt(fromEpochNanos(buffer.getLong()));
+                job.setRuntimeMillis(buffer.getLong());
+                job.setOutputTail(getString(buffer));
+            }
+            return job;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated binary job record", e);
+        }
+    }
+
+    private static long toEpochNanos(Instant instant) throws IOException {
+        if (instant == null) {
+            return NO_INSTANT;
+        }
+        try {
+            return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), NANOS_PER_SECOND), instant.getNano());
+        } catch (ArithmeticException e) {
+            throw new IOException("Timestamp out of range for the binary format: " + instant);
+        }
+    }
+
+    private static Instant fromEpochNanos(long nanos) {
+        if (nanos == NO_INSTANT) {
+            return null;
+        }
+        return Instant.ofEpochSecond(Math.floorDiv(nanos, NANOS_PER_SECOND), Math.floorMod(nanos, NANOS_PER_SECOND));
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int sizeOf(byte[] bytes) {
+        return 4 + (bytes == null ? 0 : bytes.length);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new IOException("Truncated binary job record");
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
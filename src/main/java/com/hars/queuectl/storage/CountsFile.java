@@ -0,0 +1,69 @@
+package com.hars.queuectl.storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hars.queuectl.model.JobCounts;
+
+/**
+ * Small file next to a store holding its {@link JobCounts}, tagged with a stamp of the
+ * store's contents when they were written ({@code {"stamp": ..., "counts": ...}}).
+ * Writers replace it after every append while they hold the store lock, by writing a
+ * temporary file and renaming it over the old one, so readers and crashes only ever see
+ * a whole file. It is not synced: if a crash leaves it behind the store or empty, the
+ * stamp no longer matches or the file does not parse, and readers count by loading the
+ * store instead.
+ */
+final class CountsFile {
+
+    private final Path path;
+    private final Path temp;
+    private final ObjectMapper objectMapper;
+
+    CountsFile(Path path) {
+        this.path = path;
+        this.temp = path.resolveSibling(path.getFileName() + ".tmp");
+        this.objectMapper = new ObjectMapper();
+        this.objectMapper.enable(DeserializationFeature.FAIL_ON_TRAILING_TOKENS);
+    }
+
+    void write(String stamp, JobCounts counts) {
+        Map<String, Object> contents = new LinkedHashMap<>();
+        contents.put("stamp", stamp);
+        contents.put("counts", counts);
+        try {
+            Files.write(temp, objectMapper.writeValueAsBytes(contents));
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Readers will find the stamp out of date and count the slow way
+            System.err.println("Failed to write job counts to " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return The counts in the file, or null if there are none or they were written at
+     *         another stamp than the given one
+     */
+    JobCounts read(String stamp) {
+        try {
+            JsonNode contents = objectMapper.readTree(Files.readAllBytes(path));
+            if (contents == null || !stamp.equals(contents.path("stamp").asText(null))) {
+                return null;
+            }
+            return objectMapper.treeToValue(contents.get("counts"), JobCounts.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            // Torn or unreadable: as good as missing
+            return null;
+        }
+    }
+}
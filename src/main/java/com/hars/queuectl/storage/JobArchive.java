@@ -0,0 +1,260 @@
+package com.hars.queuectl.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.hars.queuectl.model.Job;
+
+/**
+ * Jobs evicted from the job store, kept as gzip-compressed NDJSON with one file per UTC
+ * day the jobs were last updated:
+ * <pre>
+ *   archive/2024-01-31.ndjson.gz          concatenated gzip members, one per batch
+ *   archive/2024-01-31.ndjson.gz.length   length up to the last complete batch
+ *   archive/LOCK
+ * </pre>
+ * Every {@link #append(List)} adds a new gzip member to the end of each file it touches,
+ * syncs it and then records the new length, so earlier batches are never rewritten. A
+ * batch torn by a crash is only ever at the end of a file, where readers skip it, and
+ * the next append cuts it off before writing. Queries by time only open the days in range.
+ *
+ * The compactor holds the exclusive {@link StoreLock} on archive/LOCK while it archives
+ * and evicts, so two worker daemons never archive the same jobs.
+ */
+public class JobArchive {
+
+    public static final String ARCHIVE_DIR = "archive";
+
+    private static final String SUFFIX = ".ndjson.gz";
+    private static final String LENGTH_SUFFIX = ".length";
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final Path dir;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter writer;
+    private final StoreLock lock;
+
+    public JobArchive() {
+        this(Paths.get(ARCHIVE_DIR));
+    }
+
+    public JobArchive(Path dir) {
+        this.dir = dir;
+        this.lock = new StoreLock(dir.resolve("LOCK"));
+        this.objectMapper = new ObjectMapper();
+        this.objectMapper.registerModule(new JavaTimeModule());
+        this.objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        this.writer = objectMapper.writerFor(Job.class);
+    }
+
+    public StoreLock getLock() {
+        return lock;
+    }
+
+    public Path getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Writes jobs to the files of the days they were last updated, and syncs them before
+     * returning, so the jobs can then be removed from the store
+     */
+    public void append(List<Job> jobs) {
+        if (jobs.isEmpty()) {
+            return;
+        }
+        Map<LocalDate, List<Job>> byDay = new TreeMap<>();
+        for (Job job : jobs) {
+            byDay.computeIfAbsent(dayOf(job), day -> new ArrayList<>()).add(job);
+        }
+        try {
+            Files.createDirectories(dir);
+            for (Map.Entry<LocalDate, List<Job>> day : byDay.entrySet()) {
+                appendMember(partitionPath(day.getKey()), day.getValue());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write job archive", e);
+        }
+    }
+
+    /**
+     * Reads archived jobs in day order, then in the order they were archived
+     *
+     * @param from First day to read (UTC), or null for the oldest
+     * @param to Last day to read (UTC), or null for the newest
+     * @param visitor Called with each job; returning false stops the scan
+     */
+    public void scan(LocalDate from, LocalDate to, Predicate<Job> visitor) {
+        for (Map.Entry<LocalDate, Path> partition : partitions().entrySet()) {
+            LocalDate day = partition.getKey();
+            if ((from != null && day.isBefore(from)) || (to != null && day.isAfter(to))) {
+                continue;
+            }
+            if (!scanPartition(partition.getValue(), visitor)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return Every day file in the archive, oldest first
+     */
+    public Map<LocalDate, Path> partitions() {
+        Map<LocalDate, Path> partitions = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    partitions.put(LocalDate.parse(name.substring(0, name.length() - SUFFIX.length())), path);
+                } catch (DateTimeParseException e) {
+                    // Not one of ours
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // Nothing archived yet
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to list job archive", e);
+        }
+        return partitions;
+    }
+
+    /**
+     * @return The UTC day a job is filed under: the day it was last updated
+     */
+    public static LocalDate dayOf(Job job) {
+        Instant time = job.getUpdatedAt() != null ? job.getUpdatedAt() : job.getCreatedAt();
+        return dayOf(time != null ? time : Instant.EPOCH);
+    }
+
+    /**
+     * @return The UTC day of the file jobs last updated at the given time are in
+     */
+    public static LocalDate dayOf(Instant time) {
+        return time.atOffset(ZoneOffset.UTC).toLocalDate();
+    }
+
+    private Path partitionPath(LocalDate day) {
+        return dir.resolve(day + SUFFIX);
+    }
+
+    private void appendMember(Path path, List<Job> jobs) throws IOException {
+        Path lengthPath = lengthPath(path);
+        long length;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // Drop anything a crashed pass left after the last complete batch
+            long committed = Math.min(readLength(lengthPath, channel.size()), channel.size());
+            channel.truncate(committed);
+            channel.position(committed);
+            GZIPOutputStream gzip = new GZIPOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_BYTES), BUFFER_BYTES);
+            try (Writer lines = new OutputStreamWriter(gzip, StandardCharsets.UTF_8)) {
+                for (Job job : jobs) {
+                    lines.write(writer.writeValueAsString(job));
+                    lines.write('\n');
+                }
+                lines.flush();
+                // Sync the finished member before closing, which also closes the channel
+                gzip.finish();
+                gzip.flush();
+                channel.force(true);
+                length = channel.size();
+            }
+        }
+        writeLength(lengthPath, length);
+    }
+
+    private static Path lengthPath(Path partition) {
+        return partition.resolveSibling(partition.getFileName() + LENGTH_SUFFIX);
+    }
+
+    /**
+     * @return The length of the partition up to its last complete batch: 0 if none was
+     *         recorded, since the length is written after the first batch, or the whole
+     *         file if the record cannot be read
+     */
+    private static long readLength(Path path, long fileLength) {
+        try {
+            return Long.parseLong(new String(Files.readAllBytes(path), StandardCharsets.US_ASCII).trim());
+        } catch (NoSuchFileException e) {
+            return 0;
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Unreadable archive length in " + path + ", keeping the whole archive file");
+            return fileLength;
+        }
+    }
+
+    private static void writeLength(Path path, long length) throws IOException {
+        // Fixed width, so an in-place rewrite never leaves a longer old value behind
+        ByteBuffer buffer = ByteBuffer.wrap(String.format("%020d%n", length).getBytes(StandardCharsets.US_ASCII));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, buffer.position());
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * @return false if the visitor stopped the scan
+     */
+    private boolean scanPartition(Path path, Predicate<Job> visitor) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(path), BUFFER_BYTES), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                Job job;
+                try {
+                    job = objectMapper.readValue(line, Job.class);
+                } catch (JsonProcessingException e) {
+                    System.err.println("Skipping unreadable job in " + path + ": " + e.getOriginalMessage());
+                    continue;
+                }
+                if (!visitor.test(job)) {
+                    return false;
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // Removed since it was listed
+        } catch (EOFException e) {
+            // A batch torn by a crash; its jobs are still in the store and get archived again
+            System.err.println("Ignoring incomplete batch at the end of " + path);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read job archive " + path, e);
+        }
+        return true;
+    }
+}
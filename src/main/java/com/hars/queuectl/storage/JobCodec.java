@@ -0,0 +1,60 @@
+package com.hars.queuectl.storage;
+
+import java.io.IOException;
+
+import com.hars.queuectl.model.Job;
+
+/**
+ * Serializes a single job record for the log store. Each segment and snapshot names
+ * the codec it was written with in its header, so files in different formats can
+ * coexist in one store while it is being converted.
+ */
+public interface JobCodec {
+
+    int FORMAT_JSON = 1;
+    int FORMAT_BINARY = 2;
+
+    String JSON = "json";
+    String BINARY = "binary";
+
+    /**
+     * @return Format id stored in file headers
+     */
+    int getFormat();
+
+    /**
+     * @return Name used in configuration and on the command line
+     */
+    String getName();
+
+    byte[] encode(Job job) throws IOException;
+
+    Job decode(byte[] data, int offset, int length) throws IOException;
+
+    /**
+     * @param name "binary" or "json"; null selects the default (binary)
+     */
+    static JobCodec forName(String name) {
+        if (name == null || name.isEmpty() || BINARY.equalsIgnoreCase(name)) {
+            return new BinaryJobCodec();
+        }
+        if (JSON.equalsIgnoreCase(name)) {
+            return new JsonJobCodec();
+        }
+        throw new IllegalArgumentException("Unknown store codec: " + name);
+    }
+
+    /**
+     * @param format Format id read from a file header
+     */
+    static JobCodec forFormat(int format) throws IOException {
+        switch (format) {
+            case FORMAT_JSON:
+                return new JsonJobCodec();
+            case FORMAT_BINARY:
+                return new BinaryJobCodec();
+            default:
+                throw new IOException("Unknown record format: " + format);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.hars.queuectl.storage;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.hars.queuectl.model.Job;
+import com.hars.queuectl.model.JobCounts;
+
+/**
+ * Durable storage engine behind {@link com.hars.queuectl.service.JobRepository}.
+ *
+ * The repository keeps the current state of every job in memory and only uses
+ * the store to persist state changes and to pick up changes written by other
+ * processes. Implementations are not thread-safe; the repository serializes access
+ * within a process and uses {@link #getLock()} to serialize writers across processes.
+ */
+public interface JobStore extends Closeable {
+
+    /**
+     * Reads the full current state of the store (replay on startup)
+     * @return All jobs, in insertion order
+     */
+    List<Job> load();
+
+    /**
+     * Streams the stored records one at a time, for reading a store without loading it.
+     * Records come oldest first, so a later record for an id replaces an earlier one and
+     * a {@link Job#tombstone(String)} removes it. Never creates the store. Callers hold
+     * the lock, at least shared.
+     */
+    void scan(Consumer<Job> consumer);
+
+    /**
+     * Returns the records written by other processes since the last load or poll
+     * @return Changed jobs in write order, including tombstones of removed jobs, or null
+     *         if the caller must reload the store
+     */
+    List<Job> poll();
+
+    /**
+     * Persists state-change records for the given jobs
+     * @param jobs Jobs whose current state should be recorded; a {@link Job#tombstone(String)}
+     *             removes the job from the store
+     */
+    void append(List<Job> jobs);
+
+    /**
+     * Forces everything appended so far to stable storage
+     */
+    void sync();
+
+    /**
+     * @return true if the store would benefit from a call to {@link #compact(Collection)}
+     */
+    boolean needsCompaction();
+
+    /**
+     * Replaces the accumulated history with a snapshot of the given live state
+     * @param jobs The complete current state of the store
+     */
+    void compact(Collection<Job> jobs);
+
+    /**
+     * Records the counters matching everything appended so far, so they can be read
+     * back without loading the store. Called with the lock held exclusively.
+     */
+    void writeCounts(JobCounts counts);
+
+    /**
+     * Reads the counters without loading the store. Callers hold the lock, at least shared.
+     * @return The counters last written, or null if there are none or the store has
+     *         changed since they were written
+     */
+    JobCounts readCounts();
+
+    /**
+     * @return Directory in which other processes' writes show up as file changes
+     */
+    Path getDirectory();
+
+    /**
+     * @return The cross-process lock guarding writes to this store
+     */
+    StoreLock getLock();
+
+    @Override
+    void close();
+}
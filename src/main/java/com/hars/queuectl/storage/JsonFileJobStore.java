@@ -0,0 +1,216 @@
+package com.hars.queuectl.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.hars.queuectl.model.Job;
+import com.hars.queuectl.model.JobCounts;
+
+/**
+ * The original storage format: a single pretty-printed jobs.json array that is
+ * rewritten in full on every change. Kept for compatibility with existing data
+ * and tooling that reads jobs.json directly.
+ */
+public class JsonFileJobStore implements JobStore {
+
+    public static final String JOBS_FILE = "jobs.json";
+
+    private final File file;
+    private final ObjectMapper objectMapper;
+    private final StoreLock lock;
+    private final CountsFile counts;
+
+    // Modification stamp of the file as last seen by this process
+    private FileTime lastModified;
+    private long lastLength = -1;
+
+    public JsonFileJobStore() {
+        this(new File(JOBS_FILE));
+    }
+
+    public JsonFileJobStore(File file) {
+        this.file = file;
+        this.lock = new StoreLock(new File(file.getPath() + ".lock").toPath());
+        this.counts = new CountsFile(new File(file.getPath() + ".counts").toPath());
+        this.objectMapper = new ObjectMapper();
+        this.objectMapper.registerModule(new JavaTimeModule());
+        this.objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        this.objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
+    }
+
+    @Override
+    public List<Job> load() {
+        if (!file.exists()) {
+            // Create empty jobs list
+            writeJobsToFile(new ArrayList<>());
+        }
+        return readJobsFromFile();
+    }
+
+    @Override
+    public void scan(Consumer<Job> consumer) {
+        try {
+            readJobs(objectMapper, file, consumer);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read jobs from file", e);
+        }
+    }
+
+    @Override
+    public List<Job> poll() {
+        // Any change by another process means the whole file has to be read again
+        return isModifiedExternally() ? null : Collections.emptyList();
+    }
+
+    @Override
+    public void append(List<Job> changed) {
+        Map<String, Job> jobs = new LinkedHashMap<>();
+        for (Job job : readJobsFromFile()) {
+            jobs.put(job.getId(), job);
+        }
+        for (Job job : changed) {
+            if (job.isTombstone()) {
+                jobs.remove(job.getId());
+            } else {
+                jobs.put(job.getId(), job);
+            }
+        }
+        writeJobsToFile(new ArrayList<>(jobs.values()));
+    }
+
+    @Override
+    public void sync() {
+        if (!file.exists()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to sync jobs file", e);
+        }
+    }
+
+    @Override
+    public boolean needsCompaction() {
+        return false;
+    }
+
+    @Override
+    public void compact(Collection<Job> jobs) {
+        // Every write already rewrites the whole file
+    }
+
+    @Override
+    public void writeCounts(JobCounts jobCounts) {
+        if (file.exists()) {
+            counts.write(stamp(), jobCounts);
+        }
+    }
+
+    @Override
+    public JobCounts readCounts() {
+        return file.exists() ? counts.read(stamp()) : null;
+    }
+
+    @Override
+    public Path getDirectory() {
+        return file.getAbsoluteFile().toPath().getParent();
+    }
+
+    @Override
+    public StoreLock getLock() {
+        return lock;
+    }
+
+    @Override
+    public void close() {
+        lock.close();
+    }
+
+    /**
+     * Reads jobs from the file (internal helper method)
+     */
+    private List<Job> readJobsFromFile() {
+        try {
+            if (!file.exists() || file.length() == 0) {
+                return new ArrayList<>();
+            }
+            List<Job> jobs = objectMapper.readValue(file, new TypeReference<List<Job>>() {});
+            rememberStamp();
+            return jobs;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read jobs from file", e);
+        }
+    }
+
+    /**
+     * Streams the jobs of a JSON array file one at a time; nothing if the file does not exist
+     */
+    static void readJobs(ObjectMapper objectMapper, File file, Consumer<Job> consumer) throws IOException {
+        if (!file.exists() || file.length() == 0) {
+            return;
+        }
+        try (MappingIterator<Job> jobs = objectMapper.readerFor(Job.class).readValues(file)) {
+            while (jobs.hasNextValue()) {
+                consumer.accept(jobs.nextValue());
+            }
+        }
+    }
+
+    /**
+     * Writes jobs to the file (internal helper method)
+     */
+    private void writeJobsToFile(List<Job> jobs) {
+        try {
+            objectMapper.writeValue(file, jobs);
+            rememberStamp();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write jobs to file", e);
+        }
+    }
+
+    private boolean isModifiedExternally() {
+        try {
+            if (!file.exists()) {
+                return lastLength != -1;
+            }
+            return file.length() != lastLength
+                    || !Files.getLastModifiedTime(file.toPath()).equals(lastModified);
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * The same length and modification time this store watches for changes by other processes
+     */
+    private String stamp() {
+        try {
+            return file.length() + ":" + Files.getLastModifiedTime(file.toPath()).toMillis();
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    private void rememberStamp() throws IOException {
+        lastModified = Files.getLastModifiedTime(file.toPath());
+        lastLength = file.length();
+    }
+}
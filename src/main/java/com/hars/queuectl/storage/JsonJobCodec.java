@@ -0,0 +1,42 @@
+package com.hars.queuectl.storage;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.hars.queuectl.model.Job;
+
+/**
+ * Compact (unindented) JSON with ISO-8601 timestamps; the original record format
+ */
+public class JsonJobCodec implements JobCodec {
+
+    private final ObjectMapper objectMapper;
+
+    public JsonJobCodec() {
+        this.objectMapper = new ObjectMapper();
+        this.objectMapper.registerModule(new JavaTimeModule());
+        this.objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+
+    @Override
+    public int getFormat() {
+        return FORMAT_JSON;
+    }
+
+    @Override
+    public String getName() {
+        return JSON;
+    }
+
+    @Override
+    public byte[] encode(Job job) throws IOException {
+        return objectMapper.writeValueAsBytes(job);
+    }
+
+    @Override
+    public Job decode(byte[] data, int offset, int length) throws IOException {
+        return objectMapper.readValue(data, offset, length, Job.class);
+    }
+}
@@ -0,0 +1,651 @@
+package com.hars.queuectl.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.hars.queuectl.model.Job;
+import com.hars.queuectl.model.JobCounts;
+
+/**
+ * Append-only storage engine: every state change is written as one small record
+ * at the end of a log segment, so a write costs the same regardless of how many
+ * jobs are stored.
+ *
+ * Layout of the jobs.wal directory:
+ * <pre>
+ *   00000000000000000001.log   segment: header, then one frame per job change
+ *   snapshot-00000000000000000003.bin    full state covering all segments below 3
+ *   COUNTS                     job counters as of the end of the last segment
+ * </pre>
+ * A header is {@code int magic | int format}, where the format names the {@link JobCodec}
+ * the file's records are written with. A frame is {@code int length | int crc32 | payload},
+ * where the payload is one encoded job; a job without a state is a tombstone that removes
+ * the job, and compaction drops both. A binary snapshot has the same layout as a
+ * segment; a JSON snapshot ({@code .json}) is a plain array of jobs. Segments roll over at {@link #SEGMENT_MAX_BYTES}; once
+ * {@link #SEGMENTS_PER_SNAPSHOT} segments accumulate, the repository compacts them
+ * into a new snapshot. Startup replays the latest snapshot plus the segments after it.
+ *
+ * Writers append while holding the exclusive {@link StoreLock} on jobs.wal/LOCK, so
+ * frames from different processes never interleave. Readers only ever consume
+ * complete frames and need the lock just to reload after a compaction. A frame left
+ * torn or corrupt by a crash ends replay of its segment, so the next writer cuts it off
+ * before appending; otherwise every record written after it would be lost.
+ */
+public class LogJobStore implements JobStore {
+
+    public static final String LOG_DIR = "jobs.wal";
+
+    static final long SEGMENT_MAX_BYTES = 8L * 1024 * 1024;
+    static final int SEGMENTS_PER_SNAPSHOT = 4;
+
+    private static final int MAGIC = 0x5157414C; // "QWAL"
+    private static final int HEADER_BYTES = 8;
+    private static final int FRAME_OVERHEAD = 8;
+
+    // Replay reads this much of a file at a time, so memory does not grow with segment size
+    private static final int READ_BUFFER_BYTES = 1024 * 1024;
+    // Appends are written in chunks of about this size
+    private static final int WRITE_CHUNK_BYTES = 1024 * 1024;
+    // No job encodes to anything near this; a longer frame is corruption
+    private static final int MAX_FRAME_BYTES = 64 * 1024 * 1024;
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+    private static final String JSON_SNAPSHOT_SUFFIX = ".json";
+    private static final String LOCK_FILE = "LOCK";
+    private static final String COUNTS_FILE = "COUNTS";
+
+    private final Path dir;
+    private final ObjectMapper objectMapper;
+    private final StoreLock lock;
+    private final CountsFile counts;
+
+    // Codec for new segments and snapshots
+    private final JobCodec codec;
+
+    // Sequence of the snapshot the current state was built from
+    private long snapshotSeq;
+
+    // Position up to which records have been applied
+    private long readSeq;
+    private long readPos;
+
+    // Segment this process appends to
+    private long activeSeq;
+    private FileChannel writer;
+    private JobCodec writerCodec;
+    private boolean unsynced;
+
+    // Offset in the active segment up to which its frames are known to be whole
+    private long verifiedEnd;
+
+    // Last corrupt record reported, so polling up to it does not repeat the message
+    private String reportedCorruption;
+
+    public LogJobStore() {
+        this(Paths.get(LOG_DIR));
+    }
+
+    public LogJobStore(Path dir) {
+        this(dir, new BinaryJobCodec());
+    }
+
+    public LogJobStore(Path dir, JobCodec codec) {
+        this.dir = dir;
+        this.codec = codec;
+        this.lock = new StoreLock(dir.resolve(LOCK_FILE));
+        this.counts = new CountsFile(dir.resolve(COUNTS_FILE));
+        this.objectMapper = new ObjectMapper();
+        this.objectMapper.registerModule(new JavaTimeModule());
+        this.objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+
+    @Override
+    public List<Job> load() {
+        try {
+            Files.createDirectories(dir);
+            TreeSet<Long> segments = listSequences(SEGMENT_SUFFIX);
+            if (segments.isEmpty() && listSnapshots().isEmpty()) {
+                migrateLegacyFile();
+                segments = listSequences(SEGMENT_SUFFIX);
+            }
+            if (segments.isEmpty()) {
+                createSegment(1);
+                segments.add(1L);
+            }
+
+            Map<String, Job> jobs = new LinkedHashMap<>();
+            TreeSet<Long> snapshots = listSnapshots();
+            snapshotSeq = snapshots.isEmpty() ? 0 : snapshots.last();
+            if (snapshotSeq > 0) {
+                readSnapshot(snapshotSeq, job -> jobs.put(job.getId(), job));
+            }
+
+            // Replay every segment written after the snapshot
+            readSeq = Math.max(segments.first(), snapshotSeq);
+            readPos = HEADER_BYTES;
+            for (long seq : segments.tailSet(snapshotSeq, true)) {
+                readSeq = seq;
+                readPos = readFrames(segmentPath(seq), HEADER_BYTES, job -> {
+                    if (job.isTombstone()) {
+                        jobs.remove(job.getId());
+                    } else {
+                        jobs.put(job.getId(), job);
+                    }
+                });
+            }
+            openWriter(segments.last());
+            verifiedEnd = readPos;
+
+            return new ArrayList<>(jobs.values());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to replay job log", e);
+        }
+    }
+
+    @Override
+    public void scan(Consumer<Job> consumer) {
+        try {
+            if (!Files.isDirectory(dir)) {
+                // Not created yet, but load() would import a legacy jobs.json
+                JsonFileJobStore.readJobs(objectMapper, new File(JsonFileJobStore.JOBS_FILE), consumer);
+                return;
+            }
+            TreeSet<Long> segments = listSequences(SEGMENT_SUFFIX);
+            TreeSet<Long> snapshots = listSnapshots();
+            if (segments.isEmpty() && snapshots.isEmpty()) {
+                JsonFileJobStore.readJobs(objectMapper, new File(JsonFileJobStore.JOBS_FILE), consumer);
+                return;
+            }
+            long snapshot = snapshots.isEmpty() ? 0 : snapshots.last();
+            if (snapshot > 0) {
+                readSnapshot(snapshot, consumer);
+            }
+            for (long seq : segments.tailSet(snapshot, true)) {
+                readFrames(segmentPath(seq), HEADER_BYTES, consumer);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read job log", e);
+        }
+    }
+
+    @Override
+    public List<Job> poll() {
+        try {
+            if (!Files.exists(segmentPath(readSeq))) {
+                // Another process compacted the segment away
+                return null;
+            }
+
+            List<Job> changes = new ArrayList<>();
+            readPos = readFrames(segmentPath(readSeq), readPos, changes::add);
+            while (Files.exists(segmentPath(readSeq + 1))) {
+                readSeq++;
+                readPos = readFrames(segmentPath(readSeq), HEADER_BYTES, changes::add);
+            }
+            return changes;
+        } catch (NoSuchFileException e) {
+            // Compacted away while we were reading
+            return null;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read job log", e);
+        }
+    }
+
+    @Override
+    public void append(List<Job> jobs) {
+        if (jobs.isEmpty()) {
+            return;
+        }
+        try {
+            // Follow a rollover done by another process
+            while (Files.exists(segmentPath(activeSeq + 1))) {
+                openWriter(activeSeq + 1);
+            }
+
+            // A large batch is split over as many segments as it needs
+            byte[] pending = null;
+            int next = 0;
+            while (next < jobs.size() || pending != null) {
+                repairTail();
+                long start = writer.size();
+                long room = SEGMENT_MAX_BYTES - start;
+                List<byte[]> payloads = new ArrayList<>();
+                long bytes = 0;
+                boolean full = false;
+                while (pending != null || next < jobs.size()) {
+                    if (pending == null) {
+                        pending = writerCodec.encode(jobs.get(next++));
+                    }
+                    long frame = FRAME_OVERHEAD + pending.length;
+                    // A segment takes at least one frame, however large
+                    if (bytes + frame > room && (!payloads.isEmpty() || start > HEADER_BYTES)) {
+                        full = true;
+                        break;
+                    }
+                    if (!payloads.isEmpty() && bytes + frame > WRITE_CHUNK_BYTES) {
+                        break;
+                    }
+                    payloads.add(pending);
+                    bytes += frame;
+                    pending = null;
+                }
+
+                ByteBuffer buffer = encodeFrames(payloads);
+                while (buffer.hasRemaining()) {
+                    writer.write(buffer);
+                }
+                if (!payloads.isEmpty()) {
+                    unsynced = true;
+                }
+                verifiedEnd = start + bytes;
+
+                // Our own records do not need to be read back
+                boolean caughtUp = readSeq == activeSeq && readPos == start;
+                if (caughtUp) {
+                    readPos = start + bytes;
+                }
+                if (full || writer.size() >= SEGMENT_MAX_BYTES) {
+                    rollOver();
+                    if (caughtUp) {
+                        readSeq = activeSeq;
+                        readPos = HEADER_BYTES;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to append to job log", e);
+        }
+    }
+
+    @Override
+    public void sync() {
+        try {
+            if (writer != null && unsynced) {
+                writer.force(false);
+                unsynced = false;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to sync job log", e);
+        }
+    }
+
+    @Override
+    public boolean needsCompaction() {
+        return activeSeq - Math.max(snapshotSeq, 1) >= SEGMENTS_PER_SNAPSHOT;
+    }
+
+    @Override
+    public void compact(Collection<Job> jobs) {
+        try {
+            // Start a fresh segment; the snapshot covers everything before it
+            rollOver();
+            long seq = activeSeq;
+            writeSnapshot(seq, jobs);
+            snapshotSeq = seq;
+            readSeq = seq;
+            readPos = writer.size();
+
+            for (long old : listSequences(SEGMENT_SUFFIX).headSet(seq)) {
+                Files.deleteIfExists(segmentPath(old));
+            }
+            for (long old : listSnapshots().headSet(seq)) {
+                Files.deleteIfExists(snapshotPath(old, SNAPSHOT_SUFFIX));
+                Files.deleteIfExists(snapshotPath(old, JSON_SNAPSHOT_SUFFIX));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to compact job log", e);
+        }
+    }
+
+    @Override
+    public void writeCounts(JobCounts jobCounts) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            // Stamped with the end of the log: the last segment and its length
+            counts.write(activeSeq + ":" + writer.size(), jobCounts);
+        } catch (IOException e) {
+            System.err.println("Failed to write job counts: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public JobCounts readCounts() {
+        try {
+            if (!Files.isDirectory(dir)) {
+                return null;
+            }
+            TreeSet<Long> segments = listSequences(SEGMENT_SUFFIX);
+            if (segments.isEmpty()) {
+                return null;
+            }
+            long last = segments.last();
+            return counts.read(last + ":" + Files.size(segmentPath(last)));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return Codec used for new segments and snapshots
+     */
+    public JobCodec getCodec() {
+        return codec;
+    }
+
+    @Override
+    public Path getDirectory() {
+        return dir;
+    }
+
+    @Override
+    public StoreLock getLock() {
+        return lock;
+    }
+
+    @Override
+    public void close() {
+        lock.close();
+        try {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+        } catch (IOException e) {
+            // Ignore - nothing left to flush
+        }
+    }
+
+    /**
+     * Imports an existing jobs.json as the initial snapshot
+     */
+    private void migrateLegacyFile() throws IOException {
+        File legacy = new File(JsonFileJobStore.JOBS_FILE);
+        if (!legacy.exists()) {
+            return;
+        }
+        List<Job> jobs = new JsonFileJobStore(legacy).load();
+        createSegment(1);
+        writeSnapshot(1, jobs);
+        Files.move(legacy.toPath(), Paths.get(JsonFileJobStore.JOBS_FILE + ".migrated"),
+                StandardCopyOption.REPLACE_EXISTING);
+        System.out.println("Migrated " + jobs.size() + " jobs from " + JsonFileJobStore.JOBS_FILE
+                + " into " + dir);
+    }
+
+    private void rollOver() throws IOException {
+        long next = activeSeq + 1;
+        createSegment(next);
+        openWriter(next);
+    }
+
+    private void openWriter(long seq) throws IOException {
+        if (writer != null) {
+            // Records appended before a rollover must not miss the next sync
+            if (unsynced) {
+                writer.force(false);
+                unsynced = false;
+            }
+            writer.close();
+        }
+        // Keep writing a segment in the format it was created with
+        writerCodec = readCodec(segmentPath(seq));
+        writer = FileChannel.open(segmentPath(seq), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        activeSeq = seq;
+        verifiedEnd = 0;
+    }
+
+    /**
+     * Cuts an incomplete or corrupt tail off the active segment, such as a frame half
+     * written when a process crashed, so that records appended after it are read back.
+     * Only the bytes written since the last check are read (caller holds the lock
+     * exclusively).
+     */
+    private void repairTail() throws IOException {
+        long size = writer.size();
+        if (size == verifiedEnd) {
+            return;
+        }
+        long from = verifiedEnd >= HEADER_BYTES && verifiedEnd < size ? verifiedEnd : HEADER_BYTES;
+        long end = readFrames(segmentPath(activeSeq), from, null);
+        if (end < size) {
+            System.err.println("Truncating " + segmentPath(activeSeq) + " from " + size + " to " + end
+                    + " bytes to drop an incomplete or corrupt record");
+            writer.truncate(end);
+            unsynced = true;
+            if (readSeq == activeSeq && readPos > end) {
+                readPos = end;
+            }
+        }
+        verifiedEnd = end;
+    }
+
+    private void createSegment(long seq) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(seq),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer header = header(codec);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        } catch (FileAlreadyExistsException e) {
+            // Another process rolled over first
+        }
+    }
+
+    private static ByteBuffer header(JobCodec codec) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(codec.getFormat()).flip();
+        return header;
+    }
+
+    /**
+     * @return The codec named in a segment or snapshot header
+     */
+    private static JobCodec readCodec(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return readCodec(channel, path);
+        }
+    }
+
+    private static JobCodec readCodec(FileChannel channel, Path path) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+            // Keep reading until the header is complete
+        }
+        header.flip();
+        if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+            throw new IOException("Not a job log file: " + path);
+        }
+        return JobCodec.forFormat(header.getInt());
+    }
+
+    private static ByteBuffer encodeFrames(List<byte[]> payloads) {
+        int total = 0;
+        for (byte[] payload : payloads) {
+            total += FRAME_OVERHEAD + payload.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(total);
+        CRC32 crc = new CRC32();
+        for (byte[] payload : payloads) {
+            crc.reset();
+            crc.update(payload);
+            buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Applies every complete frame of a segment or snapshot starting at the given offset,
+     * up to the end of the file or the first corrupt frame. The file is read through a
+     * fixed-size buffer, so replay memory does not depend on the file size.
+     *
+     * @param consumer Receives each decoded job; null only checks the frames
+     * @return Offset just past the last complete frame
+     */
+    private long readFrames(Path path, long from, Consumer<Job> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= from) {
+                return from;
+            }
+            JobCodec frameCodec = readCodec(channel, path);
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(READ_BUFFER_BYTES, size - from));
+            buffer.flip();
+            // Offset of the next frame, and of the first byte not read into the buffer yet
+            long position = from;
+            long filled = from;
+            CRC32 crc = new CRC32();
+            while (true) {
+                int needed = FRAME_OVERHEAD;
+                if (buffer.remaining() >= FRAME_OVERHEAD) {
+                    int length = buffer.getInt(buffer.position());
+                    if (length < 0 || length > MAX_FRAME_BYTES) {
+                        reportCorruption(path, position);
+                        break;
+                    }
+                    needed += length;
+                }
+                if (buffer.remaining() < needed) {
+                    if (position + needed > size) {
+                        // Partially written frame - pick it up on the next poll
+                        break;
+                    }
+                    if (needed > buffer.capacity()) {
+                        ByteBuffer larger = ByteBuffer.allocate(needed);
+                        larger.put(buffer);
+                        buffer = larger;
+                    } else {
+                        buffer.compact();
+                    }
+                    while (buffer.hasRemaining() && filled < size) {
+                        int read = channel.read(buffer, filled);
+                        if (read < 0) {
+                            size = filled;
+                            break;
+                        }
+                        filled += read;
+                    }
+                    buffer.flip();
+                    continue;
+                }
+
+                int length = needed - FRAME_OVERHEAD;
+                int checksum = buffer.getInt(buffer.position() + 4);
+                int offset = buffer.position() + FRAME_OVERHEAD;
+                crc.reset();
+                crc.update(buffer.array(), offset, length);
+                if ((int) crc.getValue() != checksum) {
+                    reportCorruption(path, position);
+                    break;
+                }
+
+                if (consumer != null) {
+                    consumer.accept(frameCodec.decode(buffer.array(), offset, length));
+                }
+                buffer.position(offset + length);
+                position += needed;
+            }
+            return position;
+        }
+    }
+
+    private void reportCorruption(Path path, long position) {
+        String corruption = path + " at offset " + position;
+        if (!corruption.equals(reportedCorruption)) {
+            reportedCorruption = corruption;
+            System.err.println("Corrupt record in " + corruption + ", ignoring the rest of the file");
+        }
+    }
+
+    private void readSnapshot(long seq, Consumer<Job> consumer) throws IOException {
+        Path binary = snapshotPath(seq, SNAPSHOT_SUFFIX);
+        if (Files.exists(binary)) {
+            readFrames(binary, HEADER_BYTES, consumer);
+        } else {
+            JsonFileJobStore.readJobs(objectMapper, snapshotPath(seq, JSON_SNAPSHOT_SUFFIX).toFile(), consumer);
+        }
+    }
+
+    private void writeSnapshot(long seq, Collection<Job> jobs) throws IOException {
+        boolean json = codec.getFormat() == JobCodec.FORMAT_JSON;
+        Path target = snapshotPath(seq, json ? JSON_SNAPSHOT_SUFFIX : SNAPSHOT_SUFFIX);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp), WRITE_CHUNK_BYTES)) {
+            if (json) {
+                objectMapper.writeValue(out, jobs);
+            } else {
+                // One frame at a time rather than the whole snapshot in one buffer
+                out.write(header(codec).array());
+                for (Job job : jobs) {
+                    out.write(encodeFrames(Collections.singletonList(codec.encode(job))).array());
+                }
+            }
+        }
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private TreeSet<Long> listSnapshots() throws IOException {
+        TreeSet<Long> sequences = listSequences(SNAPSHOT_SUFFIX);
+        sequences.addAll(listSequences(JSON_SNAPSHOT_SUFFIX));
+        return sequences;
+    }
+
+    private TreeSet<Long> listSequences(String suffix) throws IOException {
+        TreeSet<Long> sequences = new TreeSet<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + suffix)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                name = name.substring(0, name.length() - suffix.length());
+                if (name.startsWith(SNAPSHOT_PREFIX)) {
+                    name = name.substring(SNAPSHOT_PREFIX.length());
+                }
+                try {
+                    sequences.add(Long.parseLong(name));
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        return sequences;
+    }
+
+    private Path segmentPath(long seq) {
+        return dir.resolve(String.format("%020d%s", seq, SEGMENT_SUFFIX));
+    }
+
+    private Path snapshotPath(long seq, String suffix) {
+        return dir.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, seq, suffix));
+    }
+}
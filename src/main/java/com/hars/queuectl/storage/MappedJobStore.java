@@ -0,0 +1,854 @@
+package com.hars.queuectl.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import com.hars.queuectl.model.Job;
+import com.hars.queuectl.model.JobCounts;
+
+/**
+ * Storage engine that keeps every job in a fixed-size slot of a memory-mapped table,
+ * so a state change is an in-place write of a few bytes instead of a new record.
+ *
+ * Layout of the jobs.mmap directory:
+ * <pre>
+ *   slots.dat   header, then one {@link #SLOT_BYTES}-byte slot per job in insertion order
+ *   heap.dat    header, then append-only {@code int length | UTF-8 bytes} strings
+ *   changes.dat ring of {@code long generation | int first slot | int last slot} entries
+ * </pre>
+ * A slot holds the numeric fields (state byte, counters, timestamps as epoch nanos)
+ * and heap offsets for id, command, lease owner and queue. A job's id is written to
+ * the heap once and its command again only if an update changes it; lease owners and
+ * queue names are interned per process. The outcome of a job's last attempt (exit code,
+ * times and output tail) lives in a heap block that is rewritten in place while the new
+ * tail fits. Blocks come in power-of-two sizes, and one that is outgrown or belonged to
+ * a removed job goes on a free list for its size in the heap header, from which the
+ * next block of that size is taken. Each slot carries a version, and the table header a
+ * generation counter, both bumped on every write. Each write also records the range of
+ * slots it touched in changes.dat under its generation, so another process reads the
+ * versions of those slots only. A process that fell more than {@link #CHANGE_LOG_ENTRIES}
+ * generations behind, or finds an entry overwritten or missing, scans every version.
+ *
+ * A state change writes no new record, but it is not free of allocation: strings are
+ * encoded to and decoded from the heap, and jobs are copied in and out of the store.
+ *
+ * Writes through a mapping raise no file events, so every write also stores the new
+ * generation in jobs.mmap/CHANGED with a plain write, which file watchers do see.
+ * jobs.mmap/COUNTS holds the job counters as of a generation.
+ *
+ * Removing a job marks its slot free (state -1) and bumps its version, so other
+ * processes see the removal like any other change; the next new job takes the lowest
+ * free slot. The id and command strings of removed jobs, and replaced commands, stay
+ * in the heap until the store is rewritten with {@code queuectl store convert}.
+ *
+ * Writers hold the exclusive {@link StoreLock} on jobs.mmap/LOCK; readers take it
+ * shared, so they never see a half-written slot.
+ */
+public class MappedJobStore implements JobStore {
+
+    public static final String MAP_DIR = "jobs.mmap";
+
+    static final int SLOT_BYTES = 128;
+
+    private static final int SLOTS_MAGIC = 0x514D4150; // "QMAP"
+    private static final int HEAP_MAGIC = 0x51484550;  // "QHEP"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int INITIAL_SLOTS = 1024;
+    private static final int INITIAL_HEAP_BYTES = 256 * 1024;
+    static final int CHANGE_LOG_ENTRIES = 1024;
+    private static final int CHANGE_BYTES = 16;
+
+    // Table header
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_SLOT_COUNT = 8;
+    private static final int H_GENERATION = 16;
+
+    // Heap header: bytes used, then the heads of the execution block free lists
+    private static final int H_HEAP_USED = 8;
+    private static final int H_FREE_LISTS = 16;
+    private static final int FREE_LISTS = 12;
+
+    // Slot fields
+    private static final int S_VERSION = 0;
+    private static final int S_STATE = 8;
+    private static final int S_ATTEMPTS = 12;
+    private static final int S_MAX_RETRIES = 16;
+    private static final int S_TIMEOUT = 24;
+    private static final int S_CREATED_AT = 32;
+    private static final int S_UPDATED_AT = 40;
+    private static final int S_LEASE_EXPIRES_AT = 48;
+    private static final int S_NEXT_RUN_AT = 56;
+    private static final int S_ID = 64;
+    private static final int S_COMMAND = 72;
+    private static final int S_LEASE_OWNER = 80;
+    private static final int S_PRIORITY = 88;
+    private static final int S_QUEUE = 96;
+    private static final int S_RUN_AT = 104;
+    private static final int S_EXECUTION = 112;
+    // Bytes 120-127 are reserved for future fields; slots written before a field existed
+    // hold zeros there
+
+    // Execution block: capacity of the tail area, then the fields, then the tail bytes
+    private static final int E_CAPACITY = 0;
+    private static final int E_EXIT_CODE = 4;
+    private static final int E_STARTED_AT = 8;
+    private static final int E_FINISHED_AT = 16;
+    private static final int E_RUNTIME = 24;
+    private static final int E_TAIL_LENGTH = 32;
+    private static final int E_TAIL = 36;
+    // A free block links to the next free block of its size in place of the exit code
+    private static final int E_NEXT_FREE = 4;
+    // Tail capacity of the smallest block size; list i holds capacities of at least MIN_TAIL << i
+    private static final int MIN_TAIL = 64;
+    private static final int NO_EXIT_CODE = Integer.MIN_VALUE;
+
+    private static final long NO_REF = -1;
+    private static final long NO_INSTANT = Long.MIN_VALUE;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final Job.JobState[] STATES = Job.JobState.values();
+    private static final String LOCK_FILE = "LOCK";
+    private static final String CHANGED_FILE = "CHANGED";
+    private static final String COUNTS_FILE = "COUNTS";
+    private static final String CHANGES_FILE = "changes.dat";
+
+    private final Path dir;
+    private final StoreLock lock;
+    private final CountsFile counts;
+
+    private FileChannel slotsChannel;
+    private FileChannel heapChannel;
+    private FileChannel changedChannel;
+    private FileChannel changesChannel;
+    private final ByteBuffer changedBuffer = ByteBuffer.allocate(8);
+    private MappedByteBuffer slots;
+    private MappedByteBuffer heap;
+    private MappedByteBuffer changes;
+
+    // Slot index of every job, and the slot versions and ids this process has applied
+    private final Map<String, Integer> slotById;
+    private long[] seenVersions;
+    private String[] seenIds;
+    private final BitSet freeSlots;
+    private int seenSlotCount;
+    private long seenGeneration;
+
+    // Range of slots touched by the append in progress
+    private int firstTouched;
+    private int lastTouched;
+
+    // Heap offsets of lease owner and queue name strings already written
+    private final Map<String, Long> internedRefs;
+
+    public MappedJobStore() {
+        this(Paths.get(MAP_DIR));
+    }
+
+    public MappedJobStore(Path dir) {
+        this.dir = dir;
+        this.lock = new StoreLock(dir.resolve(LOCK_FILE));
+        this.counts = new CountsFile(dir.resolve(COUNTS_FILE));
+        this.slotById = new HashMap<>();
+        this.internedRefs = new HashMap<>();
+        this.seenVersions = new long[0];
+        this.seenIds = new String[0];
+        this.freeSlots = new BitSet();
+    }
+
+    @Override
+    public List<Job> load() {
+        boolean sharedLock = !lock.isHeld();
+        if (sharedLock) {
+            lock.lockShared();
+        }
+        try {
+            open();
+            slotById.clear();
+            internedRefs.clear();
+            freeSlots.clear();
+
+            int count = slotCount();
+            seenVersions = new long[Math.max(count, INITIAL_SLOTS)];
+            seenIds = new String[seenVersions.length];
+            List<Job> jobs = new ArrayList<>(count);
+            for (int slot = 0; slot < count; slot++) {
+                Job job = readSlot(slot);
+                seenVersions[slot] = slots.getLong(slotOffset(slot) + S_VERSION);
+                seenIds[slot] = job.getId();
+                if (job.isTombstone()) {
+                    freeSlots.set(slot);
+                    continue;
+                }
+                slotById.put(job.getId(), slot);
+                if (job.getLeaseOwner() != null) {
+                    internedRefs.putIfAbsent(job.getLeaseOwner(), slots.getLong(slotOffset(slot) + S_LEASE_OWNER));
+                }
+                if (job.getQueue() != null) {
+                    internedRefs.putIfAbsent(job.getQueue(), slots.getLong(slotOffset(slot) + S_QUEUE));
+                }
+                jobs.add(job);
+            }
+            seenSlotCount = count;
+            seenGeneration = slots.getLong(H_GENERATION);
+            return jobs;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load job table", e);
+        } finally {
+            if (sharedLock) {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void scan(Consumer<Job> consumer) {
+        boolean mapped = slots != null;
+        try {
+            if (mapped) {
+                remapIfGrown();
+            } else if (!openReadOnly()) {
+                return;
+            }
+            int count = slotCount();
+            for (int slot = 0; slot < count; slot++) {
+                Job job = readSlot(slot);
+                if (!job.isTombstone()) {
+                    consumer.accept(job);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read job table", e);
+        } finally {
+            if (!mapped) {
+                unmap();
+            }
+        }
+    }
+
+    @Override
+    public List<Job> poll() {
+        if (slots == null) {
+            return null;
+        }
+        boolean sharedLock = !lock.isHeld();
+        if (sharedLock) {
+            lock.lockShared();
+        }
+        try {
+            long generation = slots.getLong(H_GENERATION);
+            if (generation == seenGeneration) {
+                return Collections.emptyList();
+            }
+            remapIfGrown();
+
+            // Read the versions of the slots changed since the last poll; only changed
+            // slots are decoded. Slots added since then are new whatever the log says.
+            List<Job> changed = new ArrayList<>();
+            int count = slotCount();
+            ensureSeenCapacity(count);
+            int[] range = changedRange(generation, count);
+            for (int slot = range[0]; slot <= range[1]; slot++) {
+                pollSlot(slot, changed);
+            }
+            for (int slot = Math.max(range[1] + 1, seenSlotCount); slot < count; slot++) {
+                pollSlot(slot, changed);
+            }
+            seenSlotCount = count;
+            seenGeneration = generation;
+            return changed;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read job table", e);
+        } finally {
+            if (sharedLock) {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return The first and last slot changed since the last poll, or every slot if the
+     *         change log does not cover all of the generations in between
+     */
+    private int[] changedRange(long generation, int count) {
+        int[] everySlot = {0, count - 1};
+        long behind = generation - seenGeneration;
+        if (behind < 1 || behind > CHANGE_LOG_ENTRIES) {
+            return everySlot;
+        }
+        int first = Integer.MAX_VALUE;
+        int last = -1;
+        for (long g = seenGeneration + 1; g <= generation; g++) {
+            int offset = changeOffset(g);
+            if (changes.getLong(offset) != g) {
+                // Overwritten, or written by a process that kept no log
+                return everySlot;
+            }
+            int high = changes.getInt(offset + 12);
+            if (high >= 0) {
+                first = Math.min(first, changes.getInt(offset + 8));
+                last = Math.max(last, high);
+            }
+        }
+        return last < 0 ? new int[] {0, -1} : new int[] {first, Math.min(last, count - 1)};
+    }
+
+    /**
+     * Applies a slot to this process's view if its version changed since the last poll
+     */
+    private void pollSlot(int slot, List<Job> changed) throws IOException {
+        long version = slots.getLong(slotOffset(slot) + S_VERSION);
+        if (slot < seenSlotCount && version == seenVersions[slot]) {
+            return;
+        }
+        Job job = readSlot(slot);
+        String previousId = seenIds[slot];
+        if (previousId != null && !previousId.equals(job.getId()) && !freeSlots.get(slot)) {
+            // Removed and taken by a new job since the last poll
+            slotById.remove(previousId);
+            changed.add(Job.tombstone(previousId));
+        }
+        if (job.isTombstone()) {
+            slotById.remove(job.getId());
+            freeSlots.set(slot);
+        } else {
+            slotById.put(job.getId(), slot);
+            freeSlots.clear(slot);
+        }
+        seenVersions[slot] = version;
+        seenIds[slot] = job.getId();
+        changed.add(job);
+    }
+
+    @Override
+    public void append(List<Job> jobs) {
+        if (jobs.isEmpty()) {
+            return;
+        }
+        try {
+            remapIfGrown();
+            long generation = slots.getLong(H_GENERATION);
+            boolean caughtUp = generation == seenGeneration;
+            firstTouched = Integer.MAX_VALUE;
+            lastTouched = -1;
+
+            for (Job job : jobs) {
+                if (job.isTombstone()) {
+                    Integer removed = slotById.remove(job.getId());
+                    if (removed != null) {
+                        removeSlot(removed);
+                    }
+                    continue;
+                }
+                Integer existing = slotById.get(job.getId());
+                int slot;
+                if (existing != null) {
+                    slot = existing;
+                    int offset = slotOffset(slot);
+                    if (!Objects.equals(readString(slots.getLong(offset + S_COMMAND)), job.getCommand())) {
+                        slots.putLong(offset + S_COMMAND, writeString(job.getCommand()));
+                    }
+                } else {
+                    slot = allocateSlot();
+                    slotById.put(job.getId(), slot);
+                    int offset = slotOffset(slot);
+                    slots.putLong(offset + S_ID, writeString(job.getId()));
+                    slots.putLong(offset + S_COMMAND, writeString(job.getCommand()));
+                    seenIds[slot] = job.getId();
+                }
+                writeSlot(slot, job);
+            }
+
+            // The entry is complete before the generation that points readers at it
+            int entry = changeOffset(generation + 1);
+            changes.putInt(entry + 8, lastTouched < 0 ? 0 : firstTouched);
+            changes.putInt(entry + 12, lastTouched);
+            changes.putLong(entry, generation + 1);
+            slots.putLong(H_GENERATION, generation + 1);
+            changedBuffer.clear();
+            changedBuffer.putLong(generation + 1).flip();
+            changedChannel.write(changedBuffer, 0);
+            if (caughtUp) {
+                // Our own writes do not need to be read back
+                seenGeneration = generation + 1;
+                seenSlotCount = slotCount();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write job table", e);
+        }
+    }
+
+    @Override
+    public void sync() {
+        if (slots != null) {
+            changes.force();
+            heap.force();
+            slots.force();
+        }
+    }
+
+    @Override
+    public boolean needsCompaction() {
+        // Slots are updated in place and the heap only grows with new jobs
+        return false;
+    }
+
+    @Override
+    public void compact(Collection<Job> jobs) {
+        // Nothing accumulates that a snapshot would remove
+    }
+
+    @Override
+    public void writeCounts(JobCounts jobCounts) {
+        if (slots != null) {
+            counts.write(Long.toString(slots.getLong(H_GENERATION)), jobCounts);
+        }
+    }
+
+    @Override
+    public JobCounts readCounts() {
+        // Read the generation straight from the file; mapping the table would cost more than the counts save
+        try (FileChannel channel = FileChannel.open(dir.resolve("slots.dat"), StandardOpenOption.READ)) {
+            ByteBuffer generation = ByteBuffer.allocate(8);
+            while (generation.hasRemaining() && channel.read(generation, H_GENERATION + generation.position()) >= 0) {
+                // Keep reading until the field is complete
+            }
+            if (generation.hasRemaining()) {
+                return null;
+            }
+            return counts.read(Long.toString(generation.getLong(0)));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public Path getDirectory() {
+        return dir;
+    }
+
+    @Override
+    public StoreLock getLock() {
+        return lock;
+    }
+
+    @Override
+    public void close() {
+        lock.close();
+        unmap();
+    }
+
+    private void unmap() {
+        try {
+            for (FileChannel channel : Arrays.asList(slotsChannel, heapChannel, changedChannel, changesChannel)) {
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+        } catch (IOException e) {
+            // Ignore - mapped pages are written back by the OS
+        } finally {
+            slotsChannel = null;
+            heapChannel = null;
+            changedChannel = null;
+            changesChannel = null;
+            slots = null;
+            heap = null;
+            changes = null;
+        }
+    }
+
+    private void open() throws IOException {
+        if (slots != null) {
+            remapIfGrown();
+            return;
+        }
+        Files.createDirectories(dir);
+        slotsChannel = openFile(dir.resolve("slots.dat"), SLOTS_MAGIC,
+                HEADER_BYTES + (long) INITIAL_SLOTS * SLOT_BYTES);
+        heapChannel = openFile(dir.resolve("heap.dat"), HEAP_MAGIC, INITIAL_HEAP_BYTES);
+        slots = slotsChannel.map(FileChannel.MapMode.READ_WRITE, 0, slotsChannel.size());
+        heap = heapChannel.map(FileChannel.MapMode.READ_WRITE, 0, heapChannel.size());
+        changedChannel = FileChannel.open(dir.resolve(CHANGED_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        changesChannel = FileChannel.open(dir.resolve(CHANGES_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        changes = changesChannel.map(FileChannel.MapMode.READ_WRITE, 0, (long) CHANGE_LOG_ENTRIES * CHANGE_BYTES);
+        if (slots.getInt(H_MAGIC) != SLOTS_MAGIC || heap.getInt(H_MAGIC) != HEAP_MAGIC) {
+            throw new IOException("Not a job table: " + dir);
+        }
+    }
+
+    /**
+     * Maps the table for reading without creating or growing any file (caller holds the store lock)
+     * @return false if there is no table yet
+     */
+    private boolean openReadOnly() throws IOException {
+        Path slotsPath = dir.resolve("slots.dat");
+        Path heapPath = dir.resolve("heap.dat");
+        if (!Files.exists(slotsPath) || !Files.exists(heapPath)) {
+            return false;
+        }
+        slotsChannel = FileChannel.open(slotsPath, StandardOpenOption.READ);
+        heapChannel = FileChannel.open(heapPath, StandardOpenOption.READ);
+        if (slotsChannel.size() < HEADER_BYTES || heapChannel.size() < HEADER_BYTES) {
+            throw new IOException("Not a job table: " + dir);
+        }
+        slots = slotsChannel.map(FileChannel.MapMode.READ_ONLY, 0, slotsChannel.size());
+        heap = heapChannel.map(FileChannel.MapMode.READ_ONLY, 0, heapChannel.size());
+        if (slots.getInt(H_MAGIC) != SLOTS_MAGIC || heap.getInt(H_MAGIC) != HEAP_MAGIC) {
+            throw new IOException("Not a job table: " + dir);
+        }
+        return true;
+    }
+
+    /**
+     * Opens a table file, creating it with its header if it does not exist yet
+     */
+    private static FileChannel openFile(Path path, int magic, long initialSize) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() == 0) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, initialSize);
+            header.putInt(H_MAGIC, magic);
+            header.putInt(H_VERSION, VERSION);
+            if (magic == HEAP_MAGIC) {
+                header.putLong(H_HEAP_USED, HEADER_BYTES);
+            }
+            header.force();
+        }
+        return channel;
+    }
+
+    /**
+     * Picks up files grown by another process (caller holds the store lock)
+     */
+    private void remapIfGrown() throws IOException {
+        if (slotsChannel.size() > slots.capacity()) {
+            slots = slotsChannel.map(FileChannel.MapMode.READ_WRITE, 0, slotsChannel.size());
+        }
+        if (heapChannel.size() > heap.capacity()) {
+            heap = heapChannel.map(FileChannel.MapMode.READ_WRITE, 0, heapChannel.size());
+        }
+    }
+
+    private int slotCount() {
+        return slots.getInt(H_SLOT_COUNT);
+    }
+
+    private int allocateSlot() throws IOException {
+        int free = freeSlots.nextSetBit(0);
+        if (free >= 0) {
+            freeSlots.clear(free);
+            return free;
+        }
+        int slot = slotCount();
+        long needed = HEADER_BYTES + (long) (slot + 1) * SLOT_BYTES;
+        if (needed > slots.capacity()) {
+            long size = Math.max(needed, HEADER_BYTES + 2L * (slots.capacity() - HEADER_BYTES));
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Job table is full");
+            }
+            slots.force();
+            slots = slotsChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        slots.putInt(H_SLOT_COUNT, slot + 1);
+        ensureSeenCapacity(slot + 1);
+        return slot;
+    }
+
+    private void ensureSeenCapacity(int count) {
+        if (count > seenVersions.length) {
+            seenVersions = Arrays.copyOf(seenVersions, Math.max(count, seenVersions.length * 2));
+            seenIds = Arrays.copyOf(seenIds, seenVersions.length);
+        }
+    }
+
+    /**
+     * Marks a slot free and frees its execution block; its id stays readable so other
+     * processes can tell which job went
+     */
+    private void removeSlot(int slot) {
+        int offset = slotOffset(slot);
+        slots.put(offset + S_STATE, (byte) -1);
+        long execution = slots.getLong(offset + S_EXECUTION);
+        slots.putLong(offset + S_EXECUTION, NO_REF);
+        freeBlock(execution);
+        touch(slot);
+        long version = slots.getLong(offset + S_VERSION) + 1;
+        slots.putLong(offset + S_VERSION, version);
+        seenVersions[slot] = version;
+        freeSlots.set(slot);
+    }
+
+    private void touch(int slot) {
+        firstTouched = Math.min(firstTouched, slot);
+        lastTouched = Math.max(lastTouched, slot);
+    }
+
+    private static int changeOffset(long generation) {
+        return (int) (generation % CHANGE_LOG_ENTRIES) * CHANGE_BYTES;
+    }
+
+    private static int slotOffset(int slot) {
+        return HEADER_BYTES + slot * SLOT_BYTES;
+    }
+
+    /**
+     * Writes the mutable fields of a job into its slot and bumps the slot version
+     */
+    private void writeSlot(int slot, Job job) throws IOException {
+        int offset = slotOffset(slot);
+        slots.put(offset + S_STATE, job.getState() == null ? -1 : (byte) job.getState().ordinal());
+        slots.putInt(offset + S_ATTEMPTS, job.getAttempts());
+        slots.putInt(offset + S_MAX_RETRIES, job.getMaxRetries());
+        slots.putLong(offset + S_TIMEOUT, job.getTimeoutSeconds());
+        slots.putLong(offset + S_CREATED_AT, toEpochNanos(job.getCreatedAt()));
+        slots.putLong(offset + S_UPDATED_AT, toEpochNanos(job.getUpdatedAt()));
+        slots.putLong(offset + S_LEASE_EXPIRES_AT, toEpochNanos(job.getLeaseExpiresAt()));
+        slots.putLong(offset + S_NEXT_RUN_AT, toEpochNanos(job.getNextRunAt()));
+        slots.putLong(offset + S_LEASE_OWNER, internedRef(job.getLeaseOwner()));
+        slots.putInt(offset + S_PRIORITY, job.getPriority());
+        slots.putLong(offset + S_QUEUE, internedRef(job.getQueue()));
+        slots.putLong(offset + S_RUN_AT, toEpochNanos(job.getRunAt()));
+        // The slot points at the new block before the old one is freed, so a crash in
+        // between leaks the old block rather than leaving it both used and free
+        long previous = slots.getLong(offset + S_EXECUTION);
+        long execution = writeExecution(previous, job);
+        slots.putLong(offset + S_EXECUTION, execution);
+        if (execution != previous) {
+            freeBlock(previous);
+        }
+
+        touch(slot);
+        long version = slots.getLong(offset + S_VERSION) + 1;
+        slots.putLong(offset + S_VERSION, version);
+        seenVersions[slot] = version;
+    }
+
+    private Job readSlot(int slot) throws IOException {
+        int offset = slotOffset(slot);
+        Job job = new Job();
+        int state = slots.get(offset + S_STATE);
+        if (state >= STATES.length) {
+            throw new IOException("Unknown job state ordinal " + state + " in slot " + slot);
+        }
+        job.setState(state < 0 ? null : STATES[state]);
+        job.setAttempts(slots.getInt(offset + S_ATTEMPTS));
+        job.setMaxRetries(slots.getInt(offset + S_MAX_RETRIES));
+        job.setTimeoutSeconds(slots.getLong(offset + S_TIMEOUT));
+        job.setCreatedAt(fromEpochNanos(slots.getLong(offset + S_CREATED_AT)));
+        job.setUpdatedAt(fromEpochNanos(slots.getLong(offset + S_UPDATED_AT)));
+        job.setLeaseExpiresAt(fromEpochNanos(slots.getLong(offset + S_LEASE_EXPIRES_AT)));
+        job.setNextRunAt(fromEpochNanos(slots.getLong(offset + S_NEXT_RUN_AT)));
+        job.setId(readString(slots.getLong(offset + S_ID)));
+        job.setCommand(readString(slots.getLong(offset + S_COMMAND)));
+        job.setLeaseOwner(readString(slots.getLong(offset + S_LEASE_OWNER)));
+        job.setPriority(slots.getInt(offset + S_PRIORITY));
+        job.setQueue(readString(slots.getLong(offset + S_QUEUE)));
+        job.setRunAt(fromRunAt(slots.getLong(offset + S_RUN_AT)));
+        readExecution(slots.getLong(offset + S_EXECUTION), job);
+        return job;
+    }
+
+    /**
+     * Stores the job's last execution in its existing block if the output tail fits,
+     * otherwise in a new one; the caller frees the existing block if it was not used
+     * @param ref The slot's current block, if any
+     * @return The block's heap offset, or {@link #NO_REF} if the job has not run
+     */
+    private long writeExecution(long ref, Job job) throws IOException {
+        if (job.getLastExitCode() == null && job.getStartedAt() == null && job.getFinishedAt() == null
+                && job.getRuntimeMillis() == 0 && job.getOutputTail() == null) {
+            return NO_REF;
+        }
+        byte[] tail = job.getOutputTail() == null ? null : job.getOutputTail().getBytes(StandardCharsets.UTF_8);
+        int tailLength = tail == null ? 0 : tail.length;
+        if (ref < HEADER_BYTES || heap.getInt((int) ref + E_CAPACITY) < tailLength) {
+            ref = allocateBlock(tailLength);
+        }
+        int block = (int) ref;
+        heap.putInt(block + E_EXIT_CODE, job.getLastExitCode() == null ? NO_EXIT_CODE : job.getLastExitCode());
+        heap.putLong(block + E_STARTED_AT, toEpochNanos(job.getStartedAt()));
+        heap.putLong(block + E_FINISHED_AT, toEpochNanos(job.getFinishedAt()));
+        heap.putLong(block + E_RUNTIME, job.getRuntimeMillis());
+        heap.putInt(block + E_TAIL_LENGTH, tail == null ? -1 : tail.length);
+        if (tail != null) {
+            ByteBuffer target = heap.duplicate();
+            target.position(block + E_TAIL);
+            target.put(tail);
+        }
+        return ref;
+    }
+
+    /**
+     * Takes an execution block with room for the given tail from its free list, or
+     * from the end of the heap if the list is empty
+     */
+    private long allocateBlock(int tailLength) throws IOException {
+        int list = 0;
+        while (list < FREE_LISTS - 1 && (MIN_TAIL << list) < tailLength) {
+            list++;
+        }
+        int capacity = MIN_TAIL << list;
+        if (capacity < tailLength) {
+            // Larger than any listed size; only ever the case for very long tails
+            capacity = tailLength;
+        } else {
+            int head = heap.getInt(H_FREE_LISTS + 4 * list);
+            if (head >= HEADER_BYTES) {
+                heap.putInt(H_FREE_LISTS + 4 * list, heap.getInt(head + E_NEXT_FREE));
+                return head;
+            }
+        }
+        long ref = allocate(E_TAIL + capacity);
+        heap.putInt((int) ref + E_CAPACITY, capacity);
+        return ref;
+    }
+
+    /**
+     * Puts an execution block on the free list of the largest size it can hold
+     */
+    private void freeBlock(long ref) {
+        if (ref < HEADER_BYTES) {
+            return;
+        }
+        int block = (int) ref;
+        int capacity = heap.getInt(block + E_CAPACITY);
+        if (capacity < MIN_TAIL) {
+            // An exact-size block from before blocks were sized in powers of two
+            return;
+        }
+        int list = 0;
+        while (list < FREE_LISTS - 1 && (MIN_TAIL << (list + 1)) <= capacity) {
+            list++;
+        }
+        heap.putInt(block + E_NEXT_FREE, heap.getInt(H_FREE_LISTS + 4 * list));
+        heap.putInt(H_FREE_LISTS + 4 * list, block);
+    }
+
+    private void readExecution(long ref, Job job) {
+        // Unset in slots written before executions were recorded
+        if (ref < HEADER_BYTES) {
+            return;
+        }
+        int block = (int) ref;
+        int exitCode = heap.getInt(block + E_EXIT_CODE);
+        job.setLastExitCode(exitCode == NO_EXIT_CODE ? null : exitCode);
+        job.setStartedAt(fromEpochNanos(heap.getLong(block + E_STARTED_AT)));
+        job.setFinishedAt(fromEpochNanos(heap.getLong(block + E_FINISHED_AT)));
+        job.setRuntimeMillis(heap.getLong(block + E_RUNTIME));
+        int tailLength = heap.getInt(block + E_TAIL_LENGTH);
+        if (tailLength >= 0) {
+            ByteBuffer source = heap.duplicate();
+            source.position(block + E_TAIL);
+            byte[] tail = new byte[tailLength];
+            source.get(tail);
+            job.setOutputTail(new String(tail, StandardCharsets.UTF_8));
+        }
+    }
+
+    private long internedRef(String value) throws IOException {
+        if (value == null) {
+            return NO_REF;
+        }
+        Long ref = internedRefs.get(value);
+        if (ref == null) {
+            ref = writeString(value);
+            internedRefs.put(value, ref);
+        }
+        return ref;
+    }
+
+    /**
+     * Appends a string to the heap
+     * @return Its heap offset
+     */
+    private long writeString(String value) throws IOException {
+        if (value == null) {
+            return NO_REF;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        long ref = allocate(4 + bytes.length);
+        heap.putInt((int) ref, bytes.length);
+        ByteBuffer target = heap.duplicate();
+        target.position((int) ref + 4);
+        target.put(bytes);
+        return ref;
+    }
+
+    /**
+     * Reserves space at the end of the heap, growing the file if needed
+     * @return Offset of the reserved space
+     */
+    private long allocate(int bytes) throws IOException {
+        long ref = heap.getLong(H_HEAP_USED);
+        long needed = ref + bytes;
+        if (needed > heap.capacity()) {
+            long size = Math.max(needed, 2L * heap.capacity());
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Job table string heap is full");
+            }
+            heap.force();
+            heap = heapChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        heap.putLong(H_HEAP_USED, needed);
+        return ref;
+    }
+
+    private String readString(long ref) {
+        // Strings start after the heap header; 0 is an unset field in an older slot
+        if (ref < HEADER_BYTES) {
+            return null;
+        }
+        int length = heap.getInt((int) ref);
+        ByteBuffer source = heap.duplicate();
+        source.position((int) ref + 4);
+        byte[] bytes = new byte[length];
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long toEpochNanos(Instant instant) throws IOException {
+        if (instant == null) {
+            return NO_INSTANT;
+        }
+        try {
+            return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), NANOS_PER_SECOND), instant.getNano());
+        } catch (ArithmeticException e) {
+            throw new IOException("Timestamp out of range for the job table: " + instant);
+        }
+    }
+
+    /**
+     * Slots written before run_at existed hold zero there
+     */
+    private static Instant fromRunAt(long nanos) {
+        return nanos == 0 ? null : fromEpochNanos(nanos);
+    }
+
+    private static Instant fromEpochNanos(long nanos) {
+        if (nanos == NO_INSTANT) {
+            return null;
+        }
+        return Instant.ofEpochSecond(Math.floorDiv(nanos, NANOS_PER_SECOND), Math.floorMod(nanos, NANOS_PER_SECOND));
+    }
+}
@@ -0,0 +1,92 @@
+package com.hars.queuectl.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.hars.queuectl.model.Schedule;
+
+/**
+ * Recurring job definitions in schedules.json. The file is small and changes rarely,
+ * so it is rewritten in full; the rewrite goes through a temporary file and a rename
+ * so readers never see a partial file. Read-modify-write cycles from the CLI and the
+ * worker's scheduler are serialized with a {@link StoreLock} on schedules.json.lock.
+ */
+public class ScheduleStore implements Closeable {
+
+    public static final String SCHEDULES_FILE = "schedules.json";
+
+    private final File file;
+    private final ObjectMapper objectMapper;
+    private final StoreLock lock;
+
+    public ScheduleStore() {
+        this(new File(SCHEDULES_FILE));
+    }
+
+    public ScheduleStore(File file) {
+        this.file = file;
+        this.lock = new StoreLock(new File(file.getPath() + ".lock").toPath());
+        this.objectMapper = new ObjectMapper();
+        this.objectMapper.registerModule(new JavaTimeModule());
+        this.objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        this.objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
+    }
+
+    /**
+     * @return All schedules, in the order they were added
+     */
+    public List<Schedule> load() {
+        try {
+            if (!file.exists() || file.length() == 0) {
+                return new ArrayList<>();
+            }
+            return objectMapper.readValue(file, new TypeReference<List<Schedule>>() {});
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read schedules from file", e);
+        }
+    }
+
+    /**
+     * Replaces the stored schedules (caller holds the lock)
+     */
+    public void save(List<Schedule> schedules) {
+        Path target = file.toPath().toAbsolutePath();
+        Path temp = target.resolveSibling(file.getName() + ".tmp");
+        try {
+            objectMapper.writeValue(temp.toFile(), schedules);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write schedules to file", e);
+        }
+    }
+
+    /**
+     * @return The file's modification time in millis, or 0 if it does not exist
+     */
+    public long lastModified() {
+        return file.lastModified();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public StoreLock getLock() {
+        return lock;
+    }
+
+    @Override
+    public void close() {
+        lock.close();
+    }
+}
@@ -0,0 +1,89 @@
+package com.hars.queuectl.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Cross-process lock over a job store, taken on a single byte of a small lock file.
+ *
+ * File locks are held per JVM, so callers must also serialize the threads of their
+ * own process (JobRepository does this with its write lock). The channel stays open
+ * between acquisitions so taking the lock costs a single fcntl call.
+ */
+public class StoreLock implements Closeable {
+
+    private final Path path;
+    private FileChannel channel;
+    private FileLock held;
+
+    public StoreLock(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Blocks until this process holds the lock exclusively (writers)
+     */
+    public void lock() {
+        acquire(false);
+    }
+
+    /**
+     * Blocks until this process holds the lock shared (readers that need a consistent view)
+     */
+    public void lockShared() {
+        acquire(true);
+    }
+
+    public void unlock() {
+        try {
+            if (held != null) {
+                held.release();
+            }
+        } catch (IOException e) {
+            // Ignore - the lock is dropped when the channel closes
+        } finally {
+            held = null;
+        }
+    }
+
+    /**
+     * @return true if this process currently holds the lock
+     */
+    public boolean isHeld() {
+        return held != null;
+    }
+
+    @Override
+    public void close() {
+        unlock();
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            // Ignore - nothing to flush
+        } finally {
+            channel = null;
+        }
+    }
+
+    private void acquire(boolean shared) {
+        try {
+            if (channel == null) {
+                if (path.getParent() != null) {
+                    Files.createDirectories(path.getParent());
+                }
+                channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            held = channel.lock(0, 1, shared);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to lock " + path, e);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.hars.queuectl.worker;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Outcome of one attempt at running a job's command
+ */
+public class ExecutionResult {
+
+    private final int exitCode;
+    private final Instant startedAt;
+    private final Instant finishedAt;
+    private final String outputTail;
+
+    public ExecutionResult(int exitCode, Instant startedAt, Instant finishedAt, String outputTail) {
+        this.exitCode = exitCode;
+        this.startedAt = startedAt;
+        this.finishedAt = finishedAt;
+        this.outputTail = outputTail;
+    }
+
+    /**
+     * @return 0 on success, {@link JobExecutor#EXIT_CODE_TIMEOUT} on timeout, -1 if the
+     *         command could not be run
+     */
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public long getRuntimeMillis() {
+        return Duration.between(startedAt, finishedAt).toMillis();
+    }
+
+    /**
+     * @return The last {@link OutputTail#DEFAULT_CAPACITY} bytes of output, or null if there was none
+     */
+    public String getOutputTail() {
+        return outputTail;
+    }
+}
@@ -1,9 +1,14 @@
 package com.hars.queuectl.worker;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import com.hars.queuectl.model.Job;
 
@@ -12,12 +17,48 @@ public class JobExecutor {
     // Special exit code for timeout
     public static final int EXIT_CODE_TIMEOUT = -2;
     
+    // How long to wait for the rest of a job's output after it exits; children that
+    // keep the pipe open must not hold up the worker
+    private static final long OUTPUT_DRAIN_MS = 1000;
+    
+    // Creates the thread that copies a job's output to its log file
+    private final ThreadFactory outputThreads;
+    private final JobLogs jobLogs;
+    
+    public JobExecutor() {
+        this(new JobLogs());
+    }
+    
+    public JobExecutor(JobLogs jobLogs) {
+        this(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        }, jobLogs);
+    }
+    
     /**
-     * Executes a job's command and returns the exit code
+     * @param outputThreads Factory for the per-job output pump threads (e.g. virtual threads)
+     * @param jobLogs Where job output is written
+     */
+    public JobExecutor(ThreadFactory outputThreads, JobLogs jobLogs) {
+        this.outputThreads = outputThreads;
+        this.jobLogs = jobLogs;
+    }
+    
+    /**
+     * Executes a job's command
      * @param job The job to execute
-     * @return Exit code (0 = success, non-zero = failure, -2 = timeout)
+     * @return Exit code (0 = success, non-zero = failure, -2 = timeout), timing and output tail
      */
-    public int execute(Job job) {
+    public ExecutionResult execute(Job job) {
+        Instant startedAt = Instant.now();
+        OutputTail tail = new OutputTail();
+        int exitCode = run(job, startedAt, tail);
+        return new ExecutionResult(exitCode, startedAt, Instant.now(), tail.toString());
+    }
+    
+    private int run(Job job, Instant startedAt, OutputTail tail) {
         try {
             System.out.println("Executing job " + job.getId() + ": " + job.getCommand());
             
@@ -39,24 +80,15 @@ public class JobExecutor {
             // Start the process
             Process process = processBuilder.start();
             
-            // Read output in a separate thread to avoid blocking
-            Thread outputThread = new Thread(() -> {
-                try (BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(process.getInputStream()))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        System.out.println("[Job " + job.getId() + "] " + line);
-                    }
-                } catch (IOException e) {
-                    // Ignore - process was likely terminated
-                }
-            });
-            outputThread.setDaemon(true);
+            // Copy output to the job's log file in a separate thread to avoid blocking
+            String header = "=== attempt " + (job.getAttempts() + 1) + " started " + startedAt
+                    + ": " + job.getCommand() + " ===";
+            Thread outputThread = outputThreads.newThread(() -> captureOutput(job.getId(), header, process.getInputStream(), tail));
             outputThread.start();
             
             // Wait for the process to complete with timeout
             long timeout = job.getTimeoutSeconds() > 0 ? job.getTimeoutSeconds() : 300; // Default 5 minutes
-            boolean finished = process.waitFor(timeout, TimeUnit.SECONDS);
+            boolean finished = awaitExit(process, timeout, TimeUnit.SECONDS);
             
             if (!finished) {
                 // Timeout occurred - attempt graceful termination
@@ -66,20 +98,22 @@ public class JobExecutor {
                 process.destroy();
                 
                 // Wait up to 5 seconds for graceful shutdown
-                boolean gracefulShutdown = process.waitFor(5, TimeUnit.SECONDS);
+                boolean gracefulShutdown = awaitExit(process, 5, TimeUnit.SECONDS);
                 
                 if (!gracefulShutdown) {
                     // Force kill if still running (SIGKILL)
                     System.err.println("Job " + job.getId() + " did not terminate gracefully. Force killing...");
                     process.destroyForcibly();
-                    process.waitFor(); // Wait for forced termination
+                    awaitExit(process, Long.MAX_VALUE, TimeUnit.SECONDS); // Wait for forced termination
                 }
                 
+                outputThread.join(OUTPUT_DRAIN_MS);
                 return EXIT_CODE_TIMEOUT;
             }
             
             // Wait for the process to complete
             int exitCode = process.exitValue();
+            outputThread.join(OUTPUT_DRAIN_MS);
             
             System.out.println("Job " + job.getId() + " finished with exit code: " + exitCode);
             
@@ -87,6 +121,7 @@ public class JobExecutor {
             
         } catch (IOException e) {
             System.err.println("Failed to execute job " + job.getId() + ": " + e.getMessage());
+            tail.append(ByteBuffer.wrap(("Failed to execute: " + e.getMessage()).getBytes(StandardCharsets.UTF_8)));
             return -1;
         } catch (InterruptedException e) {
             System.err.println("Job " + job.getId() + " was interrupted: " + e.getMessage());
@@ -94,4 +129,39 @@ public class JobExecutor {
             return -1;
         }
     }
+    
+    private void captureOutput(String jobId, String header, InputStream output, OutputTail tail) {
+        try (output) {
+            try {
+                jobLogs.capture(jobId, header, output, tail);
+            } catch (IOException e) {
+                System.err.println("Failed to write output of job " + jobId + ": " + e.getMessage());
+                // Keep draining so the process never blocks on a full pipe
+                byte[] chunk = new byte[8192];
+                int read;
+                while ((read = output.read(chunk)) >= 0) {
+                    tail.append(ByteBuffer.wrap(chunk, 0, read));
+                }
+            }
+        } catch (IOException e) {
+            // Ignore - process was likely terminated
+        }
+    }
+    
+    /**
+     * Waits for the process to exit. Process.waitFor blocks in Object.wait, which pins a
+     * virtual thread to its carrier; waiting on onExit() parks it instead.
+     * @return false if the process was still running after the timeout
+     */
+    private static boolean awaitExit(Process process, long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            process.onExit().get(timeout, unit);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            // onExit() only completes normally; fall back to the blocking wait
+            return process.waitFor(timeout, unit);
+        }
+    }
 }
@@ -0,0 +1,153 @@
+package com.hars.queuectl.worker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per-job output files. A job's output is appended to {@code logs/<id>.log} in chunks
+ * through a direct buffer, without decoding it into lines or going through the worker's
+ * stdout. When the file reaches the size cap it is rotated to {@code <id>.log.1},
+ * {@code .2}, ... and the oldest is dropped, so one job never keeps more than
+ * {@code (backups + 1) * maxBytes} on disk.
+ */
+public class JobLogs {
+
+    public static final String LOG_DIR = "logs";
+    public static final long DEFAULT_MAX_BYTES = 10L * 1024 * 1024;
+    public static final int DEFAULT_BACKUPS = 2;
+
+    private static final int CHUNK_BYTES = 8192;
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private volatile long maxBytes;
+    private volatile int backups;
+
+    public JobLogs() {
+        this(Paths.get(LOG_DIR), DEFAULT_MAX_BYTES, DEFAULT_BACKUPS);
+    }
+
+    /**
+     * @param maxBytes Size at which a job's log file is rotated
+     * @param backups Number of rotated files kept per job
+     */
+    public JobLogs(Path directory, long maxBytes, int backups) {
+        this.directory = directory;
+        setLimits(maxBytes, backups);
+    }
+
+    /**
+     * Changes the rotation size and the number of rotated files kept; takes effect at
+     * the next rotation of each log
+     */
+    public void setLimits(long maxBytes, int backups) {
+        this.maxBytes = Math.max(CHUNK_BYTES, maxBytes);
+        this.backups = Math.max(0, backups);
+    }
+
+    /**
+     * @return The file a job's output is currently written to
+     */
+    public Path fileOf(String jobId) {
+        // Ids may contain path separators; encoding keeps distinct ids in distinct files
+        return directory.resolve(URLEncoder.encode(jobId, StandardCharsets.UTF_8) + SUFFIX);
+    }
+
+    /**
+     * @return The job's existing log files, oldest first
+     */
+    public List<Path> filesOf(String jobId) {
+        List<Path> files = new ArrayList<>();
+        for (int i = backups; i >= 1; i--) {
+            Path backup = backupOf(jobId, i);
+            if (Files.exists(backup)) {
+                files.add(backup);
+            }
+        }
+        Path current = fileOf(jobId);
+        if (Files.exists(current)) {
+            files.add(current);
+        }
+        return files;
+    }
+
+    /**
+     * Appends a header line and then everything read from the stream until it ends
+     * @param header First line written, e.g. which attempt this output belongs to
+     * @param output A process's output stream
+     * @param tail Also receives the output, to keep its last bytes in memory
+     */
+    public void capture(String jobId, String header, InputStream output, OutputTail tail) throws IOException {
+        Files.createDirectories(directory);
+        ReadableByteChannel source = Channels.newChannel(output);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_BYTES);
+
+        FileChannel target = open(jobId);
+        try {
+            ByteBuffer headerLine = ByteBuffer.wrap((header + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+            while (headerLine.hasRemaining()) {
+                target.write(headerLine);
+            }
+            // Returns what is available, so followers see output as it is produced
+            while (source.read(buffer) >= 0) {
+                buffer.flip();
+                tail.append(buffer);
+                while (buffer.hasRemaining()) {
+                    long room = maxBytes - target.size();
+                    if (room <= 0) {
+                        target.close();
+                        rotate(jobId);
+                        target = open(jobId);
+                        continue;
+                    }
+                    // Write no more than fits so files stay within the cap
+                    ByteBuffer chunk = buffer.duplicate();
+                    chunk.limit(buffer.position() + (int) Math.min(buffer.remaining(), room));
+                    buffer.position(buffer.position() + target.write(chunk));
+                }
+                buffer.clear();
+            }
+        } finally {
+            target.close();
+        }
+    }
+
+    private FileChannel open(String jobId) throws IOException {
+        return FileChannel.open(fileOf(jobId), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void rotate(String jobId) throws IOException {
+        Path current = fileOf(jobId);
+        if (backups == 0) {
+            Files.deleteIfExists(current);
+            return;
+        }
+        Files.deleteIfExists(backupOf(jobId, backups));
+        for (int i = backups - 1; i >= 1; i--) {
+            Path backup = backupOf(jobId, i);
+            if (Files.exists(backup)) {
+                Files.move(backup, backupOf(jobId, i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(current, backupOf(jobId, 1), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path backupOf(String jobId, int index) {
+        Path current = fileOf(jobId);
+        return current.resolveSibling(current.getFileName() + "." + index);
+    }
+}
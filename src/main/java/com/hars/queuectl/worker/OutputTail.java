@@ -0,0 +1,68 @@
+package com.hars.queuectl.worker;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Fixed-size ring buffer keeping the last bytes of a job's output. Memory use is the
+ * capacity no matter how much the job writes.
+ */
+public class OutputTail {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final byte[] ring;
+    private long written;
+
+    public OutputTail() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public OutputTail(int capacity) {
+        this.ring = new byte[capacity];
+    }
+
+    /**
+     * Adds the buffer's remaining bytes without moving its position
+     */
+    public synchronized void append(ByteBuffer chunk) {
+        ByteBuffer source = chunk.duplicate();
+        // Only the last capacity bytes can survive
+        if (source.remaining() > ring.length) {
+            written += source.remaining() - ring.length;
+            source.position(source.limit() - ring.length);
+        }
+        while (source.hasRemaining()) {
+            int at = (int) (written % ring.length);
+            int length = Math.min(source.remaining(), ring.length - at);
+            source.get(ring, at, length);
+            written += length;
+        }
+    }
+
+    /**
+     * @return The retained output, or null if nothing was written. Starts at a
+     *         character boundary when older output has been dropped
+     */
+    @Override
+    public synchronized String toString() {
+        if (written == 0) {
+            return null;
+        }
+        int length = (int) Math.min(written, ring.length);
+        byte[] bytes = new byte[length];
+        int start = (int) ((written - length) % ring.length);
+        int first = Math.min(length, ring.length - start);
+        System.arraycopy(ring, start, bytes, 0, first);
+        System.arraycopy(ring, 0, bytes, first, length - first);
+
+        int from = 0;
+        if (written > ring.length) {
+            // Skip UTF-8 continuation bytes of a character cut off at the front
+            while (from < length && (bytes[from] & 0xC0) == 0x80) {
+                from++;
+            }
+        }
+        return new String(bytes, from, length - from, StandardCharsets.UTF_8);
+    }
+}
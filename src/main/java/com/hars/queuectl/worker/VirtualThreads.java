@@ -0,0 +1,81 @@
+package com.hars.queuectl.worker;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual threads (Java 21) for code that is still compiled for Java 11. The factory
+ * and executor methods are looked up reflectively once; on older runtimes
+ * {@link #isSupported()} is false and the worker keeps using platform threads.
+ */
+public final class VirtualThreads {
+
+    private static final Method OF_VIRTUAL;
+    private static final Method NAME;
+    private static final Method FACTORY;
+    private static final Method THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        Method perTask = null;
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+            perTask = java.util.concurrent.Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            // Preview builds (19, 20) have the methods but refuse to run them
+            ofVirtual.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+        THREAD_PER_TASK_EXECUTOR = perTask;
+    }
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return true if this runtime can create virtual threads
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * @param namePrefix Threads are named prefix0, prefix1, ...
+     * @return A factory for virtual threads
+     * @throws UnsupportedOperationException on runtimes without virtual threads
+     */
+    public static ThreadFactory factory(String namePrefix) {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later (running "
+                    + System.getProperty("java.version") + ")");
+        }
+        try {
+            Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), namePrefix, 0L);
+            return (ThreadFactory) FACTORY.invoke(builder);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Failed to create virtual thread factory", e);
+        }
+    }
+
+    /**
+     * @return An executor that starts a new virtual thread for every task
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+        ThreadFactory factory = factory(namePrefix);
+        try {
+            return (ExecutorService) THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Failed to create virtual thread executor", e);
+        }
+    }
+}
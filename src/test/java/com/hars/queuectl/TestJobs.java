@@ -0,0 +1,41 @@
+package com.hars.queuectl;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.hars.queuectl.model.Job;
+
+/**
+ * Jobs and helpers shared by the tests
+ */
+public final class TestJobs {
+
+    public static final Instant T0 = Instant.parse("2024-01-01T00:00:00Z");
+
+    private TestJobs() {
+    }
+
+    /**
+     * @return A pending job that echoes its id, created and updated at {@link #T0}
+     */
+    public static Job job(String id) {
+        return job(id, "echo " + id, Job.JobState.PENDING);
+    }
+
+    /**
+     * @return A job with default retries and timeout, created and updated at {@link #T0}
+     */
+    public static Job job(String id, String command, Job.JobState state) {
+        return new Job(id, command, state, 0, 3, 300, T0, T0);
+    }
+
+    public static List<String> ids(Collection<Job> jobs) {
+        List<String> ids = new ArrayList<>();
+        for (Job job : jobs) {
+            ids.add(job.getId());
+        }
+        return ids;
+    }
+}
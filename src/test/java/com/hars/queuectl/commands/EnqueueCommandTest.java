@@ -0,0 +1,76 @@
+package com.hars.queuectl.commands;
+
+import static com.hars.queuectl.TestJobs.T0;
+import static com.hars.queuectl.TestJobs.ids;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.hars.queuectl.model.Job;
+import com.hars.queuectl.service.ConfigSnapshot;
+
+public class EnqueueCommandTest {
+
+    private static final ConfigSnapshot DEFAULTS = new ConfigSnapshot(Collections.emptyMap());
+
+    @Test
+    public void readsOneJobPerLineWithDefaults() throws IOException {
+        List<Job> jobs = read("{\"id\":\"a\",\"command\":\"echo a\"}\n"
+                + "\n"
+                + "{\"id\":\"b\",\"command\":\"echo b\",\"max_retries\":5,\"queue\":\" default \"}\n"
+                + "{\"command\":\"echo c\",\"attempts\":4,\"state\":\"DEAD\"}");
+
+        assertEquals(3, jobs.size());
+        assertEquals(Arrays.asList("a", "b"), ids(jobs.subList(0, 2)));
+        assertEquals(ConfigSnapshot.DEFAULT_MAX_RETRIES, jobs.get(0).getMaxRetries());
+        assertEquals(5, jobs.get(1).getMaxRetries());
+        assertNull(jobs.get(1).getQueue());
+        Job generated = jobs.get(2);
+        assertEquals(36, generated.getId().length());
+        assertEquals(Job.JobState.PENDING, generated.getState());
+        assertEquals(0, generated.getAttempts());
+        assertEquals(T0, generated.getCreatedAt());
+    }
+
+    @Test
+    public void namesTheLineOfARepeatedId() throws IOException {
+        assertEquals("line 3: duplicate id a (first on line 1)", rejection(
+                "{\"id\":\"a\",\"command\":\"true\"}\n"
+                + "{\"id\":\"b\",\"command\":\"true\"}\n"
+                + "{\"id\":\"a\",\"command\":\"true\"}\n"));
+    }
+
+    @Test
+    public void namesTheLineOfAnInvalidJob() throws IOException {
+        assertEquals("line 2: command is required", rejection(
+                "{\"id\":\"a\",\"command\":\"true\"}\n"
+                + "{\"id\":\"b\"}\n"));
+        assertTrue(rejection("{\"id\":\"a\",\"command\":\"true\"}\n"
+                + "{\"id\":\"b\",\"command\":[]}\n").startsWith("line 2: Cannot deserialize"));
+    }
+
+    private static List<Job> read(String input) throws IOException {
+        return new EnqueueCommand().readBatch(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)),
+                T0, DEFAULTS);
+    }
+
+    private static String rejection(String input) throws IOException {
+        try {
+            read(input);
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+        fail("Expected the batch to be rejected");
+        return null;
+    }
+}
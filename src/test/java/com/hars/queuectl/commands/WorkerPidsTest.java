@@ -0,0 +1,104 @@
+package com.hars.queuectl.commands;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WorkerPidsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path path;
+    private final List<Process> children = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        path = folder.getRoot().toPath().resolve(WorkerPids.PID_FILE);
+    }
+
+    @After
+    public void tearDown() {
+        for (Process child : children) {
+            child.destroyForcibly();
+        }
+    }
+
+    @Test
+    public void keepsAnEmptyFileWhenTheLastWorkerLeaves() throws IOException {
+        long first = start();
+        long second = start();
+        WorkerPids.add(path, first);
+        WorkerPids.add(path, second);
+        assertEquals(Arrays.asList(first, second), WorkerPids.readLive(path));
+
+        WorkerPids.remove(path, first);
+        WorkerPids.remove(path, second);
+        assertEquals(Collections.emptyList(), WorkerPids.readLive(path));
+        assertTrue(Files.exists(path));
+        assertEquals(0, Files.size(path));
+    }
+
+    @Test
+    public void dropsProcessesThatExited() throws Exception {
+        Process exited = new ProcessBuilder("true").start();
+        exited.waitFor();
+        long live = start();
+        Files.write(path, (exited.pid() + "\ngarbage\n").getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(Collections.emptyList(), WorkerPids.readLive(path));
+        WorkerPids.add(path, live);
+        assertEquals(String.valueOf(live), new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void keepsEveryWorkerAddedAtOnce() throws Exception {
+        List<Long> pids = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            pids.add(start());
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(pids.size());
+        try {
+            List<Future<?>> adds = new ArrayList<>();
+            for (long pid : pids) {
+                adds.add(executor.submit(() -> {
+                    WorkerPids.add(path, pid);
+                    return null;
+                }));
+            }
+            for (Future<?> add : adds) {
+                add.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(new HashSet<>(pids), new HashSet<>(WorkerPids.readLive(path)));
+    }
+
+    /**
+     * @return PID of a new process that stays alive until the test ends
+     */
+    private long start() throws IOException {
+        Process child = new ProcessBuilder("sleep", "60").start();
+        children.add(child);
+        return child.pid();
+    }
+}
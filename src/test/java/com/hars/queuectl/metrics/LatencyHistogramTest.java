@@ -0,0 +1,72 @@
+package com.hars.queuectl.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void countsSmallValuesExactly() {
+        for (long value = 0; value < 16; value++) {
+            assertEquals(value, LatencyHistogram.upperBound(LatencyHistogram.bucketOf(value)));
+        }
+    }
+
+    @Test
+    public void bucketsAreContiguousAndWithinAnEighth() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            long value = (random.nextLong() >>> 1) >>> random.nextInt(Long.SIZE - 1);
+            int bucket = LatencyHistogram.bucketOf(value);
+            long upper = LatencyHistogram.upperBound(bucket);
+            assertTrue(value + " above bucket " + bucket, value <= upper);
+            if (bucket > 0) {
+                assertTrue(value + " belongs in bucket " + (bucket - 1), value > LatencyHistogram.upperBound(bucket - 1));
+            }
+            assertTrue(value + " rounded up to " + upper, upper - value <= value / 8);
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBound(LatencyHistogram.bucketOf(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void reportsQuantilesWithinTheBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram("test_seconds", "Test");
+        assertEquals(0, histogram.getQuantile(0.5));
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertWithinAnEighth(500_000, histogram.getQuantile(0.5));
+        assertWithinAnEighth(990_000, histogram.getQuantile(0.99));
+        // Never past the largest recording
+        assertEquals(1_000_000, histogram.getQuantile(1.0));
+    }
+
+    @Test
+    public void clampsNegativeDurationsToZero() {
+        LatencyHistogram histogram = new LatencyHistogram("test_seconds", "Test");
+        histogram.record(-5);
+        assertEquals(0, histogram.getQuantile(0.5));
+    }
+
+    @Test
+    public void writesAPrometheusSummaryInSeconds() {
+        LatencyHistogram histogram = new LatencyHistogram("test_seconds", "Test");
+        histogram.record(2_000_000_000L);
+        StringBuilder out = new StringBuilder();
+        histogram.writeTo(out);
+        String text = out.toString();
+        assertTrue(text, text.contains("test_seconds{quantile=\"0.5\"} 2.0\n"));
+        assertTrue(text, text.contains("test_seconds_sum 2.0\n"));
+        assertTrue(text, text.contains("test_seconds_count 1\n"));
+    }
+
+    private static void assertWithinAnEighth(long expected, long actual) {
+        assertTrue(actual + " is not within 12.5% of " + expected,
+                actual >= expected && actual - expected <= expected / 8);
+    }
+}
@@ -0,0 +1,136 @@
+package com.hars.queuectl.schedule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import org.junit.Test;
+
+public class CronExpressionTest {
+
+    private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+
+    @Test
+    public void acceptsEachFieldsRange() {
+        assertEquals("2024-01-01T23:59", next("0-59 0-23 1-31 1-12 0-7", "2024-01-01T23:58"));
+        assertEquals("2024-12-31T23:59", next("59 23 31 12 *", "2024-01-01T00:00"));
+    }
+
+    @Test
+    public void rejectsValuesOutsideTheirField() {
+        assertInvalid("60 * * * *");
+        assertInvalid("* 24 * * *");
+        assertInvalid("* * 0 * *");
+        assertInvalid("* * 32 * *");
+        assertInvalid("* * * 0 *");
+        assertInvalid("* * * 13 *");
+        assertInvalid("* * * * 8");
+        assertInvalid("5-1 * * * *");
+        assertInvalid("*/0 * * * *");
+        assertInvalid("* * * FOO *");
+        assertInvalid("* * * *");
+        assertInvalid("* * * * * *");
+        assertInvalid("@often");
+        assertInvalid(null);
+    }
+
+    @Test
+    public void appliesSteps() {
+        assertEquals("2024-01-01T00:15", next("*/15 * * * *", "2024-01-01T00:00"));
+        assertEquals("2024-01-01T01:00", next("*/15 * * * *", "2024-01-01T00:45"));
+        assertEquals("2024-01-01T09:20", next("0-30/10 9 * * *", "2024-01-01T09:10"));
+        assertEquals("2024-01-02T09:00", next("0-30/10 9 * * *", "2024-01-01T09:30"));
+        assertEquals("2024-01-01T12:00", next("0 */6 * * *", "2024-01-01T06:00"));
+    }
+
+    @Test
+    public void acceptsListsAndNames() {
+        assertEquals("2024-01-01T00:10", next("5,10 * * * *", "2024-01-01T00:05"));
+        // 1 February 2024 is a Thursday
+        assertEquals("2024-02-05T00:00", next("0 0 * FEB MON", "2024-01-01T00:00"));
+        assertEquals("2024-01-03T00:00", next("0 0 * * mon-wed", "2024-01-02T00:00"));
+    }
+
+    @Test
+    public void expandsMacros() {
+        // 1 January 2024 is a Monday
+        String monday = "2024-01-01T00:00";
+        assertEquals("2025-01-01T00:00", next("@yearly", monday));
+        assertEquals("2025-01-01T00:00", next("@annually", monday));
+        assertEquals("2024-02-01T00:00", next("@monthly", monday));
+        assertEquals("2024-01-07T00:00", next("@weekly", monday));
+        assertEquals("2024-01-02T00:00", next("@daily", monday));
+        assertEquals("2024-01-02T00:00", next("@midnight", monday));
+        assertEquals("2024-01-01T01:00", next("@hourly", monday));
+    }
+
+    @Test
+    public void treatsSevenAsSunday() {
+        assertEquals("2024-01-07T00:00", next("0 0 * * 7", "2024-01-01T00:00"));
+        assertEquals("2024-01-07T00:00", next("0 0 * * 0", "2024-01-01T00:00"));
+        assertEquals("2024-01-06T00:00", next("0 0 * * 6-7", "2024-01-01T00:00"));
+    }
+
+    @Test
+    public void firesOnEitherDayWhenBothAreRestricted() {
+        // Fridays, and the 15th which is a Monday
+        assertEquals("2024-01-05T00:00", next("0 0 15 * FRI", "2024-01-01T00:00"));
+        assertEquals("2024-01-12T00:00", next("0 0 15 * FRI", "2024-01-05T00:00"));
+        assertEquals("2024-01-15T00:00", next("0 0 15 * FRI", "2024-01-12T00:00"));
+    }
+
+    @Test
+    public void needsBothDaysWhenOneStartsWithAStar() {
+        // The first 1st, 11th, 21st or 31st that is a Friday
+        assertEquals("2024-03-01T00:00", next("0 0 */10 * FRI", "2024-01-01T00:00"));
+        assertEquals("2024-03-15T00:00", next("0 0 15 * *", "2024-02-15T00:00"));
+        assertEquals("2024-01-05T00:00", next("0 0 * * FRI", "2024-01-01T00:00"));
+    }
+
+    @Test
+    public void findsRareAndImpossibleDates() {
+        assertEquals("2028-02-29T00:00", next("0 0 29 2 *", "2024-03-01T00:00"));
+        assertNull(CronExpression.parse("0 0 30 2 *").next(Instant.parse("2024-01-01T00:00:00Z"), ZoneOffset.UTC));
+    }
+
+    @Test
+    public void firesTimesInADaylightSavingGapOnceWhenTheGapEnds() {
+        // Clocks in New York went from 02:00 to 03:00 on 10 March 2024
+        CronExpression cron = CronExpression.parse("*/15 2 * * *");
+        Instant first = cron.next(local("2024-03-10T00:00"), NEW_YORK);
+        assertEquals(local("2024-03-10T03:00"), first);
+        assertEquals(local("2024-03-11T02:00"), cron.next(first, NEW_YORK));
+    }
+
+    @Test
+    public void firesRepeatedLocalTimesOnce() {
+        // Clocks in New York went from 02:00 back to 01:00 on 3 November 2024
+        CronExpression cron = CronExpression.parse("30 1 * * *");
+        Instant first = cron.next(local("2024-11-03T00:00"), NEW_YORK);
+        assertEquals(Instant.parse("2024-11-03T05:30:00Z"), first);
+        assertEquals(local("2024-11-04T01:30"), cron.next(first, NEW_YORK));
+    }
+
+    private static String next(String expression, String after) {
+        Instant next = CronExpression.parse(expression).next(LocalDateTime.parse(after).toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+        return LocalDateTime.ofInstant(next, ZoneOffset.UTC).toString();
+    }
+
+    private static Instant local(String time) {
+        return LocalDateTime.parse(time).atZone(NEW_YORK).toInstant();
+    }
+
+    private static void assertInvalid(String expression) {
+        try {
+            CronExpression.parse(expression);
+            fail("Accepted '" + expression + "'");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+}
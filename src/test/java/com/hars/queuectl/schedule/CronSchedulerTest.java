@@ -0,0 +1,139 @@
+package com.hars.queuectl.schedule;
+
+import static com.hars.queuectl.TestJobs.T0;
+import static com.hars.queuectl.TestJobs.ids;
+import static com.hars.queuectl.TestJobs.job;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.hars.queuectl.model.Job;
+import com.hars.queuectl.model.Schedule;
+import com.hars.queuectl.service.JobRepository;
+import com.hars.queuectl.storage.LogJobStore;
+import com.hars.queuectl.storage.ScheduleStore;
+
+public class CronSchedulerTest {
+
+    private static final Instant HOUR_1 = T0.plusSeconds(3600);
+    private static final Instant HOUR_2 = T0.plusSeconds(2 * 3600);
+    private static final Instant HOUR_3 = T0.plusSeconds(3 * 3600);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> misfires = new ArrayList<>();
+    private JobRepository jobs;
+    private ScheduleStore schedules;
+
+    @Before
+    public void setUp() throws Exception {
+        jobs = new JobRepository(new LogJobStore(folder.newFolder("jobs").toPath()));
+        jobs.initialize();
+        schedules = new ScheduleStore(new File(folder.getRoot(), ScheduleStore.SCHEDULES_FILE));
+    }
+
+    @After
+    public void tearDown() {
+        schedules.close();
+        jobs.close();
+    }
+
+    @Test
+    public void skipDropsLateFireTimes() {
+        // 01:00 and 02:00 are late; 03:00 is within the grace period
+        Schedule schedule = hourly();
+        assertEquals(Arrays.asList(id(HOUR_3)), collect(MisfirePolicy.SKIP, schedule, HOUR_3.plusSeconds(30)));
+        assertEquals(HOUR_3, schedule.getLastFiredAt());
+
+        schedule = hourly();
+        assertEquals(Collections.emptyList(), collect(MisfirePolicy.SKIP, schedule, HOUR_3.plusSeconds(300)));
+        assertEquals(HOUR_3, schedule.getLastFiredAt());
+        assertEquals(Arrays.asList("Schedule hourly missed 2 run(s); skip enqueued 1 job(s)",
+                "Schedule hourly missed 3 run(s); skip enqueued 0 job(s)"), misfires);
+    }
+
+    @Test
+    public void catchUpEnqueuesEveryFireTime() {
+        Schedule schedule = hourly();
+        assertEquals(Arrays.asList(id(HOUR_1), id(HOUR_2), id(HOUR_3)),
+                collect(MisfirePolicy.CATCH_UP, schedule, HOUR_3.plusSeconds(300)));
+        assertEquals(HOUR_3, schedule.getLastFiredAt());
+        assertEquals(Arrays.asList("Schedule hourly missed 3 run(s); catch-up enqueued 3 job(s)"), misfires);
+    }
+
+    @Test
+    public void coalesceEnqueuesTheLatestMissedTimeOnce() {
+        Schedule schedule = hourly();
+        assertEquals(Arrays.asList(id(HOUR_3)), collect(MisfirePolicy.COALESCE, schedule, HOUR_3.plusSeconds(300)));
+        assertEquals(HOUR_3, schedule.getLastFiredAt());
+
+        // A time still on schedule stands in for the missed ones
+        schedule = hourly();
+        assertEquals(Arrays.asList(id(HOUR_3)), collect(MisfirePolicy.COALESCE, schedule, HOUR_3.plusSeconds(30)));
+        assertEquals(Arrays.asList("Schedule hourly missed 3 run(s); coalesce enqueued 1 job(s)",
+                "Schedule hourly missed 2 run(s); coalesce enqueued 1 job(s)"), misfires);
+    }
+
+    @Test
+    public void firesNothingBeforeTheNextTime() {
+        Schedule schedule = hourly();
+        schedule.setLastFiredAt(HOUR_1);
+        List<Job> collected = new ArrayList<>();
+        assertFalse(scheduler(MisfirePolicy.CATCH_UP).collect(schedule, HOUR_2.minusSeconds(1), collected));
+        assertTrue(collected.isEmpty());
+        assertEquals(HOUR_1, schedule.getLastFiredAt());
+        assertTrue(misfires.isEmpty());
+    }
+
+    @Test
+    public void skipsJobsAlreadyEnqueuedBeforeACrash() {
+        schedules.save(Collections.singletonList(hourly()));
+        // Enqueued by a firing that died before saving last_fired_at
+        Job leftOver = new Job(id(HOUR_1), "echo earlier", Job.JobState.COMPLETED, 1, 3, 300, HOUR_1, HOUR_1);
+        jobs.addJob(leftOver);
+
+        CronScheduler scheduler = scheduler(MisfirePolicy.CATCH_UP);
+        scheduler.rebuild();
+        scheduler.fireDue(HOUR_2.plusSeconds(10));
+
+        assertEquals("echo earlier", jobs.findJobById(id(HOUR_1)).get().getCommand());
+        assertEquals(Job.JobState.PENDING, jobs.findJobById(id(HOUR_2)).get().getState());
+        assertEquals(2, jobs.getAllJobs().size());
+        assertEquals(HOUR_2, schedules.load().get(0).getLastFiredAt());
+        assertEquals(Arrays.asList("Schedule hourly missed 1 run(s); catch-up enqueued 2 job(s)"), misfires);
+    }
+
+    private CronScheduler scheduler(MisfirePolicy policy) {
+        return new CronScheduler(jobs, schedules, policy, ZoneOffset.UTC, misfires::add);
+    }
+
+    private List<String> collect(MisfirePolicy policy, Schedule schedule, Instant now) {
+        List<Job> collected = new ArrayList<>();
+        assertTrue(scheduler(policy).collect(schedule, now, collected));
+        return ids(collected);
+    }
+
+    private static Schedule hourly() {
+        Job template = job("template", "echo hourly", Job.JobState.PENDING);
+        return new Schedule("hourly", "0 * * * *", template, T0);
+    }
+
+    private static String id(Instant fireTime) {
+        return "hourly-" + fireTime.getEpochSecond();
+    }
+}
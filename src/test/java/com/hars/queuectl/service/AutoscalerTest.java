@@ -0,0 +1,85 @@
+package com.hars.queuectl.service;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class AutoscalerTest {
+
+    private static final long TARGET_WAIT = 500;
+    private static final double MAX_LOAD = 2.0;
+    private static final long COOLDOWN = 10_000;
+
+    private final Autoscaler autoscaler = new Autoscaler(2, 16, TARGET_WAIT, MAX_LOAD, COOLDOWN);
+
+    @Test
+    public void growsByUpToItsSizeWhileJobsWaitTooLong() {
+        assertEquals(4, autoscaler.decide(2, 2, 100, TARGET_WAIT, 0.5, 0));
+        // No cooldown between growth steps, and never past the maximum
+        assertEquals(8, autoscaler.decide(4, 4, 100, TARGET_WAIT, 0.5, 1));
+        assertEquals(16, autoscaler.decide(12, 12, 100, TARGET_WAIT, 0.5, 2));
+        assertEquals(16, autoscaler.decide(16, 16, 100, TARGET_WAIT, 0.5, 3));
+    }
+
+    @Test
+    public void growsNoFurtherThanTheBacklog() {
+        assertEquals(5, autoscaler.decide(4, 4, 1, TARGET_WAIT, 0.5, 0));
+    }
+
+    @Test
+    public void keepsItsSizeWhileJobsStartInTime() {
+        assertEquals(4, autoscaler.decide(4, 4, 100, TARGET_WAIT - 1, 0.5, 0));
+    }
+
+    @Test
+    public void doesNotGrowOnAnOverloadedHost() {
+        assertEquals(4, autoscaler.decide(4, 4, 100, TARGET_WAIT, MAX_LOAD + 0.1, 0));
+    }
+
+    @Test
+    public void shedsOneWorkerPerCooldownWhileOverloaded() {
+        assertEquals(8, autoscaler.decide(4, 4, 100, TARGET_WAIT, 0.5, 0));
+        assertEquals(8, autoscaler.decide(8, 8, 100, TARGET_WAIT, 3.0, COOLDOWN - 1));
+        assertEquals(7, autoscaler.decide(8, 8, 100, TARGET_WAIT, 3.0, COOLDOWN));
+        assertEquals(7, autoscaler.decide(7, 7, 100, TARGET_WAIT, 3.0, COOLDOWN + 1));
+    }
+
+    @Test
+    public void shrinksByHalfItsIdleWorkersAfterASustainedSurplus() {
+        long start = COOLDOWN;
+        assertEquals(10, autoscaler.decide(10, 2, 0, 0, 0.5, start));
+        assertEquals(10, autoscaler.decide(10, 2, 0, 0, 0.5, start + COOLDOWN - 1));
+        assertEquals(6, autoscaler.decide(10, 2, 0, 0, 0.5, start + COOLDOWN));
+    }
+
+    @Test
+    public void restartsTheSurplusClockWhenWorkArrives() {
+        long start = COOLDOWN;
+        autoscaler.decide(10, 2, 0, 0, 0.5, start);
+        // More than half the workers busy: not a surplus
+        assertEquals(10, autoscaler.decide(10, 6, 0, 0, 0.5, start + 1));
+        assertEquals(10, autoscaler.decide(10, 2, 0, 0, 0.5, start + COOLDOWN));
+        assertEquals(6, autoscaler.decide(10, 2, 0, 0, 0.5, start + 2 * COOLDOWN));
+    }
+
+    @Test
+    public void neverShrinksBelowTheMinimum() {
+        Autoscaler scaler = new Autoscaler(3, 8, TARGET_WAIT, MAX_LOAD, 0);
+        assertEquals(3, scaler.decide(4, 0, 0, 0, 0.5, 1));
+        assertEquals(3, scaler.decide(3, 0, 0, 0, 0.5, 2));
+        assertEquals(3, scaler.decide(3, 3, 0, 0, 9.0, 3));
+    }
+
+    @Test
+    public void clampsItsBounds() {
+        Autoscaler scaler = new Autoscaler(0, -1, TARGET_WAIT, MAX_LOAD, COOLDOWN);
+        assertEquals(1, scaler.getMinWorkers());
+        assertEquals(1, scaler.getMaxWorkers());
+    }
+
+    @Test
+    public void ignoresLoadWhenTheLimitIsDisabled() {
+        autoscaler.setThresholds(TARGET_WAIT, 0, COOLDOWN);
+        assertEquals(8, autoscaler.decide(4, 4, 100, TARGET_WAIT, 50.0, 0));
+    }
+}
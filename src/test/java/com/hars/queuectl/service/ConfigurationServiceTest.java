@@ -0,0 +1,92 @@
+package com.hars.queuectl.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.hars.queuectl.model.Job;
+import com.hars.queuectl.schedule.MisfirePolicy;
+
+public class ConfigurationServiceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+    private ConfigurationService service;
+
+    @Before
+    public void setUp() {
+        file = folder.getRoot().toPath().resolve(ConfigurationService.CONFIG_FILE);
+        service = new ConfigurationService(file);
+    }
+
+    @Test
+    public void keepsTheSnapshotUntilTheFileChanges() {
+        service.set("max-retries", 5);
+        ConfigSnapshot first = service.snapshot();
+        assertEquals(5, first.getMaxRetries());
+        assertSame(first, service.refresh());
+
+        // Written by another process, as `queuectl config set` does while a worker runs
+        new ConfigurationService(file).set("max-retries", 7);
+        ConfigSnapshot reloaded = service.refresh();
+        assertNotSame(first, reloaded);
+        assertEquals(7, reloaded.getMaxRetries());
+        assertEquals(5, first.getMaxRetries());
+        assertSame(reloaded, service.snapshot());
+    }
+
+    @Test
+    public void keepsThePreviousSnapshotWhenTheFileCannotBeParsed() throws IOException {
+        service.set("poll-interval-ms", 100);
+        Files.write(file, "{\"poll-interval-ms\": ".getBytes(StandardCharsets.UTF_8));
+        assertEquals(100, service.refresh().getPollIntervalMillis());
+
+        // Fixed by hand
+        Files.write(file, "{\"poll-interval-ms\": 200}".getBytes(StandardCharsets.UTF_8));
+        assertEquals(200, service.refresh().getPollIntervalMillis());
+    }
+
+    @Test
+    public void usesDefaultsWithoutAFile() {
+        ConfigSnapshot snapshot = service.snapshot();
+        assertEquals(ConfigSnapshot.DEFAULT_MAX_RETRIES, snapshot.getMaxRetries());
+        assertEquals(JobRepository.DEFAULT_LEASE_MS, snapshot.getLeaseMillis());
+        assertEquals(MisfirePolicy.DEFAULT, snapshot.getMisfirePolicy());
+        assertEquals(RetentionPolicy.NONE, snapshot.getRetentionPolicy());
+
+        service.initialize();
+        assertEquals(ConfigSnapshot.DEFAULT_MAX_RETRIES, service.refresh().getMaxRetries());
+    }
+
+    @Test
+    public void parsesEachSettingOnce() {
+        Map<String, Object> values = new HashMap<>();
+        values.put("lease-seconds", "0");
+        values.put("queue-weight.web", 3);
+        values.put("retain-dead-seconds", 3600);
+        values.put("retain-completed-count", "10");
+        values.put("schedule-misfire-policy", "catch-up");
+        ConfigSnapshot snapshot = new ConfigSnapshot(values);
+
+        assertEquals(1000, snapshot.getLeaseMillis());
+        assertEquals(Integer.valueOf(3), snapshot.getQueueWeights().get("web"));
+        assertEquals(Duration.ofHours(1), snapshot.getRetentionPolicy().getMaxAge(Job.JobState.DEAD));
+        assertEquals(Integer.valueOf(10), snapshot.getRetentionPolicy().getMaxCount(Job.JobState.COMPLETED));
+        assertEquals(MisfirePolicy.CATCH_UP, snapshot.getMisfirePolicy());
+    }
+}
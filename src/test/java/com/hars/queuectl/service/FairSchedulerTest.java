@@ -0,0 +1,139 @@
+package com.hars.queuectl.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.hars.queuectl.TestJobs;
+import com.hars.queuectl.model.Job;
+
+public class FairSchedulerTest {
+
+    @Test
+    public void sharesClaimsByWeight() {
+        FairScheduler scheduler = new FairScheduler();
+        Map<String, Integer> weights = new HashMap<>();
+        weights.put("bulk", 1);
+        weights.put("web", 3);
+        scheduler.setWeights(weights);
+        fill(scheduler, "bulk", 100);
+        fill(scheduler, "web", 100);
+        fill(scheduler, "other", 100);
+
+        Map<String, Integer> claimed = claim(scheduler, 50);
+        assertEquals(Integer.valueOf(30), claimed.get("web"));
+        assertEquals(Integer.valueOf(10), claimed.get("bulk"));
+        assertEquals(Integer.valueOf(10), claimed.get("other"));
+    }
+
+    @Test
+    public void appliesChangedWeights() {
+        FairScheduler scheduler = new FairScheduler();
+        fill(scheduler, "a", 100);
+        fill(scheduler, "b", 100);
+        assertEquals(Integer.valueOf(10), claim(scheduler, 20).get("a"));
+
+        Map<String, Integer> weights = new HashMap<>();
+        weights.put("a", 4);
+        scheduler.setWeights(weights);
+        assertEquals(Integer.valueOf(16), claim(scheduler, 20).get("a"));
+    }
+
+    @Test
+    public void givesAnEmptyQueuesShareToTheOthers() {
+        FairScheduler scheduler = new FairScheduler();
+        Map<String, Integer> weights = new HashMap<>();
+        weights.put("a", 3);
+        scheduler.setWeights(weights);
+        fill(scheduler, "a", 2);
+        fill(scheduler, "b", 10);
+
+        Map<String, Integer> claimed = claim(scheduler, 8);
+        assertEquals(Integer.valueOf(2), claimed.get("a"));
+        assertEquals(Integer.valueOf(6), claimed.get("b"));
+    }
+
+    @Test
+    public void doesNotLetAnIdleQueueCatchUp() {
+        FairScheduler scheduler = new FairScheduler();
+        fill(scheduler, "busy", 100);
+        claim(scheduler, 50);
+
+        // Joins at the current virtual time, so it alternates rather than runs 50 in a row
+        fill(scheduler, "late", 100);
+        Map<String, Integer> claimed = claim(scheduler, 10);
+        assertEquals(Integer.valueOf(5), claimed.get("late"));
+        assertEquals(Integer.valueOf(5), claimed.get("busy"));
+    }
+
+    @Test
+    public void ordersAQueueByPriorityThenArrival() {
+        FairScheduler scheduler = new FairScheduler();
+        scheduler.add(job("low", "q", -1));
+        scheduler.add(job("first", "q", 0));
+        scheduler.add(job("urgent", "q", 5));
+        scheduler.add(job("second", "q", 0));
+
+        List<String> order = new ArrayList<>();
+        for (String id = scheduler.next(); id != null; id = scheduler.next()) {
+            order.add(id);
+            scheduler.remove(id);
+        }
+        assertEquals(Arrays.asList("urgent", "first", "second", "low"), order);
+    }
+
+    @Test
+    public void skipsJobsThatLeftPendingOrChanged() {
+        FairScheduler scheduler = new FairScheduler();
+        scheduler.add(job("a", "q", 0));
+        scheduler.add(job("b", "q", 0));
+        scheduler.add(job("c", "q", 0));
+        scheduler.remove("a");
+        // Re-added with a lower priority, so it goes behind c
+        scheduler.add(job("b", "q", -1));
+
+        assertEquals("c", scheduler.peek());
+        assertFalse(scheduler.contains("a"));
+        assertEquals(Integer.valueOf(2), scheduler.depthByQueue().get("q"));
+
+        scheduler.remove("b");
+        scheduler.remove("c");
+        assertNull(scheduler.peek());
+        assertEquals(0, scheduler.depthByQueue().size());
+    }
+
+    private static void fill(FairScheduler scheduler, String queue, int jobs) {
+        for (int i = 0; i < jobs; i++) {
+            scheduler.add(job(queue + "-" + i, queue, 0));
+        }
+    }
+
+    /**
+     * Claims jobs the way the repository does: the claimed job leaves PENDING
+     * @return Jobs claimed from each queue
+     */
+    private static Map<String, Integer> claim(FairScheduler scheduler, int count) {
+        Map<String, Integer> claimed = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            String id = scheduler.next();
+            scheduler.remove(id);
+            claimed.merge(id.substring(0, id.lastIndexOf('-')), 1, Integer::sum);
+        }
+        return claimed;
+    }
+
+    private static Job job(String id, String queue, int priority) {
+        Job job = TestJobs.job(id, "true", Job.JobState.PENDING);
+        job.setQueue(queue);
+        job.setPriority(priority);
+        return job;
+    }
+}
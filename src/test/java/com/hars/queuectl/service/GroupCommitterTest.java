@@ -0,0 +1,177 @@
+package com.hars.queuectl.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.hars.queuectl.TestJobs;
+import com.hars.queuectl.model.Job;
+
+public class GroupCommitterTest {
+
+    private final List<Integer> batches = Collections.synchronizedList(new ArrayList<>());
+    private GroupCommitter committer;
+
+    @After
+    public void tearDown() {
+        if (committer != null) {
+            committer.close();
+        }
+    }
+
+    @Test
+    public void commitsUpdatesThatArriveTogetherAsOneBatch() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        committer = new GroupCommitter(jobs -> {
+            writing.countDown();
+            await(release);
+            return accept(jobs);
+        }, 0, 100);
+
+        // The first commit holds the writer while the rest queue up behind it
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+        results.add(committer.submit(job("first")));
+        await(writing);
+        for (int i = 0; i < 10; i++) {
+            results.add(committer.submit(job("j" + i)));
+        }
+        release.countDown();
+
+        for (CompletableFuture<Boolean> result : results) {
+            assertTrue(result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(Arrays.asList(1, 10), batches);
+    }
+
+    @Test
+    public void splitsBatchesAtTheLimit() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        committer = new GroupCommitter(jobs -> {
+            await(release);
+            return accept(jobs);
+        }, 0, 4);
+
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            results.add(committer.submit(job("j" + i)));
+        }
+        release.countDown();
+        for (CompletableFuture<Boolean> result : results) {
+            result.get(5, TimeUnit.SECONDS);
+        }
+        for (int size : batches) {
+            assertTrue("batch of " + size, size <= 4);
+        }
+    }
+
+    @Test
+    public void reportsEachUpdatesOutcome() throws Exception {
+        committer = new GroupCommitter(jobs -> {
+            boolean[] applied = new boolean[jobs.size()];
+            for (int i = 0; i < jobs.size(); i++) {
+                applied[i] = !jobs.get(i).getId().startsWith("stale");
+            }
+            return applied;
+        }, 0, 100);
+
+        assertTrue(committer.submit(job("fresh")).get(5, TimeUnit.SECONDS));
+        assertFalse(committer.submit(job("stale")).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void failsTheBatchWhenTheCommitFails() throws Exception {
+        committer = new GroupCommitter(jobs -> {
+            throw new IllegalStateException("disk full");
+        }, 0, 100);
+
+        try {
+            committer.submit(job("a")).get(5, TimeUnit.SECONDS);
+            fail("Completed a failed commit");
+        } catch (ExecutionException e) {
+            assertEquals("disk full", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void commitsWhatWasQueuedBeforeClosing() throws Exception {
+        committer = new GroupCommitter(this::accept, 1000, 1000);
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            results.add(committer.submit(job("j" + i)));
+        }
+        committer.close();
+
+        for (CompletableFuture<Boolean> result : results) {
+            assertTrue(result.isDone());
+            assertTrue(result.get());
+        }
+        try {
+            committer.submit(job("late"));
+            fail("Accepted an update after closing");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void leavesNoUpdateUnansweredWhenClosedWhileSubmitting() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            GroupCommitter closing = new GroupCommitter(this::accept, 0, 8);
+            List<CompletableFuture<Boolean>> results = Collections.synchronizedList(new ArrayList<>());
+            List<Thread> submitters = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                Thread submitter = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < 200; i++) {
+                            results.add(closing.submit(job("j" + i)));
+                        }
+                    } catch (IllegalStateException closed) {
+                        // Rejected up front, which is fine
+                    }
+                });
+                submitters.add(submitter);
+                submitter.start();
+            }
+            closing.close();
+            for (Thread submitter : submitters) {
+                submitter.join();
+            }
+            for (CompletableFuture<Boolean> result : results) {
+                assertTrue(result.get(5, TimeUnit.SECONDS));
+            }
+        }
+    }
+
+    private boolean[] accept(List<Job> jobs) {
+        batches.add(jobs.size());
+        boolean[] applied = new boolean[jobs.size()];
+        Arrays.fill(applied, true);
+        return applied;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Job job(String id) {
+        return TestJobs.job(id, "true", Job.JobState.COMPLETED);
+    }
+}
@@ -0,0 +1,109 @@
+package com.hars.queuectl.service;
+
+import static com.hars.queuectl.TestJobs.T0;
+import static com.hars.queuectl.TestJobs.ids;
+import static com.hars.queuectl.TestJobs.job;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.time.Instant;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.hars.queuectl.model.Job;
+
+public class JobIndexTest {
+
+    @Test
+    public void oldestInStateFollowsUpdateTimeNotInsertionOrder() {
+        JobIndex index = new JobIndex();
+        // Loaded first but finished last
+        index.put(completed("a", 300));
+        index.put(completed("b", 100));
+        index.put(completed("c", 200));
+
+        assertEquals(Arrays.asList("b", "c"), ids(index.oldestInState(Job.JobState.COMPLETED, T0.plusSeconds(250), 10)));
+        assertEquals(Arrays.asList("b", "c", "a"), ids(index.oldestInState(Job.JobState.COMPLETED, null, 10)));
+        assertEquals(Arrays.asList("b"), ids(index.oldestInState(Job.JobState.COMPLETED, null, 1)));
+    }
+
+    @Test
+    public void oldestInStateTracksUpdatesAndRemovals() {
+        JobIndex index = new JobIndex();
+        index.put(completed("a", 100));
+        index.put(completed("b", 200));
+        index.put(completed("a", 300));
+        index.put(completed("c", 50));
+        index.remove("c");
+
+        Job dead = completed("b", 400);
+        dead.setState(Job.JobState.DEAD);
+        index.put(dead);
+
+        assertEquals(Arrays.asList("a"), ids(index.oldestInState(Job.JobState.COMPLETED, null, 10)));
+        assertEquals(Arrays.asList("b"), ids(index.oldestInState(Job.JobState.DEAD, null, 10)));
+    }
+
+    @Test
+    public void clearForgetsUpdateOrder() {
+        JobIndex index = new JobIndex();
+        index.put(completed("x", 100));
+        index.clear();
+        index.put(completed("y", 200));
+
+        assertEquals(Arrays.asList("y"), ids(index.oldestInState(Job.JobState.COMPLETED, null, 10)));
+    }
+
+    @Test
+    public void holdsADelayedJobUntilItsRunAt() {
+        JobIndex index = new JobIndex();
+        Instant runAt = Instant.now().plusSeconds(3600);
+        index.put(delayed("later", runAt));
+        index.put(delayed("overdue", Instant.now().minusSeconds(60)));
+        index.put(delayed("soon", runAt.minusSeconds(60)));
+
+        assertEquals("overdue", index.nextPending().getId());
+        index.remove("overdue");
+        assertNull(index.peekPending());
+        assertEquals(runAt.minusSeconds(60), index.nextRunAt());
+
+        assertEquals(0, index.releaseDue(runAt.minusSeconds(61)));
+        assertEquals(1, index.releaseDue(runAt.minusSeconds(60)));
+        assertEquals("soon", index.peekPending().getId());
+        assertEquals(runAt, index.nextRunAt());
+    }
+
+    @Test
+    public void releasesARescheduledJobOnlyAtItsNewRunAt() {
+        JobIndex index = new JobIndex();
+        Instant first = Instant.now().plusSeconds(60);
+        index.put(delayed("j", first));
+        index.put(delayed("j", first.plusSeconds(3600)));
+
+        // The entry for the old run_at is superseded and releases nothing
+        assertEquals(0, index.releaseDue(first));
+        assertNull(index.peekPending());
+
+        // Cleared run_at: ready right away, and not released a second time later
+        index.put(delayed("j", null));
+        assertEquals("j", index.peekPending().getId());
+        index.releaseDue(first.plusSeconds(3600));
+        Job claimed = new Job(index.nextPending());
+        claimed.setState(Job.JobState.PROCESSING);
+        index.put(claimed);
+        assertNull(index.peekPending());
+    }
+
+    private static Job delayed(String id, Instant runAt) {
+        Job job = job(id);
+        job.setRunAt(runAt);
+        return job;
+    }
+
+    private static Job completed(String id, long updatedSeconds) {
+        Job job = job(id, "true", Job.JobState.COMPLETED);
+        job.setUpdatedAt(T0.plusSeconds(updatedSeconds));
+        return job;
+    }
+}
@@ -0,0 +1,285 @@
+package com.hars.queuectl.service;
+
+import static com.hars.queuectl.TestJobs.T0;
+import static com.hars.queuectl.TestJobs.ids;
+import static com.hars.queuectl.TestJobs.job;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.hars.queuectl.model.Job;
+import com.hars.queuectl.storage.JobStore;
+import com.hars.queuectl.storage.LogJobStore;
+
+public class JobRepositoryTest {
+
+    private static final int SHARDS = 3;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<JobRepository> opened = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (JobRepository repository : opened) {
+            repository.close();
+        }
+    }
+
+    @Test
+    public void logStoreSeesAnotherProcessesAppendsAndRemovals() throws IOException {
+        assertSeesOtherWriters(JobRepository.ENGINE_LOG);
+    }
+
+    @Test
+    public void mappedStoreSeesAnotherProcessesAppendsAndRemovals() throws IOException {
+        assertSeesOtherWriters(JobRepository.ENGINE_MAPPED);
+    }
+
+    @Test
+    public void jsonStoreSeesAnotherProcessesAppendsAndRemovals() throws IOException {
+        assertSeesOtherWriters(JobRepository.ENGINE_JSON);
+    }
+
+    @Test
+    public void claimsFromEveryShardInTurn() throws IOException {
+        JobRepository repository = open(JobRepository.ENGINE_LOG, folder.newFolder().toPath());
+        List<Job> jobs = jobs("j", 30);
+        repository.addJobs(jobs);
+
+        Set<Integer> shards = new HashSet<>();
+        for (int i = 0; i < SHARDS; i++) {
+            Job claimed = repository.findAndLockNextPendingJob("w", 30_000).get();
+            shards.add(JobRepository.shardOf(claimed, SHARDS, false));
+        }
+        assertEquals(SHARDS, shards.size());
+    }
+
+    @Test
+    public void claimsEachJobOnceAcrossShardsAndProcesses() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        JobRepository first = open(JobRepository.ENGINE_LOG, dir);
+        JobRepository second = open(JobRepository.ENGINE_LOG, dir);
+        first.addJobs(jobs("j", 60));
+
+        Set<String> claimed = new HashSet<>();
+        int claims = 0;
+        while (true) {
+            Optional<Job> byFirst = first.findAndLockNextPendingJob("first", 30_000);
+            Optional<Job> bySecond = second.findAndLockNextPendingJob("second", 30_000);
+            if (!byFirst.isPresent() && !bySecond.isPresent()) {
+                break;
+            }
+            for (Optional<Job> job : Arrays.asList(byFirst, bySecond)) {
+                if (job.isPresent()) {
+                    assertEquals(Job.JobState.PROCESSING, job.get().getState());
+                    claimed.add(job.get().getId());
+                    claims++;
+                }
+            }
+        }
+        assertEquals(60, claims);
+        assertEquals(60, claimed.size());
+        assertEquals(Integer.valueOf(60), open(JobRepository.ENGINE_LOG, dir).countByState().get(Job.JobState.PROCESSING));
+    }
+
+    @Test
+    public void addsABatchWholeOrNotAtAll() throws IOException {
+        JobRepository repository = open(JobRepository.ENGINE_LOG, folder.newFolder().toPath());
+        repository.addJobs(jobs("j", 10));
+        try {
+            repository.addJobs(Arrays.asList(job("new-1"), job("j4"), job("new-2")));
+            fail("Expected the repeated id to reject the batch");
+        } catch (IllegalStateException e) {
+            assertEquals("Job already exists: j4", e.getMessage());
+        }
+        assertFalse(repository.findJobById("new-1").isPresent());
+        assertEquals(10, repository.getAllJobs().size());
+    }
+
+    @Test
+    public void requeuesAnExpiredLeaseAndRejectsTheFormerOwner() throws IOException {
+        JobRepository repository = open(folder.newFolder().toPath());
+        repository.addJob(job("j"));
+        // A lease of 0 ms has expired by the time anyone looks at it
+        Job stale = repository.findAndLockNextPendingJob("first", 0).get();
+
+        List<Job> requeued = repository.requeueExpiredLeases();
+        assertEquals(Arrays.asList("j"), ids(requeued));
+        assertEquals(Job.JobState.PENDING, requeued.get(0).getState());
+        assertNull(requeued.get(0).getLeaseOwner());
+
+        assertEquals("second", repository.findAndLockNextPendingJob("second", 30_000).get().getLeaseOwner());
+        stale.setState(Job.JobState.COMPLETED);
+        assertFalse(repository.updateJob(stale));
+        Job current = repository.findJobById("j").get();
+        assertEquals(Job.JobState.PROCESSING, current.getState());
+        assertEquals("second", current.getLeaseOwner());
+        assertTrue(repository.requeueExpiredLeases().isEmpty());
+    }
+
+    @Test
+    public void holdsAFailedJobUntilItsRetryIsDue() throws Exception {
+        JobRepository repository = open(folder.newFolder().toPath());
+        repository.addJob(job("j"));
+        Job failed = repository.findAndLockNextPendingJob("w", 30_000).get();
+        failed.setState(Job.JobState.FAILED);
+        failed.setAttempts(1);
+        failed.setUpdatedAt(Instant.now());
+        failed.setNextRunAt(failed.getUpdatedAt().plusMillis(WorkerService.calculateBackoff(200, 1)));
+        assertTrue(repository.updateJob(failed));
+
+        assertFalse(repository.findAndLockNextPendingJob("w", 30_000).isPresent());
+        long start = System.nanoTime();
+        repository.awaitWork(10_000);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+
+        Job retried = repository.findAndLockNextPendingJob("w", 30_000).get();
+        assertEquals(1, retried.getAttempts());
+        assertNull(retried.getNextRunAt());
+        assertFalse(Instant.now().isBefore(failed.getNextRunAt()));
+    }
+
+    @Test
+    public void wakesAnIdleWorkerOnEnqueue() throws Exception {
+        JobRepository repository = open(folder.newFolder().toPath());
+        CountDownLatch waiting = new CountDownLatch(1);
+        CompletableFuture<Long> waited = CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            waiting.countDown();
+            try {
+                repository.awaitWork(30_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return System.nanoTime() - start;
+        });
+        waiting.await();
+
+        repository.addJob(job("j"));
+        assertTrue(waited.get(10, TimeUnit.SECONDS) < TimeUnit.SECONDS.toNanos(10));
+        assertTrue(repository.findAndLockNextPendingJob("w", 30_000).isPresent());
+    }
+
+    @Test
+    public void claimsADelayedJobOnceItsRunAtArrives() throws Exception {
+        JobRepository repository = open(folder.newFolder().toPath());
+        Job delayed = job("j");
+        delayed.setRunAt(Instant.now().plusMillis(200));
+        repository.addJob(delayed);
+
+        assertFalse(repository.findAndLockNextPendingJob("w", 30_000).isPresent());
+        long start = System.nanoTime();
+        repository.awaitWork(10_000);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+
+        assertEquals("j", repository.findAndLockNextPendingJob("w", 30_000).get().getId());
+        assertFalse(Instant.now().isBefore(delayed.getRunAt()));
+    }
+
+    @Test
+    public void doublesTheBackoffPerAttempt() {
+        assertEquals(1000, WorkerService.calculateBackoff(1000, 1));
+        assertEquals(2000, WorkerService.calculateBackoff(1000, 2));
+        assertEquals(8000, WorkerService.calculateBackoff(1000, 4));
+        assertEquals(0, WorkerService.calculateBackoff(0, 3));
+    }
+
+    @Test
+    public void renewsOnlyTheLeasesTheOwnerStillHolds() throws IOException {
+        JobRepository repository = open(folder.newFolder().toPath());
+        repository.addJobs(Arrays.asList(job("a"), job("b")));
+        repository.findAndLockNextPendingJob("w", 0);
+        repository.findAndLockNextPendingJob("other", 30_000);
+
+        Map<String, String> leases = new HashMap<>();
+        leases.put("a", "w");
+        leases.put("b", "w");
+        leases.put("gone", "w");
+        assertEquals(new HashSet<>(Arrays.asList("b", "gone")), repository.renewLeases(leases, 30_000));
+
+        // The renewed lease no longer expires, and the other owner's lease was left alone
+        assertTrue(repository.requeueExpiredLeases().isEmpty());
+        assertEquals("other", repository.findJobById("b").get().getLeaseOwner());
+    }
+
+    private void assertSeesOtherWriters(String engine) throws IOException {
+        Path dir = folder.newFolder().toPath();
+        JobRepository writer = open(engine, dir);
+        JobRepository reader = open(engine, dir);
+
+        writer.addJobs(jobs("j", 30));
+        assertEquals(30, reader.getAllJobs().size());
+        assertTrue(reader.findJobById("j7").isPresent());
+
+        Job done = writer.findJobById("j7").get();
+        done.setState(Job.JobState.COMPLETED);
+        done.setUpdatedAt(T0.plusSeconds(60));
+        assertTrue(writer.updateJob(done));
+        assertEquals(Job.JobState.COMPLETED, reader.findJobById("j7").get().getState());
+
+        List<Job> removed = writer.removeJobs(Collections.singletonList(done));
+        assertEquals(1, removed.size());
+        assertFalse(reader.findJobById("j7").isPresent());
+        assertEquals(29, reader.getAllJobs().size());
+
+        // Added again after its removal, in the same run of the reader
+        writer.addJob(job("j7"));
+        assertEquals(Job.JobState.PENDING, reader.findJobById("j7").get().getState());
+        assertEquals(30, open(engine, dir).getAllJobs().size());
+    }
+
+    /**
+     * Opens a repository with a single log store, whose jobs are claimed in order
+     */
+    private JobRepository open(Path dir) {
+        JobRepository repository = new JobRepository(new LogJobStore(dir));
+        repository.initialize();
+        opened.add(repository);
+        return repository;
+    }
+
+    private JobRepository open(String engine, Path dir) {
+        List<JobStore> stores = new ArrayList<>();
+        for (int i = 0; i < SHARDS; i++) {
+            String name = JobRepository.ENGINE_JSON.equals(engine) ? "shard-" + i + ".json" : "shard-" + i;
+            stores.add(JobRepository.createStore(engine, null, dir.resolve(name)));
+        }
+        JobRepository repository = new JobRepository(stores, false);
+        repository.initialize();
+        opened.add(repository);
+        return repository;
+    }
+
+    private static List<Job> jobs(String prefix, int count) {
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            jobs.add(job(prefix + i));
+        }
+        return jobs;
+    }
+}
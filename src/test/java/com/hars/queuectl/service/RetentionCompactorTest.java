@@ -0,0 +1,83 @@
+package com.hars.queuectl.service;
+
+import static com.hars.queuectl.TestJobs.job;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.hars.queuectl.model.Job;
+import com.hars.queuectl.storage.JobArchive;
+import com.hars.queuectl.storage.LogJobStore;
+
+public class RetentionCompactorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private JobRepository repository;
+    private JobArchive archive;
+
+    @Before
+    public void setUp() throws Exception {
+        // Retries one job from the DLQ after it was picked for eviction, as a user could
+        repository = new JobRepository(new LogJobStore(folder.newFolder("jobs").toPath())) {
+            @Override
+            public List<Job> retentionCandidates(RetentionPolicy policy, Instant now, int maxJobs) {
+                List<Job> candidates = super.retentionCandidates(policy, now, maxJobs);
+                Job retried = findJobById("dead-1").orElse(null);
+                if (retried != null && retried.getState() == Job.JobState.DEAD) {
+                    retried.setState(Job.JobState.PENDING);
+                    retried.setUpdatedAt(Instant.now());
+                    updateJob(retried);
+                }
+                return candidates;
+            }
+        };
+        repository.initialize();
+        archive = new JobArchive(folder.newFolder("archive").toPath());
+    }
+
+    @After
+    public void tearDown() {
+        repository.close();
+    }
+
+    @Test
+    public void archivesOnlyTheJobsItRemoves() {
+        repository.addJobs(Arrays.asList(dead("dead-1"), dead("dead-2"), dead("dead-3")));
+
+        Map<Job.JobState, Duration> maxAge = new EnumMap<>(Job.JobState.class);
+        maxAge.put(Job.JobState.DEAD, Duration.ofDays(1));
+        int evicted = new RetentionCompactor(repository, archive)
+                .run(new RetentionPolicy(maxAge, Collections.emptyMap()));
+
+        assertEquals(2, evicted);
+        assertEquals(Arrays.asList("dead-2", "dead-3"), archived());
+        assertEquals(Job.JobState.PENDING, repository.findJobById("dead-1").get().getState());
+        assertFalse(repository.findJobById("dead-2").isPresent());
+    }
+
+    private List<String> archived() {
+        List<String> ids = new ArrayList<>();
+        archive.scan(null, null, job -> ids.add(job.getId()));
+        return ids;
+    }
+
+    private static Job dead(String id) {
+        return job(id, "false", Job.JobState.DEAD);
+    }
+}
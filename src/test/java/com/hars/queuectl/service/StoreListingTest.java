@@ -0,0 +1,119 @@
+package com.hars.queuectl.service;
+
+import static com.hars.queuectl.TestJobs.T0;
+import static org.junit.Assert.assertEquals;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.hars.queuectl.model.Job;
+import com.hars.queuectl.storage.JobStore;
+import com.hars.queuectl.storage.LogJobStore;
+
+public class StoreListingTest {
+
+    private static final int JOBS = 1000;
+    // Far fewer than the matching jobs, so listings take several passes
+    private static final int WINDOW = 16;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private JobStore store;
+    private List<String> expected;
+
+    @Before
+    public void setUp() throws Exception {
+        LogJobStore writer = new LogJobStore(folder.getRoot().toPath());
+        writer.load();
+        // Written newest first, so store order is not listing order
+        List<Job> jobs = new ArrayList<>();
+        for (int i = JOBS - 1; i >= 0; i--) {
+            jobs.add(job(i, Job.JobState.PENDING));
+        }
+        writer.append(jobs);
+
+        // Every third job completes, every seventh is removed
+        List<Job> changes = new ArrayList<>();
+        expected = new ArrayList<>();
+        for (int i = 0; i < JOBS; i++) {
+            if (i % 7 == 0) {
+                changes.add(Job.tombstone(id(i)));
+            } else if (i % 3 == 0) {
+                changes.add(job(i, Job.JobState.COMPLETED));
+            } else {
+                expected.add(id(i));
+            }
+        }
+        writer.append(changes);
+        writer.close();
+        store = new LogJobStore(folder.getRoot().toPath());
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+    }
+
+    @Test
+    public void listsMatchingJobsInCreationOrder() {
+        assertEquals(expected, list(new JobQuery(Job.JobState.PENDING, null, null, null, 0)));
+    }
+
+    @Test
+    public void stopsAtTheLimit() {
+        assertEquals(expected.subList(0, 3), list(new JobQuery(Job.JobState.PENDING, null, null, null, 3)));
+    }
+
+    @Test
+    public void startsAfterTheCursor() {
+        String cursor = expected.get(500);
+        assertEquals(expected.subList(501, 511), list(new JobQuery(Job.JobState.PENDING, null, null, cursor, 10)));
+    }
+
+    @Test
+    public void appliesSince() {
+        List<String> since = new ArrayList<>();
+        for (String id : expected) {
+            if (Integer.parseInt(id.substring(1)) >= 900) {
+                since.add(id);
+            }
+        }
+        assertEquals(since, list(new JobQuery(Job.JobState.PENDING, null, T0.plusSeconds(900), null, 0)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsARemovedCursor() {
+        list(new JobQuery(null, null, null, id(7), 10));
+    }
+
+    @Test
+    public void listsOtherStates() {
+        assertEquals(Collections.emptyList(), list(new JobQuery(Job.JobState.DEAD, null, null, null, 1)));
+        assertEquals(Arrays.asList(id(3), id(6)), list(new JobQuery(Job.JobState.COMPLETED, null, null, null, 2)));
+    }
+
+    private List<String> list(JobQuery query) {
+        List<String> ids = new ArrayList<>();
+        new StoreListing(Collections.singletonList(store), query, WINDOW).forEachJob(job -> ids.add(job.getId()));
+        return ids;
+    }
+
+    private static String id(int i) {
+        return String.format("j%04d", i);
+    }
+
+    private static Job job(int i, Job.JobState state) {
+        Instant created = T0.plusSeconds(i);
+        return new Job(id(i), "echo " + i, state, 0, 3, 300, created, created);
+    }
+}
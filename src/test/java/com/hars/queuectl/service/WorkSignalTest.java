@@ -0,0 +1,54 @@
+package com.hars.queuectl.service;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class WorkSignalTest {
+
+    @Test
+    public void doesNotWaitAfterASignalItHasNotSeen() throws InterruptedException {
+        WorkSignal signal = new WorkSignal();
+        long epoch = signal.epoch();
+        // Arrives between the waiter's check of the shards and its wait
+        signal.signal();
+
+        long start = System.nanoTime();
+        signal.await(epoch, 10_000);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    public void wakesAWaiter() throws InterruptedException {
+        WorkSignal signal = new WorkSignal();
+        CountDownLatch waiting = new CountDownLatch(1);
+        CountDownLatch woken = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                long epoch = signal.epoch();
+                waiting.countDown();
+                signal.await(epoch, 10_000);
+                woken.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        waiting.await();
+
+        signal.signalAll();
+        assertTrue(woken.await(5, TimeUnit.SECONDS));
+        waiter.join();
+    }
+
+    @Test
+    public void waitsOutTheTimeoutWithoutASignal() throws InterruptedException {
+        WorkSignal signal = new WorkSignal();
+        long start = System.nanoTime();
+        signal.await(signal.epoch(), 50);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+    }
+}
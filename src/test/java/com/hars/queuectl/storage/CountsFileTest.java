@@ -0,0 +1,73 @@
+package com.hars.queuectl.storage;
+
+import static com.hars.queuectl.TestJobs.job;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.hars.queuectl.model.Job;
+import com.hars.queuectl.model.JobCounts;
+
+public class CountsFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path path;
+    private CountsFile file;
+
+    @Before
+    public void setUp() {
+        path = folder.getRoot().toPath().resolve("COUNTS");
+        file = new CountsFile(path);
+    }
+
+    @Test
+    public void readsCountsWrittenAtTheSameStamp() {
+        JobCounts counts = counts(3);
+        file.write("1:100", counts);
+        assertEquals(counts, file.read("1:100"));
+        assertNull(file.read("1:200"));
+
+        // A shorter file replaces a longer one whole
+        file.write("1:200", counts(0));
+        assertEquals(counts(0), file.read("1:200"));
+        assertFalse(Files.exists(folder.getRoot().toPath().resolve("COUNTS.tmp")));
+    }
+
+    @Test
+    public void treatsMissingOrDamagedFilesAsNoCounts() throws IOException {
+        assertNull(file.read("1:100"));
+
+        Files.write(path, new byte[0]);
+        assertNull(file.read("1:100"));
+
+        Files.write(path, "{\"stamp\":\"1:100\",\"counts\":{\"sta".getBytes(StandardCharsets.UTF_8));
+        assertNull(file.read("1:100"));
+
+        // Left over from a longer file rewritten in place
+        file.write("1:100", counts(2));
+        Files.write(path, "}}".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        assertNull(file.read("1:100"));
+    }
+
+    private static JobCounts counts(int pending) {
+        JobCounts counts = new JobCounts();
+        for (int i = 0; i < pending; i++) {
+            counts.add(job("j" + i, "true", Job.JobState.PENDING));
+        }
+        counts.add(job("done", "true", Job.JobState.COMPLETED));
+        return counts;
+    }
+}
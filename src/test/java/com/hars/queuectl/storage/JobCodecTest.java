@@ -0,0 +1,183 @@
+package com.hars.queuectl.storage;
+
+import static com.hars.queuectl.TestJobs.T0;
+import static com.hars.queuectl.TestJobs.ids;
+import static com.hars.queuectl.TestJobs.job;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.hars.queuectl.model.Job;
+
+public class JobCodecTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void binaryRoundTripsEveryField() throws IOException {
+        assertRoundTrip(new BinaryJobCodec(), fullJob());
+    }
+
+    @Test
+    public void jsonRoundTripsEveryField() throws IOException {
+        assertRoundTrip(new JsonJobCodec(), fullJob());
+    }
+
+    @Test
+    public void roundTripsAbsentFields() throws IOException {
+        Job job = new Job("bare", "true", Job.JobState.PENDING, 0, 3, 300, null, null);
+        assertRoundTrip(new BinaryJobCodec(), job);
+        assertRoundTrip(new JsonJobCodec(), job);
+        assertRoundTrip(new BinaryJobCodec(), Job.tombstone("gone"));
+        assertRoundTrip(new JsonJobCodec(), Job.tombstone("gone"));
+    }
+
+    @Test
+    public void decodesARecordInsideALargerBuffer() throws IOException {
+        BinaryJobCodec codec = new BinaryJobCodec();
+        byte[] record = codec.encode(fullJob());
+        byte[] buffer = new byte[record.length + 10];
+        System.arraycopy(record, 0, buffer, 7, record.length);
+        assertSame(fullJob(), codec.decode(buffer, 7, record.length));
+    }
+
+    @Test
+    public void decodesRecordsWrittenBeforeLaterFields() throws IOException {
+        // The layout up to lease_owner, as written before priorities and queues existed
+        byte[] id = "old".getBytes(StandardCharsets.UTF_8);
+        byte[] command = "echo old".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(1 + 4 + 4 + 8 + 4 * 8 + 3 * 4 + id.length + command.length);
+        record.put((byte) Job.JobState.FAILED.ordinal()).putInt(2).putInt(5).putLong(60);
+        record.putLong(epochNanos(T0)).putLong(epochNanos(T0.plusSeconds(1))).putLong(Long.MIN_VALUE).putLong(Long.MIN_VALUE);
+        record.putInt(id.length).put(id).putInt(command.length).put(command).putInt(-1);
+
+        Job job = new BinaryJobCodec().decode(record.array(), 0, record.capacity());
+        assertEquals("old", job.getId());
+        assertEquals("echo old", job.getCommand());
+        assertEquals(Job.JobState.FAILED, job.getState());
+        assertEquals(2, job.getAttempts());
+        assertEquals(T0.plusSeconds(1), job.getUpdatedAt());
+        assertNull(job.getLeaseOwner());
+        assertEquals(0, job.getPriority());
+        assertEquals(Job.DEFAULT_QUEUE, job.getQueueName());
+        assertNull(job.getLastExitCode());
+        assertNull(job.getOutputTail());
+    }
+
+    @Test
+    public void rejectsTruncatedRecords() throws IOException {
+        byte[] record = new BinaryJobCodec().encode(fullJob());
+        try {
+            new BinaryJobCodec().decode(record, 0, 20);
+            fail("Decoded a truncated record");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("Truncated"));
+        }
+    }
+
+    @Test
+    public void selectsCodecsByNameAndFormat() throws IOException {
+        assertEquals(JobCodec.BINARY, JobCodec.forName(null).getName());
+        assertEquals(JobCodec.BINARY, JobCodec.forName("BINARY").getName());
+        assertEquals(JobCodec.JSON, JobCodec.forName("json").getName());
+        assertEquals(JobCodec.JSON, JobCodec.forFormat(JobCodec.FORMAT_JSON).getName());
+        assertEquals(JobCodec.BINARY, JobCodec.forFormat(JobCodec.FORMAT_BINARY).getName());
+        try {
+            JobCodec.forName("smile");
+            fail("Accepted an unknown codec name");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+        try {
+            JobCodec.forFormat(9);
+            fail("Accepted an unknown format");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void readsJsonSegmentsInABinaryStore() {
+        Path dir = folder.getRoot().toPath();
+        LogJobStore jsonStore = new LogJobStore(dir, new JsonJobCodec());
+        jsonStore.load();
+        jsonStore.append(Arrays.asList(job("a"), job("b")));
+        jsonStore.close();
+
+        // Reopened with the default codec: the JSON segment is read and appended to as is
+        LogJobStore store = new LogJobStore(dir);
+        assertEquals(Arrays.asList("a", "b"), ids(store.load()));
+        store.append(Arrays.asList(job("c"), Job.tombstone("a")));
+        store.compact(store.load());
+        store.append(Arrays.asList(job("d")));
+        store.close();
+
+        store = new LogJobStore(dir);
+        assertEquals(Arrays.asList("b", "c", "d"), ids(store.load()));
+        store.close();
+    }
+
+    private static void assertRoundTrip(JobCodec codec, Job job) throws IOException {
+        byte[] encoded = codec.encode(job);
+        Job decoded = codec.decode(encoded, 0, encoded.length);
+        assertSame(job, decoded);
+        assertArrayEquals(encoded, codec.encode(decoded));
+    }
+
+    private static void assertSame(Job expected, Job actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getCommand(), actual.getCommand());
+        assertEquals(expected.getState(), actual.getState());
+        assertEquals(expected.getAttempts(), actual.getAttempts());
+        assertEquals(expected.getMaxRetries(), actual.getMaxRetries());
+        assertEquals(expected.getTimeoutSeconds(), actual.getTimeoutSeconds());
+        assertEquals(expected.getCreatedAt(), actual.getCreatedAt());
+        assertEquals(expected.getUpdatedAt(), actual.getUpdatedAt());
+        assertEquals(expected.getLeaseOwner(), actual.getLeaseOwner());
+        assertEquals(expected.getLeaseExpiresAt(), actual.getLeaseExpiresAt());
+        assertEquals(expected.getNextRunAt(), actual.getNextRunAt());
+        assertEquals(expected.getPriority(), actual.getPriority());
+        assertEquals(expected.getQueue(), actual.getQueue());
+        assertEquals(expected.getRunAt(), actual.getRunAt());
+        assertEquals(expected.getLastExitCode(), actual.getLastExitCode());
+        assertEquals(expected.getStartedAt(), actual.getStartedAt());
+        assertEquals(expected.getFinishedAt(), actual.getFinishedAt());
+        assertEquals(expected.getRuntimeMillis(), actual.getRuntimeMillis());
+        assertEquals(expected.getOutputTail(), actual.getOutputTail());
+    }
+
+    private static Job fullJob() {
+        Job job = new Job("full-1", "echo 'héllo' && exit 3", Job.JobState.PROCESSING, 2, 4, 90,
+                T0, T0.plusNanos(123_456_789));
+        job.setLeaseOwner("worker-7");
+        job.setLeaseExpiresAt(T0.plusSeconds(30));
+        job.setNextRunAt(T0.plusSeconds(60));
+        job.setPriority(-5);
+        job.setQueue("reports");
+        job.setRunAt(T0.minusSeconds(3600));
+        job.setLastExitCode(3);
+        job.setStartedAt(T0.plusSeconds(1));
+        job.setFinishedAt(T0.plusSeconds(2));
+        job.setRuntimeMillis(1000);
+        job.setOutputTail("line one\nline two ✓");
+        return job;
+    }
+
+    private static long epochNanos(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+    }
+}
@@ -0,0 +1,123 @@
+package com.hars.queuectl.storage;
+
+import static com.hars.queuectl.TestJobs.ids;
+import static com.hars.queuectl.TestJobs.job;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.hars.queuectl.model.Job;
+
+public class LogJobStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LogJobStore writer;
+    private LogJobStore reader;
+
+    @Before
+    public void setUp() {
+        Path dir = folder.getRoot().toPath();
+        writer = new LogJobStore(dir);
+        writer.load();
+        writer.append(Arrays.asList(job("a"), job("b")));
+        reader = new LogJobStore(dir);
+        reader.load();
+    }
+
+    @After
+    public void tearDown() {
+        reader.close();
+        writer.close();
+    }
+
+    @Test
+    public void pollsAppendsAndTombstones() {
+        assertTrue(reader.poll().isEmpty());
+
+        writer.append(Arrays.asList(job("c"), Job.tombstone("a")));
+        List<Job> changes = reader.poll();
+        assertEquals(Arrays.asList("c", "a"), ids(changes));
+        assertTrue(changes.get(1).isTombstone());
+        assertTrue(reader.poll().isEmpty());
+
+        assertEquals(Arrays.asList("b", "c"), ids(reload()));
+    }
+
+    @Test
+    public void asksForAReloadAfterCompaction() {
+        writer.append(Collections.singletonList(Job.tombstone("a")));
+        writer.compact(Collections.singletonList(job("b")));
+
+        assertNull(reader.poll());
+        assertEquals(Arrays.asList("b"), ids(reader.load()));
+        writer.append(Collections.singletonList(job("c")));
+        assertEquals(Arrays.asList("c"), ids(reader.poll()));
+    }
+
+    @Test
+    public void keepsRecordsAppendedAfterATornFrame() throws IOException {
+        // A crash in the middle of a frame: its length, checksum and part of the payload
+        writer.close();
+        ByteBuffer torn = ByteBuffer.allocate(10).putInt(100).putInt(12345);
+        Files.write(segment(), torn.array(), StandardOpenOption.APPEND);
+
+        writer = new LogJobStore(folder.getRoot().toPath());
+        assertEquals(Arrays.asList("a", "b"), ids(writer.load()));
+        writer.append(Arrays.asList(job("c"), job("d")));
+        writer.sync();
+
+        assertEquals(Arrays.asList("a", "b", "c", "d"), ids(reload()));
+        assertEquals(Arrays.asList("c", "d"), ids(reader.poll()));
+    }
+
+    @Test
+    public void keepsRecordsAppendedAfterACorruptFrame() throws IOException {
+        writer.append(Collections.singletonList(job("c")));
+        writer.close();
+        // Flip a payload byte of the last frame so its checksum no longer matches
+        try (FileChannel channel = FileChannel.open(segment(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, channel.size() - 1);
+            last.flip();
+            last.put(0, (byte) (last.get(0) ^ 0xFF));
+            channel.write(last, channel.size() - 1);
+        }
+
+        writer = new LogJobStore(folder.getRoot().toPath());
+        assertEquals(Arrays.asList("a", "b"), ids(writer.load()));
+        writer.append(Collections.singletonList(job("d")));
+
+        assertEquals(Arrays.asList("a", "b", "d"), ids(reload()));
+    }
+
+    private List<Job> reload() {
+        LogJobStore reopened = new LogJobStore(folder.getRoot().toPath());
+        try {
+            return reopened.load();
+        } finally {
+            reopened.close();
+        }
+    }
+
+    private Path segment() {
+        return folder.getRoot().toPath().resolve("00000000000000000001.log");
+    }
+}
@@ -0,0 +1,190 @@
+package com.hars.queuectl.storage;
+
+import static com.hars.queuectl.TestJobs.T0;
+import static com.hars.queuectl.TestJobs.ids;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.hars.queuectl.TestJobs;
+import com.hars.queuectl.model.Job;
+
+public class MappedJobStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path dir;
+    private MappedJobStore store;
+
+    @Before
+    public void setUp() {
+        dir = folder.getRoot().toPath();
+        store = new MappedJobStore(dir);
+        store.load();
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+    }
+
+    @Test
+    public void persistsAChangedCommand() {
+        Job job = job("a", "echo one");
+        store.append(Collections.singletonList(job));
+        job.setCommand("echo two");
+        store.append(Collections.singletonList(job));
+
+        assertEquals("echo two", reload().get(0).getCommand());
+    }
+
+    @Test
+    public void reusesOutgrownExecutionBlocks() throws IOException {
+        Job job = ran(job("a", "true"), 100);
+        store.append(Collections.singletonList(job));
+        store.append(Collections.singletonList(ran(job, 500)));
+        long used = heapUsed();
+
+        // The 128-byte block freed above takes the next tail of that size
+        Job other = ran(job("b", "true"), 100);
+        store.append(Collections.singletonList(other));
+        assertEquals(used + stringBytes("b") + stringBytes("true"), heapUsed());
+
+        // A shorter tail fits the block the job already has
+        store.append(Collections.singletonList(ran(job, 10)));
+        assertEquals(used + stringBytes("b") + stringBytes("true"), heapUsed());
+
+        List<Job> jobs = reload();
+        assertEquals(tail(10), jobs.get(0).getOutputTail());
+        assertEquals(tail(100), jobs.get(1).getOutputTail());
+    }
+
+    @Test
+    public void reclaimsTheBlockOfARemovedJob() throws IOException {
+        store.append(Collections.singletonList(ran(job("a", "true"), 100)));
+        store.append(Collections.singletonList(Job.tombstone("a")));
+        long used = heapUsed();
+
+        // Takes the free slot and the freed block; only its id and command are new
+        store.append(Collections.singletonList(ran(job("b", "true"), 100)));
+        assertEquals(used + stringBytes("b") + stringBytes("true"), heapUsed());
+        assertEquals("b", reload().get(0).getId());
+    }
+
+    @Test
+    public void pollsOnlyTheSlotsAnotherProcessChanged() {
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            jobs.add(job("j" + i, "true"));
+        }
+        store.append(jobs);
+        MappedJobStore other = new MappedJobStore(dir);
+        try {
+            other.load();
+            store.append(Collections.singletonList(ran(jobs.get(7), 10)));
+            store.append(Arrays.asList(Job.tombstone("j2"), job("k", "true")));
+
+            // k takes the slot j2 left, so the reader sees j2 go before k arrives
+            List<Job> changes = other.poll();
+            assertEquals(Arrays.asList("j2", "k", "j7"), ids(changes));
+            assertTrue(changes.get(0).isTombstone());
+            assertEquals(Job.JobState.COMPLETED, changes.get(2).getState());
+            assertTrue(other.poll().isEmpty());
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    public void scansEverySlotWhenTheChangeLogWrapped() {
+        store.append(Arrays.asList(job("a", "true"), job("b", "true")));
+        MappedJobStore other = new MappedJobStore(dir);
+        try {
+            other.load();
+            Job a = job("a", "true");
+            for (int i = 0; i <= MappedJobStore.CHANGE_LOG_ENTRIES; i++) {
+                a.setAttempts(i);
+                store.append(Collections.singletonList(a));
+            }
+            store.append(Collections.singletonList(ran(job("b", "true"), 10)));
+
+            List<Job> changes = other.poll();
+            assertEquals(Arrays.asList("a", "b"), ids(changes));
+            assertEquals(MappedJobStore.CHANGE_LOG_ENTRIES, changes.get(0).getAttempts());
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    public void scanCreatesNoFiles() throws IOException {
+        Path empty = folder.newFolder("empty").toPath();
+        MappedJobStore reader = new MappedJobStore(empty);
+        reader.scan(job -> { });
+        reader.close();
+        assertFalse(Files.exists(empty.resolve("slots.dat")));
+        assertFalse(Files.exists(empty.resolve("heap.dat")));
+
+        store.append(Collections.singletonList(job("a", "true")));
+        reader = new MappedJobStore(dir);
+        List<Job> scanned = new ArrayList<>();
+        reader.scan(scanned::add);
+        reader.close();
+        assertEquals(Arrays.asList("a"), ids(scanned));
+    }
+
+    private List<Job> reload() {
+        store.close();
+        store = new MappedJobStore(dir);
+        return store.load();
+    }
+
+    private long heapUsed() throws IOException {
+        store.sync();
+        try (FileChannel channel = FileChannel.open(dir.resolve("heap.dat"), StandardOpenOption.READ)) {
+            ByteBuffer used = ByteBuffer.allocate(8);
+            channel.read(used, 8);
+            return used.getLong(0);
+        }
+    }
+
+    private static int stringBytes(String value) {
+        return 4 + value.length();
+    }
+
+    private static Job job(String id, String command) {
+        return TestJobs.job(id, command, Job.JobState.PENDING);
+    }
+
+    private static Job ran(Job job, int tailLength) {
+        Job copy = new Job(job);
+        copy.setState(Job.JobState.COMPLETED);
+        copy.setLastExitCode(0);
+        copy.setStartedAt(T0);
+        copy.setFinishedAt(T0.plusSeconds(1));
+        copy.setOutputTail(tail(tailLength));
+        return copy;
+    }
+
+    private static String tail(int length) {
+        return String.join("", Collections.nCopies(length, "x"));
+    }
+}
@@ -0,0 +1,66 @@
+package com.hars.queuectl.worker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class OutputTailTest {
+
+    @Test
+    public void keepsEverythingWhileItFits() {
+        OutputTail tail = new OutputTail(8);
+        assertNull(tail.toString());
+        append(tail, "abc");
+        append(tail, "defgh");
+        assertEquals("abcdefgh", tail.toString());
+    }
+
+    @Test
+    public void keepsTheLastBytesAcrossTheWrap() {
+        OutputTail tail = new OutputTail(8);
+        append(tail, "abcdef");
+        append(tail, "ghijk");
+        assertEquals("defghijk", tail.toString());
+        append(tail, "lmnopqrstu");
+        assertEquals("nopqrstu", tail.toString());
+    }
+
+    @Test
+    public void leavesTheChunkPositionAlone() {
+        OutputTail tail = new OutputTail(4);
+        ByteBuffer chunk = ByteBuffer.wrap("abcdef".getBytes(StandardCharsets.UTF_8));
+        chunk.position(1);
+        tail.append(chunk);
+        assertEquals(1, chunk.position());
+        assertEquals("cdef", tail.toString());
+    }
+
+    @Test
+    public void dropsACharacterCutOffAtTheFront() {
+        OutputTail tail = new OutputTail(6);
+        // é and € are 2 and 3 bytes; only the last byte of é survives
+        append(tail, "aé€xy");
+        assertEquals("€xy", tail.toString());
+
+        OutputTail whole = new OutputTail(7);
+        append(whole, "aé€xy");
+        assertEquals("é€xy", whole.toString());
+    }
+
+    @Test
+    public void keepsACharacterSplitAcrossChunks() {
+        OutputTail tail = new OutputTail(16);
+        byte[] euro = "€".getBytes(StandardCharsets.UTF_8);
+        tail.append(ByteBuffer.wrap(euro, 0, 1));
+        tail.append(ByteBuffer.wrap(euro, 1, 2));
+        assertEquals("€", tail.toString());
+    }
+
+    private static void append(OutputTail tail, String text) {
+        tail.append(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+    }
+}